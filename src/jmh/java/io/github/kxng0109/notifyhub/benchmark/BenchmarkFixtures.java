@@ -0,0 +1,109 @@
+package io.github.kxng0109.notifyhub.benchmark;
+
+import com.rabbitmq.client.Channel;
+import io.github.kxng0109.notifyhub.dto.AttachmentRequest;
+import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+import io.github.kxng0109.notifyhub.service.EmailService;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.mail.MailPreparationException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Payloads and in-memory stand-ins for the broker and the SMTP server, shared by the benchmarks.
+ */
+final class BenchmarkFixtures {
+    private static final String[] DOMAINS = {"example.com", "example.org", "example.net", "mail.example.io"};
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * A notification with the given number of recipients spread over a few domains, an HTML body
+     * of about {@code htmlBytes} and, unless {@code attachmentBytes} is zero, one attachment of
+     * that decoded size.
+     */
+    static NotificationRequest notification(int recipients, int htmlBytes, int attachmentBytes) {
+        List<String> to = new ArrayList<>(recipients);
+        for (int i = 0; i < recipients; i++) {
+            to.add("user" + i + "@" + DOMAINS[i % DOMAINS.length]);
+        }
+        List<AttachmentRequest> attachments = attachmentBytes > 0
+                ? List.of(new AttachmentRequest("report.pdf", "application/pdf", randomBase64(attachmentBytes), null))
+                : List.of();
+        return new NotificationRequest(to, "Your monthly report", null, html(htmlBytes), attachments);
+    }
+
+    static String html(int bytes) {
+        StringBuilder html = new StringBuilder(bytes + 64).append("<html><body>");
+        int paragraph = 0;
+        while (html.length() < bytes) {
+            html.append("<p>Paragraph ").append(paragraph++)
+                .append(": the quick brown fox jumps over the lazy dog &amp; friends.</p>\n");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    private static String randomBase64(int bytes) {
+        byte[] content = new byte[bytes];
+        new Random(42).nextBytes(content);
+        return Base64.getEncoder().encodeToString(content);
+    }
+
+    /**
+     * An email service that accepts every message without doing anything, to isolate consumer overhead.
+     */
+    static EmailService discardingEmailService() {
+        return new EmailService() {
+            @Override
+            public void sendSimpleMessage(List<String> to, String subject, String content) {
+            }
+
+            @Override
+            public void sendHtmlMessage(List<String> to, String subject, String htmlContent,
+                                        List<AttachmentRequest> attachmentRequests) {
+            }
+        };
+    }
+
+    /**
+     * A channel that is always open and accepts every acknowledgement.
+     */
+    static Channel openChannel() {
+        return (Channel) Proxy.newProxyInstance(
+                Channel.class.getClassLoader(),
+                new Class<?>[]{Channel.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "isOpen" -> true;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "BenchmarkChannel";
+                    default -> null;
+                }
+        );
+    }
+
+    /**
+     * A mail sender that fully encodes every message, as the SMTP transport would, and then drops it.
+     */
+    static final class EncodingMailSender extends JavaMailSenderImpl {
+        @Override
+        public void send(MimeMessage... mimeMessages) {
+            for (MimeMessage mimeMessage : mimeMessages) {
+                try {
+                    mimeMessage.writeTo(OutputStream.nullOutputStream());
+                } catch (IOException | MessagingException e) {
+                    throw new MailPreparationException("Failed to encode message", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package io.github.kxng0109.notifyhub.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
+import io.github.kxng0109.notifyhub.attachment.AttachmentStore;
+import io.github.kxng0109.notifyhub.concurrency.DomainRateLimiter;
+import io.github.kxng0109.notifyhub.concurrency.DownstreamConcurrencyLimiter;
+import io.github.kxng0109.notifyhub.dedup.DeduplicationIndex;
+import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+import io.github.kxng0109.notifyhub.metrics.NotificationMetrics;
+import io.github.kxng0109.notifyhub.resilience.SmtpCircuitBreaker;
+import io.github.kxng0109.notifyhub.scheduling.NotificationScheduler;
+import io.github.kxng0109.notifyhub.service.DeliveryAcknowledger;
+import io.github.kxng0109.notifyhub.service.NotificationConsumer;
+import io.github.kxng0109.notifyhub.service.PublisherConfirmTracker;
+import io.github.kxng0109.notifyhub.template.TemplateRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.QUEUE_NAME;
+
+/**
+ * The overhead {@link NotificationConsumer#handleNotification} adds around the actual send:
+ * chunking, rate limiting, circuit breaking, futures and acknowledgement. The email service
+ * discards every message and all executors run on the calling thread, so the result is the
+ * consumer's own cost per delivery.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsumeDispatchBenchmark {
+    @Param({"1", "100", "1000"})
+    private int recipients;
+
+    @Param({"true", "false"})
+    private boolean rateLimited;
+
+    private final Channel channel = BenchmarkFixtures.openChannel();
+    private Path workDirectory;
+    private AttachmentStore attachmentStore;
+    private DomainRateLimiter rateLimiter;
+    private SmtpCircuitBreaker circuitBreaker;
+    private PublisherConfirmTracker confirmTracker;
+    private NotificationScheduler scheduler;
+    private NotificationConsumer consumer;
+    private NotificationRequest notification;
+    private long deliveryTag;
+
+    @Setup
+    public void setUp() throws IOException {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        Executor direct = Runnable::run;
+        workDirectory = Files.createTempDirectory("notifyhub-benchmark");
+        NotificationMetrics metrics = new NotificationMetrics(meterRegistry, direct, direct, direct);
+        DownstreamConcurrencyLimiter limiter = new DownstreamConcurrencyLimiter(
+                meterRegistry, Integer.MAX_VALUE, Integer.MAX_VALUE, 1_000L
+        );
+        attachmentStore = new AttachmentStore(
+                meterRegistry, workDirectory.toString(), false, Long.MAX_VALUE, 60_000L, 60_000L
+        );
+        // Rates high enough that a send never waits, so only the bookkeeping is measured.
+        rateLimiter = new DomainRateLimiter(
+                meterRegistry, rateLimited, 1e9, 1e9, 1e9, 1e9, 0.5, 0.5, 30_000L, 3_600_000L
+        );
+        circuitBreaker = new SmtpCircuitBreaker(
+                new RabbitListenerEndpointRegistry(), new BenchmarkFixtures.EncodingMailSender(), meterRegistry,
+                true, List.of(), 50, 20, 50.0, 30_000L, 5
+        );
+        confirmTracker = new PublisherConfirmTracker(
+                new RabbitTemplate(), limiter, metrics, meterRegistry, "none", 10_000L, 3, 100, 1_000L
+        );
+        scheduler = new NotificationScheduler(
+                confirmTracker, direct, limiter, attachmentStore, new ObjectMapper(), meterRegistry,
+                false, false, workDirectory.resolve("journal.log").toString(), false, 100L, 512, 5_000L
+        );
+        consumer = new NotificationConsumer(
+                BenchmarkFixtures.discardingEmailService(),
+                confirmTracker,
+                direct,
+                direct,
+                direct,
+                new DeliveryAcknowledger(),
+                limiter,
+                attachmentStore,
+                rateLimiter,
+                circuitBreaker,
+                scheduler,
+                new DeduplicationIndex(meterRegistry, false, 86_400_000L, 24, 0L, 1L),
+                new TemplateRegistry(meterRegistry, workDirectory.resolve("templates").toString(), false),
+                metrics,
+                meterRegistry
+        );
+        ReflectionTestUtils.setField(consumer, "maxRetries", 3);
+        ReflectionTestUtils.setField(consumer, "backoffBase", 5);
+        ReflectionTestUtils.setField(consumer, "backoffMultiplier", 5_000L);
+        ReflectionTestUtils.setField(consumer, "recipientChunkSize", 100);
+        notification = BenchmarkFixtures.notification(recipients, 4096, 0);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        scheduler.destroy();
+        confirmTracker.destroy();
+        circuitBreaker.destroy();
+        rateLimiter.destroy();
+        attachmentStore.destroy();
+    }
+
+    @Benchmark
+    public void handleNotification() {
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(++deliveryTag);
+        properties.setConsumerQueue(QUEUE_NAME);
+        consumer.handleNotification(notification, new Message(new byte[0], properties), channel);
+    }
+}
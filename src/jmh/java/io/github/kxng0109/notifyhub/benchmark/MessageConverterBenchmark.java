@@ -0,0 +1,68 @@
+package io.github.kxng0109.notifyhub.benchmark;
+
+import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+import io.github.kxng0109.notifyhub.messaging.NotificationMessageConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of turning a {@link NotificationRequest} into an AMQP message body and back, as done
+ * on every publish, retry and delivery, in both wire formats.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageConverterBenchmark {
+    @Param({"1", "100", "1000"})
+    private int recipients;
+
+    @Param({"1024", "65536"})
+    private int htmlBytes;
+
+    @Param({"0", "262144"})
+    private int attachmentBytes;
+
+    @Param({"json", "binary"})
+    private String format;
+
+    private MessageConverter converter;
+    private NotificationRequest notification;
+    private Message message;
+
+    @Setup
+    public void setUp() {
+        converter = new NotificationMessageConverter(new Jackson2JsonMessageConverter(), "binary".equals(format));
+        notification = BenchmarkFixtures.notification(recipients, htmlBytes, attachmentBytes);
+        message = converter.toMessage(notification, new MessageProperties());
+        // The listener resolves the payload type from the method signature, not from the type header.
+        message.getMessageProperties().setInferredArgumentType(NotificationRequest.class);
+    }
+
+    @Benchmark
+    public Message toMessage() {
+        return converter.toMessage(notification, new MessageProperties());
+    }
+
+    @Benchmark
+    public Object fromMessage() {
+        return converter.fromMessage(message);
+    }
+}
@@ -0,0 +1,93 @@
+package io.github.kxng0109.notifyhub.benchmark;
+
+import io.github.kxng0109.notifyhub.attachment.AttachmentStore;
+import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+import io.github.kxng0109.notifyhub.mail.AttachmentPartFactory;
+import io.github.kxng0109.notifyhub.mail.MimeBodyCache;
+import io.github.kxng0109.notifyhub.metrics.NotificationMetrics;
+import io.github.kxng0109.notifyhub.service.BatchEmailDispatcher;
+import io.github.kxng0109.notifyhub.service.EmailServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of building and encoding an HTML email in {@link EmailServiceImpl}, from the
+ * notification's content to the bytes the SMTP transport would write. Batching is disabled and
+ * the mail sender only encodes the message, so no network is involved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MimeBuildBenchmark {
+    @Param({"1", "100", "1000"})
+    private int recipients;
+
+    @Param({"1024", "65536"})
+    private int htmlBytes;
+
+    @Param({"0", "262144"})
+    private int attachmentBytes;
+
+    @Param({"true", "false"})
+    private boolean mimeCache;
+
+    private Path storeDirectory;
+    private AttachmentStore attachmentStore;
+    private EmailServiceImpl emailService;
+    private NotificationRequest notification;
+
+    @Setup
+    public void setUp() throws IOException {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        BenchmarkFixtures.EncodingMailSender mailSender = new BenchmarkFixtures.EncodingMailSender();
+        storeDirectory = Files.createTempDirectory("notifyhub-benchmark");
+        attachmentStore = new AttachmentStore(
+                meterRegistry, storeDirectory.toString(), false, Long.MAX_VALUE, 60_000L, 60_000L
+        );
+        emailService = new EmailServiceImpl(
+                mailSender,
+                new BatchEmailDispatcher(mailSender, false, 1, 0L, 1, 1),
+                new AttachmentPartFactory(attachmentStore, Long.MAX_VALUE, storeDirectory.toString()),
+                new MimeBodyCache(attachmentStore, meterRegistry, mimeCache, 256L << 20, 16L << 20, 600_000L),
+                new NotificationMetrics(meterRegistry, Runnable::run, Runnable::run, Runnable::run)
+        );
+        ReflectionTestUtils.setField(emailService, "mailFromAddress", "benchmark@notifyhub.io");
+        notification = BenchmarkFixtures.notification(recipients, htmlBytes, attachmentBytes);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        attachmentStore.destroy();
+        try (var files = Files.walk(storeDirectory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void sendHtmlMessage() {
+        emailService.sendHtmlMessage(
+                notification.to(), notification.subject(), notification.htmlBody(), notification.attachments()
+        );
+    }
+}
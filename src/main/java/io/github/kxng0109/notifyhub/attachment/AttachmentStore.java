@@ -0,0 +1,291 @@
+package io.github.kxng0109.notifyhub.attachment;
+
+import io.github.kxng0109.notifyhub.dto.AttachmentRequest;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * A content-addressed store for attachment content, so that large attachments travel through the
+ * broker as a short reference instead of being serialized into every message and every retry.
+ *
+ * Content is decoded once and written to a file named after its SHA-256 digest. Identical
+ * attachments therefore share one file.
+ *
+ * A notification is often accepted on one instance and sent, or retried, on another, so the store
+ * does not count references for messages in the broker. What every instance, and every restart,
+ * can see is the file's modification time: storing, retaining, opening and releasing a blob touch
+ * it. A sweep deletes a blob whose file has been untouched for the TTL, so the TTL must be longer
+ * than a message may wait in the broker; a message consumed later than that fails to find its
+ * attachment.
+ *
+ * Components that keep a notification on this instance, such as a publish awaiting its confirm
+ * or the scheduler, hold its blobs instead with {@link #retainAll(List)} and release them on this
+ * same instance with {@link #releaseAll(List)}. Each sweep touches the blobs still held, so a
+ * notification scheduled further ahead than the TTL keeps its attachments. Instances sharing the
+ * directory keep a blob held by another one, as long as the sweep interval is well below the TTL.
+ */
+@Component
+public class AttachmentStore implements DisposableBean {
+    public static final String REF_PREFIX = "sha256:";
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentStore.class);
+    private static final Pattern DIGEST = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path directory;
+    private final boolean enabled;
+    private final long minSizeBytes;
+    private final long ttlMillis;
+    private final Map<String, Blob> blobs = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper;
+
+    public AttachmentStore(
+            MeterRegistry meterRegistry,
+            @Value("${notifyhub.attachments.store.dir:${java.io.tmpdir}/notifyhub-attachments}") String directory,
+            @Value("${notifyhub.attachments.store.enabled:true}") boolean enabled,
+            @Value("${notifyhub.attachments.store.min-size-bytes:65536}") long minSizeBytes,
+            @Value("${notifyhub.attachments.store.ttl-ms:86400000}") long ttlMillis,
+            @Value("${notifyhub.attachments.store.sweep-interval-ms:600000}") long sweepIntervalMillis
+    ) throws IOException {
+        this.directory = Files.createDirectories(Path.of(directory));
+        this.enabled = enabled;
+        this.minSizeBytes = minSizeBytes;
+        this.ttlMillis = ttlMillis;
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("attachment-store-sweeper").daemon(true).factory());
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepIntervalMillis, sweepIntervalMillis, TimeUnit.MILLISECONDS);
+
+        Gauge.builder("notifyhub.attachments.store.blobs", blobs, Map::size)
+             .description("Attachment blobs held by this instance")
+             .register(meterRegistry);
+    }
+
+    /**
+     * Moves an attachment's content into the store if it is large enough to be worth it.
+     * Any reference supplied by the client is discarded.
+     *
+     * @param attachment the attachment as received from the client
+     * @return the attachment with its data replaced by a reference, or with its data kept inline
+     * @throws IOException if the content cannot be written to the store
+     */
+    public AttachmentRequest externalize(AttachmentRequest attachment) throws IOException {
+        String data = attachment.data();
+        if (!enabled || data == null || Base64Streams.decodedSize(data) < minSizeBytes) {
+            return new AttachmentRequest(attachment.filename(), attachment.contentType(), data, null);
+        }
+        return new AttachmentRequest(attachment.filename(), attachment.contentType(), null, store(data));
+    }
+
+    /**
+     * Decodes Base64 content into the store and holds it until the caller releases it, once
+     * the message carrying the reference has been handed to the broker.
+     *
+     * @param base64Data the Base64-encoded content
+     * @return the reference to pass to {@link #open(String)} and {@link #release(String)}
+     * @throws IOException if the content cannot be written to the store
+     */
+    public String store(String base64Data) throws IOException {
+        Path temp = Files.createTempFile(directory, "incoming-", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            try (InputStream in = Base64Streams.decoding(base64Data);
+                 OutputStream out = new DigestOutputStream(Files.newOutputStream(temp), digest)) {
+                in.transferTo(out);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+
+            blobs.compute(hash, (key, blob) -> {
+                Path target = directory.resolve(key);
+                try {
+                    if (blob == null && !Files.exists(target)) {
+                        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                Blob tracked = blob != null ? blob : new Blob();
+                tracked.holds.incrementAndGet();
+                touch(key);
+                return tracked;
+            });
+            return REF_PREFIX + hash;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Opens a stored blob for reading.
+     *
+     * @param ref a reference returned by {@link #store(String)}
+     * @return a stream over the decoded content
+     * @throws IOException if the blob no longer exists
+     */
+    public InputStream open(String ref) throws IOException {
+        String hash = hashOf(ref);
+        touch(hash);
+        try {
+            return Files.newInputStream(directory.resolve(hash));
+        } catch (NoSuchFileException e) {
+            throw new IOException("Attachment " + ref + " is no longer in the store", e);
+        }
+    }
+
+    /**
+     * Returns the decoded size of a stored blob, or {@code -1} if it is no longer in the store.
+     */
+    public long size(String ref) {
+        try {
+            return Files.size(directory.resolve(hashOf(ref)));
+        } catch (IOException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Drops one hold on a stored blob. Once no holds remain, the blob is deleted after the TTL
+     * unless it is used again.
+     */
+    public void release(String ref) {
+        String hash = hashOf(ref);
+        blobs.computeIfPresent(hash, (key, blob) -> blob.holds.decrementAndGet() > 0 ? blob : null);
+        touch(hash);
+    }
+
+    /**
+     * Holds every stored attachment of a notification that this instance keeps, until it is
+     * released here again. Inline attachments are ignored.
+     */
+    public void retainAll(List<AttachmentRequest> attachments) {
+        if (attachments == null) {
+            return;
+        }
+        for (AttachmentRequest attachment : attachments) {
+            if (attachment.ref() != null) {
+                blobs.compute(hashOf(attachment.ref()), (hash, blob) -> {
+                    Blob tracked = blob != null ? blob : new Blob();
+                    tracked.holds.incrementAndGet();
+                    touch(hash);
+                    return tracked;
+                });
+            }
+        }
+    }
+
+    /**
+     * Releases every stored attachment of a notification; inline attachments are ignored.
+     */
+    public void releaseAll(List<AttachmentRequest> attachments) {
+        if (attachments == null) {
+            return;
+        }
+        for (AttachmentRequest attachment : attachments) {
+            if (attachment.ref() != null) {
+                release(attachment.ref());
+            }
+        }
+    }
+
+    /**
+     * Touches the blobs this instance still holds, and deletes the others once their file has
+     * not been touched within the TTL.
+     */
+    void sweep() {
+        long cutoff = System.currentTimeMillis() - ttlMillis;
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> DIGEST.matcher(file.getFileName().toString()).matches())
+                 .forEach(file -> sweep(file, cutoff));
+        } catch (IOException e) {
+            logger.warn("Failed to sweep attachment store {}", directory, e);
+        }
+    }
+
+    private void sweep(Path file, long cutoff) {
+        blobs.compute(file.getFileName().toString(), (hash, blob) -> {
+            try {
+                if (blob != null) {
+                    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                    return blob;
+                }
+                if (Files.getLastModifiedTime(file).toMillis() > cutoff) {
+                    return blob;
+                }
+                Files.deleteIfExists(file);
+                logger.debug("Deleted expired attachment blob {}", hash);
+                return null;
+            } catch (IOException e) {
+                logger.warn("Failed to sweep attachment blob {}", hash, e);
+                return blob;
+            }
+        });
+    }
+
+    /**
+     * Marks a blob as in use for every instance sharing the directory.
+     */
+    private void touch(String hash) {
+        try {
+            Files.setLastModifiedTime(directory.resolve(hash), FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            // Already swept; opening it reports that.
+        } catch (IOException e) {
+            logger.warn("Failed to touch attachment blob {}", hash, e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        sweeper.shutdownNow();
+    }
+
+    private static String hashOf(String ref) {
+        if (ref == null || !ref.startsWith(REF_PREFIX) || !DIGEST.matcher(ref.substring(REF_PREFIX.length())).matches()) {
+            throw new IllegalArgumentException("Invalid attachment reference: " + ref);
+        }
+        return ref.substring(REF_PREFIX.length());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * A blob held by this instance; dropped from the map once its last hold is released.
+     */
+    private static final class Blob {
+        private final AtomicInteger holds = new AtomicInteger();
+    }
+}
@@ -0,0 +1,65 @@
+package io.github.kxng0109.notifyhub.attachment;
+
+import java.io.InputStream;
+import java.util.Base64;
+
+/**
+ * Helpers for decoding Base64 attachment data as a stream rather than into a byte array.
+ */
+public final class Base64Streams {
+    private Base64Streams() {
+    }
+
+    /**
+     * Returns a stream of the bytes encoded by a Base64 string, decoded as they are read.
+     * Invalid Base64 is reported as an {@link java.io.IOException} while reading.
+     */
+    public static InputStream decoding(String base64) {
+        return Base64.getDecoder().wrap(new AsciiInputStream(base64));
+    }
+
+    /**
+     * Returns the size in bytes that a Base64 string decodes to, ignoring padding.
+     */
+    public static long decodedSize(String base64) {
+        return (long) base64.length() / 4 * 3;
+    }
+
+    /**
+     * Reads the characters of a Base64 string as bytes, without copying them into a byte array.
+     * Base64 text is pure ASCII, so each character maps to exactly one byte.
+     */
+    private static final class AsciiInputStream extends InputStream {
+        private final String text;
+        private int position;
+
+        private AsciiInputStream(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public int read() {
+            return position < text.length() ? text.charAt(position++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= text.length()) {
+                return -1;
+            }
+            int count = Math.min(length, text.length() - position);
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (byte) text.charAt(position++);
+            }
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return text.length() - position;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package io.github.kxng0109.notifyhub.concurrency;
+
+/**
+ * An additive-increase, multiplicative-decrease limit.
+ *
+ * Every sample either reports the downstream as overloaded, in which case the limit is cut to
+ * {@code backoffRatio} of itself, or as keeping up with work still waiting, in which case it
+ * grows by {@code increaseStep}. Otherwise it is left alone. The signals a sample is judged on
+ * trail the limit, so after a decrease further decreases are held back for {@code cooldownMillis}
+ * to let them catch up, instead of cutting the limit again for the same overload.
+ *
+ * Not thread-safe; it is meant to be updated by a single controller thread.
+ */
+final class AimdLimit {
+    private final int min;
+    private final int max;
+    private final int increaseStep;
+    private final double backoffRatio;
+    private final long cooldownMillis;
+    private int limit;
+    private long lastDecreaseMillis = Long.MIN_VALUE;
+
+    AimdLimit(int min, int max, int initial, int increaseStep, double backoffRatio, long cooldownMillis) {
+        if (min < 1 || max < min) {
+            throw new IllegalArgumentException("Limit bounds must satisfy 1 <= min <= max");
+        }
+        if (backoffRatio <= 0.0 || backoffRatio >= 1.0) {
+            throw new IllegalArgumentException("backoffRatio must be between 0 and 1");
+        }
+        this.min = min;
+        this.max = max;
+        this.increaseStep = Math.max(1, increaseStep);
+        this.backoffRatio = backoffRatio;
+        this.cooldownMillis = cooldownMillis;
+        this.limit = Math.clamp(initial, min, max);
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    /**
+     * Updates the limit from one sample and returns the new value.
+     *
+     * @param overloaded whether the downstream is over its latency or queueing target
+     * @param backlogged whether work is waiting that a higher limit would take on
+     * @param nowMillis the current time, in milliseconds
+     */
+    int update(boolean overloaded, boolean backlogged, long nowMillis) {
+        if (overloaded) {
+            if (lastDecreaseMillis == Long.MIN_VALUE || nowMillis - lastDecreaseMillis >= cooldownMillis) {
+                limit = Math.max(min, Math.min(limit - 1, (int) (limit * backoffRatio)));
+                lastDecreaseMillis = nowMillis;
+            }
+        } else if (backlogged) {
+            limit = Math.min(max, limit + increaseStep);
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,14 @@
+package io.github.kxng0109.notifyhub.concurrency;
+
+/**
+ * Thrown when a downstream's concurrency limit stays exhausted for longer than the acquire timeout.
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+    public ConcurrencyLimitExceededException(String message) {
+        super(message);
+    }
+
+    public ConcurrencyLimitExceededException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
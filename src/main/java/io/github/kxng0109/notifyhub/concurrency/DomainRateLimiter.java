@@ -0,0 +1,261 @@
+package io.github.kxng0109.notifyhub.concurrency;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Adaptive send-rate limits per recipient domain, plus one global limit.
+ *
+ * Every domain gets a token bucket refilled at its current rate. Each message to that domain
+ * reserves one token, and a message that arrives at an empty bucket is told how long to wait
+ * rather than being blocked. Callers wait on {@link #after(long)}, which completes from a
+ * scheduler, so throttled domains do not hold worker threads. Rates adapt in AIMD fashion: they
+ * are cut by a factor whenever a domain answers {@code 421}/{@code 451}, and raised by a fixed
+ * step for every successful send, within the configured bounds.
+ *
+ * Domains that have been idle for a while are forgotten, together with their meters.
+ */
+@Component
+public class DomainRateLimiter implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(DomainRateLimiter.class);
+    private static final CompletableFuture<Void> NOW = CompletableFuture.completedFuture(null);
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final double initialRate;
+    private final double minRate;
+    private final double maxRate;
+    private final double increaseStep;
+    private final double decreaseFactor;
+    private final long maxWaitMillis;
+    private final TokenBucket global;
+    private final Cache<String, DomainLimit> domains;
+    private final ScheduledExecutorService scheduler;
+
+    public DomainRateLimiter(
+            MeterRegistry meterRegistry,
+            @Value("${notifyhub.mail.rate.enabled:true}") boolean enabled,
+            @Value("${notifyhub.mail.rate.global-per-second:200}") double globalRate,
+            @Value("${notifyhub.mail.rate.domain.initial-per-second:20}") double initialRate,
+            @Value("${notifyhub.mail.rate.domain.min-per-second:1}") double minRate,
+            @Value("${notifyhub.mail.rate.domain.max-per-second:100}") double maxRate,
+            @Value("${notifyhub.mail.rate.domain.increase-step:0.5}") double increaseStep,
+            @Value("${notifyhub.mail.rate.domain.decrease-factor:0.5}") double decreaseFactor,
+            @Value("${notifyhub.mail.rate.max-wait-ms:30000}") long maxWaitMillis,
+            @Value("${notifyhub.mail.rate.domain.idle-expiry-ms:3600000}") long idleExpiryMillis
+    ) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.initialRate = initialRate;
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.increaseStep = increaseStep;
+        this.decreaseFactor = decreaseFactor;
+        this.maxWaitMillis = maxWaitMillis;
+        this.global = new TokenBucket(globalRate);
+        this.domains = Caffeine.newBuilder()
+                               .expireAfterAccess(Duration.ofMillis(idleExpiryMillis))
+                               .removalListener((String domain, DomainLimit limit, RemovalCause cause) -> {
+                                   if (limit != null) {
+                                       limit.removeMeters(meterRegistry);
+                                   }
+                               })
+                               .build();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("domain-rate-limiter").daemon(true).factory());
+
+        Gauge.builder("notifyhub.mail.rate.limit", global, TokenBucket::rate)
+             .tag("domain", "_global")
+             .description("Current send rate limit in messages per second")
+             .register(meterRegistry);
+    }
+
+    /**
+     * Reserves a send to the given domain.
+     *
+     * @param domain the recipient domain
+     * @return {@code 0} if the message may be sent now, the number of milliseconds to wait before
+     *         sending it, or {@code -1} if the wait would exceed the maximum, in which case nothing
+     *         was reserved and the message should be deferred instead
+     */
+    public long reserve(String domain) {
+        return reserve(domain, 1);
+    }
+
+    /**
+     * Reserves several sends to the given domain at once, such as a personalized template that
+     * sends one message per recipient. Either all of them are reserved or none is.
+     *
+     * @param domain the recipient domain
+     * @param messages the number of messages about to be sent
+     * @return as for {@link #reserve(String)}
+     */
+    public long reserve(String domain, int messages) {
+        if (!enabled || messages <= 0) {
+            return 0L;
+        }
+        DomainLimit limit = domains.get(domain, this::newDomainLimit);
+        long now = System.nanoTime();
+        long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+
+        long domainWait = limit.bucket.tryReserve(now, maxWaitNanos, messages);
+        if (domainWait < 0) {
+            limit.deferred.increment();
+            return -1L;
+        }
+        long globalWait = global.tryReserve(now, maxWaitNanos, messages);
+        if (globalWait < 0) {
+            limit.bucket.refund(messages);
+            limit.deferred.increment();
+            return -1L;
+        }
+        long waitMillis = TimeUnit.NANOSECONDS.toMillis(Math.max(domainWait, globalWait));
+        limit.waits.record(waitMillis);
+        return waitMillis;
+    }
+
+    /**
+     * Returns a future that completes after the given delay, without occupying a thread meanwhile.
+     */
+    public CompletableFuture<Void> after(long delayMillis) {
+        if (delayMillis <= 0) {
+            return NOW;
+        }
+        CompletableFuture<Void> elapsed = new CompletableFuture<>();
+        scheduler.schedule(() -> elapsed.complete(null), delayMillis, TimeUnit.MILLISECONDS);
+        return elapsed;
+    }
+
+    /**
+     * Additively raises the domain's rate after a successful send.
+     */
+    public void recordSuccess(String domain) {
+        DomainLimit limit = domains.getIfPresent(domain);
+        if (limit != null) {
+            limit.bucket.adjust(rate -> Math.min(maxRate, rate + increaseStep));
+        }
+    }
+
+    /**
+     * Multiplicatively cuts the domain's rate after it answered with a throttling reply.
+     */
+    public void recordThrottled(String domain) {
+        DomainLimit limit = domains.get(domain, this::newDomainLimit);
+        double rate = limit.bucket.adjust(current -> Math.max(minRate, current * decreaseFactor));
+        limit.throttled.increment();
+        logger.warn("Domain {} is throttling us, send rate reduced to {}/s", domain, rate);
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    private DomainLimit newDomainLimit(String domain) {
+        return new DomainLimit(domain, new TokenBucket(initialRate), meterRegistry);
+    }
+
+    /**
+     * A token bucket whose balance may go negative. A negative balance is a queue of reservations
+     * that are already promised, and the wait for the next reservation is the time the refill
+     * needs to pay it back. The bucket holds at most one second's worth of tokens.
+     */
+    private static final class TokenBucket {
+        private double rate;
+        private double tokens;
+        private long lastRefillNanos = System.nanoTime();
+
+        private TokenBucket(double rate) {
+            this.rate = rate;
+            this.tokens = rate;
+        }
+
+        synchronized long tryReserve(long now, long maxWaitNanos, int count) {
+            refill(now);
+            double remaining = tokens - count;
+            long waitNanos = remaining >= 0 ? 0L : (long) (-remaining / rate * 1_000_000_000L);
+            if (waitNanos > maxWaitNanos) {
+                return -1L;
+            }
+            tokens = remaining;
+            return waitNanos;
+        }
+
+        synchronized void refund(int count) {
+            tokens += count;
+        }
+
+        synchronized double adjust(DoubleUnaryOperator change) {
+            refill(System.nanoTime());
+            rate = change.applyAsDouble(rate);
+            tokens = Math.min(tokens, rate);
+            return rate;
+        }
+
+        synchronized double rate() {
+            return rate;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(rate, tokens + (now - lastRefillNanos) / 1_000_000_000.0 * rate);
+            lastRefillNanos = now;
+        }
+    }
+
+    private static final class DomainLimit {
+        private final TokenBucket bucket;
+        private final Gauge rateGauge;
+        private final Counter throttled;
+        private final Counter deferred;
+        private final DistributionSummary waits;
+
+        private DomainLimit(String domain, TokenBucket bucket, MeterRegistry meterRegistry) {
+            this.bucket = bucket;
+            this.rateGauge = Gauge.builder("notifyhub.mail.rate.limit", bucket, TokenBucket::rate)
+                                  .tag("domain", domain)
+                                  .description("Current send rate limit in messages per second")
+                                  .register(meterRegistry);
+            this.throttled = Counter.builder("notifyhub.mail.rate.throttled")
+                                    .tag("domain", domain)
+                                    .description("Throttling replies (421/451) received from a domain")
+                                    .register(meterRegistry);
+            this.deferred = Counter.builder("notifyhub.mail.rate.deferred")
+                                   .tag("domain", domain)
+                                   .description("Sends deferred to the broker because the wait was too long")
+                                   .register(meterRegistry);
+            this.waits = DistributionSummary.builder("notifyhub.mail.rate.wait")
+                                            .tag("domain", domain)
+                                            .baseUnit("milliseconds")
+                                            .description("Time sends waited for a rate-limit token")
+                                            .register(meterRegistry);
+        }
+
+        private void removeMeters(MeterRegistry meterRegistry) {
+            meterRegistry.remove(rateGauge);
+            meterRegistry.remove(throttled);
+            meterRegistry.remove(deferred);
+            meterRegistry.remove(waits);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.github.kxng0109.notifyhub.concurrency;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the number of concurrent calls made to each downstream system.
+ *
+ * Once the executors run on virtual threads, the number of threads no longer limits how many
+ * SMTP sessions or broker channels are used at the same time. Callers therefore take a permit
+ * for the downstream they are about to use (for example {@code smtp:mail.example.com} or
+ * {@code amqp:publish}) and give it back when done. Waiting for a permit is cheap on a virtual
+ * thread, so the limiter provides the backpressure that a fixed-size pool used to give.
+ */
+@Component
+public class DownstreamConcurrencyLimiter {
+    public static final String SMTP_PREFIX = "smtp:";
+    public static final String AMQP_PUBLISH = "amqp:publish";
+
+    private final Map<String, Semaphore> semaphores = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final int smtpMaxConcurrent;
+    private final int amqpMaxConcurrent;
+    private final long acquireTimeoutMillis;
+
+    public DownstreamConcurrencyLimiter(
+            MeterRegistry meterRegistry,
+            @Value("${notifyhub.limits.smtp.max-concurrent:16}") int smtpMaxConcurrent,
+            @Value("${notifyhub.limits.amqp.max-concurrent:25}") int amqpMaxConcurrent,
+            @Value("${notifyhub.limits.acquire-timeout-ms:30000}") long acquireTimeoutMillis
+    ) {
+        this.meterRegistry = meterRegistry;
+        this.smtpMaxConcurrent = smtpMaxConcurrent;
+        this.amqpMaxConcurrent = amqpMaxConcurrent;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    /**
+     * Takes a permit for the given SMTP host.
+     */
+    public Permit acquireSmtp(String host) {
+        return acquire(SMTP_PREFIX + host, smtpMaxConcurrent);
+    }
+
+    /**
+     * Takes a permit for publishing to the broker.
+     */
+    public Permit acquireAmqpPublish() {
+        return acquire(AMQP_PUBLISH, amqpMaxConcurrent);
+    }
+
+    /**
+     * Takes a permit for the named downstream, waiting up to the configured timeout.
+     *
+     * @param downstream the downstream's name, used as the key of its semaphore
+     * @param maxConcurrent the number of permits to create the semaphore with on first use
+     * @return a permit that must be closed once the downstream call has finished
+     * @throws ConcurrencyLimitExceededException if no permit became available in time
+     */
+    public Permit acquire(String downstream, int maxConcurrent) {
+        Semaphore semaphore = semaphores.computeIfAbsent(downstream, name -> newSemaphore(name, maxConcurrent));
+        try {
+            if (!semaphore.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new ConcurrencyLimitExceededException(
+                        "No capacity available for " + downstream + " after " + acquireTimeoutMillis + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConcurrencyLimitExceededException("Interrupted while waiting for " + downstream, e);
+        }
+        return semaphore::release;
+    }
+
+    private Semaphore newSemaphore(String downstream, int maxConcurrent) {
+        int permits = Math.max(1, maxConcurrent);
+        Semaphore semaphore = new Semaphore(permits, true);
+        Gauge.builder("notifyhub.downstream.in.use", semaphore, s -> permits - s.availablePermits())
+             .tag("downstream", downstream)
+             .description("Concurrent calls currently in progress against a downstream")
+             .register(meterRegistry);
+        return semaphore;
+    }
+
+    /**
+     * A held permit. Closing it releases the permit.
+     */
+    @FunctionalInterface
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,224 @@
+package io.github.kxng0109.notifyhub.concurrency;
+
+import io.github.kxng0109.notifyhub.metrics.NotificationMetrics;
+import io.github.kxng0109.notifyhub.metrics.NotificationMetrics.Stage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adjusts the consumers and prefetch of the email listener containers at runtime, in place of the
+ * fixed values tuned by hand.
+ *
+ * Each container gets an {@link AimdLimit} on the number of deliveries it may hold unacknowledged,
+ * which is its consumers times their prefetch. Every {@code interval-ms} the limit is cut when the
+ * p99 of SMTP sends is above {@code smtp-p99-target-ms} or the email executor's queue is fuller than
+ * {@code max-executor-queue-utilization}, and raised when neither is the case but messages are
+ * still waiting in the container's queues. The limit is spent on consumers first, at the configured
+ * prefetch each, between {@code spring.rabbitmq.listener.simple.concurrency} and
+ * {@code max-concurrency}; below the minimum number of consumers, the prefetch is lowered instead.
+ *
+ * While enabled, the controller owns the consumer count, so the containers' own load-based
+ * scaling is switched off by pinning their maximum to it. A new prefetch only applies to consumers
+ * started after the change; the broker keeps the old one for consumers already running.
+ *
+ * The limit, consumers and prefetch of every container are exported as
+ * {@code notifyhub.listener.adaptive.limit}, {@code .consumers} and {@code .prefetch}, and each
+ * decision as a {@code notifyhub.listener.adaptive.adjustments} count.
+ */
+@Component
+public class ListenerConcurrencyController implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(ListenerConcurrencyController.class);
+
+    private final RabbitListenerEndpointRegistry listenerRegistry;
+    private final AmqpAdmin amqpAdmin;
+    private final NotificationMetrics metrics;
+    private final Executor emailSendingExecutor;
+    private final double smtpP99TargetMillis;
+    private final double maxExecutorQueueUtilization;
+    private final int minConsumers;
+    private final int maxConsumers;
+    private final int maxPrefetch;
+    private final Map<String, Lane> lanes = new LinkedHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    public ListenerConcurrencyController(
+            RabbitListenerEndpointRegistry listenerRegistry,
+            AmqpAdmin amqpAdmin,
+            NotificationMetrics metrics,
+            MeterRegistry meterRegistry,
+            @Qualifier("emailSendingExecutor") Executor emailSendingExecutor,
+            @Value("${notifyhub.listener.adaptive.enabled:false}") boolean enabled,
+            @Value("${notifyhub.listener.adaptive.listener-ids:notifications,notifications-sharded}") List<String> listenerIds,
+            @Value("${notifyhub.listener.adaptive.interval-ms:5000}") long intervalMillis,
+            @Value("${notifyhub.listener.adaptive.smtp-p99-target-ms:2000}") double smtpP99TargetMillis,
+            @Value("${notifyhub.listener.adaptive.max-executor-queue-utilization:0.8}") double maxExecutorQueueUtilization,
+            @Value("${notifyhub.listener.adaptive.increase-step:10}") int increaseStep,
+            @Value("${notifyhub.listener.adaptive.backoff-ratio:0.75}") double backoffRatio,
+            @Value("${notifyhub.listener.adaptive.cooldown-ms:30000}") long cooldownMillis,
+            @Value("${spring.rabbitmq.listener.simple.concurrency:4}") int minConsumers,
+            @Value("${spring.rabbitmq.listener.simple.max-concurrency:10}") int maxConsumers,
+            @Value("${spring.rabbitmq.listener.simple.prefetchCount:50}") int maxPrefetch
+    ) {
+        this.listenerRegistry = listenerRegistry;
+        this.amqpAdmin = amqpAdmin;
+        this.metrics = metrics;
+        this.emailSendingExecutor = emailSendingExecutor;
+        this.smtpP99TargetMillis = smtpP99TargetMillis;
+        this.maxExecutorQueueUtilization = maxExecutorQueueUtilization;
+        this.minConsumers = Math.max(1, minConsumers);
+        this.maxConsumers = Math.max(this.minConsumers, maxConsumers);
+        this.maxPrefetch = Math.max(1, maxPrefetch);
+
+        if (!enabled) {
+            this.scheduler = null;
+            return;
+        }
+        for (String id : listenerIds) {
+            AimdLimit limit = new AimdLimit(
+                    this.minConsumers, this.maxConsumers * this.maxPrefetch, this.minConsumers * this.maxPrefetch,
+                    increaseStep, backoffRatio, cooldownMillis
+            );
+            lanes.put(id, new Lane(id, limit, meterRegistry));
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("listener-concurrency-controller").daemon(true).factory());
+        scheduler.scheduleWithFixedDelay(this::adjust, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("Adaptive listener concurrency enabled for {} with a p99 target of {}ms",
+                    lanes.keySet(), smtpP99TargetMillis);
+    }
+
+    private void adjust() {
+        try {
+            double smtpP99 = metrics.percentile(Stage.SMTP_SEND, 0.99);
+            double queueUtilization = executorQueueUtilization();
+            boolean overloaded = smtpP99 > smtpP99TargetMillis || queueUtilization > maxExecutorQueueUtilization;
+            long now = System.currentTimeMillis();
+            for (Lane lane : lanes.values()) {
+                MessageListenerContainer container = listenerRegistry.getListenerContainer(lane.id);
+                if (!(container instanceof SimpleMessageListenerContainer simple) || !simple.isRunning()) {
+                    continue;
+                }
+                int before = lane.limit.limit();
+                int after = lane.limit.update(overloaded, !overloaded && backlog(simple) > 0, now);
+                if (after != before) {
+                    (after > before ? lane.increases : lane.decreases).increment();
+                    logger.debug("Listener {} limit {} -> {} (smtp p99 {}ms, executor queue {}%)",
+                                 lane.id, before, after, Math.round(smtpP99), Math.round(queueUtilization * 100));
+                }
+                apply(lane, simple, after);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Failed to adjust listener concurrency", e);
+        }
+    }
+
+    /**
+     * Spreads the limit over consumers and prefetch, and applies them to the container if they changed.
+     */
+    private void apply(Lane lane, SimpleMessageListenerContainer container, int limit) {
+        int consumers = Math.clamp(Math.ceilDiv(limit, maxPrefetch), minConsumers, maxConsumers);
+        int prefetch = Math.clamp(Math.ceilDiv(limit, consumers), 1, maxPrefetch);
+        if (prefetch != lane.prefetch) {
+            container.setPrefetchCount(prefetch);
+            lane.prefetch = prefetch;
+        }
+        if (consumers != lane.consumers) {
+            // The container checks the consumer count against its maximum on every change.
+            if (consumers > lane.consumers) {
+                container.setMaxConcurrentConsumers(consumers);
+                container.setConcurrentConsumers(consumers);
+            } else {
+                container.setConcurrentConsumers(consumers);
+                container.setMaxConcurrentConsumers(consumers);
+            }
+            lane.consumers = consumers;
+        }
+    }
+
+    private long backlog(SimpleMessageListenerContainer container) {
+        long ready = 0;
+        for (String queue : container.getQueueNames()) {
+            try {
+                QueueInformation information = amqpAdmin.getQueueInfo(queue);
+                if (information != null) {
+                    ready += information.getMessageCount();
+                }
+            } catch (AmqpException e) {
+                logger.debug("Could not read the depth of queue {}: {}", queue, e.getMessage());
+            }
+        }
+        return ready;
+    }
+
+    private double executorQueueUtilization() {
+        if (emailSendingExecutor instanceof ThreadPoolTaskExecutor pool && pool.getQueueCapacity() > 0) {
+            return (double) pool.getQueueSize() / pool.getQueueCapacity();
+        }
+        return 0.0;
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private static final class Lane {
+        private final String id;
+        private final AimdLimit limit;
+        private final Counter increases;
+        private final Counter decreases;
+        private volatile int consumers;
+        private volatile int prefetch;
+
+        private Lane(String id, AimdLimit limit, MeterRegistry meterRegistry) {
+            this.id = id;
+            this.limit = limit;
+            Gauge.builder("notifyhub.listener.adaptive.limit", limit, AimdLimit::limit)
+                 .tag("listener", id)
+                 .description("Deliveries the listener may hold unacknowledged, as set by the adaptive controller")
+                 .register(meterRegistry);
+            Gauge.builder("notifyhub.listener.adaptive.consumers", this, lane -> lane.consumers)
+                 .tag("listener", id)
+                 .description("Consumers the adaptive controller has given the listener")
+                 .register(meterRegistry);
+            Gauge.builder("notifyhub.listener.adaptive.prefetch", this, lane -> lane.prefetch)
+                 .tag("listener", id)
+                 .description("Prefetch the adaptive controller has given the listener's consumers")
+                 .register(meterRegistry);
+            this.increases = Counter.builder("notifyhub.listener.adaptive.adjustments")
+                                    .tag("listener", id)
+                                    .tag("direction", "increase")
+                                    .description("Times the adaptive controller changed the listener's limit")
+                                    .register(meterRegistry);
+            this.decreases = Counter.builder("notifyhub.listener.adaptive.adjustments")
+                                    .tag("listener", id)
+                                    .tag("direction", "decrease")
+                                    .description("Times the adaptive controller changed the listener's limit")
+                                    .register(meterRegistry);
+        }
+    }
+}
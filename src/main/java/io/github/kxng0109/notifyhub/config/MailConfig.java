@@ -1,36 +1,149 @@
 package io.github.kxng0109.notifyhub.config;
 
+import io.github.kxng0109.notifyhub.concurrency.DownstreamConcurrencyLimiter;
+import io.github.kxng0109.notifyhub.mail.PooledJavaMailSender;
+import io.github.kxng0109.notifyhub.mail.RoutingJavaMailSender;
+import io.github.kxng0109.notifyhub.mail.SmtpConnectionPool;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.mail.MailProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.JavaMailSenderImpl;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 /**
  * Configuration class for configuring mail-related beans and properties.
  *
  * This class integrates mail settings specified in {@link MailProperties}
- * and provides a configurable {@link JavaMailSender} bean with additional
- * properties for performance optimization and connectivity.
+ * and provides a configurable {@link JavaMailSender} bean backed by a bounded pool
+ * of long-lived SMTP connections, with Micrometer gauges describing the pool's state.
+ * When {@code notifyhub.mail.routing.relays} lists several relays, each relay gets its own pool
+ * and sends are spread across them by a {@link RoutingJavaMailSender}. Concurrent sends are
+ * bounded by the {@link DownstreamConcurrencyLimiter} per SMTP host, or per relay when routing.
  */
 @Configuration
-@EnableConfigurationProperties(MailProperties.class)
+@EnableConfigurationProperties({MailProperties.class, MailRoutingProperties.class})
 public class MailConfig {
+    public static final String POOL_CONNECTIONS_METRIC = "notifyhub.mail.pool.connections";
+
+    /**
+     * Creates the pooled {@link JavaMailSender}. Each email worker borrows an already connected
+     * transport instead of opening, authenticating and closing a connection per send. With
+     * relays configured, every relay gets a pool of {@code maxSize} connections of its own.
+     *
+     * @param mailProperties the Spring Boot mail settings (host, port, credentials, JavaMail properties).
+     * @param routingProperties the relays to route across, if any.
+     * @param meterRegistry the registry the pool gauges are published to.
+     * @param concurrencyLimiter the limiter bounding concurrent sends per host or relay.
+     * @param maxSize the maximum number of SMTP connections the pool may hold open at once.
+     * @param maxWaitMillis how long a sender waits for a free connection before failing.
+     * @param idleTimeoutMillis how long a connection may stay idle before it is closed by the evictor.
+     * @param validateAfterIdleMillis idle time after which a connection is checked with NOOP before reuse.
+     * @return the pooled mail sender.
+     */
     @Bean
-    public JavaMailSender javaMailSender(MailProperties mailProperties) {
-        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
-        mailSender.setHost(mailProperties.getHost());
-        mailSender.setPort(mailProperties.getPort());
-        mailSender.setUsername(mailProperties.getUsername());
-        mailSender.setPassword(mailProperties.getPassword());
+    public JavaMailSender javaMailSender(
+            MailProperties mailProperties,
+            MailRoutingProperties routingProperties,
+            MeterRegistry meterRegistry,
+            DownstreamConcurrencyLimiter concurrencyLimiter,
+            @Value("${notifyhub.mail.pool.max-size:16}") int maxSize,
+            @Value("${notifyhub.mail.pool.max-wait-ms:5000}") long maxWaitMillis,
+            @Value("${notifyhub.mail.pool.idle-timeout-ms:30000}") long idleTimeoutMillis,
+            @Value("${notifyhub.mail.pool.validate-after-idle-ms:1000}") long validateAfterIdleMillis
+    ) {
+        PoolSettings pool = new PoolSettings(
+                maxSize,
+                Duration.ofMillis(maxWaitMillis),
+                Duration.ofMillis(idleTimeoutMillis),
+                Duration.ofMillis(validateAfterIdleMillis)
+        );
+        if (routingProperties.relays().isEmpty()) {
+            PooledJavaMailSender mailSender = pooledSender(
+                    mailProperties.getHost(), mailProperties.getPort(),
+                    mailProperties.getUsername(), mailProperties.getPassword(),
+                    mailProperties, pool
+            );
+            mailSender.setConcurrencyLimiter(concurrencyLimiter, mailProperties.getHost());
+            registerPoolGauges(mailSender.getPool(), meterRegistry, Tags.empty());
+            return mailSender;
+        }
+
+        List<RoutingJavaMailSender.Relay> relays = new ArrayList<>();
+        for (MailRoutingProperties.Relay relay : routingProperties.relays()) {
+            PooledJavaMailSender mailSender = pooledSender(
+                    relay.host(), relay.port(),
+                    relay.username() != null ? relay.username() : mailProperties.getUsername(),
+                    relay.password() != null ? relay.password() : mailProperties.getPassword(),
+                    mailProperties, pool
+            );
+            mailSender.setConcurrencyLimiter(concurrencyLimiter, relay.displayName());
+            registerPoolGauges(mailSender.getPool(), meterRegistry, Tags.of("relay", relay.displayName()));
+            relays.add(new RoutingJavaMailSender.Relay(relay.displayName(), mailSender, relay.weight()));
+        }
+        return new RoutingJavaMailSender(
+                relays,
+                meterRegistry,
+                routingProperties.ejectAfterFailures(),
+                routingProperties.ejectionDuration(),
+                routingProperties.maxEjectionDuration()
+        );
+    }
+
+    private PooledJavaMailSender pooledSender(
+            String host,
+            Integer port,
+            String username,
+            String password,
+            MailProperties mailProperties,
+            PoolSettings pool
+    ) {
+        PooledJavaMailSender mailSender = new PooledJavaMailSender();
+        mailSender.setHost(host);
+        if (port != null) {
+            mailSender.setPort(port);
+        }
+        mailSender.setUsername(username);
+        mailSender.setPassword(password);
 
         Properties props = mailSender.getJavaMailProperties();
         props.putAll(mailProperties.getProperties());
 
         mailSender.setJavaMailProperties(props);
+        mailSender.initPool(pool.maxSize(), pool.maxWait(), pool.idleTimeout(), pool.validateAfterIdle());
         return mailSender;
     }
+
+    private void registerPoolGauges(SmtpConnectionPool pool, MeterRegistry meterRegistry, Tags tags) {
+        Gauge.builder(POOL_CONNECTIONS_METRIC, pool, SmtpConnectionPool::getActiveCount)
+             .tags(tags)
+             .tag("state", "active")
+             .description("SMTP connections currently borrowed by a sender")
+             .register(meterRegistry);
+        Gauge.builder(POOL_CONNECTIONS_METRIC, pool, SmtpConnectionPool::getIdleCount)
+             .tags(tags)
+             .tag("state", "idle")
+             .description("Connected SMTP connections waiting in the pool")
+             .register(meterRegistry);
+        Gauge.builder(POOL_CONNECTIONS_METRIC, pool, SmtpConnectionPool::getCreatingCount)
+             .tags(tags)
+             .tag("state", "creating")
+             .description("SMTP connections currently being opened")
+             .register(meterRegistry);
+        Gauge.builder("notifyhub.mail.pool.max", pool, SmtpConnectionPool::getMaxSize)
+             .tags(tags)
+             .description("Maximum number of pooled SMTP connections")
+             .register(meterRegistry);
+    }
+
+    private record PoolSettings(int maxSize, Duration maxWait, Duration idleTimeout, Duration validateAfterIdle) {
+    }
 }
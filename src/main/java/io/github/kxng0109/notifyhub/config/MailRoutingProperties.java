@@ -0,0 +1,50 @@
+package io.github.kxng0109.notifyhub.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Settings for sending through several SMTP relays instead of the single {@code spring.mail.host}.
+ *
+ * When no relays are listed, the application sends through {@code spring.mail.*} as before.
+ * Relays that leave out their credentials fall back to {@code spring.mail.username} and
+ * {@code spring.mail.password}; every relay uses the JavaMail properties of {@code spring.mail.properties}.
+ *
+ * @param relays the relays to spread sends across
+ * @param ejectAfterFailures consecutive server-unavailable failures after which a relay is ejected
+ * @param ejectionDuration how long a relay stays ejected the first time; doubled on every further ejection
+ * @param maxEjectionDuration the longest a relay is ever ejected for
+ */
+@ConfigurationProperties("notifyhub.mail.routing")
+public record MailRoutingProperties(
+        List<Relay> relays,
+        @DefaultValue("3") int ejectAfterFailures,
+        @DefaultValue("30s") Duration ejectionDuration,
+        @DefaultValue("5m") Duration maxEjectionDuration
+) {
+    public MailRoutingProperties {
+        relays = relays == null ? List.of() : List.copyOf(relays);
+    }
+
+    /**
+     * One SMTP relay.
+     *
+     * @param name the name used in logs and metric tags; defaults to {@code host:port}
+     * @param weight the relay's share of traffic relative to the others
+     */
+    public record Relay(
+            String name,
+            String host,
+            @DefaultValue("25") int port,
+            String username,
+            String password,
+            @DefaultValue("1") int weight
+    ) {
+        public String displayName() {
+            return name != null && !name.isBlank() ? name : host + ":" + port;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package io.github.kxng0109.notifyhub.config;
 
+import io.github.kxng0109.notifyhub.messaging.NotificationMessageConverter;
+import io.github.kxng0109.notifyhub.messaging.QueueShards;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.*;
@@ -10,9 +12,13 @@ import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -22,6 +28,19 @@ import java.util.concurrent.ThreadPoolExecutor;
  * Provides definitions for delayed exchanges, notification queues, failure handling mechanisms, and optimized
  * thread pools for RabbitMQ message publishing and email sending tasks. This configuration is designed to support
  * advanced RabbitMQ messaging patterns and resource-efficient task execution.
+ *
+ * When {@code spring.threads.virtual.enabled} is set, the publishing, email sending and listener
+ * executors run every task on its own virtual thread instead of using fixed platform pools.
+ * Concurrency against SMTP and the broker is then capped by the
+ * {@link io.github.kxng0109.notifyhub.concurrency.DownstreamConcurrencyLimiter}.
+ *
+ * High-priority notifications are routed to their own queue, consumed by their own listener
+ * containers and sent on their own executor, so transactional mail is never stuck behind a
+ * bulk campaign in the main queue.
+ *
+ * With {@code notifyhub.rabbitmq.shards} set, normal-priority notifications are spread over that
+ * many single-active-consumer queues, which the
+ * {@link io.github.kxng0109.notifyhub.messaging.ShardCoordinator} shares out between instances.
  */
 @Configuration
 public class RabbitMQConfig {
@@ -30,6 +49,14 @@ public class RabbitMQConfig {
     public static final String ROUTING_KEY = "notifications.routing.key";
     public static final String FAILURES_EXCHANGE_NAME = "notifications_failures_exchange";
     public static final String FAILURES_QUEUE_NAME = "notifications_failures_queue";
+    public static final String PRIORITY_QUEUE_NAME = "notifications_priority_queue";
+    public static final String PRIORITY_ROUTING_KEY = "notifications.priority.routing.key";
+    public static final String NOTIFICATION_LISTENER_ID = "notifications";
+    public static final String PRIORITY_LISTENER_ID = "notifications-priority";
+    public static final String SHARD_QUEUE_PREFIX = "notifications_queue.shard-";
+    public static final String SHARD_ROUTING_KEY_PREFIX = "notifications.shard.";
+    public static final String SHARD_MEMBERS_EXCHANGE_NAME = "notifyhub_shard_members_exchange";
+    public static final String SHARDED_LISTENER_ID = "notifications-sharded";
     private static final Logger logger = LoggerFactory.getLogger(RabbitMQConfig.class);
 
     @Bean
@@ -47,8 +74,8 @@ public class RabbitMQConfig {
     }
 
     @Bean
-    public Queue notificationQueue() {
-        return QueueBuilder.durable(QUEUE_NAME).build();
+    public Queue notificationQueue(@Value("${notifyhub.rabbitmq.queue-type:classic}") String queueType) {
+        return workQueue(QUEUE_NAME, queueType).build();
     }
 
     @Bean
@@ -60,8 +87,73 @@ public class RabbitMQConfig {
     }
 
     @Bean
-    public Queue failuresQueue() {
-        return QueueBuilder.durable(FAILURES_QUEUE_NAME).build();
+    public Queue priorityNotificationQueue(@Value("${notifyhub.rabbitmq.queue-type:classic}") String queueType) {
+        return workQueue(PRIORITY_QUEUE_NAME, queueType).build();
+    }
+
+    @Bean
+    public Binding priorityBinding(Queue priorityNotificationQueue, CustomExchange delayedExchange) {
+        return BindingBuilder.bind(priorityNotificationQueue)
+                             .to(delayedExchange)
+                             .with(PRIORITY_ROUTING_KEY)
+                             .noargs();
+    }
+
+    /**
+     * Declares the shard queues when {@code notifyhub.rabbitmq.shards} is above one, each bound to
+     * the delayed exchange with its own routing key. Every shard queue allows a single active
+     * consumer, which only keeps two instances from both consuming a shard while it is handed
+     * over. It does not order a recipient's notifications: retries and concurrent sends still
+     * deliver them out of order.
+     *
+     * @param queueShards the shard layout.
+     * @param delayedExchange the exchange notifications are published to.
+     * @param queueType the type of the shard queues, {@code classic} or {@code quorum}.
+     * @return the shard queues and their bindings; nothing when unsharded.
+     */
+    @Bean
+    public Declarables shardDeclarables(
+            QueueShards queueShards,
+            CustomExchange delayedExchange,
+            @Value("${notifyhub.rabbitmq.queue-type:classic}") String queueType
+    ) {
+        if (!queueShards.isEnabled()) {
+            return new Declarables();
+        }
+        List<Declarable> declarables = new ArrayList<>();
+        for (int shard = 0; shard < queueShards.count(); shard++) {
+            Queue queue = workQueue(QueueShards.queueName(shard), queueType).singleActiveConsumer().build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue)
+                                          .to(delayedExchange)
+                                          .with(QueueShards.routingKey(shard))
+                                          .noargs());
+        }
+        logger.info("Declared {} notification queue shards", queueShards.count());
+        return new Declarables(declarables);
+    }
+
+    /**
+     * Declares the parking lot for notifications that ran out of retries. As a {@code stream}, it
+     * keeps every failed notification for {@code notifyhub.rabbitmq.failures.max-age}, however
+     * often it is read, so the {@link io.github.kxng0109.notifyhub.service.FailureReplayService}
+     * can replay it from any offset.
+     *
+     * @param queueType the type of the queue, {@code classic}, {@code quorum} or {@code stream}.
+     * @param maxAge how long a stream keeps failed notifications, such as {@code 7D}.
+     * @return the failures queue.
+     */
+    @Bean
+    public Queue failuresQueue(
+            @Value("${notifyhub.rabbitmq.failures.queue-type:classic}") String queueType,
+            @Value("${notifyhub.rabbitmq.failures.max-age:7D}") String maxAge
+    ) {
+        return switch (queueType.toLowerCase(Locale.ROOT)) {
+            case "classic" -> QueueBuilder.durable(FAILURES_QUEUE_NAME).build();
+            case "quorum" -> QueueBuilder.durable(FAILURES_QUEUE_NAME).quorum().build();
+            case "stream" -> QueueBuilder.durable(FAILURES_QUEUE_NAME).stream().withArgument("x-max-age", maxAge).build();
+            default -> throw new IllegalArgumentException("Unsupported failures queue type: " + queueType);
+        };
     }
 
     @Bean
@@ -74,9 +166,19 @@ public class RabbitMQConfig {
         return BindingBuilder.bind(failuresQueue).to(failuresExchange);
     }
 
+    /**
+     * Configures the converter for queue messages. Notifications are written as JSON, or in the
+     * compact binary format when {@code notifyhub.messaging.format} is {@code binary}. Both
+     * formats are always read, whatever the setting.
+     *
+     * @param format the format to write notifications in, {@code json} or {@code binary}.
+     * @return the message converter used by the template and the listener containers.
+     */
     @Bean
-    public MessageConverter jsonMessageConverter() {
-        return new Jackson2JsonMessageConverter();
+    public MessageConverter messageConverter(@Value("${notifyhub.messaging.format:json}") String format) {
+        boolean binary = "binary".equalsIgnoreCase(format);
+        logger.info("Publishing notifications as {}", binary ? "binary" : "JSON");
+        return new NotificationMessageConverter(new Jackson2JsonMessageConverter(), binary);
     }
 
     /**
@@ -84,26 +186,74 @@ public class RabbitMQConfig {
      * RabbitMQ message listener containers with customizable settings such as concurrency,
      * prefetch count, and message converters. The factory enables auto-scaling based on the load
      * (active and idle triggers) and ensures proper connection factory and message conversion setup.
+     * Messages are acknowledged manually once their email has been handled, so the prefetch count
+     * bounds how much work each consumer can have in flight.
      *
      * @param connectionFactory the factory responsible for creating and managing RabbitMQ connections.
-     * @param jsonMessageConverter the message converter to transform RabbitMQ messages to and from JSON.
+     * @param messageConverter the message converter to transform RabbitMQ messages to and from JSON or binary.
      * @param concurrentConsumers the initial number of concurrent consumers for the listener container.
      * @param maxConcurrentConsumers the maximum number of concurrent consumers for the listener container.
      * @param prefetchCount the number of messages to fetch from the broker before blocking the consumer.
+     * @param virtualThreads whether consumers should run on virtual threads.
      * @return an initialized instance of SimpleRabbitListenerContainerFactory with the specified properties.
      */
     @Bean
     public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
             ConnectionFactory connectionFactory,
-            MessageConverter jsonMessageConverter,
+            MessageConverter messageConverter,
             @Value("${spring.rabbitmq.listener.simple.concurrency:4}") int concurrentConsumers,
             @Value("${spring.rabbitmq.listener.simple.max-concurrency:10}") int maxConcurrentConsumers,
-            @Value("${spring.rabbitmq.listener.simple.prefetchCount:50}") int prefetchCount
+            @Value("${spring.rabbitmq.listener.simple.prefetchCount:50}") int prefetchCount,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads
+    ) {
+        return listenerContainerFactory(
+                connectionFactory, messageConverter, concurrentConsumers, maxConcurrentConsumers,
+                prefetchCount, virtualThreads, "rabbit-listener-"
+        );
+    }
+
+    /**
+     * Configures the listener container factory for the high-priority queue. It is set up like
+     * {@link #rabbitListenerContainerFactory} but with its own, smaller consumer and prefetch
+     * settings, so that the priority lane keeps dedicated consumers however busy the main queue is.
+     *
+     * @param connectionFactory the factory responsible for creating and managing RabbitMQ connections.
+     * @param messageConverter the message converter to transform RabbitMQ messages to and from JSON or binary.
+     * @param concurrentConsumers the initial number of concurrent consumers on the priority queue.
+     * @param maxConcurrentConsumers the maximum number of concurrent consumers on the priority queue.
+     * @param prefetchCount the number of priority messages each consumer may hold unacknowledged.
+     * @param virtualThreads whether consumers should run on virtual threads.
+     * @return the listener container factory for the priority lane.
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory priorityListenerContainerFactory(
+            ConnectionFactory connectionFactory,
+            MessageConverter messageConverter,
+            @Value("${notifyhub.priority.listener.concurrency:2}") int concurrentConsumers,
+            @Value("${notifyhub.priority.listener.max-concurrency:4}") int maxConcurrentConsumers,
+            @Value("${notifyhub.priority.listener.prefetch-count:10}") int prefetchCount,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads
+    ) {
+        return listenerContainerFactory(
+                connectionFactory, messageConverter, concurrentConsumers, maxConcurrentConsumers,
+                prefetchCount, virtualThreads, "rabbit-priority-listener-"
+        );
+    }
+
+    private SimpleRabbitListenerContainerFactory listenerContainerFactory(
+            ConnectionFactory connectionFactory,
+            MessageConverter messageConverter,
+            int concurrentConsumers,
+            int maxConcurrentConsumers,
+            int prefetchCount,
+            boolean virtualThreads,
+            String threadNamePrefix
     ) {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
         factory.setConnectionFactory(connectionFactory);
-        factory.setMessageConverter(jsonMessageConverter);
+        factory.setMessageConverter(messageConverter);
         factory.setDefaultRequeueRejected(false);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
 
         factory.setConcurrentConsumers(concurrentConsumers);
         factory.setMaxConcurrentConsumers(maxConcurrentConsumers);
@@ -113,6 +263,10 @@ public class RabbitMQConfig {
         factory.setConsecutiveActiveTrigger(5);
         factory.setConsecutiveIdleTrigger(10);
         factory.setStartConsumerMinInterval(3000L);
+
+        if (virtualThreads) {
+            factory.setTaskExecutor(virtualThreadExecutor(threadNamePrefix));
+        }
         return factory;
     }
 
@@ -122,12 +276,18 @@ public class RabbitMQConfig {
      * maximum pool size, queue capacity, and thread naming convention. It also includes a
      * CallerRunsPolicy for rejected tasks, allowing rejected tasks to be executed by the
      * calling thread. The thread pool allows core threads to time out and sets a keep-alive
-     * time for non-core threads.
+     * time for non-core threads. In virtual-thread mode every publish runs on its own virtual thread.
      *
+     * @param virtualThreads whether publishing should run on virtual threads.
      * @return an initialized Executor instance for RabbitMQ message publishing.
      */
     @Bean
-    public Executor rabbitmqPublisherExecutor() {
+    public Executor rabbitmqPublisherExecutor(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        if (virtualThreads) {
+            logger.info("RabbitMQ Publisher Executor created with virtual threads");
+            return virtualThreadExecutor("rabbitmq-pub-");
+        }
+
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(4);
         executor.setMaxPoolSize(8);
@@ -149,29 +309,89 @@ public class RabbitMQConfig {
      * Configures and returns an Executor instance for processing email sending tasks.
      * The executor is a ThreadPoolTaskExecutor with customizable properties such
      * as core pool size, maximum pool size, and queue capacity.
-     * It also includes a CallerRunsPolicy for handling task rejections,
-     * ensuring high throughput and resilience.
+     * Work is only submitted for deliveries that are still unacknowledged, so the listener prefetch
+     * already bounds the queue. If the executor is saturated anyway, the task is rejected instead of
+     * running on the listener thread, and the consumer returns the delivery to the broker.
+     * In virtual-thread mode every email is sent on its own virtual thread and the pool settings are ignored.
      *
      * @param corePoolSize the number of core threads to keep active, even if idle.
      * @param maxPoolSize the maximum number of threads in the pool.
      * @param queueCapacity the capacity of the task queue that holds tasks before they are executed.
+     * @param virtualThreads whether emails should be sent on virtual threads.
      * @return an initialized Executor instance tailored for email sending.
      */
     @Bean
     public Executor emailSendingExecutor(
             @Value("${notifyhub.email.executor.core-pool-size:8}") int corePoolSize,
             @Value("${notifyhub.email.executor.max-pool-size:16}") int maxPoolSize,
-            @Value("${notifyhub.email.executor.queue-capacity:10000}") int queueCapacity
+            @Value("${notifyhub.email.executor.queue-capacity:10000}") int queueCapacity,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads
     ) {
+        if (virtualThreads) {
+            logger.info("Email Sending Executor created with virtual threads");
+            return virtualThreadExecutor("email-sender-");
+        }
+
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(corePoolSize);
         executor.setMaxPoolSize(maxPoolSize);
         executor.setQueueCapacity(queueCapacity);
         executor.setThreadNamePrefix("email-sender-");
-        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
         executor.initialize();
         logger.info("Email Sending Executor created with core={}, max={}, queue={}",
                     corePoolSize, maxPoolSize, queueCapacity);
         return executor;
     }
+
+    /**
+     * Configures the executor that sends high-priority emails. It is kept apart from
+     * {@link #emailSendingExecutor} so that a bulk campaign filling that pool cannot take the
+     * threads transactional mail needs.
+     *
+     * @param poolSize the number of threads reserved for high-priority sends.
+     * @param queueCapacity the capacity of the task queue that holds tasks before they are executed.
+     * @param virtualThreads whether emails should be sent on virtual threads.
+     * @return the executor for high-priority email sending.
+     */
+    @Bean
+    public Executor priorityEmailSendingExecutor(
+            @Value("${notifyhub.priority.executor.pool-size:4}") int poolSize,
+            @Value("${notifyhub.priority.executor.queue-capacity:1000}") int queueCapacity,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads
+    ) {
+        if (virtualThreads) {
+            logger.info("Priority Email Sending Executor created with virtual threads");
+            return virtualThreadExecutor("email-priority-");
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("email-priority-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        logger.info("Priority Email Sending Executor created with size={}, queue={}", poolSize, queueCapacity);
+        return executor;
+    }
+
+    /**
+     * Starts a queue that notifications are consumed from. A quorum queue dead-letters deliveries
+     * past its delivery limit to the failures exchange, so they are parked rather than dropped.
+     * The type of an existing queue cannot be changed; switching it means deleting the queue first.
+     */
+    private static QueueBuilder workQueue(String name, String queueType) {
+        return switch (queueType.toLowerCase(Locale.ROOT)) {
+            case "classic" -> QueueBuilder.durable(name);
+            case "quorum" -> QueueBuilder.durable(name).quorum().deadLetterExchange(FAILURES_EXCHANGE_NAME);
+            default -> throw new IllegalArgumentException("Unsupported queue type: " + queueType);
+        };
+    }
+
+    private SimpleAsyncTaskExecutor virtualThreadExecutor(String threadNamePrefix) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        executor.setVirtualThreads(true);
+        return executor;
+    }
 }
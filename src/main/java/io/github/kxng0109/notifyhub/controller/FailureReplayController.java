@@ -0,0 +1,70 @@
+package io.github.kxng0109.notifyhub.controller;
+
+import io.github.kxng0109.notifyhub.dto.ReplayRequest;
+import io.github.kxng0109.notifyhub.dto.ReplayStatus;
+import io.github.kxng0109.notifyhub.service.FailureReplayService;
+import jakarta.validation.Valid;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * A REST controller for replaying notifications parked in the failures queue.
+ * Replays are started, followed and cancelled here and carried out by the
+ * {@link FailureReplayService}, which needs the failures queue to be a stream.
+ */
+@RestController
+@RequestMapping("/api/admin/failures")
+public class FailureReplayController {
+    private final FailureReplayService replayService;
+
+    public FailureReplayController(FailureReplayService replayService) {
+        this.replayService = replayService;
+    }
+
+    /**
+     * Starts replaying the failed notifications selected by the request. The replay carries on
+     * in the background; its progress can be followed with the returned replay ID.
+     *
+     * @param replayRequest the reason and time filters, start offset, rate and limit of the replay
+     * @return a ResponseEntity containing the status of the new replay with an HTTP status code of ACCEPTED
+     * @throws ResponseStatusException with CONFLICT if the failures queue is not a stream
+     */
+    @PostMapping("/replay")
+    public ResponseEntity<ReplayStatus> startReplay(@Valid @RequestBody ReplayRequest replayRequest) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(replayService.start(replayRequest));
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+    }
+
+    /**
+     * @throws ResponseStatusException with NOT_FOUND if there is no replay with the ID
+     */
+    @GetMapping("/replay/{replayId}")
+    public ResponseEntity<ReplayStatus> getReplay(@PathVariable String replayId) {
+        return replayService.status(replayId)
+                            .map(ResponseEntity::ok)
+                            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * Cancels a replay. Notifications it has already published are not taken back.
+     *
+     * @throws ResponseStatusException with NOT_FOUND if there is no replay with the ID
+     */
+    @DeleteMapping("/replay/{replayId}")
+    public ResponseEntity<ReplayStatus> cancelReplay(@PathVariable String replayId) {
+        return replayService.cancel(replayId)
+                            .map(ResponseEntity::ok)
+                            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+    }
+}
@@ -1,29 +1,90 @@
 package io.github.kxng0109.notifyhub.controller;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.kxng0109.notifyhub.dto.BatchItemResult;
+import io.github.kxng0109.notifyhub.dto.BatchNotificationResponse;
 import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+import io.github.kxng0109.notifyhub.dto.NotificationResponse;
+import io.github.kxng0109.notifyhub.dto.StreamNotificationResponse;
+import io.github.kxng0109.notifyhub.metrics.NotificationMetrics;
+import io.github.kxng0109.notifyhub.metrics.NotificationMetrics.Stage;
 import io.github.kxng0109.notifyhub.service.NotificationProducer;
+import io.github.kxng0109.notifyhub.service.NotificationProducer.PublishReceipt;
+import io.github.kxng0109.notifyhub.service.PublishOutcome;
+import io.github.kxng0109.notifyhub.template.TemplateRegistry;
+import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * A REST controller for handling notification-related endpoints.
  * This controller exposes an API for sending notifications to recipients
  * by accepting details such as recipient email addresses, subject, body,
  * and optional attachments. The data is forwarded asynchronously by a
- * notification producer for further processing.
+ * notification producer for further processing. The time spent validating a request and
+ * handing it to the producer is recorded as the {@code accept} stage of {@link NotificationMetrics}.
  */
 @RestController
 @RequestMapping("/api/notifications")
 public class NotificationController {
     private final NotificationProducer notificationProducer;
+    private final Validator validator;
+    private final TemplateRegistry templates;
+    private final NotificationMetrics metrics;
+    private final ObjectMapper objectMapper;
+
+    @Value("${notifyhub.batch.max-size:10000}")
+    private int maxBatchSize;
+
+    @Value("${notifyhub.stream.chunk-size:500}")
+    private int streamChunkSize;
+
+    @Value("${notifyhub.stream.max-reported-rejections:1000}")
+    private int maxReportedRejections;
+
+    @Value("${notifyhub.publisher.wait-for-confirm:false}")
+    private boolean waitForConfirmByDefault;
+
+    @Value("${notifyhub.publisher.confirm-wait-ms:30000}")
+    private long confirmWaitMillis;
 
-    public NotificationController(NotificationProducer notificationProducer) {
+    public NotificationController(
+            NotificationProducer notificationProducer,
+            Validator validator,
+            TemplateRegistry templates,
+            NotificationMetrics metrics,
+            ObjectMapper objectMapper
+    ) {
         this.notificationProducer = notificationProducer;
+        this.validator = validator;
+        this.templates = templates;
+        this.metrics = metrics;
+        this.objectMapper = objectMapper;
     }
 
     /**
@@ -31,14 +92,268 @@ public class NotificationController {
      * The method processes the provided notification details and forwards the
      * request asynchronously using the notification producer.
      *
+     * By default the response is sent straight away and the publish is confirmed and retried in
+     * the background. With {@code waitForConfirm=true}, the response is held until the broker has
+     * confirmed the notification, so a 202 guarantees that it has been durably accepted.
+     *
+     * Clients that retry on timeouts should send an {@code Idempotency-Key} header. Repeats of a
+     * request with the same key return the same notification ID and are not sent again, including
+     * repeats that arrive while the first request is still waiting for its confirm.
+     *
      * @param notificationRequest the request containing recipient details, subject, body,
      *                            and optional attachments for the notification
-     * @return a ResponseEntity containing a message indicating the notification request
-     *         has been accepted along with an HTTP status code of ACCEPTED
+     * @param waitForConfirm whether to wait for the broker's publisher confirm before responding;
+     *                       defaults to {@code notifyhub.publisher.wait-for-confirm}
+     * @param idempotencyKey an optional key identifying the request across client retries
+     * @return a ResponseEntity containing the notification ID and a message indicating the
+     *         notification request has been accepted along with an HTTP status code of ACCEPTED
+     * @throws ResponseStatusException with BAD_REQUEST if the notification names an unknown template,
+     *         SERVICE_UNAVAILABLE if the broker did not accept the notification, or GATEWAY_TIMEOUT
+     *         if it was not confirmed in time
      */
     @PostMapping
-    public ResponseEntity<String> sendNotification(@Valid @RequestBody NotificationRequest notificationRequest) {
-        notificationProducer.sendNotification(notificationRequest);
-        return new ResponseEntity<>("Notification request accepted.", HttpStatus.ACCEPTED);
+    public ResponseEntity<NotificationResponse> sendNotification(
+            @Valid @RequestBody NotificationRequest notificationRequest,
+            @RequestParam(name = "waitForConfirm", required = false) Boolean waitForConfirm,
+            @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey
+    ) {
+        long start = System.nanoTime();
+        if (!hasKnownTemplate(notificationRequest)) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, "Unknown template '" + notificationRequest.templateId() + "'"
+            );
+        }
+        PublishReceipt receipt = notificationProducer.sendNotification(notificationRequest, idempotencyKey);
+        metrics.recordSince(Stage.ACCEPT, start);
+        // A repeat of a request that is still being published shares its outcome and waits like it.
+        if (receipt.duplicate() && receipt.outcome().getNow(null) instanceof PublishOutcome previous
+                && previous.accepted()) {
+            return new ResponseEntity<>(
+                    new NotificationResponse(receipt.notificationId(), true,
+                                             "Notification request was already accepted."),
+                    HttpStatus.ACCEPTED
+            );
+        }
+        boolean shouldWait = waitForConfirm != null ? waitForConfirm : waitForConfirmByDefault;
+        if (!shouldWait) {
+            return new ResponseEntity<>(
+                    new NotificationResponse(receipt.notificationId(), false, "Notification request accepted."),
+                    HttpStatus.ACCEPTED
+            );
+        }
+
+        PublishOutcome outcome = awaitOutcome(receipt);
+        if (!outcome.accepted()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, outcome.failureReason());
+        }
+        return new ResponseEntity<>(
+                new NotificationResponse(receipt.notificationId(), true,
+                                         "Notification request accepted and confirmed by the broker."),
+                HttpStatus.ACCEPTED
+        );
+    }
+
+    /**
+     * Handles the HTTP POST endpoint to send many notifications in one request.
+     * Every notification is validated in a single pass. The valid ones are then published to the
+     * broker as one channel batch, and the endpoint waits for their publisher confirms. Invalid
+     * notifications do not fail the whole batch; they are reported individually.
+     *
+     * @param notificationRequests the notifications to send, in the same shape as the single endpoint
+     * @return a ResponseEntity with an accept or reject result for every submitted notification,
+     *         along with an HTTP status code of ACCEPTED
+     * @throws ResponseStatusException with BAD_REQUEST if the batch is empty or larger than allowed
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<BatchNotificationResponse> sendNotifications(
+            @RequestBody List<NotificationRequest> notificationRequests
+    ) {
+        long start = System.nanoTime();
+        if (notificationRequests.isEmpty() || notificationRequests.size() > maxBatchSize) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST,
+                    "A batch must contain between 1 and " + maxBatchSize + " notifications"
+            );
+        }
+
+        BatchItemResult[] results = new BatchItemResult[notificationRequests.size()];
+        List<Integer> validIndexes = new ArrayList<>(notificationRequests.size());
+        List<NotificationRequest> validRequests = new ArrayList<>(notificationRequests.size());
+
+        for (int i = 0; i < notificationRequests.size(); i++) {
+            NotificationRequest notificationRequest = notificationRequests.get(i);
+            Map<String, String> errors = validate(notificationRequest);
+            if (errors.isEmpty()) {
+                validIndexes.add(i);
+                validRequests.add(notificationRequest);
+            } else {
+                results[i] = BatchItemResult.rejected(i, errors);
+            }
+        }
+
+        metrics.recordSince(Stage.ACCEPT, start);
+
+        if (!validRequests.isEmpty()) {
+            List<PublishOutcome> outcomes = notificationProducer.sendNotifications(validRequests);
+            for (int i = 0; i < outcomes.size(); i++) {
+                int index = validIndexes.get(i);
+                PublishOutcome outcome = outcomes.get(i);
+                results[index] = outcome.accepted()
+                        ? BatchItemResult.accepted(index, outcome.notificationId())
+                        : BatchItemResult.rejected(index, Map.of("broker", outcome.failureReason()));
+            }
+        }
+
+        return new ResponseEntity<>(BatchNotificationResponse.of(Arrays.asList(results)), HttpStatus.ACCEPTED);
+    }
+
+    /**
+     * Handles the HTTP POST endpoint to send a stream of notifications, one JSON object per line
+     * (NDJSON). The body is parsed incrementally, so only one notification and one chunk of valid
+     * ones are held in memory at a time, however large the upload. Each chunk is published like a
+     * batch and the next one is only read once the broker has confirmed it, which slows the upload
+     * down to the pace of the broker. Invalid notifications are rejected individually, and so are
+     * lines that are valid JSON but cannot be read as a notification, such as a field of the wrong
+     * type. A line that is not valid JSON ends the stream, after everything before it has been handled.
+     *
+     * @param body the request body, read as it arrives
+     * @return a ResponseEntity with the number of accepted and rejected notifications and the first
+     *         rejections, along with an HTTP status code of ACCEPTED
+     * @throws ResponseStatusException with BAD_REQUEST if the stream holds no notifications
+     */
+    @PostMapping(path = "/stream", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamNotificationResponse> streamNotifications(InputStream body) throws IOException {
+        StreamTally tally = new StreamTally(maxReportedRejections);
+        List<Integer> chunkIndexes = new ArrayList<>(streamChunkSize);
+        List<NotificationRequest> chunk = new ArrayList<>(streamChunkSize);
+        int index = 0;
+        long start = System.nanoTime();
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            while (parser.nextToken() != null) {
+                int itemIndex = index;
+                // Read as a tree first, so a line that does not map onto a notification only rejects itself.
+                JsonNode node = objectMapper.readTree(parser);
+                index++;
+                if (!node.isObject()) {
+                    tally.reject(itemIndex, Map.of("notification", "Each line must be a JSON object"));
+                    continue;
+                }
+                NotificationRequest notificationRequest;
+                try {
+                    notificationRequest = objectMapper.treeToValue(node, NotificationRequest.class);
+                } catch (JsonProcessingException e) {
+                    tally.reject(itemIndex, Map.of("notification", e.getOriginalMessage()));
+                    continue;
+                }
+                Map<String, String> errors = validate(notificationRequest);
+                if (!errors.isEmpty()) {
+                    tally.reject(itemIndex, errors);
+                    continue;
+                }
+                chunkIndexes.add(itemIndex);
+                chunk.add(notificationRequest);
+                if (chunk.size() >= streamChunkSize) {
+                    publishChunk(chunkIndexes, chunk, tally, start);
+                    start = System.nanoTime();
+                }
+            }
+        } catch (JsonProcessingException e) {
+            // The parser cannot find the next line after malformed input, so the stream ends here.
+            tally.reject(index, Map.of("body", e.getOriginalMessage()));
+        }
+        publishChunk(chunkIndexes, chunk, tally, start);
+
+        if (tally.accepted + tally.rejected == 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The stream must contain at least one notification");
+        }
+        return new ResponseEntity<>(tally.toResponse(), HttpStatus.ACCEPTED);
+    }
+
+    /**
+     * Publishes a chunk of a streamed upload. The time since {@code start}, spent reading and
+     * validating the chunk, is recorded as its {@link Stage#ACCEPT} stage.
+     */
+    private void publishChunk(
+            List<Integer> chunkIndexes,
+            List<NotificationRequest> chunk,
+            StreamTally tally,
+            long start
+    ) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        metrics.recordSince(Stage.ACCEPT, start);
+        List<PublishOutcome> outcomes = notificationProducer.sendNotifications(chunk);
+        for (int i = 0; i < outcomes.size(); i++) {
+            PublishOutcome outcome = outcomes.get(i);
+            if (outcome.accepted()) {
+                tally.accepted++;
+            } else {
+                tally.reject(chunkIndexes.get(i), Map.of("broker", outcome.failureReason()));
+            }
+        }
+        chunkIndexes.clear();
+        chunk.clear();
+    }
+
+    private PublishOutcome awaitOutcome(PublishReceipt receipt) {
+        try {
+            return receipt.outcome().get(confirmWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // The publish carries on in the background and may still succeed.
+            throw new ResponseStatusException(
+                    HttpStatus.GATEWAY_TIMEOUT,
+                    "Notification " + receipt.notificationId() + " was not confirmed within " + confirmWaitMillis + "ms"
+            );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while waiting for confirm");
+        } catch (ExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getCause().getMessage());
+        }
+    }
+
+    private Map<String, String> validate(NotificationRequest notificationRequest) {
+        if (notificationRequest == null) {
+            return Map.of("notification", "Notification cannot be null");
+        }
+        Map<String, String> errors = new HashMap<>();
+        for (ConstraintViolation<NotificationRequest> violation : validator.validate(notificationRequest)) {
+            errors.put(violation.getPropertyPath().toString(), violation.getMessage());
+        }
+        if (!hasKnownTemplate(notificationRequest)) {
+            errors.put("templateId", "Unknown template");
+        }
+        return errors;
+    }
+
+    private boolean hasKnownTemplate(NotificationRequest notificationRequest) {
+        return notificationRequest.templateId() == null || templates.contains(notificationRequest.templateId());
+    }
+
+    /**
+     * Counts the outcomes of a streamed upload, keeping only the first rejections.
+     */
+    private static final class StreamTally {
+        private final int maxReported;
+        private final List<BatchItemResult> rejections = new ArrayList<>();
+        private int accepted;
+        private int rejected;
+
+        private StreamTally(int maxReported) {
+            this.maxReported = maxReported;
+        }
+
+        private void reject(int index, Map<String, String> errors) {
+            rejected++;
+            if (rejections.size() < maxReported) {
+                rejections.add(BatchItemResult.rejected(index, errors));
+            }
+        }
+
+        private StreamNotificationResponse toResponse() {
+            return new StreamNotificationResponse(accepted, rejected, rejections);
+        }
     }
 }
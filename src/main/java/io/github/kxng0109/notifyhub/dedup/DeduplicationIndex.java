@@ -0,0 +1,106 @@
+package io.github.kxng0109.notifyhub.dedup;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Remembers which notifications were accepted and which emails were sent over the last
+ * {@code notifyhub.dedup.window-ms}, so that duplicates can be dropped on the way in and on the
+ * way out.
+ *
+ * Ingestion is keyed by notification ID, which is derived from the client's
+ * {@code Idempotency-Key} when one is sent. Delivery is keyed by message ID together with the
+ * recipients of a chunk, because retries and deferred chunks reuse the message ID for the
+ * recipients that still have to be emailed. Both are held in a {@link TimeBucketedBloomFilter}
+ * within a fixed memory budget. A false positive drops a notification that was not a duplicate;
+ * the estimated rate is exported as {@code notifyhub.dedup.false_positive_rate} so the budget can
+ * be sized for the traffic.
+ */
+@Component
+public class DeduplicationIndex {
+    private final boolean enabled;
+    private final TimeBucketedBloomFilter ingested;
+    private final TimeBucketedBloomFilter delivered;
+    private final Counter ingestionDuplicates;
+    private final Counter deliveryDuplicates;
+
+    public DeduplicationIndex(
+            MeterRegistry meterRegistry,
+            @Value("${notifyhub.dedup.enabled:true}") boolean enabled,
+            @Value("${notifyhub.dedup.window-ms:86400000}") long windowMillis,
+            @Value("${notifyhub.dedup.buckets:24}") int buckets,
+            @Value("${notifyhub.dedup.memory-budget-bytes:16777216}") long memoryBudgetBytes,
+            @Value("${notifyhub.dedup.expected-insertions:5000000}") long expectedInsertions
+    ) {
+        this.enabled = enabled;
+        // Each stage gets the full budget; a disabled index only allocates the minimum.
+        long budget = enabled ? memoryBudgetBytes : 0L;
+        this.ingested = new TimeBucketedBloomFilter(
+                Duration.ofMillis(windowMillis), buckets, budget, expectedInsertions, System::currentTimeMillis);
+        this.delivered = new TimeBucketedBloomFilter(
+                Duration.ofMillis(windowMillis), buckets, budget, expectedInsertions, System::currentTimeMillis);
+        this.ingestionDuplicates = registerMeters(meterRegistry, "ingestion", ingested);
+        this.deliveryDuplicates = registerMeters(meterRegistry, "delivery", delivered);
+    }
+
+    private static Counter registerMeters(MeterRegistry meterRegistry, String stage, TimeBucketedBloomFilter filter) {
+        Gauge.builder("notifyhub.dedup.false_positive_rate", filter, TimeBucketedBloomFilter::expectedFalsePositiveRate)
+             .tag("stage", stage)
+             .description("Estimated chance that a new notification is mistaken for a duplicate")
+             .register(meterRegistry);
+        Gauge.builder("notifyhub.dedup.memory", filter, TimeBucketedBloomFilter::getMemoryBytes)
+             .tag("stage", stage)
+             .baseUnit("bytes")
+             .description("Memory held by the deduplication index")
+             .register(meterRegistry);
+        return Counter.builder("notifyhub.dedup.duplicates")
+                      .tag("stage", stage)
+                      .description("Notifications dropped as duplicates")
+                      .register(meterRegistry);
+    }
+
+    /**
+     * Whether a notification with this ID was accepted within the window. Counts the duplicate if so.
+     */
+    public boolean isDuplicateIngestion(String notificationId) {
+        if (!enabled || !ingested.mightContain(TimeBucketedBloomFilter.fingerprint(notificationId))) {
+            return false;
+        }
+        ingestionDuplicates.increment();
+        return true;
+    }
+
+    public void recordIngested(String notificationId) {
+        if (enabled) {
+            ingested.put(TimeBucketedBloomFilter.fingerprint(notificationId));
+        }
+    }
+
+    /**
+     * Whether the email for this message and these recipients was sent within the window. Counts
+     * the duplicate if so.
+     */
+    public boolean isDuplicateDelivery(String messageId, List<String> recipients) {
+        if (!enabled || messageId == null || !delivered.mightContain(deliveryKey(messageId, recipients))) {
+            return false;
+        }
+        deliveryDuplicates.increment();
+        return true;
+    }
+
+    public void recordDelivered(String messageId, List<String> recipients) {
+        if (enabled && messageId != null) {
+            delivered.put(deliveryKey(messageId, recipients));
+        }
+    }
+
+    private static long deliveryKey(String messageId, List<String> recipients) {
+        return TimeBucketedBloomFilter.fingerprint(messageId + '\n' + String.join(",", recipients));
+    }
+}
@@ -0,0 +1,162 @@
+package io.github.kxng0109.notifyhub.dedup;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * A Bloom filter over a sliding time window, made of one generation per time bucket.
+ *
+ * Entries are added to the generation of the current bucket and looked up in every generation
+ * that is still inside the window. When time moves into a new bucket, the oldest generation is
+ * cleared and reused, so entries are forgotten once they are between one window and one window
+ * plus a bucket old. All generations are allocated up front: memory use is fixed no matter how
+ * many entries are added, and only the false-positive rate grows with load. That rate is
+ * estimated from how many bits are set and reported by {@link #expectedFalsePositiveRate()}.
+ *
+ * Entries are 64-bit fingerprints; see {@link #fingerprint(String)}.
+ */
+public final class TimeBucketedBloomFilter {
+    private static final int MAX_HASHES = 16;
+
+    private final long bucketMillis;
+    private final int generations;
+    private final long bitsPerGeneration;
+    private final int hashes;
+    private final LongSupplier clock;
+    private final long[][] bits;
+    private final long[] bitCounts;
+    private final long[] bucketOf;
+
+    /**
+     * @param window how long an entry is remembered, at least
+     * @param buckets how many buckets the window is divided into; more buckets forget entries more
+     *                precisely but split the memory budget more ways
+     * @param memoryBudgetBytes the memory to spend on the bit arrays of all generations together
+     * @param expectedInsertions how many entries are expected per window, used to pick the number of hashes
+     * @param clock the current time in epoch milliseconds
+     */
+    public TimeBucketedBloomFilter(
+            Duration window,
+            int buckets,
+            long memoryBudgetBytes,
+            long expectedInsertions,
+            LongSupplier clock
+    ) {
+        if (buckets < 1 || window.toMillis() < buckets || expectedInsertions < 1) {
+            throw new IllegalArgumentException("window, buckets and expectedInsertions must be positive");
+        }
+        this.bucketMillis = window.toMillis() / buckets;
+        // One generation more than the window needs, so the oldest bucket still covers a full window.
+        this.generations = buckets + 1;
+        int words = (int) Math.clamp(memoryBudgetBytes / Long.BYTES / generations, 1L, Integer.MAX_VALUE - 8L);
+        this.bitsPerGeneration = (long) words * Long.SIZE;
+        long insertionsPerGeneration = Math.max(1L, expectedInsertions / buckets);
+        this.hashes = (int) Math.clamp(
+                Math.round((double) bitsPerGeneration / insertionsPerGeneration * Math.log(2)), 1L, MAX_HASHES);
+        this.clock = clock;
+        this.bits = new long[generations][words];
+        this.bitCounts = new long[generations];
+        this.bucketOf = new long[generations];
+        long current = clock.getAsLong() / bucketMillis;
+        for (int i = 0; i < generations; i++) {
+            bucketOf[i] = current - generations;
+        }
+    }
+
+    /**
+     * Whether the fingerprint may have been added within the window. {@code false} is certain;
+     * {@code true} is wrong at roughly the rate of {@link #expectedFalsePositiveRate()}.
+     */
+    public synchronized boolean mightContain(long fingerprint) {
+        long current = clock.getAsLong() / bucketMillis;
+        for (int generation = 0; generation < generations; generation++) {
+            if (isLive(generation, current) && contains(generation, fingerprint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the fingerprint to the current bucket.
+     */
+    public synchronized void put(long fingerprint) {
+        long current = clock.getAsLong() / bucketMillis;
+        int generation = (int) Math.floorMod(current, (long) generations);
+        if (bucketOf[generation] != current) {
+            Arrays.fill(bits[generation], 0L);
+            bitCounts[generation] = 0L;
+            bucketOf[generation] = current;
+        }
+        long h2 = mix(fingerprint) | 1L;
+        long[] words = bits[generation];
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(fingerprint + i * h2, bitsPerGeneration);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((words[word] & mask) == 0) {
+                words[word] |= mask;
+                bitCounts[generation]++;
+            }
+        }
+    }
+
+    /**
+     * Estimates the probability that {@link #mightContain} returns {@code true} for a fingerprint
+     * that was never added, from the fill of every generation in the window.
+     */
+    public synchronized double expectedFalsePositiveRate() {
+        long current = clock.getAsLong() / bucketMillis;
+        double allNegative = 1.0;
+        for (int generation = 0; generation < generations; generation++) {
+            if (isLive(generation, current)) {
+                double fill = (double) bitCounts[generation] / bitsPerGeneration;
+                allNegative *= 1.0 - Math.pow(fill, hashes);
+            }
+        }
+        return 1.0 - allNegative;
+    }
+
+    public long getMemoryBytes() {
+        return (long) generations * (bitsPerGeneration / Byte.SIZE);
+    }
+
+    /**
+     * A 64-bit FNV-1a hash of the UTF-8 bytes of the key, with a final avalanche step.
+     */
+    public static long fingerprint(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private boolean isLive(int generation, long current) {
+        return current - bucketOf[generation] < generations;
+    }
+
+    private boolean contains(int generation, long fingerprint) {
+        long h2 = mix(fingerprint) | 1L;
+        long[] words = bits[generation];
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(fingerprint + i * h2, bitsPerGeneration);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The finalizer of SplitMix64, used to derive the second hash for double hashing.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -2,6 +2,10 @@ package io.github.kxng0109.notifyhub.dto;
 
 import jakarta.validation.constraints.NotBlank;
 
+/**
+ * An email attachment. Clients send the content as Base64 {@code data}. Before publishing, the
+ * service may move large content into the attachment store and replace it with a {@code ref}.
+ */
 public record AttachmentRequest(
         @NotBlank(message = "Attachment filename cannot be blank")
         String filename,
@@ -10,6 +14,11 @@ public record AttachmentRequest(
         String contentType,
 
         @NotBlank(message = "Attachment data cannot be blank")
-        String data
+        String data,
+
+        String ref
 ) {
+    public AttachmentRequest(String filename, String contentType, String data) {
+        this(filename, contentType, data, null);
+    }
 }
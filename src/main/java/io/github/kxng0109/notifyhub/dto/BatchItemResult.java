@@ -0,0 +1,31 @@
+package io.github.kxng0109.notifyhub.dto;
+
+import java.util.Map;
+
+/**
+ * The outcome of a single notification inside a batch submission.
+ *
+ * @param index the position of the notification in the submitted batch
+ * @param status whether the notification was accepted for delivery or rejected
+ * @param notificationId the ID assigned to an accepted notification, {@code null} when rejected
+ * @param errors the validation or publishing errors that caused a rejection, keyed by field
+ */
+public record BatchItemResult(
+        int index,
+        Status status,
+        String notificationId,
+        Map<String, String> errors
+) {
+    public static BatchItemResult accepted(int index, String notificationId) {
+        return new BatchItemResult(index, Status.ACCEPTED, notificationId, Map.of());
+    }
+
+    public static BatchItemResult rejected(int index, Map<String, String> errors) {
+        return new BatchItemResult(index, Status.REJECTED, null, errors);
+    }
+
+    public enum Status {
+        ACCEPTED,
+        REJECTED
+    }
+}
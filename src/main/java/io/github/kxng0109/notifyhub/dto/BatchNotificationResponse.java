@@ -0,0 +1,23 @@
+package io.github.kxng0109.notifyhub.dto;
+
+import java.util.List;
+
+/**
+ * The response to a batch submission, with one result per submitted notification.
+ *
+ * @param accepted the number of notifications accepted for delivery
+ * @param rejected the number of notifications rejected by validation or by the broker
+ * @param results the per-notification results, in submission order
+ */
+public record BatchNotificationResponse(
+        int accepted,
+        int rejected,
+        List<BatchItemResult> results
+) {
+    public static BatchNotificationResponse of(List<BatchItemResult> results) {
+        int accepted = (int) results.stream()
+                                    .filter(result -> result.status() == BatchItemResult.Status.ACCEPTED)
+                                    .count();
+        return new BatchNotificationResponse(accepted, results.size() - accepted, results);
+    }
+}
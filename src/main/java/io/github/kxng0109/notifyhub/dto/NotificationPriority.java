@@ -0,0 +1,10 @@
+package io.github.kxng0109.notifyhub.dto;
+
+/**
+ * The lane a notification travels in. {@link #HIGH} is meant for transactional mail such as
+ * password resets and is consumed from its own queue, so it never waits behind bulk campaigns.
+ */
+public enum NotificationPriority {
+    HIGH,
+    NORMAL
+}
@@ -5,8 +5,18 @@ import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotEmpty;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * A notification to send by email.
+ *
+ * The content is either given inline, as {@code body} and/or {@code htmlBody}, or rendered on the
+ * server from the template {@code templateId}. Template placeholders are filled from
+ * {@code variables}, and {@code recipientVariables} overrides them per recipient address; with
+ * per-recipient values every recipient gets an email of their own.
+ */
 public record NotificationRequest(
         @NotEmpty(message = "'To' list cannot be empty")
         List<@NotBlank @Email(message = "Email address must be valid") String> to,
@@ -19,6 +29,44 @@ public record NotificationRequest(
         String htmlBody,
 
         @Valid
-        List<AttachmentRequest> attachments
+        List<AttachmentRequest> attachments,
+
+        NotificationPriority priority,
+
+        Instant sendAt,
+
+        String templateId,
+
+        Map<String, String> variables,
+
+        Map<String, Map<String, String>> recipientVariables
 ) {
+    public NotificationRequest(
+            List<String> to,
+            String subject,
+            String body,
+            String htmlBody,
+            List<AttachmentRequest> attachments
+    ) {
+        this(to, subject, body, htmlBody, attachments, null, null, null, null, null);
+    }
+
+    /**
+     * Whether the email is rendered separately for every recipient.
+     */
+    public boolean personalized() {
+        return templateId != null && recipientVariables != null && !recipientVariables.isEmpty();
+    }
+
+    public NotificationRequest withRecipients(List<String> to) {
+        return new NotificationRequest(
+                to, subject, body, htmlBody, attachments, priority, sendAt, templateId, variables, recipientVariables
+        );
+    }
+
+    public NotificationRequest withAttachments(List<AttachmentRequest> attachments) {
+        return new NotificationRequest(
+                to, subject, body, htmlBody, attachments, priority, sendAt, templateId, variables, recipientVariables
+        );
+    }
 }
@@ -0,0 +1,15 @@
+package io.github.kxng0109.notifyhub.dto;
+
+/**
+ * The response to an accepted notification request.
+ *
+ * @param notificationId the ID assigned to the notification, carried as the AMQP message ID
+ * @param confirmed whether the broker had already confirmed the notification when the response was sent
+ * @param message a human-readable description of the outcome
+ */
+public record NotificationResponse(
+        String notificationId,
+        boolean confirmed,
+        String message
+) {
+}
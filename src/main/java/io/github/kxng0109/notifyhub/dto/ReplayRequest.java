@@ -0,0 +1,35 @@
+package io.github.kxng0109.notifyhub.dto;
+
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+
+import java.time.Instant;
+
+/**
+ * Selects the failed notifications to replay from the failures stream. Every field is optional;
+ * an empty request replays everything the stream still holds.
+ *
+ * @param reason only replay notifications whose failure reason contains this text, ignoring case
+ * @param from only replay notifications that failed at or after this time
+ * @param to only replay notifications that failed at or before this time
+ * @param fromOffset the stream offset to start reading at, taking precedence over {@code from}
+ * @param ratePerSecond how many notifications to publish per second at most
+ * @param limit the most notifications to replay
+ */
+public record ReplayRequest(
+        String reason,
+
+        Instant from,
+
+        Instant to,
+
+        @PositiveOrZero(message = "Offset cannot be negative")
+        Long fromOffset,
+
+        @Positive(message = "Rate must be positive")
+        Integer ratePerSecond,
+
+        @Positive(message = "Limit must be positive")
+        Integer limit
+) {
+}
@@ -0,0 +1,29 @@
+package io.github.kxng0109.notifyhub.dto;
+
+/**
+ * The progress of a replay of failed notifications.
+ *
+ * @param replayId identifies the replay
+ * @param state whether the replay is still running and how it ended
+ * @param scanned the number of failed notifications read from the stream
+ * @param replayed the number of notifications published again and confirmed by the broker
+ * @param failed the number of matching notifications that could not be read or published again
+ * @param lastOffset the stream offset of the last notification read, to resume from; {@code null} before the first
+ * @param error why the replay failed, when it did
+ */
+public record ReplayStatus(
+        String replayId,
+        State state,
+        long scanned,
+        long replayed,
+        long failed,
+        Long lastOffset,
+        String error
+) {
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        CANCELLED,
+        FAILED
+    }
+}
@@ -0,0 +1,18 @@
+package io.github.kxng0109.notifyhub.dto;
+
+import java.util.List;
+
+/**
+ * The response to a streamed upload of notifications. Unlike a batch, a stream can be too long
+ * to report on every notification, so only rejections are listed, and only the first of them.
+ *
+ * @param accepted the number of notifications accepted for delivery
+ * @param rejected the number of notifications rejected by validation or by the broker
+ * @param rejections the first rejections, in stream order, up to {@code notifyhub.stream.max-reported-rejections}
+ */
+public record StreamNotificationResponse(
+        int accepted,
+        int rejected,
+        List<BatchItemResult> rejections
+) {
+}
@@ -0,0 +1,173 @@
+package io.github.kxng0109.notifyhub.mail;
+
+import io.github.kxng0109.notifyhub.attachment.AttachmentStore;
+import io.github.kxng0109.notifyhub.attachment.Base64Streams;
+import io.github.kxng0109.notifyhub.dto.AttachmentRequest;
+import jakarta.activation.DataHandler;
+import jakarta.activation.DataSource;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Part;
+import jakarta.mail.internet.MimeBodyPart;
+import jakarta.mail.internet.MimeUtility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Builds MIME attachment parts from Base64 attachment data without decoding it into a byte array.
+ *
+ * Small attachments are decoded on the fly each time JavaMail writes the part, by wrapping the
+ * Base64 text in {@link java.util.Base64.Decoder#wrap(InputStream)}. Attachments above the spill threshold
+ * are stream-decoded once into a temporary file, and the part reads from that file instead. The
+ * parts declare {@code base64} transfer encoding up front, so JavaMail does not make an extra pass
+ * over the content to pick an encoding. Attachments that were moved into the {@link AttachmentStore}
+ * are read from there by reference.
+ */
+@Component
+public class AttachmentPartFactory {
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentPartFactory.class);
+
+    private final AttachmentStore attachmentStore;
+    private final long spillThresholdBytes;
+    private final Path spillDirectory;
+
+    public AttachmentPartFactory(
+            AttachmentStore attachmentStore,
+            @Value("${notifyhub.mail.attachments.spill-threshold-bytes:1048576}") long spillThresholdBytes,
+            @Value("${notifyhub.mail.attachments.spill-dir:${java.io.tmpdir}}") String spillDirectory
+    ) {
+        this.attachmentStore = attachmentStore;
+        this.spillThresholdBytes = spillThresholdBytes;
+        this.spillDirectory = Path.of(spillDirectory);
+    }
+
+    /**
+     * Creates one MIME part per attachment. The returned parts must be closed once the message has
+     * been sent, which deletes any temporary files they were spilled to.
+     *
+     * @param attachments the attachments to convert; may be {@code null}
+     * @return the attachment parts, in the same order as the input
+     * @throws MessagingException if a part cannot be created or an attachment cannot be spilled
+     */
+    public AttachmentParts createParts(List<AttachmentRequest> attachments) throws MessagingException {
+        AttachmentParts parts = new AttachmentParts();
+        if (attachments == null) {
+            return parts;
+        }
+        try {
+            for (AttachmentRequest attachment : attachments) {
+                parts.parts.add(createPart(attachment, parts));
+            }
+        } catch (MessagingException | RuntimeException e) {
+            parts.close();
+            throw e;
+        }
+        return parts;
+    }
+
+    private MimeBodyPart createPart(AttachmentRequest attachment, AttachmentParts parts) throws MessagingException {
+        String data = attachment.data();
+        DataSource dataSource;
+        if (attachment.ref() != null) {
+            String ref = attachment.ref();
+            dataSource = new StreamingDataSource(attachment, () -> attachmentStore.open(ref));
+        } else if (Base64Streams.decodedSize(data) > spillThresholdBytes) {
+            Path file = spill(attachment, parts);
+            dataSource = new StreamingDataSource(attachment, () -> Files.newInputStream(file));
+        } else {
+            dataSource = new StreamingDataSource(attachment, () -> Base64Streams.decoding(data));
+        }
+
+        MimeBodyPart part = new MimeBodyPart();
+        part.setDisposition(Part.ATTACHMENT);
+        try {
+            part.setFileName(MimeUtility.encodeText(attachment.filename()));
+        } catch (UnsupportedEncodingException e) {
+            throw new MessagingException("Failed to encode attachment filename", e);
+        }
+        part.setDataHandler(new DataHandler(dataSource));
+        part.setHeader("Content-Transfer-Encoding", "base64");
+        return part;
+    }
+
+    private Path spill(AttachmentRequest attachment, AttachmentParts parts) throws MessagingException {
+        try {
+            Path file = Files.createTempFile(spillDirectory, "notifyhub-attachment-", ".bin");
+            parts.spilledFiles.add(file);
+            try (InputStream in = Base64Streams.decoding(attachment.data());
+                 OutputStream out = Files.newOutputStream(file)) {
+                in.transferTo(out);
+            }
+            logger.debug("Spilled attachment '{}' to {}", attachment.filename(), file);
+            return file;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new MessagingException("Failed to spill attachment '" + attachment.filename() + "'", e);
+        }
+    }
+
+    /**
+     * The attachment parts of one message, together with the temporary files backing them.
+     */
+    public static final class AttachmentParts implements Iterable<MimeBodyPart>, AutoCloseable {
+        private final List<MimeBodyPart> parts = new ArrayList<>();
+        private final List<Path> spilledFiles = new ArrayList<>();
+
+        @Override
+        public Iterator<MimeBodyPart> iterator() {
+            return parts.iterator();
+        }
+
+        @Override
+        public void close() {
+            for (Path file : spilledFiles) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    logger.warn("Failed to delete spilled attachment {}", file, e);
+                }
+            }
+            spilledFiles.clear();
+        }
+    }
+
+    @FunctionalInterface
+    private interface InputStreamOpener {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * A read-only {@link DataSource} that opens a fresh stream every time JavaMail asks for one.
+     */
+    private record StreamingDataSource(AttachmentRequest attachment, InputStreamOpener opener) implements DataSource {
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return opener.open();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            throw new IOException("Attachment data sources are read-only");
+        }
+
+        @Override
+        public String getContentType() {
+            return attachment.contentType();
+        }
+
+        @Override
+        public String getName() {
+            return attachment.filename();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package io.github.kxng0109.notifyhub.mail;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.kxng0109.notifyhub.attachment.AttachmentStore;
+import io.github.kxng0109.notifyhub.dto.AttachmentRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.mail.MessagingException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * A bounded cache of fully encoded HTML message bodies, keyed by a hash of their content.
+ *
+ * Campaigns send the same HTML and attachments to many recipient lists. With this cache, the
+ * multipart body is encoded once and later sends only build their envelope headers around the
+ * cached bytes (see {@link PrerenderedMimeMessage}). The cache is bounded by the total size of
+ * the cached bodies and uses Caffeine's W-TinyLFU eviction. Bodies larger than the per-entry
+ * limit are never cached, so they keep streaming their attachments instead. Hit, miss and
+ * eviction counts are published under the {@code mime-body} cache name.
+ */
+@Component
+public class MimeBodyCache {
+    public static final String CACHE_NAME = "mime-body";
+    private static final int DIGEST_CHUNK_CHARS = 8192;
+
+    private final AttachmentStore attachmentStore;
+    private final Cache<String, RenderedMimeBody> cache;
+    private final boolean enabled;
+    private final long maxEntryBytes;
+
+    public MimeBodyCache(
+            AttachmentStore attachmentStore,
+            MeterRegistry meterRegistry,
+            @Value("${notifyhub.mail.mime-cache.enabled:true}") boolean enabled,
+            @Value("${notifyhub.mail.mime-cache.max-weight-bytes:67108864}") long maxWeightBytes,
+            @Value("${notifyhub.mail.mime-cache.max-entry-bytes:4194304}") long maxEntryBytes,
+            @Value("${notifyhub.mail.mime-cache.expire-after-access-ms:600000}") long expireAfterAccessMillis
+    ) {
+        this.attachmentStore = attachmentStore;
+        this.enabled = enabled;
+        this.maxEntryBytes = maxEntryBytes;
+        this.cache = Caffeine.newBuilder()
+                             .maximumWeight(maxWeightBytes)
+                             .weigher((String key, RenderedMimeBody body) -> body.weight())
+                             .expireAfterAccess(Duration.ofMillis(expireAfterAccessMillis))
+                             .recordStats()
+                             .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Whether a body with this content should go through the cache. Bodies estimated to be
+     * larger than the per-entry limit are built and streamed per send instead.
+     */
+    public boolean isCacheable(String htmlContent, List<AttachmentRequest> attachments) {
+        return enabled && estimateEncodedSize(htmlContent, attachments) <= maxEntryBytes;
+    }
+
+    /**
+     * Returns the cached body for this content, rendering it once if it is not cached yet.
+     * Concurrent requests for the same content wait for a single render.
+     *
+     * @param htmlContent the HTML body
+     * @param attachments the attachments; may be {@code null}
+     * @param renderer renders the body on a cache miss
+     * @return the encoded body
+     * @throws MessagingException if the body could not be rendered
+     */
+    public RenderedMimeBody get(
+            String htmlContent,
+            List<AttachmentRequest> attachments,
+            BodyRenderer renderer
+    ) throws MessagingException {
+        try {
+            return cache.get(keyFor(htmlContent, attachments), key -> {
+                try {
+                    return renderer.render();
+                } catch (MessagingException e) {
+                    throw new RenderFailedException(e);
+                }
+            });
+        } catch (RenderFailedException e) {
+            throw e.getCause();
+        }
+    }
+
+    private long estimateEncodedSize(String htmlContent, List<AttachmentRequest> attachments) {
+        // Quoted-printable and Base64 both grow content by roughly a third.
+        long size = (long) htmlContent.length() * 4 / 3;
+        if (attachments != null) {
+            for (AttachmentRequest attachment : attachments) {
+                if (attachment.ref() != null) {
+                    long storedSize = attachmentStore.size(attachment.ref());
+                    if (storedSize < 0) {
+                        return Long.MAX_VALUE;
+                    }
+                    size += storedSize * 4 / 3;
+                } else if (attachment.data() != null) {
+                    size += attachment.data().length();
+                }
+            }
+        }
+        return size;
+    }
+
+    private static String keyFor(String htmlContent, List<AttachmentRequest> attachments) {
+        MessageDigest digest = sha256();
+        update(digest, htmlContent);
+        if (attachments != null) {
+            for (AttachmentRequest attachment : attachments) {
+                update(digest, attachment.filename());
+                update(digest, attachment.contentType());
+                update(digest, attachment.ref() != null ? attachment.ref() : attachment.data());
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Feeds a string to the digest in chunks, followed by a separator, without encoding the
+     * whole string into one array.
+     */
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            for (int start = 0; start < value.length(); start += DIGEST_CHUNK_CHARS) {
+                int end = Math.min(value.length(), start + DIGEST_CHUNK_CHARS);
+                digest.update(value.substring(start, end).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface BodyRenderer {
+        RenderedMimeBody render() throws MessagingException;
+    }
+
+    private static final class RenderFailedException extends RuntimeException {
+        private RenderFailedException(MessagingException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized MessagingException getCause() {
+            return (MessagingException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package io.github.kxng0109.notifyhub.mail;
+
+import io.github.kxng0109.notifyhub.concurrency.DownstreamConcurrencyLimiter;
+import jakarta.mail.Address;
+import jakarta.mail.AuthenticationFailedException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.lang.Nullable;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link JavaMailSenderImpl} that sends through pooled, long-lived SMTP connections.
+ *
+ * The stock implementation connects, authenticates and quits for every {@code send} call. This
+ * variant borrows an already connected transport from a {@link SmtpConnectionPool} instead and
+ * gives it back afterwards, so the TLS handshake and AUTH exchange are only paid when the pool
+ * has to open a new connection. Per-message failures are reported exactly like the parent class
+ * does, through {@link MailSendException#getFailedMessages()}.
+ *
+ * With a {@link DownstreamConcurrencyLimiter} set, every send holds a permit for this sender's
+ * downstream (its host, or its relay when routing) while it uses the transport, so each relay's
+ * concurrent sends are bounded on their own.
+ */
+public class PooledJavaMailSender extends JavaMailSenderImpl implements DisposableBean {
+    private static final String HEADER_MESSAGE_ID = "Message-ID";
+
+    private SmtpConnectionPool pool;
+    private DownstreamConcurrencyLimiter concurrencyLimiter;
+    private String downstream;
+
+    /**
+     * Creates the connection pool. Must be called once all connection settings
+     * (host, port, credentials and JavaMail properties) have been applied.
+     */
+    public void initPool(int maxSize, Duration maxWait, Duration idleTimeout, Duration validateAfterIdle) {
+        this.pool = new SmtpConnectionPool(this::connectTransport, maxSize, maxWait, idleTimeout, validateAfterIdle);
+    }
+
+    public SmtpConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Bounds the concurrent sends through this sender.
+     *
+     * @param concurrencyLimiter the limiter to take a permit from for every send
+     * @param downstream the SMTP downstream the permits are counted against, such as the relay name
+     */
+    public void setConcurrencyLimiter(DownstreamConcurrencyLimiter concurrencyLimiter, String downstream) {
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.downstream = downstream;
+    }
+
+    @Override
+    protected void doSend(MimeMessage[] mimeMessages, @Nullable Object[] originalMessages) throws MailException {
+        if (concurrencyLimiter == null) {
+            sendPooled(mimeMessages, originalMessages);
+            return;
+        }
+        try (DownstreamConcurrencyLimiter.Permit ignored = concurrencyLimiter.acquireSmtp(downstream)) {
+            sendPooled(mimeMessages, originalMessages);
+        }
+    }
+
+    private void sendPooled(MimeMessage[] mimeMessages, @Nullable Object[] originalMessages) throws MailException {
+        Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+        Transport transport = null;
+        try {
+            for (int i = 0; i < mimeMessages.length; i++) {
+                if (transport == null) {
+                    try {
+                        transport = pool.borrow();
+                    } catch (AuthenticationFailedException ex) {
+                        throw new MailAuthenticationException(ex);
+                    } catch (Exception ex) {
+                        // Without a connection, every remaining message has failed.
+                        for (int j = i; j < mimeMessages.length; j++) {
+                            failedMessages.put(originalMessage(mimeMessages, originalMessages, j), ex);
+                        }
+                        throw new MailSendException("Mail server connection failed", ex, failedMessages);
+                    }
+                }
+
+                MimeMessage mimeMessage = mimeMessages[i];
+                try {
+                    if (mimeMessage.getSentDate() == null) {
+                        mimeMessage.setSentDate(new Date());
+                    }
+                    String messageId = mimeMessage.getMessageID();
+                    mimeMessage.saveChanges();
+                    if (messageId != null) {
+                        // Preserve explicitly specified message id...
+                        mimeMessage.setHeader(HEADER_MESSAGE_ID, messageId);
+                    }
+                    Address[] addresses = mimeMessage.getAllRecipients();
+                    transport.sendMessage(mimeMessage, (addresses != null ? addresses : new Address[0]));
+                } catch (Exception ex) {
+                    failedMessages.put(originalMessage(mimeMessages, originalMessages, i), ex);
+                    if (!transport.isConnected()) {
+                        // The server dropped us mid-batch; continue on a fresh connection.
+                        pool.invalidate(transport);
+                        transport = null;
+                    }
+                }
+            }
+        } finally {
+            if (transport != null) {
+                pool.release(transport);
+            }
+        }
+
+        if (!failedMessages.isEmpty()) {
+            throw new MailSendException(failedMessages);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    private Object originalMessage(MimeMessage[] mimeMessages, @Nullable Object[] originalMessages, int index) {
+        return (originalMessages != null ? originalMessages[index] : mimeMessages[index]);
+    }
+
+}
@@ -0,0 +1,58 @@
+package io.github.kxng0109.notifyhub.mail;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Enumeration;
+
+/**
+ * A {@link MimeMessage} whose body has already been encoded, so only its envelope headers are
+ * built per send.
+ *
+ * The stock implementation walks and re-encodes the whole part tree on every
+ * {@link #saveChanges()} and {@link #writeTo(OutputStream, String[])}. This variant only refreshes
+ * {@code MIME-Version}, {@code Date} and {@code Message-ID} when saved. It writes its headers
+ * followed by the cached body bytes, unchanged. Set the addressing and subject headers as usual,
+ * but never the content.
+ */
+public class PrerenderedMimeMessage extends MimeMessage {
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    public PrerenderedMimeMessage(Session session, RenderedMimeBody body) throws MessagingException {
+        super(session);
+        this.content = body.content();
+        setHeader("Content-Type", body.contentType());
+        if (body.transferEncoding() != null) {
+            setHeader("Content-Transfer-Encoding", body.transferEncoding());
+        }
+    }
+
+    @Override
+    protected void updateHeaders() throws MessagingException {
+        setHeader("MIME-Version", "1.0");
+        if (getHeader("Date") == null) {
+            setSentDate(new Date());
+        }
+        updateMessageID();
+    }
+
+    @Override
+    public void writeTo(OutputStream os, String[] ignoreList) throws IOException, MessagingException {
+        if (!saved) {
+            saveChanges();
+        }
+        Enumeration<String> headerLines = getNonMatchingHeaderLines(ignoreList);
+        while (headerLines.hasMoreElements()) {
+            os.write(headerLines.nextElement().getBytes(StandardCharsets.UTF_8));
+            os.write(CRLF);
+        }
+        os.write(CRLF);
+        os.write(content);
+        os.flush();
+    }
+}
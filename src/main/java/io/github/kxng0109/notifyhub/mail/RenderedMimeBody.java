@@ -0,0 +1,51 @@
+package io.github.kxng0109.notifyhub.mail;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The fully encoded body of a message, together with the headers that describe it.
+ *
+ * @param contentType the top-level {@code Content-Type}, including the multipart boundary
+ * @param transferEncoding the top-level {@code Content-Transfer-Encoding}, or {@code null}
+ * @param content the encoded body exactly as it follows the header block on the wire
+ */
+public record RenderedMimeBody(String contentType, String transferEncoding, byte[] content) {
+
+    /**
+     * Encodes a message that has content but no envelope, and captures everything after its headers.
+     */
+    public static RenderedMimeBody render(MimeMessage template) throws MessagingException {
+        template.saveChanges();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            template.writeTo(out);
+        } catch (IOException e) {
+            throw new MessagingException("Failed to render message body", e);
+        }
+        byte[] rendered = out.toByteArray();
+        int bodyStart = indexOfBlankLine(rendered);
+        return new RenderedMimeBody(
+                template.getHeader("Content-Type", null),
+                template.getHeader("Content-Transfer-Encoding", null),
+                Arrays.copyOfRange(rendered, bodyStart, rendered.length)
+        );
+    }
+
+    public int weight() {
+        return content.length + contentType.length();
+    }
+
+    private static int indexOfBlankLine(byte[] rendered) throws MessagingException {
+        for (int i = 0; i + 3 < rendered.length; i++) {
+            if (rendered[i] == '\r' && rendered[i + 1] == '\n' && rendered[i + 2] == '\r' && rendered[i + 3] == '\n') {
+                return i + 4;
+            }
+        }
+        throw new MessagingException("Rendered message has no header separator");
+    }
+}
@@ -0,0 +1,358 @@
+package io.github.kxng0109.notifyhub.mail;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailParseException;
+import org.springframework.mail.MailPreparationException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMailMessage;
+import org.springframework.mail.javamail.MimeMessagePreparator;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link JavaMailSender} that spreads sends across several SMTP relays.
+ *
+ * Each send goes to the relay with the fewest outstanding sends relative to its weight; ties go
+ * to the relay with the lower recent latency. Latency is tracked as an exponentially weighted
+ * moving average per relay. When a relay is unavailable (a connection failure or a {@code 421}),
+ * the messages it did not accept are sent again through the next best relay. Messages it
+ * rejected are reported as failed, just like a single sender would report them.
+ *
+ * A relay that fails {@code ejectAfterFailures} times in a row is ejected: it receives no
+ * traffic until its ejection ends, after which it is tried again. Every ejection without a
+ * success in between lasts twice as long as the previous one, up to a maximum. When every relay
+ * is ejected, sends still go to the relay whose ejection ends first rather than failing outright.
+ */
+public class RoutingJavaMailSender implements JavaMailSender, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(RoutingJavaMailSender.class);
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    private final List<Relay> relays;
+    private final int ejectAfterFailures;
+    private final long ejectionNanos;
+    private final long maxEjectionNanos;
+
+    public RoutingJavaMailSender(
+            List<Relay> relays,
+            MeterRegistry meterRegistry,
+            int ejectAfterFailures,
+            Duration ejectionDuration,
+            Duration maxEjectionDuration
+    ) {
+        if (relays.isEmpty()) {
+            throw new IllegalArgumentException("At least one SMTP relay is required");
+        }
+        this.relays = List.copyOf(relays);
+        this.ejectAfterFailures = Math.max(1, ejectAfterFailures);
+        this.ejectionNanos = ejectionDuration.toNanos();
+        this.maxEjectionNanos = Math.max(ejectionNanos, maxEjectionDuration.toNanos());
+
+        for (Relay relay : this.relays) {
+            relay.bindMetrics(meterRegistry);
+        }
+    }
+
+    @Override
+    public MimeMessage createMimeMessage() {
+        return relays.getFirst().sender.createMimeMessage();
+    }
+
+    @Override
+    public MimeMessage createMimeMessage(InputStream contentStream) throws MailException {
+        return relays.getFirst().sender.createMimeMessage(contentStream);
+    }
+
+    @Override
+    public void send(MimeMessage mimeMessage) throws MailException {
+        send(new MimeMessage[]{mimeMessage});
+    }
+
+    /**
+     * Sends the messages through the best available relay, failing over to the next relay for
+     * any message that was not accepted because the relay was unavailable.
+     */
+    @Override
+    public void send(MimeMessage... mimeMessages) throws MailException {
+        List<MimeMessage> remaining = List.of(mimeMessages);
+        Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+        Map<MimeMessage, Exception> lastFailures = new IdentityHashMap<>();
+        Set<Relay> tried = new HashSet<>();
+
+        Relay relay;
+        while (!remaining.isEmpty() && (relay = select(tried)) != null) {
+            tried.add(relay);
+            List<MimeMessage> unavailable = new ArrayList<>();
+            long start = System.nanoTime();
+            relay.outstanding.incrementAndGet();
+            try {
+                relay.sender.send(remaining.toArray(MimeMessage[]::new));
+            } catch (MailSendException e) {
+                for (Map.Entry<Object, Exception> failure : e.getFailedMessages().entrySet()) {
+                    if (failure.getKey() instanceof MimeMessage message
+                            && SmtpReplyCodes.isServerUnavailable(failure.getValue())) {
+                        unavailable.add(message);
+                        lastFailures.put(message, failure.getValue());
+                    } else {
+                        failedMessages.put(failure.getKey(), failure.getValue());
+                    }
+                }
+            } catch (MailException e) {
+                // Authentication or connection trouble before anything was sent.
+                unavailable.addAll(remaining);
+                remaining.forEach(message -> lastFailures.put(message, e));
+            } finally {
+                relay.outstanding.decrementAndGet();
+            }
+
+            if (unavailable.isEmpty()) {
+                recordSuccess(relay, System.nanoTime() - start);
+            } else {
+                recordFailure(relay);
+                if (unavailable.size() < remaining.size()) {
+                    logger.warn("Relay {} could not take {} of {} messages, failing over.",
+                                relay.name, unavailable.size(), remaining.size());
+                }
+            }
+            remaining = unavailable;
+        }
+
+        for (MimeMessage message : remaining) {
+            failedMessages.put(message, lastFailures.get(message));
+        }
+        if (!failedMessages.isEmpty()) {
+            throw new MailSendException(failedMessages);
+        }
+    }
+
+    @Override
+    public void send(MimeMessagePreparator mimeMessagePreparator) throws MailException {
+        send(new MimeMessagePreparator[]{mimeMessagePreparator});
+    }
+
+    @Override
+    public void send(MimeMessagePreparator... mimeMessagePreparators) throws MailException {
+        MimeMessage[] mimeMessages = new MimeMessage[mimeMessagePreparators.length];
+        for (int i = 0; i < mimeMessagePreparators.length; i++) {
+            mimeMessages[i] = createMimeMessage();
+            try {
+                mimeMessagePreparators[i].prepare(mimeMessages[i]);
+            } catch (MailException e) {
+                throw e;
+            } catch (MessagingException e) {
+                throw new MailParseException(e);
+            } catch (Exception e) {
+                throw new MailPreparationException(e);
+            }
+        }
+        send(mimeMessages);
+    }
+
+    @Override
+    public void send(SimpleMailMessage simpleMessage) throws MailException {
+        send(new SimpleMailMessage[]{simpleMessage});
+    }
+
+    @Override
+    public void send(SimpleMailMessage... simpleMessages) throws MailException {
+        Map<MimeMessage, SimpleMailMessage> originals = new IdentityHashMap<>();
+        for (SimpleMailMessage simpleMessage : simpleMessages) {
+            MimeMailMessage message = new MimeMailMessage(createMimeMessage());
+            simpleMessage.copyTo(message);
+            originals.put(message.getMimeMessage(), simpleMessage);
+        }
+        try {
+            send(originals.keySet().toArray(MimeMessage[]::new));
+        } catch (MailSendException e) {
+            Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+            e.getFailedMessages().forEach((message, failure) -> {
+                Object original = originals.get(message);
+                failedMessages.put(original != null ? original : message, failure);
+            });
+            throw new MailSendException(failedMessages);
+        }
+    }
+
+    /**
+     * Checks that at least one relay accepts connections, re-admitting every relay that does.
+     *
+     * @throws MessagingException the last failure, if no relay could be reached
+     */
+    public void testConnection() throws MessagingException {
+        MessagingException lastFailure = null;
+        boolean connected = false;
+        for (Relay relay : relays) {
+            if (!(relay.sender instanceof JavaMailSenderImpl sender)) {
+                connected = true;
+                continue;
+            }
+            try {
+                sender.testConnection();
+                synchronized (relay) {
+                    relay.consecutiveFailures = 0;
+                    relay.ejectedUntilNanos = 0L;
+                }
+                connected = true;
+            } catch (MessagingException e) {
+                lastFailure = e;
+            }
+        }
+        if (!connected && lastFailure != null) {
+            throw lastFailure;
+        }
+    }
+
+    public List<Relay> getRelays() {
+        return relays;
+    }
+
+    /**
+     * Picks the available relay with the fewest outstanding sends per unit of weight, or, when
+     * every relay not yet tried is ejected, the one whose ejection ends first.
+     *
+     * @return the relay to use, or {@code null} if every relay has been tried
+     */
+    private Relay select(Set<Relay> excluded) {
+        long now = System.nanoTime();
+        Relay best = null;
+        Relay soonestReadmitted = null;
+        for (Relay relay : relays) {
+            if (excluded.contains(relay)) {
+                continue;
+            }
+            if (relay.isEjected(now)) {
+                if (soonestReadmitted == null || relay.ejectedUntilNanos - soonestReadmitted.ejectedUntilNanos < 0) {
+                    soonestReadmitted = relay;
+                }
+            } else if (best == null || compareLoad(relay, best) < 0) {
+                best = relay;
+            }
+        }
+        return best != null ? best : soonestReadmitted;
+    }
+
+    private static int compareLoad(Relay a, Relay b) {
+        int byLoad = Double.compare((a.outstanding.get() + 1.0) / a.weight, (b.outstanding.get() + 1.0) / b.weight);
+        return byLoad != 0 ? byLoad : Double.compare(a.latencyMillis, b.latencyMillis);
+    }
+
+    private void recordSuccess(Relay relay, long elapsedNanos) {
+        relay.sendTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        double elapsedMillis = elapsedNanos / 1_000_000.0;
+        synchronized (relay) {
+            relay.latencyMillis = relay.latencyMillis == 0.0
+                    ? elapsedMillis
+                    : LATENCY_SMOOTHING * elapsedMillis + (1 - LATENCY_SMOOTHING) * relay.latencyMillis;
+            relay.consecutiveFailures = 0;
+            if (relay.ejections > 0 && !relay.isEjected(System.nanoTime())) {
+                logger.info("Relay {} is healthy again after {} ejections.", relay.name, relay.ejections);
+                relay.ejections = 0;
+            }
+        }
+    }
+
+    private void recordFailure(Relay relay) {
+        relay.errors.increment();
+        synchronized (relay) {
+            long now = System.nanoTime();
+            if (relay.isEjected(now) || ++relay.consecutiveFailures < ejectAfterFailures) {
+                return;
+            }
+            long duration = ejectionNanos << Math.min(relay.ejections, 20);
+            duration = duration <= 0 ? maxEjectionNanos : Math.min(maxEjectionNanos, duration);
+            relay.ejections++;
+            relay.consecutiveFailures = 0;
+            relay.ejectedUntilNanos = now + duration;
+            logger.warn("Ejecting relay {} for {}ms after {} consecutive failures.",
+                        relay.name, TimeUnit.NANOSECONDS.toMillis(duration), ejectAfterFailures);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (Relay relay : relays) {
+            if (relay.sender instanceof DisposableBean disposable) {
+                disposable.destroy();
+            }
+        }
+    }
+
+    /**
+     * One relay and its live load, latency and health.
+     */
+    public static final class Relay {
+        private final String name;
+        private final JavaMailSender sender;
+        private final int weight;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile double latencyMillis;
+        private int consecutiveFailures;
+        private int ejections;
+        private volatile long ejectedUntilNanos;
+        private Timer sendTimer;
+        private Counter errors;
+
+        public Relay(String name, JavaMailSender sender, int weight) {
+            this.name = name;
+            this.sender = sender;
+            this.weight = Math.max(1, weight);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public JavaMailSender getSender() {
+            return sender;
+        }
+
+        public boolean isEjected() {
+            return isEjected(System.nanoTime());
+        }
+
+        private boolean isEjected(long now) {
+            long until = ejectedUntilNanos;
+            return until != 0L && until - now > 0;
+        }
+
+        private void bindMetrics(MeterRegistry meterRegistry) {
+            Gauge.builder("notifyhub.mail.relay.outstanding", outstanding, AtomicInteger::get)
+                 .tag("relay", name)
+                 .description("Sends currently in progress through an SMTP relay")
+                 .register(meterRegistry);
+            Gauge.builder("notifyhub.mail.relay.ejected", this, relay -> relay.isEjected() ? 1 : 0)
+                 .tag("relay", name)
+                 .description("1 while an SMTP relay is ejected from routing, 0 otherwise")
+                 .register(meterRegistry);
+            sendTimer = Timer.builder("notifyhub.mail.relay.send")
+                             .tag("relay", name)
+                             .description("Time taken by successful sends through an SMTP relay")
+                             .register(meterRegistry);
+            errors = Counter.builder("notifyhub.mail.relay.errors")
+                            .tag("relay", name)
+                            .description("Sends that failed because an SMTP relay was unavailable")
+                            .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package io.github.kxng0109.notifyhub.mail;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of connected SMTP {@link Transport}s.
+ *
+ * Connections are handed out most-recently-used first so the warmest connection is reused, and
+ * they are validated before use once they have been idle for a while. On an SMTP transport
+ * {@link Transport#isConnected()} sends a NOOP to the server, so a connection the server has
+ * timed out is detected and replaced with a fresh one. A background evictor closes connections
+ * that stay idle longer than the configured idle timeout, before the server drops them itself.
+ */
+public class SmtpConnectionPool implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SmtpConnectionPool.class);
+
+    private final TransportConnector connector;
+    private final int maxSize;
+    private final Semaphore permits;
+    private final BlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger creating = new AtomicInteger();
+    private final long maxWaitMillis;
+    private final long idleTimeoutNanos;
+    private final long validateAfterIdleNanos;
+    private final ScheduledExecutorService evictor;
+
+    public SmtpConnectionPool(
+            TransportConnector connector,
+            int maxSize,
+            Duration maxWait,
+            Duration idleTimeout,
+            Duration validateAfterIdle
+    ) {
+        this.connector = connector;
+        this.maxSize = Math.max(1, maxSize);
+        this.permits = new Semaphore(this.maxSize, true);
+        this.maxWaitMillis = maxWait.toMillis();
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.validateAfterIdleNanos = validateAfterIdle.toNanos();
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("smtp-pool-evictor").daemon(true).factory());
+        long evictionPeriod = Math.max(1000L, idleTimeout.toMillis() / 2);
+        this.evictor.scheduleWithFixedDelay(this::evictIdle, evictionPeriod, evictionPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connected transport, reusing an idle one when it is still healthy and opening
+     * a new one otherwise. Blocks for at most the configured max wait while the pool is full.
+     *
+     * @return a connected transport that must be given back with {@link #release(Transport)}
+     *         or {@link #invalidate(Transport)}
+     * @throws MessagingException if no connection became available in time or connecting failed
+     */
+    public Transport borrow() throws MessagingException {
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                throw new MessagingException(
+                        "Timed out after " + maxWaitMillis + "ms waiting for a pooled SMTP connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting for a pooled SMTP connection", e);
+        }
+
+        try {
+            IdleConnection candidate;
+            while ((candidate = idle.pollFirst()) != null) {
+                if (isUsable(candidate)) {
+                    active.incrementAndGet();
+                    return candidate.transport();
+                }
+                logger.debug("Discarding stale pooled SMTP connection.");
+                closeQuietly(candidate.transport());
+            }
+
+            creating.incrementAndGet();
+            try {
+                Transport transport = connector.connect();
+                active.incrementAndGet();
+                return transport;
+            } finally {
+                creating.decrementAndGet();
+            }
+        } catch (MessagingException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a healthy transport to the pool so the next borrower can reuse it.
+     */
+    public void release(Transport transport) {
+        active.decrementAndGet();
+        idle.offerFirst(new IdleConnection(transport, System.nanoTime()));
+        permits.release();
+    }
+
+    /**
+     * Closes a transport that is broken or in an unknown state and frees its slot.
+     */
+    public void invalidate(Transport transport) {
+        active.decrementAndGet();
+        closeQuietly(transport);
+        permits.release();
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getCreatingCount() {
+        return creating.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        IdleConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            closeQuietly(connection.transport());
+        }
+    }
+
+    private boolean isUsable(IdleConnection connection) {
+        long idleFor = System.nanoTime() - connection.idleSince();
+        if (idleFor >= idleTimeoutNanos) {
+            return false;
+        }
+        // Recently used connections are trusted, older ones are pinged with a NOOP first.
+        return idleFor < validateAfterIdleNanos || connection.transport().isConnected();
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        Iterator<IdleConnection> oldestFirst = idle.descendingIterator();
+        while (oldestFirst.hasNext()) {
+            IdleConnection connection = oldestFirst.next();
+            if (now - connection.idleSince() >= idleTimeoutNanos && idle.remove(connection)) {
+                closeQuietly(connection.transport());
+                logger.debug("Evicted idle SMTP connection.");
+            }
+        }
+    }
+
+    private void closeQuietly(Transport transport) {
+        try {
+            transport.close();
+        } catch (Exception e) {
+            logger.debug("Failed to close SMTP connection cleanly", e);
+        }
+    }
+
+    /**
+     * Opens a new, connected transport for the pool.
+     */
+    @FunctionalInterface
+    public interface TransportConnector {
+        Transport connect() throws MessagingException;
+    }
+
+    private record IdleConnection(Transport transport, long idleSince) {
+    }
+}
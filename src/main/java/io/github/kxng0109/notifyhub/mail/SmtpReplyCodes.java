@@ -0,0 +1,109 @@
+package io.github.kxng0109.notifyhub.mail;
+
+import jakarta.mail.MessagingException;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSenderFailedException;
+import org.eclipse.angus.mail.util.MailConnectException;
+import org.springframework.mail.MailSendException;
+
+import javax.net.ssl.SSLException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Extracts SMTP reply codes from the exceptions thrown while sending mail.
+ */
+public final class SmtpReplyCodes {
+    public static final int SERVICE_NOT_AVAILABLE = 421;
+    public static final int LOCAL_ERROR_IN_PROCESSING = 451;
+
+    private SmtpReplyCodes() {
+    }
+
+    /**
+     * Returns the first SMTP reply code found anywhere in the exception, its causes, chained
+     * messaging exceptions, or the per-message failures of a {@link MailSendException}.
+     *
+     * @return the reply code, or {@code -1} if the failure did not come from an SMTP reply
+     */
+    public static int find(Throwable error) {
+        return find(error, Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    /**
+     * Whether the server asked us to slow down: {@code 421} (service not available, closing
+     * channel) or {@code 451} (local error, try again later).
+     */
+    public static boolean isThrottling(Throwable error) {
+        int code = find(error);
+        return code == SERVICE_NOT_AVAILABLE || code == LOCAL_ERROR_IN_PROCESSING;
+    }
+
+    /**
+     * Whether the failure means the SMTP server itself is unavailable, as opposed to rejecting
+     * one particular message: a {@code 421} reply, or a network-level failure to reach it.
+     */
+    public static boolean isServerUnavailable(Throwable error) {
+        if (find(error) == SERVICE_NOT_AVAILABLE) {
+            return true;
+        }
+        Set<Throwable> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Throwable current = error; current != null && visited.add(current); current = nextOf(current)) {
+            if (current instanceof MailConnectException
+                    || current instanceof SocketException
+                    || current instanceof SocketTimeoutException
+                    || current instanceof UnknownHostException
+                    || current instanceof SSLException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Throwable nextOf(Throwable error) {
+        if (error instanceof MessagingException e && e.getNextException() != null) {
+            return e.getNextException();
+        }
+        if (error instanceof MailSendException e && !e.getFailedMessages().isEmpty()) {
+            return e.getFailedMessages().values().iterator().next();
+        }
+        return error.getCause();
+    }
+
+    private static int find(Throwable error, Set<Throwable> visited) {
+        if (error == null || !visited.add(error)) {
+            return -1;
+        }
+        if (error instanceof SMTPSendFailedException e) {
+            return e.getReturnCode();
+        }
+        if (error instanceof SMTPAddressFailedException e) {
+            return e.getReturnCode();
+        }
+        if (error instanceof SMTPSenderFailedException e) {
+            return e.getReturnCode();
+        }
+
+        int code = -1;
+        if (error instanceof MailSendException e) {
+            for (Exception failure : e.getFailedMessages().values()) {
+                code = find(failure, visited);
+                if (code != -1) {
+                    return code;
+                }
+            }
+        }
+        if (error instanceof MessagingException e) {
+            code = find(e.getNextException(), visited);
+            if (code != -1) {
+                return code;
+            }
+        }
+        return find(error.getCause(), visited);
+    }
+}
@@ -0,0 +1,381 @@
+package io.github.kxng0109.notifyhub.messaging;
+
+import io.github.kxng0109.notifyhub.dto.AttachmentRequest;
+import io.github.kxng0109.notifyhub.dto.NotificationPriority;
+import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes a {@link NotificationRequest} in a compact binary form for the queues.
+ *
+ * A message starts with a version byte and is followed by the fields that are set, each as a
+ * one-byte field ID and its value, and ends with a zero byte. Numbers and lengths are unsigned
+ * varints, strings are length-prefixed UTF-8, and lists and maps are prefixed with their size.
+ * Map keys and attachment content types are interned: a string written once in a message is
+ * referred to by its index afterwards, so the same variable names repeated for every recipient
+ * cost a byte or two each. Attachment data that is valid Base64 is carried as the raw bytes,
+ * a quarter smaller than the text, and encoded back to Base64 when read.
+ *
+ * Fields are only ever added, under new IDs. A reader refuses a message with a field it does not
+ * know, so a new field may only be written once every consumer can read it.
+ */
+public final class NotificationBinaryCodec {
+    static final byte VERSION = 1;
+
+    private static final int END = 0;
+    private static final int TO = 1;
+    private static final int SUBJECT = 2;
+    private static final int BODY = 3;
+    private static final int HTML_BODY = 4;
+    private static final int ATTACHMENTS = 5;
+    private static final int PRIORITY = 6;
+    private static final int SEND_AT = 7;
+    private static final int TEMPLATE_ID = 8;
+    private static final int VARIABLES = 9;
+    private static final int RECIPIENT_VARIABLES = 10;
+
+    private static final int ATTACHMENT_HAS_DATA = 1;
+    private static final int ATTACHMENT_RAW_DATA = 1 << 1;
+    private static final int ATTACHMENT_HAS_REF = 1 << 2;
+
+    private NotificationBinaryCodec() {
+    }
+
+    public static byte[] encode(NotificationRequest request) {
+        Output out = new Output();
+        out.writeByte(VERSION);
+        if (request.to() != null) {
+            out.writeByte(TO);
+            out.writeVarint(request.to().size());
+            request.to().forEach(out::writeString);
+        }
+        writeString(out, SUBJECT, request.subject());
+        writeString(out, BODY, request.body());
+        writeString(out, HTML_BODY, request.htmlBody());
+        if (request.attachments() != null) {
+            out.writeByte(ATTACHMENTS);
+            out.writeVarint(request.attachments().size());
+            request.attachments().forEach(attachment -> writeAttachment(out, attachment));
+        }
+        if (request.priority() != null) {
+            out.writeByte(PRIORITY);
+            out.writeSymbol(request.priority().name());
+        }
+        if (request.sendAt() != null) {
+            out.writeByte(SEND_AT);
+            out.writeVarint(request.sendAt().getEpochSecond());
+            out.writeVarint(request.sendAt().getNano());
+        }
+        writeString(out, TEMPLATE_ID, request.templateId());
+        if (request.variables() != null) {
+            out.writeByte(VARIABLES);
+            writeVariables(out, request.variables());
+        }
+        if (request.recipientVariables() != null) {
+            out.writeByte(RECIPIENT_VARIABLES);
+            out.writeVarint(request.recipientVariables().size());
+            request.recipientVariables().forEach((recipient, variables) -> {
+                out.writeString(recipient);
+                writeVariables(out, variables);
+            });
+        }
+        out.writeByte(END);
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not a notification in a version this codec reads
+     */
+    public static NotificationRequest decode(byte[] bytes) {
+        Input in = new Input(bytes);
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported notification format version " + version);
+        }
+        List<String> to = null;
+        String subject = null;
+        String body = null;
+        String htmlBody = null;
+        List<AttachmentRequest> attachments = null;
+        NotificationPriority priority = null;
+        Instant sendAt = null;
+        String templateId = null;
+        Map<String, String> variables = null;
+        Map<String, Map<String, String>> recipientVariables = null;
+
+        for (int field = in.readByte(); field != END; field = in.readByte()) {
+            switch (field) {
+                case TO -> {
+                    int count = in.readCount();
+                    to = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        to.add(in.readString());
+                    }
+                }
+                case SUBJECT -> subject = in.readString();
+                case BODY -> body = in.readString();
+                case HTML_BODY -> htmlBody = in.readString();
+                case ATTACHMENTS -> {
+                    int count = in.readCount();
+                    attachments = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        attachments.add(readAttachment(in));
+                    }
+                }
+                case PRIORITY -> priority = NotificationPriority.valueOf(in.readSymbol());
+                case SEND_AT -> sendAt = Instant.ofEpochSecond(in.readVarint(), in.readVarint());
+                case TEMPLATE_ID -> templateId = in.readString();
+                case VARIABLES -> variables = readVariables(in);
+                case RECIPIENT_VARIABLES -> {
+                    int count = in.readCount();
+                    recipientVariables = new LinkedHashMap<>(count * 2);
+                    for (int i = 0; i < count; i++) {
+                        recipientVariables.put(in.readString(), readVariables(in));
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unknown notification field " + field);
+            }
+        }
+        return new NotificationRequest(
+                to, subject, body, htmlBody, attachments, priority, sendAt, templateId, variables, recipientVariables
+        );
+    }
+
+    private static void writeString(Output out, int field, String value) {
+        if (value != null) {
+            out.writeByte(field);
+            out.writeString(value);
+        }
+    }
+
+    private static void writeVariables(Output out, Map<String, String> variables) {
+        if (variables == null) {
+            out.writeVarint(0);
+            return;
+        }
+        // Sizes are shifted by one so that a missing map is told apart from an empty one.
+        out.writeVarint(variables.size() + 1L);
+        variables.forEach((name, value) -> {
+            out.writeSymbol(name);
+            out.writeString(value);
+        });
+    }
+
+    private static Map<String, String> readVariables(Input in) {
+        int size = in.readCount();
+        if (size == 0) {
+            return null;
+        }
+        Map<String, String> variables = new LinkedHashMap<>((size - 1) * 2);
+        for (int i = 1; i < size; i++) {
+            variables.put(in.readSymbol(), in.readString());
+        }
+        return variables;
+    }
+
+    private static void writeAttachment(Output out, AttachmentRequest attachment) {
+        byte[] raw = null;
+        if (attachment.data() != null) {
+            try {
+                raw = Base64.getDecoder().decode(attachment.data());
+            } catch (IllegalArgumentException e) {
+                // Not valid Base64; carried as text so that the send fails the way it would have.
+            }
+        }
+        int flags = (attachment.data() != null ? ATTACHMENT_HAS_DATA : 0)
+                | (raw != null ? ATTACHMENT_RAW_DATA : 0)
+                | (attachment.ref() != null ? ATTACHMENT_HAS_REF : 0);
+        out.writeString(attachment.filename());
+        out.writeSymbol(attachment.contentType());
+        out.writeByte(flags);
+        if (raw != null) {
+            out.writeVarint(raw.length);
+            out.writeBytes(raw);
+        } else if (attachment.data() != null) {
+            out.writeString(attachment.data());
+        }
+        if (attachment.ref() != null) {
+            out.writeString(attachment.ref());
+        }
+    }
+
+    private static AttachmentRequest readAttachment(Input in) {
+        String filename = in.readString();
+        String contentType = in.readSymbol();
+        int flags = in.readByte();
+        String data = null;
+        if ((flags & ATTACHMENT_RAW_DATA) != 0) {
+            data = Base64.getEncoder().encodeToString(in.readBytes(in.readCount()));
+        } else if ((flags & ATTACHMENT_HAS_DATA) != 0) {
+            data = in.readString();
+        }
+        String ref = (flags & ATTACHMENT_HAS_REF) != 0 ? in.readString() : null;
+        return new AttachmentRequest(filename, contentType, data, ref);
+    }
+
+    /**
+     * A growable byte buffer with the writers for the format's primitives.
+     */
+    private static final class Output {
+        private final Map<String, Integer> symbols = new HashMap<>();
+        private byte[] buffer = new byte[256];
+        private int size;
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void writeVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        /**
+         * Writes a nullable string as its UTF-8 length plus one, or zero for {@code null}, and its bytes.
+         */
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1L);
+            writeBytes(bytes);
+        }
+
+        /**
+         * Writes a nullable string that is likely to repeat. Zero is {@code null}, an odd value
+         * refers back to an earlier symbol by index, and an even value is followed by a new one.
+         */
+        void writeSymbol(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            Integer index = symbols.get(value);
+            if (index != null) {
+                writeVarint(((long) index << 1) | 1L);
+                return;
+            }
+            symbols.put(value, symbols.size());
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint((bytes.length + 1L) << 1);
+            writeBytes(bytes);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+
+    /**
+     * Reads the format's primitives, checking every length against what is left of the message.
+     */
+    private static final class Input {
+        private final List<String> symbols = new ArrayList<>();
+        private final byte[] bytes;
+        private int position;
+
+        Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readByte() {
+            require(1);
+            return bytes[position++] & 0xFF;
+        }
+
+        byte[] readBytes(int length) {
+            require(length);
+            byte[] value = Arrays.copyOfRange(bytes, position, position + length);
+            position += length;
+            return value;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint at offset " + position);
+        }
+
+        /**
+         * Reads a size or length, which can never exceed the bytes left in the message.
+         */
+        int readCount() {
+            long count = readVarint();
+            if (count < 0 || count > bytes.length - position + 1L) {
+                throw new IllegalArgumentException("Invalid length " + count + " at offset " + position);
+            }
+            return (int) count;
+        }
+
+        String readString() {
+            int length = readCount();
+            return length == 0 ? null : readUtf8(length - 1);
+        }
+
+        String readSymbol() {
+            long value = readVarint();
+            if (value == 0) {
+                return null;
+            }
+            if ((value & 1L) != 0) {
+                long index = value >>> 1;
+                if (index >= symbols.size()) {
+                    throw new IllegalArgumentException("Unknown symbol " + index + " at offset " + position);
+                }
+                return symbols.get((int) index);
+            }
+            long length = (value >>> 1) - 1;
+            require(length);
+            String symbol = readUtf8((int) length);
+            symbols.add(symbol);
+            return symbol;
+        }
+
+        private String readUtf8(int length) {
+            require(length);
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private void require(long length) {
+            if (length < 0 || length > bytes.length - position) {
+                throw new IllegalArgumentException("Notification message is truncated at offset " + position);
+            }
+        }
+    }
+}
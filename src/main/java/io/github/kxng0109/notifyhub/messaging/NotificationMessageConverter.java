@@ -0,0 +1,51 @@
+package io.github.kxng0109.notifyhub.messaging;
+
+import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+/**
+ * Converts queue messages to and from either JSON or the compact {@link NotificationBinaryCodec}
+ * format, telling them apart by content type.
+ *
+ * Incoming messages are always read in the format their content type names, so JSON and binary
+ * messages can sit in the same queue while a rollout is under way. Outgoing notifications are
+ * written in binary only when it is switched on, and everything else is left to the JSON
+ * converter. Every instance must be able to read binary before any of them starts writing it.
+ */
+public class NotificationMessageConverter implements MessageConverter {
+    public static final String BINARY_CONTENT_TYPE = "application/x-notifyhub-notification";
+
+    private final MessageConverter jsonConverter;
+    private final boolean writeBinary;
+
+    public NotificationMessageConverter(MessageConverter jsonConverter, boolean writeBinary) {
+        this.jsonConverter = jsonConverter;
+        this.writeBinary = writeBinary;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) throws MessageConversionException {
+        if (!writeBinary || !(object instanceof NotificationRequest notificationRequest)) {
+            return jsonConverter.toMessage(object, messageProperties);
+        }
+        byte[] body = NotificationBinaryCodec.encode(notificationRequest);
+        messageProperties.setContentType(BINARY_CONTENT_TYPE);
+        messageProperties.setContentLength(body.length);
+        return new Message(body, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        if (!BINARY_CONTENT_TYPE.equals(message.getMessageProperties().getContentType())) {
+            return jsonConverter.fromMessage(message);
+        }
+        try {
+            return NotificationBinaryCodec.decode(message.getBody());
+        } catch (IllegalArgumentException e) {
+            throw new MessageConversionException("Failed to decode binary notification", e);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package io.github.kxng0109.notifyhub.messaging;
+
+import io.github.kxng0109.notifyhub.dto.NotificationPriority;
+import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.PRIORITY_ROUTING_KEY;
+import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.ROUTING_KEY;
+import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.SHARD_QUEUE_PREFIX;
+import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.SHARD_ROUTING_KEY_PREFIX;
+
+/**
+ * The layout of the sharded notification queues.
+ *
+ * With {@code notifyhub.rabbitmq.shards} above one, normal-priority notifications are spread over
+ * that many queues instead of the single {@code notifications_queue}, so the broker can run them
+ * on separate queue processes and the instances can share them out. The shard is picked by
+ * hashing the first recipient, so new notifications for the same recipient share a queue.
+ * High-priority notifications keep their own unsharded queue.
+ *
+ * Only new notifications are sharded. Retries and notifications released by the scheduler are
+ * delayed anyway and still go through {@code notifications_queue}, which stays consumed as before.
+ * Sharding therefore spreads the load but does not order a recipient's notifications: besides
+ * retries and releases taking another queue, each consumer has several deliveries prefetched and
+ * sends their chunks concurrently.
+ */
+@Component
+public class QueueShards {
+    private final int count;
+
+    public QueueShards(@Value("${notifyhub.rabbitmq.shards:0}") int count) {
+        this.count = Math.max(count, 1);
+    }
+
+    public boolean isEnabled() {
+        return count > 1;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    /**
+     * The routing key to publish a new notification with on the delayed exchange.
+     */
+    public String routingKeyFor(NotificationRequest notificationRequest) {
+        if (notificationRequest.priority() == NotificationPriority.HIGH) {
+            return PRIORITY_ROUTING_KEY;
+        }
+        return isEnabled() ? routingKey(shardOf(notificationRequest)) : ROUTING_KEY;
+    }
+
+    /**
+     * The shard a notification belongs to, going by its first recipient.
+     */
+    public int shardOf(NotificationRequest notificationRequest) {
+        List<String> to = notificationRequest.to();
+        if (to == null || to.isEmpty() || to.getFirst() == null) {
+            return 0;
+        }
+        return Math.floorMod(mix(to.getFirst().trim().toLowerCase(Locale.ROOT).hashCode()), count);
+    }
+
+    public List<String> queueNames() {
+        return IntStream.range(0, count).mapToObj(QueueShards::queueName).toList();
+    }
+
+    public static String queueName(int shard) {
+        return SHARD_QUEUE_PREFIX + shard;
+    }
+
+    public static String routingKey(int shard) {
+        return SHARD_ROUTING_KEY_PREFIX + shard;
+    }
+
+    /**
+     * Spreads a hash code over all bits (the MurmurHash3 finalizer), since {@link String#hashCode()}
+     * alone leaves similar addresses close together.
+     */
+    static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
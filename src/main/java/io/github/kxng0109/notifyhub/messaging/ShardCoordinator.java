@@ -0,0 +1,267 @@
+package io.github.kxng0109.notifyhub.messaging;
+
+import com.rabbitmq.client.Channel;
+import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+import io.github.kxng0109.notifyhub.resilience.SmtpCircuitBreaker;
+import io.github.kxng0109.notifyhub.service.NotificationConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.MethodRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.RabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.messaging.handler.annotation.support.DefaultMessageHandlerMethodFactory;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.SHARDED_LISTENER_ID;
+import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.SHARD_MEMBERS_EXCHANGE_NAME;
+
+/**
+ * Shares the {@link QueueShards} out between the running instances.
+ *
+ * Every {@code heartbeat-ms}, each instance announces itself on a fanout exchange and reads the
+ * announcements of the others from its own exclusive queue. Instances not heard from for
+ * {@code member-timeout-ms} are dropped, and an instance shutting down says so. Each shard is
+ * then owned by the instance that scores highest for it under rendezvous hashing, so all
+ * instances agree on the owners without talking to each other, and an instance joining or
+ * leaving only moves the shards it takes or gives up.
+ *
+ * The instance consumes the shards it owns through its own listener container,
+ * {@value io.github.kxng0109.notifyhub.config.RabbitMQConfig#SHARDED_LISTENER_ID}, which handles
+ * them like {@code notifications_queue}. Shard queues allow a single active consumer, so while
+ * ownership moves and two instances briefly subscribe to the same shard, the broker still hands
+ * its messages to only one of them. Deliveries the old owner had not acknowledged are delivered
+ * again to the new one, where the deduplication index skips those already sent.
+ */
+@Component
+public class ShardCoordinator implements RabbitListenerConfigurer, SmartLifecycle {
+    private static final Logger logger = LoggerFactory.getLogger(ShardCoordinator.class);
+    private static final String LEAVE = "leave";
+
+    private final QueueShards queueShards;
+    private final RabbitTemplate rabbitTemplate;
+    private final AmqpAdmin amqpAdmin;
+    private final RabbitListenerEndpointRegistry listenerRegistry;
+    private final RabbitListenerContainerFactory<?> containerFactory;
+    private final NotificationConsumer consumer;
+    private final SmtpCircuitBreaker circuitBreaker;
+    private final String nodeId;
+    private final long heartbeatMillis;
+    private final long memberTimeoutMillis;
+    private final Map<String, Long> members = new HashMap<>();
+    private final FanoutExchange membershipExchange = new FanoutExchange(SHARD_MEMBERS_EXCHANGE_NAME);
+    private final Queue membershipQueue = new AnonymousQueue();
+    private Set<Integer> owned = Set.of();
+    private boolean membershipDeclared;
+    private ScheduledExecutorService scheduler;
+    private volatile boolean running;
+
+    public ShardCoordinator(
+            QueueShards queueShards,
+            RabbitTemplate rabbitTemplate,
+            AmqpAdmin amqpAdmin,
+            RabbitListenerEndpointRegistry listenerRegistry,
+            @Qualifier("rabbitListenerContainerFactory") RabbitListenerContainerFactory<?> containerFactory,
+            NotificationConsumer consumer,
+            SmtpCircuitBreaker circuitBreaker,
+            @Value("${notifyhub.rabbitmq.shards.node-id:${random.uuid}}") String nodeId,
+            @Value("${notifyhub.rabbitmq.shards.heartbeat-ms:2000}") long heartbeatMillis,
+            @Value("${notifyhub.rabbitmq.shards.member-timeout-ms:10000}") long memberTimeoutMillis
+    ) {
+        this.queueShards = queueShards;
+        this.rabbitTemplate = rabbitTemplate;
+        this.amqpAdmin = amqpAdmin;
+        this.listenerRegistry = listenerRegistry;
+        this.containerFactory = containerFactory;
+        this.consumer = consumer;
+        this.circuitBreaker = circuitBreaker;
+        this.nodeId = nodeId;
+        this.heartbeatMillis = heartbeatMillis;
+        this.memberTimeoutMillis = memberTimeoutMillis;
+    }
+
+    /**
+     * Registers the listener container for the shard queues. It is not started until this
+     * instance knows which shards it owns.
+     */
+    @Override
+    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+        if (!queueShards.isEnabled()) {
+            return;
+        }
+        MethodRabbitListenerEndpoint endpoint = new MethodRabbitListenerEndpoint();
+        endpoint.setId(SHARDED_LISTENER_ID);
+        endpoint.setQueueNames(queueShards.queueNames().toArray(String[]::new));
+        endpoint.setAutoStartup(false);
+        endpoint.setBean(consumer);
+        try {
+            endpoint.setMethod(NotificationConsumer.class.getMethod(
+                    "handleNotification", NotificationRequest.class, Message.class, Channel.class));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("NotificationConsumer has no handleNotification listener method", e);
+        }
+        DefaultMessageHandlerMethodFactory handlerMethodFactory = new DefaultMessageHandlerMethodFactory();
+        handlerMethodFactory.afterPropertiesSet();
+        endpoint.setMessageHandlerMethodFactory(handlerMethodFactory);
+        registrar.registerEndpoint(endpoint, containerFactory);
+    }
+
+    @Override
+    public void start() {
+        if (!queueShards.isEnabled() || running) {
+            return;
+        }
+        running = true;
+        members.put(nodeId, System.currentTimeMillis());
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("shard-coordinator").daemon(true).factory());
+        // The first assignment waits one heartbeat, so that the instances already running are known.
+        scheduler.scheduleWithFixedDelay(this::tick, 0L, heartbeatMillis, TimeUnit.MILLISECONDS);
+        logger.info("Sharded consumption started for node {} over {} shards", nodeId, queueShards.count());
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            announce(LEAVE);
+        } catch (AmqpException e) {
+            logger.debug("Could not announce that node {} is leaving: {}", nodeId, e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // Started after, and stopped before, the listener containers.
+        return Integer.MAX_VALUE - 50;
+    }
+
+    private void tick() {
+        try {
+            if (!membershipDeclared) {
+                amqpAdmin.declareExchange(membershipExchange);
+                amqpAdmin.declareQueue(membershipQueue);
+                amqpAdmin.declareBinding(BindingBuilder.bind(membershipQueue).to(membershipExchange));
+                membershipDeclared = true;
+                announce(null);
+                return;
+            }
+            announce(null);
+            long now = System.currentTimeMillis();
+            Message announcement;
+            while ((announcement = rabbitTemplate.receive(membershipQueue.getName())) != null) {
+                String member = new String(announcement.getBody(), StandardCharsets.UTF_8);
+                if (LEAVE.equals(announcement.getMessageProperties().getType())) {
+                    members.remove(member);
+                } else {
+                    members.put(member, now);
+                }
+            }
+            members.put(nodeId, now);
+            members.values().removeIf(lastSeen -> now - lastSeen > memberTimeoutMillis);
+            rebalance(ownedShards(members.keySet(), nodeId, queueShards.count()));
+        } catch (AmqpException e) {
+            // The exclusive queue goes with the connection, so declare it again once it is back.
+            membershipDeclared = false;
+            logger.warn("Shard membership update failed: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            logger.error("Shard rebalance failed", e);
+        }
+    }
+
+    private void announce(String type) {
+        MessageProperties properties = new MessageProperties();
+        properties.setType(type);
+        rabbitTemplate.send(SHARD_MEMBERS_EXCHANGE_NAME, "",
+                            new Message(nodeId.getBytes(StandardCharsets.UTF_8), properties));
+    }
+
+    private void rebalance(Set<Integer> next) {
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(SHARDED_LISTENER_ID);
+        if (!(container instanceof AbstractMessageListenerContainer shardContainer)) {
+            return;
+        }
+        if (next.equals(owned)) {
+            // The circuit breaker may have restarted the container after this node gave up its shards.
+            if (next.isEmpty() && shardContainer.isRunning()) {
+                shardContainer.stop();
+            }
+            return;
+        }
+        logger.info("Node {} now owns shards {} of {} (was {}), with {} nodes",
+                    nodeId, next, queueShards.count(), owned, members.size());
+        owned = next;
+        if (next.isEmpty()) {
+            shardContainer.stop();
+            return;
+        }
+        shardContainer.setQueueNames(next.stream().map(QueueShards::queueName).toArray(String[]::new));
+        // Left to the circuit breaker to start while it holds the listeners stopped.
+        if (!shardContainer.isRunning() && circuitBreaker.allowsSend()) {
+            shardContainer.start();
+        }
+    }
+
+    /**
+     * The shards the node owns among the members: those for which it has the highest rendezvous
+     * score. Every member computes the same owners from the same membership.
+     */
+    static Set<Integer> ownedShards(Collection<String> members, String node, int shards) {
+        Set<Integer> owned = new TreeSet<>();
+        for (int shard = 0; shard < shards; shard++) {
+            long shardHash = QueueShards.mix(shard + 0x9E3779B97F4A7C15L);
+            String owner = null;
+            long best = Long.MIN_VALUE;
+            for (String member : members) {
+                long score = QueueShards.mix(QueueShards.mix(member.hashCode()) ^ shardHash);
+                if (owner == null || score > best || (score == best && member.compareTo(owner) < 0)) {
+                    owner = member;
+                    best = score;
+                }
+            }
+            if (node.equals(owner)) {
+                owned.add(shard);
+            }
+        }
+        return owned;
+    }
+}
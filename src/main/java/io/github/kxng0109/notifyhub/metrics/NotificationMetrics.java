@@ -0,0 +1,145 @@
+package io.github.kxng0109.notifyhub.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers for every stage a notification passes through, from the HTTP request to the SMTP
+ * server's reply, so that tail latency can be traced to the stage it comes from.
+ *
+ * Each stage is recorded as {@code notifyhub.notifications.stage{stage=...}}, and the whole
+ * journey, from acceptance to the final outcome of a send, as
+ * {@code notifyhub.notifications.end_to_end{outcome=...,retries=...}}. Both publish percentiles
+ * and histogram buckets. The saturation of the thread-pool executors is exported as
+ * {@code notifyhub.executor.saturation} (busy threads over maximum pool size) and
+ * {@code notifyhub.executor.queue.utilization} (queued tasks over queue capacity). Executors
+ * running on virtual threads have no pool to saturate and export neither.
+ */
+@Component
+public class NotificationMetrics {
+    private final MeterRegistry meterRegistry;
+    private final Map<Stage, Timer> stages = new EnumMap<>(Stage.class);
+    private final Map<String, Timer> endToEnd = new ConcurrentHashMap<>();
+
+    public NotificationMetrics(
+            MeterRegistry meterRegistry,
+            @Qualifier("rabbitmqPublisherExecutor") Executor publisherExecutor,
+            @Qualifier("emailSendingExecutor") Executor emailSendingExecutor,
+            @Qualifier("priorityEmailSendingExecutor") Executor priorityEmailSendingExecutor
+    ) {
+        this.meterRegistry = meterRegistry;
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, Timer.builder("notifyhub.notifications.stage")
+                                   .tag("stage", stage.tag)
+                                   .description("Time a notification spends in one stage of its delivery")
+                                   .publishPercentiles(0.5, 0.95, 0.99)
+                                   .publishPercentileHistogram()
+                                   .register(meterRegistry));
+        }
+        registerSaturation("rabbitmqPublisherExecutor", publisherExecutor);
+        registerSaturation("emailSendingExecutor", emailSendingExecutor);
+        registerSaturation("priorityEmailSendingExecutor", priorityEmailSendingExecutor);
+    }
+
+    private void registerSaturation(String name, Executor executor) {
+        if (!(executor instanceof ThreadPoolTaskExecutor pool)) {
+            return;
+        }
+        Gauge.builder("notifyhub.executor.saturation", pool,
+                      p -> (double) p.getActiveCount() / p.getMaxPoolSize())
+             .tag("executor", name)
+             .description("Busy threads as a fraction of the executor's maximum pool size")
+             .register(meterRegistry);
+        Gauge.builder("notifyhub.executor.queue.utilization", pool,
+                      p -> p.getQueueCapacity() > 0 ? (double) p.getQueueSize() / p.getQueueCapacity() : 0.0)
+             .tag("executor", name)
+             .description("Queued tasks as a fraction of the executor's queue capacity")
+             .register(meterRegistry);
+    }
+
+    public void record(Stage stage, long nanos) {
+        stages.get(stage).record(Math.max(0L, nanos), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a stage that started at {@code startNanos}, a value of {@link System#nanoTime()}.
+     */
+    public void recordSince(Stage stage, long startNanos) {
+        record(stage, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * The given percentile of a stage's recent latency, in milliseconds. Like the exported
+     * percentiles, it covers a rolling window of the last couple of minutes, and is zero when
+     * nothing was recorded in it. Returns {@code NaN} for a percentile that is not published.
+     *
+     * @param stage the stage to read
+     * @param percentile one of the published percentiles: 0.5, 0.95 or 0.99
+     */
+    public double percentile(Stage stage, double percentile) {
+        for (ValueAtPercentile value : stages.get(stage).takeSnapshot().percentileValues()) {
+            if (value.percentile() == percentile) {
+                return value.value(TimeUnit.MILLISECONDS);
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Records the time from acceptance to the final outcome of one send attempt.
+     *
+     * @param outcome what became of the attempt
+     * @param retryCount how many retries preceded it
+     * @param acceptedAtMillis when the notification was accepted, in epoch milliseconds
+     */
+    public void recordEndToEnd(Outcome outcome, int retryCount, long acceptedAtMillis) {
+        Timer timer = endToEnd.computeIfAbsent(outcome.tag + ':' + retryCount, key ->
+                Timer.builder("notifyhub.notifications.end_to_end")
+                     .tag("outcome", outcome.tag)
+                     .tag("retries", Integer.toString(retryCount))
+                     .description("Time from accepting a notification to the outcome of a send attempt")
+                     .publishPercentiles(0.5, 0.95, 0.99)
+                     .publishPercentileHistogram()
+                     .register(meterRegistry));
+        timer.record(Math.max(0L, System.currentTimeMillis() - acceptedAtMillis), TimeUnit.MILLISECONDS);
+    }
+
+    public enum Stage {
+        /** Validating the HTTP request and handing it to the producer. */
+        ACCEPT,
+        /** Waiting on the publisher executor before being published. */
+        PUBLISH_QUEUE,
+        /** Publishing to the broker, until its confirm arrives, including republishes. */
+        BROKER_PUBLISH,
+        /** Sitting in the queue, from being enqueued (or becoming due) until delivered to a consumer. */
+        BROKER_DWELL,
+        /** Waiting on the email executor before being sent. */
+        EMAIL_QUEUE,
+        /** Building and encoding the MIME message. */
+        MIME_BUILD,
+        /** Handing the message to the SMTP server, until it replies. */
+        SMTP_SEND;
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    public enum Outcome {
+        SENT,
+        RETRIED,
+        FAILED;
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+    }
+}
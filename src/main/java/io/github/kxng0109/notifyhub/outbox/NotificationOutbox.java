@@ -0,0 +1,194 @@
+package io.github.kxng0109.notifyhub.outbox;
+
+import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+import io.github.kxng0109.notifyhub.messaging.NotificationBinaryCodec;
+import io.github.kxng0109.notifyhub.service.PublishOutcome;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A local write-ahead outbox for accepted notifications.
+ *
+ * With {@code notifyhub.outbox.enabled}, a notification is accepted once it has been appended to
+ * an {@link OutboxLog} on local disk, which takes an fsync shared with every other request
+ * appended at the same time, rather than once a publisher thread has handed it to the broker.
+ * The {@link OutboxRelay} drains the outbox to the broker in batches and confirms the entries as
+ * their publisher confirms arrive. Accepting requests therefore keeps its latency while the broker
+ * is slow or down; the outbox grows instead, up to {@code notifyhub.outbox.max-bytes}.
+ *
+ * Entries are published at least once. Entries published just before a crash, whose confirms
+ * had not been checkpointed yet, are published again after the restart. An entry the broker keeps
+ * refusing is given up after {@code notifyhub.outbox.max-attempts}, so that it does not hold up
+ * the entries behind it.
+ *
+ * The outbox has to be given its own directory with {@code notifyhub.outbox.dir}. It holds
+ * notifications that were already acknowledged to clients, so it must not live somewhere that
+ * is cleared on reboot, such as the temporary directory.
+ */
+@Component
+public class NotificationOutbox implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(NotificationOutbox.class);
+
+    private final OutboxLog log;
+    private final Map<String, CompletableFuture<PublishOutcome>> waiting = new ConcurrentHashMap<>();
+
+    public NotificationOutbox(
+            MeterRegistry meterRegistry,
+            @Value("${notifyhub.outbox.enabled:false}") boolean enabled,
+            @Value("${notifyhub.outbox.dir:}") String directory,
+            @Value("${notifyhub.outbox.segment-bytes:67108864}") int segmentBytes,
+            @Value("${notifyhub.outbox.max-bytes:1073741824}") long maxBytes,
+            @Value("${notifyhub.outbox.fsync:true}") boolean fsync
+    ) throws IOException {
+        if (enabled && !StringUtils.hasText(directory)) {
+            throw new IllegalStateException("notifyhub.outbox.dir must be set when the outbox is enabled");
+        }
+        this.log = enabled ? new OutboxLog(Path.of(directory), segmentBytes, maxBytes, fsync) : null;
+        if (enabled) {
+            Gauge.builder("notifyhub.outbox.pending", log, OutboxLog::pendingRecords)
+                 .description("Notifications in the outbox that the broker has not confirmed yet")
+                 .register(meterRegistry);
+            Gauge.builder("notifyhub.outbox.size", log, OutboxLog::sizeBytes)
+                 .baseUnit("bytes")
+                 .description("Disk space taken by the outbox segments")
+                 .register(meterRegistry);
+        }
+    }
+
+    public boolean isEnabled() {
+        return log != null;
+    }
+
+    /**
+     * Durably appends a notification to the outbox. Returns once it is on disk.
+     *
+     * @param notificationId the ID to publish the notification with
+     * @param acceptedAtMillis when the notification was accepted, in epoch milliseconds
+     * @param request the notification
+     * @return a future that completes once the relay has published the notification
+     * @throws IOException if the notification could not be written, for example because the outbox is full
+     */
+    public CompletableFuture<PublishOutcome> append(
+            String notificationId,
+            long acceptedAtMillis,
+            NotificationRequest request
+    ) throws IOException {
+        CompletableFuture<PublishOutcome> outcome = new CompletableFuture<>();
+        // Registered first, because the relay may publish the entry before append returns.
+        waiting.put(notificationId, outcome);
+        try {
+            log.awaitDurable(log.append(encode(notificationId, acceptedAtMillis, request)));
+        } catch (IOException e) {
+            waiting.remove(notificationId);
+            throw e;
+        }
+        return outcome;
+    }
+
+    OutboxLog.Position start() {
+        return log.start();
+    }
+
+    /**
+     * Reads the next entries from the position, waiting up to {@code idleMillis} if there are none.
+     */
+    Batch read(OutboxLog.Position position, int max, long idleMillis) throws InterruptedException {
+        OutboxLog.Batch batch = log.read(position, max);
+        if (batch.records().isEmpty()) {
+            log.awaitAppend(position, idleMillis);
+            batch = log.read(position, max);
+        }
+        List<OutboxEntry> entries = new ArrayList<>(batch.records().size());
+        for (OutboxLog.LogRecord record : batch.records()) {
+            try {
+                entries.add(decode(record));
+            } catch (IOException | IllegalArgumentException e) {
+                // Skipped, and confirmed along with the entries after it.
+                logger.error("Dropping unreadable outbox entry {}", record.sequence(), e);
+            }
+        }
+        long lastSequence = batch.records().isEmpty() ? 0L : batch.records().getLast().sequence();
+        return new Batch(entries, batch.next(), lastSequence);
+    }
+
+    /**
+     * Confirms every entry up to and including the given one, and completes the futures of the
+     * published entries.
+     */
+    void confirm(List<OutboxEntry> published, long throughSequence) throws IOException {
+        for (OutboxEntry entry : published) {
+            CompletableFuture<PublishOutcome> outcome = waiting.remove(entry.notificationId());
+            if (outcome != null) {
+                outcome.complete(PublishOutcome.accepted(entry.notificationId()));
+            }
+        }
+        log.confirm(throughSequence);
+    }
+
+    /**
+     * Completes the future of an entry that is being given up as failed. The entry itself is
+     * confirmed along with the entries after it.
+     */
+    void fail(OutboxEntry entry, String reason) {
+        CompletableFuture<PublishOutcome> outcome = waiting.remove(entry.notificationId());
+        if (outcome != null) {
+            outcome.complete(PublishOutcome.failed(entry.notificationId(), reason));
+        }
+    }
+
+    private static byte[] encode(String notificationId, long acceptedAtMillis, NotificationRequest request)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(notificationId);
+            out.writeLong(acceptedAtMillis);
+            out.write(NotificationBinaryCodec.encode(request));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static OutboxEntry decode(OutboxLog.LogRecord record) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.payload()))) {
+            String notificationId = in.readUTF();
+            long acceptedAtMillis = in.readLong();
+            NotificationRequest request = NotificationBinaryCodec.decode(in.readAllBytes());
+            return new OutboxEntry(record.sequence(), notificationId, acceptedAtMillis, request);
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    /**
+     * Entries read from the outbox, where the next read continues, and
+     * the sequence of the last record read, or zero if none was.
+     */
+    record Batch(
+            List<OutboxEntry> entries,
+            OutboxLog.Position next,
+            long lastSequence
+    ) {
+    }
+}
@@ -0,0 +1,14 @@
+package io.github.kxng0109.notifyhub.outbox;
+
+import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+
+/**
+ * A notification accepted into the outbox and waiting to be published.
+ *
+ * @param sequence the position of the entry in the outbox
+ * @param notificationId the ID the notification is published with
+ * @param acceptedAtMillis when the notification was accepted, in epoch milliseconds
+ * @param request the notification
+ */
+public record OutboxEntry(long sequence, String notificationId, long acceptedAtMillis, NotificationRequest request) {
+}
@@ -0,0 +1,428 @@
+package io.github.kxng0109.notifyhub.outbox;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only log of byte records, kept in fixed-size memory-mapped segment files.
+ *
+ * Every record is written as its length, a CRC32C checksum, a sequence number and the payload.
+ * Appending only copies into the mapped segment; making it durable is left to a flusher thread
+ * that forces the dirty segments to disk and then wakes every appender waiting for a record it
+ * covered. Appenders arriving while a flush is running are covered by the next one, so under load
+ * a single fsync commits a whole group of records. When a record does not fit into the current
+ * segment, a new segment is started.
+ *
+ * Records are read back in order by a single reader, which reports how far they have been
+ * confirmed. Segments whose records are all confirmed are deleted, and the confirmed sequence is
+ * kept in a checkpoint file so that a restart does not hand them out again. On startup the
+ * segments are scanned; a record cut short by a crash fails its checksum and ends the segment.
+ */
+final class OutboxLog implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(OutboxLog.class);
+    private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String CHECKPOINT = "checkpoint";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long maxBytes;
+    private final boolean fsync;
+    private final FileChannel checkpoint;
+    private final List<Segment> segments = new ArrayList<>();
+    private final Thread flusher;
+    private Segment current;
+    private long lastSequence;
+    private long durableSequence;
+    private long confirmedSequence;
+    private boolean closed;
+
+    /**
+     * Opens the log in the directory, recovering the records already in it.
+     *
+     * @param directory where the segments and checkpoint are kept
+     * @param segmentBytes the size of each segment file
+     * @param maxBytes the most disk space all segments together may take; appends fail beyond it
+     * @param fsync whether appends wait until their record has been forced to disk
+     */
+    OutboxLog(Path directory, int segmentBytes, long maxBytes, boolean fsync) throws IOException {
+        if (segmentBytes <= HEADER_BYTES) {
+            throw new IllegalArgumentException("segmentBytes must be larger than " + HEADER_BYTES);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = Math.max(maxBytes, segmentBytes);
+        this.fsync = fsync;
+        Files.createDirectories(directory);
+        this.checkpoint = FileChannel.open(directory.resolve(CHECKPOINT), StandardOpenOption.CREATE,
+                                           StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recover();
+        if (fsync) {
+            this.flusher = Thread.ofPlatform().name("outbox-flusher").daemon(true).start(this::flushLoop);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    /**
+     * Appends a record and returns its sequence number. The record may not be durable yet; see
+     * {@link #awaitDurable(long)}.
+     *
+     * @throws IOException if the record does not fit into a segment, the log is full or closed
+     */
+    long append(byte[] payload) throws IOException {
+        int size = HEADER_BYTES + payload.length;
+        if (payload.length == 0 || size > segmentBytes) {
+            throw new IOException("Outbox record of " + payload.length + " bytes does not fit into a segment");
+        }
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Outbox is closed");
+            }
+            if (current.writeOffset + size > current.capacity()) {
+                roll();
+            }
+            long sequence = ++lastSequence;
+            MappedByteBuffer buffer = current.buffer;
+            int offset = current.writeOffset;
+            buffer.putLong(offset + 2 * Integer.BYTES, sequence);
+            buffer.put(offset + HEADER_BYTES, payload);
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(offset + 2 * Integer.BYTES, Long.BYTES + payload.length));
+            buffer.putInt(offset + Integer.BYTES, (int) crc.getValue());
+            // The length goes last: a zero length marks the end of the segment.
+            buffer.putInt(offset, payload.length);
+            current.writeOffset += size;
+            current.lastSequence = sequence;
+            if (current.firstSequence == 0) {
+                current.firstSequence = sequence;
+            }
+            current.dirty = true;
+            notifyAll();
+            return sequence;
+        }
+    }
+
+    /**
+     * Blocks until the record has been forced to disk. Returns at once when fsync is disabled.
+     */
+    synchronized void awaitDurable(long sequence) throws IOException {
+        if (!fsync) {
+            return;
+        }
+        try {
+            while (durableSequence < sequence) {
+                if (closed) {
+                    throw new IOException("Outbox closed before record " + sequence + " was flushed");
+                }
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the outbox to flush");
+        }
+    }
+
+    /**
+     * Blocks until a record has been appended at or after the position, or the timeout passes.
+     */
+    synchronized void awaitAppend(Position position, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (!closed && current == position.segment() && current.writeOffset <= position.offset() && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * The position of the first record that has not been confirmed yet.
+     */
+    synchronized Position start() {
+        Position position = new Position(segments.getFirst(), 0);
+        while (true) {
+            Batch batch = read(position, 1024);
+            for (LogRecord record : batch.records()) {
+                if (record.sequence() > confirmedSequence) {
+                    return record.position();
+                }
+            }
+            if (batch.records().isEmpty()) {
+                return batch.next();
+            }
+            position = batch.next();
+        }
+    }
+
+    /**
+     * Reads up to {@code max} records from the position. Only the log's single reader may call this.
+     */
+    Batch read(Position from, int max) {
+        Segment last;
+        int lastEnd;
+        List<Segment> snapshot;
+        synchronized (this) {
+            last = current;
+            lastEnd = current.writeOffset;
+            snapshot = List.copyOf(segments);
+        }
+        List<LogRecord> records = new ArrayList<>(Math.min(max, 1024));
+        Segment segment = from.segment();
+        int offset = from.offset();
+        while (records.size() < max) {
+            int end = segment == last ? lastEnd : segment.writeOffset;
+            if (offset >= end) {
+                if (segment == last) {
+                    break;
+                }
+                // A segment that is no longer in the log was fully confirmed and deleted.
+                int index = snapshot.indexOf(segment);
+                segment = snapshot.get(index + 1);
+                offset = 0;
+                continue;
+            }
+            int length = segment.buffer.getInt(offset);
+            long sequence = segment.buffer.getLong(offset + 2 * Integer.BYTES);
+            byte[] payload = new byte[length];
+            segment.buffer.get(offset + HEADER_BYTES, payload);
+            records.add(new LogRecord(sequence, payload, new Position(segment, offset)));
+            offset += HEADER_BYTES + length;
+        }
+        return new Batch(records, new Position(segment, offset));
+    }
+
+    /**
+     * Marks every record up to {@code sequence} as confirmed, deleting the segments they filled.
+     */
+    void confirm(long sequence) throws IOException {
+        List<Segment> released = new ArrayList<>();
+        synchronized (this) {
+            if (sequence <= confirmedSequence) {
+                return;
+            }
+            confirmedSequence = sequence;
+            while (segments.size() > 1 && segments.getFirst().lastSequence <= sequence) {
+                released.add(segments.removeFirst());
+            }
+            // Not forced: losing the checkpoint only means confirmed records are published again.
+            checkpoint.write(ByteBuffer.allocate(Long.BYTES).putLong(0, sequence), 0L);
+        }
+        for (Segment segment : released) {
+            Files.deleteIfExists(segment.file);
+            logger.debug("Deleted outbox segment {}", segment.file.getFileName());
+        }
+    }
+
+    synchronized long pendingRecords() {
+        return lastSequence - confirmedSequence;
+    }
+
+    synchronized long sizeBytes() {
+        return (long) segments.size() * segmentBytes;
+    }
+
+    private void roll() throws IOException {
+        if (sizeBytes() + segmentBytes > maxBytes) {
+            throw new IOException("Outbox is full at " + maxBytes + " bytes");
+        }
+        current = Segment.create(directory.resolve(segmentName(lastSequence + 1)), segmentBytes);
+        segments.add(current);
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long target;
+            List<Segment> dirty = new ArrayList<>();
+            synchronized (this) {
+                try {
+                    while (!closed && durableSequence == lastSequence) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+                target = lastSequence;
+                for (Segment segment : segments) {
+                    if (segment.dirty) {
+                        segment.dirty = false;
+                        dirty.add(segment);
+                    }
+                }
+            }
+            try {
+                for (Segment segment : dirty) {
+                    segment.buffer.force();
+                }
+            } catch (RuntimeException e) {
+                logger.error("Failed to flush the outbox, trying again", e);
+                synchronized (this) {
+                    dirty.forEach(segment -> segment.dirty = true);
+                }
+                try {
+                    Thread.sleep(100L);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                continue;
+            }
+            synchronized (this) {
+                durableSequence = target;
+                notifyAll();
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        if (checkpoint.size() >= Long.BYTES) {
+            ByteBuffer value = ByteBuffer.allocate(Long.BYTES);
+            checkpoint.read(value, 0L);
+            confirmedSequence = value.getLong(0);
+        }
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        for (Path file : files) {
+            Segment segment = Segment.open(file);
+            scan(segment);
+            if (segment.firstSequence == 0) {
+                Files.delete(file);
+                continue;
+            }
+            lastSequence = Math.max(lastSequence, segment.lastSequence);
+            segments.add(segment);
+        }
+        // Fully confirmed segments left over from before a crash.
+        while (segments.size() > 1 && segments.getFirst().lastSequence <= confirmedSequence) {
+            Files.deleteIfExists(segments.removeFirst().file);
+        }
+        lastSequence = Math.max(lastSequence, confirmedSequence);
+        if (segments.isEmpty()) {
+            segments.add(Segment.create(directory.resolve(segmentName(lastSequence + 1)), segmentBytes));
+        }
+        current = segments.getLast();
+        clearTail(current);
+        durableSequence = lastSequence;
+        if (lastSequence > confirmedSequence) {
+            logger.info("Recovered {} unconfirmed notifications from the outbox in {}",
+                        lastSequence - confirmedSequence, directory);
+        }
+    }
+
+    /**
+     * Finds the end of the valid records in a segment.
+     */
+    private static void scan(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        while (offset + HEADER_BYTES <= segment.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || length > segment.capacity() - offset - HEADER_BYTES) {
+                break;
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(offset + 2 * Integer.BYTES, Long.BYTES + length));
+            if ((int) crc.getValue() != buffer.getInt(offset + Integer.BYTES)) {
+                logger.warn("Outbox segment {} has a torn record at offset {}", segment.file.getFileName(), offset);
+                break;
+            }
+            long sequence = buffer.getLong(offset + 2 * Integer.BYTES);
+            if (segment.firstSequence == 0) {
+                segment.firstSequence = sequence;
+            }
+            segment.lastSequence = sequence;
+            offset += HEADER_BYTES + length;
+        }
+        segment.writeOffset = offset;
+    }
+
+    /**
+     * Clears whatever follows the last valid record of the segment appends go to, so that no
+     * stale bytes behind a torn record can be mistaken for a record once new ones are written.
+     */
+    private static void clearTail(Segment segment) {
+        for (int i = segment.writeOffset; i < segment.capacity(); i++) {
+            if (segment.buffer.get(i) != 0) {
+                segment.buffer.put(i, (byte) 0);
+            }
+        }
+    }
+
+    private static String segmentName(long firstSequence) {
+        return String.format("%020d%s", firstSequence, SEGMENT_SUFFIX);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        notifyAll();
+        if (flusher != null) {
+            flusher.interrupt();
+        }
+        for (Segment segment : segments) {
+            if (segment.dirty) {
+                segment.buffer.force();
+            }
+        }
+        checkpoint.close();
+    }
+
+    /**
+     * Where a record starts in the log.
+     */
+    record Position(Segment segment, int offset) {
+    }
+
+    record LogRecord(long sequence, byte[] payload, Position position) {
+    }
+
+    record Batch(List<LogRecord> records, Position next) {
+    }
+
+    static final class Segment {
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private int writeOffset;
+        private long firstSequence;
+        private long lastSequence;
+        private boolean dirty;
+
+        private Segment(Path file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path file, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                                                        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0L, size));
+            }
+        }
+
+        static Segment open(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0L, channel.size()));
+            }
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package io.github.kxng0109.notifyhub.outbox;
+
+import io.github.kxng0109.notifyhub.service.NotificationProducer;
+import io.github.kxng0109.notifyhub.service.PublishOutcome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains the {@link NotificationOutbox} to the broker.
+ *
+ * A single thread reads the outbox in order, publishes up to {@code notifyhub.outbox.batch-size}
+ * entries at a time through {@link NotificationProducer#publishFromOutbox} and waits for their
+ * outcomes. Entries are confirmed in the outbox up to the first one the broker did not accept.
+ * The relay then backs off, starting at {@code notifyhub.outbox.retry-interval-ms} and doubling up
+ * to {@code notifyhub.outbox.max-retry-interval-ms}, and publishes only the entries of the batch
+ * that were not accepted yet. An entry that has failed {@code notifyhub.outbox.max-attempts}
+ * times is given up: its outcome completes as failed, it is logged, and the relay confirms past
+ * it, so a single poison entry cannot hold up the outbox.
+ */
+@Component
+public class OutboxRelay implements SmartLifecycle {
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+    private static final long IDLE_WAIT_MILLIS = 500L;
+
+    private final NotificationOutbox outbox;
+    private final NotificationProducer producer;
+    private final int batchSize;
+    private final long retryIntervalMillis;
+    private final long maxRetryIntervalMillis;
+    private final int maxAttempts;
+    private volatile boolean running;
+    private Thread worker;
+
+    public OutboxRelay(
+            NotificationOutbox outbox,
+            NotificationProducer producer,
+            @Value("${notifyhub.outbox.batch-size:500}") int batchSize,
+            @Value("${notifyhub.outbox.retry-interval-ms:1000}") long retryIntervalMillis,
+            @Value("${notifyhub.outbox.max-retry-interval-ms:60000}") long maxRetryIntervalMillis,
+            @Value("${notifyhub.outbox.max-attempts:10}") int maxAttempts
+    ) {
+        this.outbox = outbox;
+        this.producer = producer;
+        this.batchSize = Math.max(1, batchSize);
+        this.retryIntervalMillis = retryIntervalMillis;
+        this.maxRetryIntervalMillis = Math.max(retryIntervalMillis, maxRetryIntervalMillis);
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    @Override
+    public void start() {
+        if (!outbox.isEnabled() || running) {
+            return;
+        }
+        running = true;
+        worker = Thread.ofPlatform().name("outbox-relay").daemon(true).start(this::relay);
+        logger.info("Outbox relay started with batchSize={}", batchSize);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            worker = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void relay() {
+        OutboxLog.Position position = outbox.start();
+        while (running) {
+            try {
+                NotificationOutbox.Batch batch = outbox.read(position, batchSize, IDLE_WAIT_MILLIS);
+                if (batch.lastSequence() == 0L) {
+                    continue;
+                }
+                drain(batch);
+                position = batch.next();
+            } catch (InterruptedException e) {
+                if (running) {
+                    Thread.currentThread().interrupt();
+                    logger.warn("Outbox relay interrupted");
+                }
+                return;
+            } catch (Exception e) {
+                logger.error("Outbox relay failed, retrying in {}ms", retryIntervalMillis, e);
+                try {
+                    Thread.sleep(retryIntervalMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Publishes the batch until every entry has been accepted or given up, and confirms it.
+     * After each round, the outbox is confirmed up to the first entry that still has to be
+     * published again.
+     */
+    private void drain(NotificationOutbox.Batch batch) throws IOException, InterruptedException {
+        List<OutboxEntry> unsettled = batch.entries();
+        Map<Long, Integer> attempts = new HashMap<>();
+        long pause = retryIntervalMillis;
+        while (true) {
+            List<OutboxEntry> accepted = new ArrayList<>();
+            List<OutboxEntry> retry = new ArrayList<>();
+            List<CompletableFuture<PublishOutcome>> outcomes =
+                    unsettled.isEmpty() ? List.of() : producer.publishFromOutbox(unsettled);
+            for (int i = 0; i < outcomes.size(); i++) {
+                OutboxEntry entry = unsettled.get(i);
+                PublishOutcome outcome = outcomes.get(i).join();
+                if (outcome.accepted()) {
+                    accepted.add(entry);
+                } else if (attempts.merge(entry.sequence(), 1, Integer::sum) >= maxAttempts) {
+                    logger.error("Giving up on outbox entry {} after {} attempts ({}): {}",
+                                 entry.notificationId(), maxAttempts, outcome.failureReason(), entry.request());
+                    outbox.fail(entry, outcome.failureReason());
+                } else {
+                    retry.add(entry);
+                }
+            }
+            if (retry.isEmpty()) {
+                outbox.confirm(accepted, batch.lastSequence());
+                return;
+            }
+            outbox.confirm(accepted, retry.getFirst().sequence() - 1);
+            logger.warn("{} outbox entries were not published, retrying in {}ms", retry.size(), pause);
+            Thread.sleep(pause);
+            pause = Math.min(maxRetryIntervalMillis, pause * 2);
+            unsettled = retry;
+        }
+    }
+}
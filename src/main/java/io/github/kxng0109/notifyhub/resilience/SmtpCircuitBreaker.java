@@ -0,0 +1,239 @@
+package io.github.kxng0109.notifyhub.resilience;
+
+import io.github.kxng0109.notifyhub.mail.RoutingJavaMailSender;
+import io.github.kxng0109.notifyhub.mail.SmtpReplyCodes;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A circuit breaker around the SMTP server that pauses consumption instead of letting every
+ * queued notification fail and come back as a retry.
+ *
+ * While {@link State#CLOSED}, the outcome of every send is kept in a sliding window of the last
+ * {@code window-size} sends. Only failures that mean the server itself is unavailable count as
+ * failures; a rejected recipient or message says nothing about the server's health. Once at
+ * least {@code minimum-calls} outcomes are known and the failure rate reaches the threshold, the
+ * breaker opens and stops the email listener containers, so the remaining notifications stay in
+ * their queue untouched and keep their retries.
+ *
+ * After {@code open-duration-ms} the breaker probes the server with a single connection, or one
+ * per relay when routing across several. If the probe fails, it stays open for another period.
+ * If it succeeds, the breaker goes {@link State#HALF_OPEN}, restarts the containers and judges
+ * the next {@code half-open-calls} sends: it closes if their failure rate stays below the
+ * threshold and opens again otherwise.
+ *
+ * Containers are stopped and started on the breaker's own thread, never on a listener or worker
+ * thread, because stopping a container waits for its consumers to finish.
+ */
+@Component
+public class SmtpCircuitBreaker implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(SmtpCircuitBreaker.class);
+
+    private final RabbitListenerEndpointRegistry listenerRegistry;
+    private final List<String> listenerIds;
+    private final ConnectionProbe probe;
+    private final boolean enabled;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openDurationMillis;
+    private final int halfOpenCalls;
+    private final ScheduledExecutorService scheduler;
+
+    private final boolean[] window;
+    private int windowPosition;
+    private int windowCount;
+    private int windowFailures;
+    private volatile State state = State.CLOSED;
+
+    public SmtpCircuitBreaker(
+            RabbitListenerEndpointRegistry listenerRegistry,
+            JavaMailSender mailSender,
+            MeterRegistry meterRegistry,
+            @Value("${notifyhub.mail.circuit.enabled:true}") boolean enabled,
+            @Value("${notifyhub.mail.circuit.listener-ids:notifications,notifications-priority,notifications-sharded}") List<String> listenerIds,
+            @Value("${notifyhub.mail.circuit.window-size:50}") int windowSize,
+            @Value("${notifyhub.mail.circuit.minimum-calls:20}") int minimumCalls,
+            @Value("${notifyhub.mail.circuit.failure-rate-threshold:50}") double failureRateThreshold,
+            @Value("${notifyhub.mail.circuit.open-duration-ms:30000}") long openDurationMillis,
+            @Value("${notifyhub.mail.circuit.half-open-calls:5}") int halfOpenCalls
+    ) {
+        this.listenerRegistry = listenerRegistry;
+        this.listenerIds = List.copyOf(listenerIds);
+        this.probe = switch (mailSender) {
+            case RoutingJavaMailSender sender -> sender::testConnection;
+            case JavaMailSenderImpl sender -> sender::testConnection;
+            default -> () -> { };
+        };
+        this.enabled = enabled;
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.clamp(minimumCalls, 1, window.length);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationMillis = openDurationMillis;
+        this.halfOpenCalls = Math.clamp(halfOpenCalls, 1, window.length);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("smtp-circuit-breaker").daemon(true).factory());
+
+        for (State candidate : State.values()) {
+            Gauge.builder("notifyhub.mail.circuit.state", this, breaker -> breaker.state == candidate ? 1 : 0)
+                 .tag("state", candidate.name().toLowerCase(Locale.ROOT))
+                 .description("1 for the state the SMTP circuit breaker is currently in, 0 otherwise")
+                 .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Whether a send may be attempted now. Sends are refused only while the breaker is open.
+     */
+    public boolean allowsSend() {
+        return !enabled || state != State.OPEN;
+    }
+
+    /**
+     * Whether sends are being judged normally. When this is {@code false}, a failed send should
+     * be returned to its queue rather than retried, since the failure is the outage's and not
+     * the notification's.
+     */
+    public boolean isClosed() {
+        return !enabled || state == State.CLOSED;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * How long the breaker stays open before probing, for callers that have to defer work until then.
+     */
+    public long getOpenDurationMillis() {
+        return openDurationMillis;
+    }
+
+    /**
+     * Records a successful send.
+     */
+    public void recordSuccess() {
+        record(false);
+    }
+
+    /**
+     * Records a failed send. Only failures that show the server is unavailable count against
+     * it; anything else is recorded as a success, since the server did answer.
+     */
+    public void recordFailure(Throwable error) {
+        record(SmtpReplyCodes.isServerUnavailable(error));
+    }
+
+    private void record(boolean failed) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (window) {
+            if (state == State.OPEN) {
+                return;
+            }
+            int size = state == State.HALF_OPEN ? halfOpenCalls : window.length;
+            if (windowCount == size && window[windowPosition]) {
+                windowFailures--;
+            }
+            window[windowPosition] = failed;
+            windowPosition = (windowPosition + 1) % size;
+            windowCount = Math.min(size, windowCount + 1);
+            if (failed) {
+                windowFailures++;
+            }
+
+            int required = state == State.HALF_OPEN ? halfOpenCalls : minimumCalls;
+            if (windowCount < required) {
+                return;
+            }
+            double failureRate = windowFailures * 100.0 / windowCount;
+            if (failureRate >= failureRateThreshold) {
+                logger.warn("SMTP failure rate is {}% over the last {} sends, opening the circuit.",
+                            Math.round(failureRate), windowCount);
+                transition(State.OPEN);
+                scheduler.execute(this::stopListeners);
+                scheduler.schedule(this::probe, openDurationMillis, TimeUnit.MILLISECONDS);
+            } else if (state == State.HALF_OPEN) {
+                logger.info("SMTP probe sends succeeded, closing the circuit.");
+                transition(State.CLOSED);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the server accepts connections again and, if so, lets limited traffic through.
+     */
+    private void probe() {
+        try {
+            probe.connect();
+        } catch (Exception e) {
+            logger.warn("SMTP probe failed, keeping the circuit open for another {}ms: {}",
+                        openDurationMillis, e.getMessage());
+            scheduler.schedule(this::probe, openDurationMillis, TimeUnit.MILLISECONDS);
+            return;
+        }
+        logger.info("SMTP probe connected, half-opening the circuit.");
+        synchronized (window) {
+            transition(State.HALF_OPEN);
+        }
+        startListeners();
+    }
+
+    private void transition(State next) {
+        state = next;
+        windowPosition = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+
+    private void stopListeners() {
+        for (String id : listenerIds) {
+            MessageListenerContainer container = listenerRegistry.getListenerContainer(id);
+            if (container != null && container.isRunning()) {
+                container.stop();
+                logger.info("Stopped listener container {} while the SMTP circuit is open.", id);
+            }
+        }
+    }
+
+    private void startListeners() {
+        for (String id : listenerIds) {
+            MessageListenerContainer container = listenerRegistry.getListenerContainer(id);
+            if (container != null && !container.isRunning()) {
+                container.start();
+                logger.info("Restarted listener container {}.", id);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    @FunctionalInterface
+    interface ConnectionProbe {
+        void connect() throws Exception;
+    }
+}
@@ -0,0 +1,14 @@
+package io.github.kxng0109.notifyhub.resilience;
+
+/**
+ * Thrown in place of sending, or of retrying a failed send, while the {@link SmtpCircuitBreaker} is not closed.
+ */
+public class SmtpCircuitOpenException extends RuntimeException {
+    public SmtpCircuitOpenException() {
+        super("SMTP circuit is open");
+    }
+
+    public SmtpCircuitOpenException(Throwable cause) {
+        super("SMTP circuit is open", cause);
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.kxng0109.notifyhub.scheduling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * A hierarchical timing wheel: each level is a ring of buckets, each bucket covering one tick of
+ * that level. Entries too far in the future for a level go to the next, coarser level, whose
+ * tick is the whole span of the level below. When time reaches a coarse bucket, its entries are
+ * handed back to be added again and so cascade down to finer levels until they are due.
+ *
+ * Adding and expiring an entry is O(1) regardless of how many entries are scheduled, and the
+ * number of levels only grows logarithmically with the furthest deadline.
+ *
+ * This class is not thread safe; callers must synchronize around it.
+ *
+ * @param <T> the type of the scheduled entries
+ */
+public final class HierarchicalTimingWheel<T> {
+    private final long tickMillis;
+    private final int wheelSize;
+    private final long intervalMillis;
+    private final ToLongFunction<T> deadline;
+    private final List<List<T>> buckets;
+    private long currentTime;
+    private HierarchicalTimingWheel<T> overflow;
+
+    /**
+     * @param tickMillis the span of one bucket on the finest level
+     * @param wheelSize the number of buckets on every level
+     * @param startMillis the current time
+     * @param deadline extracts an entry's deadline in epoch milliseconds
+     */
+    public HierarchicalTimingWheel(long tickMillis, int wheelSize, long startMillis, ToLongFunction<T> deadline) {
+        if (tickMillis <= 0 || wheelSize <= 1) {
+            throw new IllegalArgumentException("tickMillis must be positive and wheelSize greater than one");
+        }
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.intervalMillis = tickMillis * wheelSize;
+        this.deadline = deadline;
+        this.currentTime = startMillis - (startMillis % tickMillis);
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Schedules an entry.
+     *
+     * @return {@code false} if the entry is already due, in which case it was not added
+     */
+    public boolean add(T entry) {
+        long due = deadline.applyAsLong(entry);
+        if (due < currentTime + tickMillis) {
+            return false;
+        }
+        if (due < currentTime + intervalMillis) {
+            buckets.get((int) ((due / tickMillis) % wheelSize)).add(entry);
+            return true;
+        }
+        if (overflow == null) {
+            overflow = new HierarchicalTimingWheel<>(intervalMillis, wheelSize, currentTime, deadline);
+        }
+        return overflow.add(entry);
+    }
+
+    /**
+     * Moves the clock forward and takes every entry out of the buckets whose time has come, on
+     * this level and all coarser ones. The caller should {@link #add} each of them again: entries
+     * that are due are refused and can be fired, the rest drop into a finer bucket.
+     *
+     * @param nowMillis the current time
+     * @param expired receives the entries taken out of expired buckets
+     */
+    public void advance(long nowMillis, List<T> expired) {
+        long target = nowMillis - (nowMillis % tickMillis);
+        if (target > currentTime) {
+            long firstTick = currentTime / tickMillis + 1;
+            long lastTick = Math.min(target / tickMillis, firstTick + wheelSize - 1);
+            for (long tick = firstTick; tick <= lastTick; tick++) {
+                List<T> bucket = buckets.get((int) (tick % wheelSize));
+                expired.addAll(bucket);
+                bucket.clear();
+            }
+            currentTime = target;
+        }
+        if (overflow != null) {
+            overflow.advance(nowMillis, expired);
+        }
+    }
+}
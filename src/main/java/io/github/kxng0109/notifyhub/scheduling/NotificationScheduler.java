@@ -0,0 +1,249 @@
+package io.github.kxng0109.notifyhub.scheduling;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.kxng0109.notifyhub.attachment.AttachmentStore;
+import io.github.kxng0109.notifyhub.concurrency.DownstreamConcurrencyLimiter;
+import io.github.kxng0109.notifyhub.dto.NotificationPriority;
+import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+import io.github.kxng0109.notifyhub.service.PublisherConfirmTracker;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.PRIORITY_QUEUE_NAME;
+import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.QUEUE_NAME;
+
+/**
+ * Holds notifications until a later time and then publishes them straight to their queue.
+ *
+ * This replaces the delayed-message exchange for notifications sent with a {@code sendAt} and,
+ * when {@code notifyhub.scheduler.retries} is enabled, for retry backoffs. The plugin keeps every
+ * delayed message in the broker's Mnesia tables, which do not scale to millions of messages.
+ * Here, due times are kept in a {@link HierarchicalTimingWheel} and the notifications are made
+ * durable in a local {@link ScheduleJournal}. An entry is only removed from the journal once the
+ * broker has confirmed its publish; until then a failed publish is tried again later.
+ *
+ * The journal is local to the instance. Scheduled notifications stay with the instance that
+ * accepted them, and are published once it is back up after a restart. A scheduled notification
+ * holds its stored attachments until the broker has confirmed its publish, and restored ones hold
+ * them again, so the {@link AttachmentStore} keeps them however long they are still due to wait.
+ */
+@Component
+public class NotificationScheduler implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(NotificationScheduler.class);
+    private static final long COMPACTION_MIN_RECORDS = 10_000L;
+
+    private final PublisherConfirmTracker confirmTracker;
+    private final Executor publisherExecutor;
+    private final DownstreamConcurrencyLimiter concurrencyLimiter;
+    private final AttachmentStore attachmentStore;
+    private final boolean enabled;
+    private final boolean retries;
+    private final long republishIntervalMillis;
+    private final Map<String, ScheduledNotification> pending = new ConcurrentHashMap<>();
+    private final HierarchicalTimingWheel<ScheduledNotification> wheel;
+    private final ScheduleJournal journal;
+    private final ScheduledExecutorService ticker;
+
+    public NotificationScheduler(
+            PublisherConfirmTracker confirmTracker,
+            @Qualifier("rabbitmqPublisherExecutor") Executor publisherExecutor,
+            DownstreamConcurrencyLimiter concurrencyLimiter,
+            AttachmentStore attachmentStore,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${notifyhub.scheduler.enabled:true}") boolean enabled,
+            @Value("${notifyhub.scheduler.retries:false}") boolean retries,
+            @Value("${notifyhub.scheduler.journal:${java.io.tmpdir}/notifyhub-scheduler/journal.log}") String journalFile,
+            @Value("${notifyhub.scheduler.fsync:true}") boolean fsync,
+            @Value("${notifyhub.scheduler.tick-ms:100}") long tickMillis,
+            @Value("${notifyhub.scheduler.wheel-size:512}") int wheelSize,
+            @Value("${notifyhub.scheduler.republish-interval-ms:5000}") long republishIntervalMillis
+    ) throws IOException {
+        this.confirmTracker = confirmTracker;
+        this.publisherExecutor = publisherExecutor;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.attachmentStore = attachmentStore;
+        this.enabled = enabled;
+        this.retries = enabled && retries;
+        this.republishIntervalMillis = republishIntervalMillis;
+        this.wheel = new HierarchicalTimingWheel<>(
+                tickMillis, wheelSize, System.currentTimeMillis(), ScheduledNotification::dueAtMillis);
+        this.journal = enabled ? new ScheduleJournal(Path.of(journalFile), objectMapper, fsync) : null;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("notification-scheduler").daemon(true).factory());
+
+        Gauge.builder("notifyhub.scheduler.pending", pending, Map::size)
+             .description("Notifications waiting in the scheduler for their send time")
+             .register(meterRegistry);
+
+        if (enabled) {
+            for (ScheduledNotification notification : journal.open()) {
+                // The holds taken before the restart were only kept in memory.
+                attachmentStore.retainAll(notification.request().attachments());
+                enqueue(notification);
+            }
+            if (!pending.isEmpty()) {
+                logger.info("Restored {} scheduled notifications from {}", pending.size(), journalFile);
+            }
+            ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether retry backoffs should be scheduled here rather than on the delayed exchange.
+     */
+    public boolean handlesRetries() {
+        return retries;
+    }
+
+    /**
+     * Durably schedules a notification. Returns once it has been written to the journal.
+     *
+     * @param dueAtMillis when to publish, in epoch milliseconds; a time in the past publishes right away
+     * @param lane the queue to publish to
+     * @param messageId the message ID to publish with
+     * @param headers the AMQP headers to publish with
+     * @param request the notification
+     * @return the ID of the scheduled entry
+     * @throws IOException if the notification could not be written to the journal
+     */
+    public String schedule(
+            long dueAtMillis,
+            NotificationPriority lane,
+            String messageId,
+            Map<String, Object> headers,
+            NotificationRequest request
+    ) throws IOException {
+        if (!enabled) {
+            throw new IllegalStateException("The notification scheduler is disabled");
+        }
+        ScheduledNotification notification = new ScheduledNotification(
+                UUID.randomUUID().toString(), dueAtMillis, lane, messageId, Map.copyOf(headers), request
+        );
+        // Tracked before it is journaled so that a concurrent compaction cannot drop it.
+        pending.put(notification.id(), notification);
+        try {
+            journal.append(notification);
+        } catch (IOException e) {
+            pending.remove(notification.id());
+            throw e;
+        }
+        attachmentStore.retainAll(request.attachments());
+        arm(notification);
+        logger.debug("Scheduled notification {} for {}", messageId, dueAtMillis);
+        return notification.id();
+    }
+
+    private void enqueue(ScheduledNotification notification) {
+        pending.put(notification.id(), notification);
+        arm(notification);
+    }
+
+    private void arm(ScheduledNotification notification) {
+        boolean added;
+        synchronized (wheel) {
+            added = wheel.add(notification);
+        }
+        if (!added) {
+            publish(notification);
+        }
+    }
+
+    private void tick() {
+        try {
+            List<ScheduledNotification> expired = new ArrayList<>();
+            List<ScheduledNotification> due = new ArrayList<>();
+            synchronized (wheel) {
+                wheel.advance(System.currentTimeMillis(), expired);
+                for (ScheduledNotification notification : expired) {
+                    if (!wheel.add(notification)) {
+                        due.add(notification);
+                    }
+                }
+            }
+            due.forEach(this::publish);
+            journal.compactIfNeeded(pending, COMPACTION_MIN_RECORDS);
+        } catch (Exception e) {
+            logger.error("Notification scheduler tick failed", e);
+        }
+    }
+
+    private void publish(ScheduledNotification notification) {
+        String queue = notification.lane() == NotificationPriority.HIGH ? PRIORITY_QUEUE_NAME : QUEUE_NAME;
+        try {
+            publisherExecutor.execute(() -> {
+                try (DownstreamConcurrencyLimiter.Permit ignored = concurrencyLimiter.acquireAmqpPublish()) {
+                    // The default exchange routes straight to the queue named by the routing key.
+                    confirmTracker.publish(
+                            notification.messageId(),
+                            "",
+                            queue,
+                            notification.request(),
+                            msg -> {
+                                msg.getMessageProperties().setMessageId(notification.messageId());
+                                msg.getMessageProperties().getHeaders().putAll(notification.headers());
+                                return msg;
+                            }
+                    ).thenAccept(outcome -> {
+                        if (outcome.accepted()) {
+                            complete(notification);
+                        } else {
+                            republishLater(notification, outcome.failureReason());
+                        }
+                    });
+                } catch (Exception e) {
+                    republishLater(notification, e.getMessage());
+                }
+            });
+        } catch (Exception e) {
+            republishLater(notification, e.getMessage());
+        }
+    }
+
+    private void complete(ScheduledNotification notification) {
+        pending.remove(notification.id());
+        attachmentStore.releaseAll(notification.request().attachments());
+        try {
+            journal.markDone(notification.id());
+        } catch (IOException e) {
+            // The entry stays in the journal and is published again after a restart.
+            logger.warn("Failed to mark scheduled notification {} as done", notification.messageId(), e);
+        }
+    }
+
+    private void republishLater(ScheduledNotification notification, String reason) {
+        logger.warn("Publishing scheduled notification {} failed, trying again in {}ms: {}",
+                    notification.messageId(), republishIntervalMillis, reason);
+        enqueue(notification.withDueAt(System.currentTimeMillis() + republishIntervalMillis));
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        ticker.shutdownNow();
+        if (journal != null) {
+            journal.close();
+        }
+    }
+}
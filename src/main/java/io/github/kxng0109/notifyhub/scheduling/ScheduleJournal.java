@@ -0,0 +1,146 @@
+package io.github.kxng0109.notifyhub.scheduling;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An append-only file that makes scheduled notifications survive a restart.
+ *
+ * Every scheduled notification is written as an {@code ADD} line, and a {@code DONE} line is
+ * appended once it has been published. On startup the file is replayed, and whatever was added
+ * but never finished is scheduled again. Lines are JSON, one per record. A line cut short by a
+ * crash is skipped. Once most of the file is made of finished entries it is compacted: the
+ * pending entries are written to a new file, which then atomically replaces the old one.
+ */
+final class ScheduleJournal implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ScheduleJournal.class);
+    private static final String ADD = "ADD";
+    private static final String DONE = "DONE";
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+    private final boolean fsync;
+    private FileChannel channel;
+    private long records;
+
+    ScheduleJournal(Path file, ObjectMapper objectMapper, boolean fsync) throws IOException {
+        this.file = file;
+        this.objectMapper = objectMapper;
+        this.fsync = fsync;
+        Files.createDirectories(file.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Replays the journal and rewrites it with only the pending entries.
+     *
+     * @return the entries that were scheduled but never published
+     */
+    synchronized Collection<ScheduledNotification> open() throws IOException {
+        Map<String, ScheduledNotification> pending = new LinkedHashMap<>();
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    replay(line, pending);
+                }
+            }
+        }
+        rewrite(pending.values());
+        return pending.values();
+    }
+
+    synchronized void append(ScheduledNotification notification) throws IOException {
+        write(new Record(ADD, notification.id(), notification));
+    }
+
+    synchronized void markDone(String id) throws IOException {
+        write(new Record(DONE, id, null));
+    }
+
+    /**
+     * Compacts the journal if it holds many more records than there are pending entries. The
+     * pending entries are read while holding the journal's lock, so no entry appended meanwhile
+     * can be lost; an entry added to the map before its record is appended may end up in the
+     * journal twice, which replaying tolerates.
+     */
+    synchronized void compactIfNeeded(Map<String, ScheduledNotification> pending, long minRecords) throws IOException {
+        if (records > minRecords && records > 2L * pending.size()) {
+            rewrite(List.copyOf(pending.values()));
+        }
+    }
+
+    private void replay(String line, Map<String, ScheduledNotification> pending) {
+        if (line.isBlank()) {
+            return;
+        }
+        try {
+            Record record = objectMapper.readValue(line, Record.class);
+            if (ADD.equals(record.op()) && record.notification() != null) {
+                pending.put(record.id(), record.notification());
+            } else if (DONE.equals(record.op())) {
+                pending.remove(record.id());
+            }
+        } catch (IOException e) {
+            logger.warn("Skipping unreadable line in schedule journal {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void rewrite(Collection<ScheduledNotification> pending) throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                                                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (ScheduledNotification notification : pending) {
+                writeLine(out, new Record(ADD, notification.id(), notification));
+            }
+            out.force(true);
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        records = pending.size();
+        logger.debug("Compacted schedule journal {} to {} pending entries.", file, records);
+    }
+
+    private void write(Record record) throws IOException {
+        writeLine(channel, record);
+        if (fsync) {
+            channel.force(false);
+        }
+        records++;
+    }
+
+    private void writeLine(FileChannel out, Record record) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(record);
+        ByteBuffer buffer = ByteBuffer.allocate(json.length + 1).put(json).put((byte) '\n').flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private record Record(String op, String id, ScheduledNotification notification) {
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.kxng0109.notifyhub.scheduling;
+
+import io.github.kxng0109.notifyhub.dto.NotificationPriority;
+import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+
+import java.util.Map;
+
+/**
+ * A notification held by the {@link NotificationScheduler} until it is due.
+ *
+ * @param id identifies this scheduled entry; unique even when several entries share a message ID
+ * @param dueAtMillis when the notification should be published, in epoch milliseconds
+ * @param lane the queue the notification is published to when due
+ * @param messageId the message ID to publish with
+ * @param headers the AMQP headers to publish with
+ * @param request the notification itself
+ */
+public record ScheduledNotification(
+        String id,
+        long dueAtMillis,
+        NotificationPriority lane,
+        String messageId,
+        Map<String, Object> headers,
+        NotificationRequest request
+) {
+    public ScheduledNotification withDueAt(long dueAtMillis) {
+        return new ScheduledNotification(id, dueAtMillis, lane, messageId, headers, request);
+    }
+}
@@ -0,0 +1,237 @@
+package io.github.kxng0109.notifyhub.service;
+
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batching dispatch stage that sits between the email workers and the SMTP server.
+ *
+ * Ready {@link MimeMessage}s are collected for a short window, or until a count cap is reached,
+ * and handed to {@link JavaMailSender#send(MimeMessage...)} as a single array. The whole batch
+ * therefore travels over one SMTP transport connection instead of paying a full
+ * connect/EHLO/AUTH/QUIT cycle per email. Every submitted message gets its own future, which is
+ * completed individually from the per-message failures reported by
+ * {@link MailSendException#getFailedMessages()}, so callers can still retry messages one by one.
+ *
+ * Concurrent SMTP sends are bounded by the mail sender itself, per host or relay, so time spent
+ * waiting for a batch to fill does not count against that limit.
+ */
+@Component
+public class BatchEmailDispatcher implements SmartLifecycle {
+    private static final Logger logger = LoggerFactory.getLogger(BatchEmailDispatcher.class);
+    private static final long POLL_TIMEOUT_MILLIS = 500L;
+
+    private final JavaMailSender emailSender;
+    private final BlockingQueue<PendingMessage> pending;
+    private final List<Thread> workers = new ArrayList<>();
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final long batchWindowMillis;
+    private final int workerCount;
+
+    private volatile boolean running;
+
+    public BatchEmailDispatcher(
+            JavaMailSender emailSender,
+            @Value("${notifyhub.mail.batch.enabled:true}") boolean enabled,
+            @Value("${notifyhub.mail.batch.max-size:50}") int maxBatchSize,
+            @Value("${notifyhub.mail.batch.window-ms:25}") long batchWindowMillis,
+            @Value("${notifyhub.mail.batch.workers:4}") int workerCount,
+            @Value("${notifyhub.mail.batch.queue-capacity:10000}") int queueCapacity
+    ) {
+        this.emailSender = emailSender;
+        this.enabled = enabled;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.batchWindowMillis = Math.max(0L, batchWindowMillis);
+        this.workerCount = Math.max(1, workerCount);
+        this.pending = new LinkedBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * Sends a single message and blocks until its batch has been handed to the SMTP server.
+     * When batching is disabled the message is sent directly on the calling thread.
+     *
+     * @param message the fully built message to send
+     * @throws MailException if this particular message could not be sent
+     */
+    public void send(MimeMessage message) {
+        if (!enabled) {
+            emailSender.send(message);
+            return;
+        }
+
+        try {
+            dispatch(message).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof MailException mailException) {
+                throw mailException;
+            }
+            throw new MailSendException("Batched email dispatch failed", e.getCause());
+        }
+    }
+
+    /**
+     * Queues a message for the next batch without waiting for it to be sent.
+     *
+     * @param message the fully built message to send
+     * @return a future completed once this message has been accepted by the SMTP server,
+     *         or completed exceptionally with the failure for this message alone
+     */
+    public CompletableFuture<Void> dispatch(MimeMessage message) {
+        PendingMessage pendingMessage = new PendingMessage(message, new CompletableFuture<>());
+        if (!running) {
+            pendingMessage.result().completeExceptionally(
+                    new MailSendException("Batch email dispatcher is not running"));
+        } else if (!pending.offer(pendingMessage)) {
+            pendingMessage.result().completeExceptionally(
+                    new MailSendException("Batch email dispatcher queue is full"));
+        }
+        return pendingMessage.result();
+    }
+
+    @Override
+    public void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(Thread.ofPlatform()
+                              .name("email-batch-" + i)
+                              .daemon(true)
+                              .start(this::runWorker));
+        }
+        logger.info("Batch email dispatcher started with workers={}, maxBatchSize={}, window={}ms",
+                    workerCount, maxBatchSize, batchWindowMillis);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        for (Thread worker : workers) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        workers.clear();
+
+        PendingMessage leftover;
+        while ((leftover = pending.poll()) != null) {
+            leftover.result().completeExceptionally(
+                    new MailSendException("Batch email dispatcher stopped before sending"));
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stops after the listener containers so that in-flight work can still be flushed.
+     */
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE - 1024;
+    }
+
+    private void runWorker() {
+        List<PendingMessage> batch = new ArrayList<>(maxBatchSize);
+        while (running || !pending.isEmpty()) {
+            try {
+                PendingMessage first = pending.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fillBatch(batch);
+                sendBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(p -> p.result().completeExceptionally(
+                        new MailSendException("Batch email worker interrupted", e)));
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Tops the batch up with whatever is already queued, then keeps waiting for more messages
+     * until either the batch window closes or the batch is full.
+     */
+    private void fillBatch(List<PendingMessage> batch) throws InterruptedException {
+        pending.drainTo(batch, maxBatchSize - batch.size());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWindowMillis);
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            PendingMessage next = pending.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            pending.drainTo(batch, maxBatchSize - batch.size());
+        }
+    }
+
+    /**
+     * Sends a batch over a single transport connection and resolves each message's future
+     * from the per-message failures reported by the mail sender.
+     */
+    private void sendBatch(List<PendingMessage> batch) {
+        MimeMessage[] messages = batch.stream()
+                                      .map(PendingMessage::message)
+                                      .toArray(MimeMessage[]::new);
+        try {
+            emailSender.send(messages);
+            batch.forEach(p -> p.result().complete(null));
+            logger.debug("Dispatched batch of {} emails over one connection.", messages.length);
+        } catch (MailSendException e) {
+            Map<Object, Exception> failedMessages = e.getFailedMessages();
+            if (failedMessages.isEmpty()) {
+                // Every message was accepted, only closing the connection afterwards failed.
+                logger.warn("Batch of {} emails sent, but the connection did not close cleanly.",
+                            messages.length, e);
+            }
+            for (PendingMessage pendingMessage : batch) {
+                Exception failure = failedMessages.get(pendingMessage.message());
+                if (failure == null) {
+                    pendingMessage.result().complete(null);
+                } else {
+                    pendingMessage.result().completeExceptionally(
+                            new MailSendException("Failed to send batched email", failure));
+                }
+            }
+            logger.warn("{} of {} emails in batch failed.", failedMessages.size(), messages.length);
+        } catch (RuntimeException e) {
+            logger.error("Failed to send batch of {} emails", messages.length, e);
+            batch.forEach(p -> p.result().completeExceptionally(e));
+        }
+    }
+
+    private record PendingMessage(MimeMessage message, CompletableFuture<Void> result) {
+    }
+}
@@ -0,0 +1,117 @@
+package io.github.kxng0109.notifyhub.service;
+
+import com.rabbitmq.client.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Settles manually acknowledged deliveries once their work has actually finished.
+ *
+ * Deliveries are registered in the order the listener receives them. Work completes out of
+ * order on the email workers, so acknowledgements are held back until every earlier delivery
+ * on the same channel has completed too; the whole contiguous run is then acknowledged with a
+ * single {@code basicAck(tag, multiple = true)}. Negative acknowledgements are always sent
+ * individually and straight away.
+ */
+@Component
+public class DeliveryAcknowledger {
+    private static final Logger logger = LoggerFactory.getLogger(DeliveryAcknowledger.class);
+
+    private final Map<Channel, ChannelDeliveries> channels = new ConcurrentHashMap<>();
+
+    /**
+     * Records a delivery whose outcome will be reported later from another thread.
+     * Must be called on the listener thread, before the work is handed off.
+     */
+    public void register(Channel channel, long deliveryTag) {
+        deliveries(channel).register(deliveryTag);
+    }
+
+    /**
+     * Marks a delivery as successfully handled.
+     */
+    public void ack(Channel channel, long deliveryTag) {
+        try {
+            deliveries(channel).ack(channel, deliveryTag);
+        } catch (IOException | RuntimeException e) {
+            settleFailed(channel, deliveryTag, e);
+        }
+    }
+
+    /**
+     * Negatively acknowledges a delivery, either returning it to the queue or dropping it.
+     */
+    public void nack(Channel channel, long deliveryTag, boolean requeue) {
+        try {
+            deliveries(channel).nack(channel, deliveryTag, requeue);
+        } catch (IOException | RuntimeException e) {
+            settleFailed(channel, deliveryTag, e);
+        }
+    }
+
+    private ChannelDeliveries deliveries(Channel channel) {
+        ChannelDeliveries existing = channels.get(channel);
+        if (existing != null) {
+            return existing;
+        }
+        // A new channel usually means an old one was closed; forget deliveries on closed channels.
+        channels.keySet().removeIf(c -> !c.isOpen());
+        return channels.computeIfAbsent(channel, c -> new ChannelDeliveries());
+    }
+
+    /**
+     * Unsettled deliveries on a broken channel are redelivered by the broker, so the local
+     * bookkeeping for that channel can simply be dropped.
+     */
+    private void settleFailed(Channel channel, long deliveryTag, Exception e) {
+        logger.warn("Could not settle delivery {}; the broker will redeliver it. Reason: {}",
+                    deliveryTag, e.getMessage());
+        channels.remove(channel);
+    }
+
+    private static final class ChannelDeliveries {
+        private final TreeSet<Long> outstanding = new TreeSet<>();
+        private final Set<Long> completed = new HashSet<>();
+
+        synchronized void register(long deliveryTag) {
+            outstanding.add(deliveryTag);
+        }
+
+        synchronized void ack(Channel channel, long deliveryTag) throws IOException {
+            if (!outstanding.contains(deliveryTag)) {
+                channel.basicAck(deliveryTag, false);
+                return;
+            }
+            completed.add(deliveryTag);
+            flush(channel);
+        }
+
+        synchronized void nack(Channel channel, long deliveryTag, boolean requeue) throws IOException {
+            outstanding.remove(deliveryTag);
+            completed.remove(deliveryTag);
+            channel.basicNack(deliveryTag, false, requeue);
+            flush(channel);
+        }
+
+        /**
+         * Acknowledges the longest run of completed deliveries at the head of the channel.
+         */
+        private void flush(Channel channel) throws IOException {
+            long highest = -1L;
+            while (!outstanding.isEmpty() && completed.remove(outstanding.first())) {
+                highest = outstanding.pollFirst();
+            }
+            if (highest > 0) {
+                channel.basicAck(highest, true);
+            }
+        }
+    }
+}
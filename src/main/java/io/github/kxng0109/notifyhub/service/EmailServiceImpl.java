@@ -1,26 +1,37 @@
 package io.github.kxng0109.notifyhub.service;
 
 import io.github.kxng0109.notifyhub.dto.AttachmentRequest;
+import io.github.kxng0109.notifyhub.mail.AttachmentPartFactory;
+import io.github.kxng0109.notifyhub.mail.AttachmentPartFactory.AttachmentParts;
+import io.github.kxng0109.notifyhub.mail.MimeBodyCache;
+import io.github.kxng0109.notifyhub.mail.PrerenderedMimeMessage;
+import io.github.kxng0109.notifyhub.mail.RenderedMimeBody;
+import io.github.kxng0109.notifyhub.metrics.NotificationMetrics;
+import io.github.kxng0109.notifyhub.metrics.NotificationMetrics.Stage;
 import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeBodyPart;
 import jakarta.mail.internet.MimeMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.mail.MailSendException;
-import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 
-import java.util.Base64;
 import java.util.List;
 
 /**
  * Implementation of the {@link EmailService} interface for sending email messages.
  * This service supports sending both plain text and HTML emails, with optional attachments
- * for the latter. It uses Spring's {@link JavaMailSender} to handle email dispatching.
+ * for the latter. Messages are built with Spring's {@link JavaMailSender} and handed to the
+ * {@link BatchEmailDispatcher}, which sends them in batches over shared SMTP connections.
+ * Attachments are streamed from their Base64 data by the {@link AttachmentPartFactory}
+ * rather than decoded into memory. HTML bodies that fit the {@link MimeBodyCache} are encoded
+ * once and reused, so repeated campaign content only has its envelope rebuilt per send.
+ * The time spent building each message and sending it over SMTP is recorded separately through
+ * {@link NotificationMetrics}.
  *
  * The class is configured as a Spring service and is excluded from execution in load-test
  * profiles, which is specified using the {@link Profile} annotation.
@@ -31,12 +42,26 @@ public class EmailServiceImpl implements EmailService {
     private static final Logger logger = LoggerFactory.getLogger(EmailServiceImpl.class);
 
     private final JavaMailSender emailSender;
+    private final BatchEmailDispatcher batchDispatcher;
+    private final AttachmentPartFactory attachmentPartFactory;
+    private final MimeBodyCache mimeBodyCache;
+    private final NotificationMetrics metrics;
 
     @Value("${notifyhub.mail.from}")
     private String mailFromAddress;
 
-    public EmailServiceImpl(JavaMailSender emailSender) {
+    public EmailServiceImpl(
+            JavaMailSender emailSender,
+            BatchEmailDispatcher batchDispatcher,
+            AttachmentPartFactory attachmentPartFactory,
+            MimeBodyCache mimeBodyCache,
+            NotificationMetrics metrics
+    ) {
         this.emailSender = emailSender;
+        this.batchDispatcher = batchDispatcher;
+        this.attachmentPartFactory = attachmentPartFactory;
+        this.mimeBodyCache = mimeBodyCache;
+        this.metrics = metrics;
     }
 
     /**
@@ -48,17 +73,24 @@ public class EmailServiceImpl implements EmailService {
      */
     @Override
     public void sendSimpleMessage(List<String> to, String subject, String text) {
+        long buildStart = System.nanoTime();
         String[] recipientAddresses = to.toArray(new String[0]);
 
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setFrom(mailFromAddress);
-        message.setTo(mailFromAddress);
-        message.setBcc(recipientAddresses);
-        message.setSubject(subject);
-        message.setText(text);
+        MimeMessage message = emailSender.createMimeMessage();
+        try {
+            MimeMessageHelper helper = new MimeMessageHelper(message, "UTF-8");
+            helper.setFrom(mailFromAddress);
+            helper.setTo(mailFromAddress);
+            helper.setBcc(recipientAddresses);
+            helper.setSubject(subject);
+            helper.setText(text);
 
-        emailSender.send(message);
-        logger.info("Successfully dispatched plain text email to {} recipients.", to.size());
+            dispatch(message, buildStart);
+            logger.info("Successfully dispatched plain text email to {} recipients.", to.size());
+        } catch (MessagingException e) {
+            logger.error("Failed to send plain text email to {} recipients", to.size(), e);
+            throw new MailSendException("Failed to send plain text email to " + to.size() + " recipients", e);
+        }
     }
 
     /**
@@ -72,31 +104,27 @@ public class EmailServiceImpl implements EmailService {
      */
     @Override
     public void sendHtmlMessage(List<String> to, String subject, String htmlContent, List<AttachmentRequest> attachments) {
+        long buildStart = System.nanoTime();
         String[] recipientAddresses = to.toArray(new String[0]);
 
-        MimeMessage message = emailSender.createMimeMessage();
         try {
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-            helper.setFrom(mailFromAddress);
-            helper.setTo(mailFromAddress);
-            helper.setBcc(recipientAddresses);
-            helper.setSubject(subject);
-            helper.setText(htmlContent, true);
-
-            if (attachments != null && !attachments.isEmpty()) {
-                for (AttachmentRequest attachment : attachments) {
-                    String fileName = attachment.filename();
-                    String contentType = attachment.contentType();
-                    String data = attachment.data();
-
-                    byte[] decodedData = Base64.getDecoder().decode(data);
-                    ByteArrayResource dataSource = new ByteArrayResource(decodedData);
-
-                    helper.addAttachment(fileName, dataSource, contentType);
+            if (mimeBodyCache.isCacheable(htmlContent, attachments)) {
+                RenderedMimeBody body = mimeBodyCache.get(
+                        htmlContent, attachments, () -> renderHtmlBody(htmlContent, attachments)
+                );
+                MimeMessage message = new PrerenderedMimeMessage(emailSender.createMimeMessage().getSession(), body);
+                MimeMessageHelper helper = new MimeMessageHelper(message, "UTF-8");
+                setEnvelope(helper, recipientAddresses, subject);
+                dispatch(message, buildStart);
+            } else {
+                MimeMessage message = emailSender.createMimeMessage();
+                try (AttachmentParts attachmentParts = attachmentPartFactory.createParts(attachments)) {
+                    MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+                    setEnvelope(helper, recipientAddresses, subject);
+                    setHtmlContent(helper, htmlContent, attachmentParts);
+                    dispatch(message, buildStart);
                 }
             }
-
-            emailSender.send(message);
             logger.info("Successfully dispatched HTML email to {} recipients.", to.size());
         } catch (MessagingException e) {
             logger.error("Failed to send HTML email to {} recipients", to.size(), e);
@@ -104,4 +132,45 @@ public class EmailServiceImpl implements EmailService {
         }
     }
 
+    /**
+     * Encodes the HTML body and attachments once, without any envelope headers, for the MIME body cache.
+     */
+    private RenderedMimeBody renderHtmlBody(String htmlContent, List<AttachmentRequest> attachments)
+            throws MessagingException {
+        MimeMessage template = emailSender.createMimeMessage();
+        try (AttachmentParts attachmentParts = attachmentPartFactory.createParts(attachments)) {
+            MimeMessageHelper helper = new MimeMessageHelper(template, true, "UTF-8");
+            setHtmlContent(helper, htmlContent, attachmentParts);
+            return RenderedMimeBody.render(template);
+        }
+    }
+
+    private void setEnvelope(MimeMessageHelper helper, String[] recipientAddresses, String subject)
+            throws MessagingException {
+        helper.setFrom(mailFromAddress);
+        helper.setTo(mailFromAddress);
+        helper.setBcc(recipientAddresses);
+        helper.setSubject(subject);
+    }
+
+    private void setHtmlContent(MimeMessageHelper helper, String htmlContent, AttachmentParts attachmentParts)
+            throws MessagingException {
+        helper.setText(htmlContent, true);
+        for (MimeBodyPart attachmentPart : attachmentParts) {
+            helper.getRootMimeMultipart().addBodyPart(attachmentPart);
+        }
+    }
+
+    /**
+     * Hands a built message to the dispatcher. The mail sender bounds concurrent sends per SMTP
+     * host or relay.
+     * Attachments are streamed while the message is written, so their encoding counts towards
+     * the SMTP send rather than the build.
+     */
+    private void dispatch(MimeMessage message, long buildStartNanos) {
+        metrics.recordSince(Stage.MIME_BUILD, buildStartNanos);
+        long sendStart = System.nanoTime();
+        batchDispatcher.send(message);
+        metrics.recordSince(Stage.SMTP_SEND, sendStart);
+    }
 }
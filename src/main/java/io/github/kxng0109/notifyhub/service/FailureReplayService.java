@@ -0,0 +1,410 @@
+package io.github.kxng0109.notifyhub.service;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Delivery;
+import io.github.kxng0109.notifyhub.attachment.AttachmentStore;
+import io.github.kxng0109.notifyhub.concurrency.DownstreamConcurrencyLimiter;
+import io.github.kxng0109.notifyhub.dto.AttachmentRequest;
+import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+import io.github.kxng0109.notifyhub.dto.ReplayRequest;
+import io.github.kxng0109.notifyhub.dto.ReplayStatus;
+import io.github.kxng0109.notifyhub.messaging.QueueShards;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.DELAYED_EXCHANGE_NAME;
+import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.FAILURES_QUEUE_NAME;
+import static io.github.kxng0109.notifyhub.service.NotificationConsumer.HEADER_FAILED_AT;
+import static io.github.kxng0109.notifyhub.service.NotificationConsumer.HEADER_FAILURE_REASON;
+import static io.github.kxng0109.notifyhub.service.NotificationProducer.HEADER_ACCEPTED_AT;
+import static io.github.kxng0109.notifyhub.service.NotificationProducer.HEADER_RETRY_COUNT;
+
+/**
+ * Replays parked notifications from the failures queue once their cause has been dealt with.
+ *
+ * Replays need the failures queue to be a stream ({@code notifyhub.rabbitmq.failures.queue-type=stream}).
+ * A replay reads the stream from an offset, or from the first notification that failed at or after
+ * a given time, and publishes the notifications that match its filters back to the delayed
+ * exchange with a fresh retry count, at no more than the requested rate. Reading a stream does not
+ * remove anything from it, so the same notifications can be replayed again, for example with a
+ * different filter. A replay stops at the end of its time range, at its limit, or once it has read
+ * everything that had failed before it started; notifications that fail again during the replay
+ * are therefore not replayed by it a second time.
+ *
+ * Notifications dead-lettered by a quorum queue carry no {@code x-failed-at} or
+ * {@code x-failure-reason} header; the time and reason of their first {@code x-death} entry are
+ * used instead. A notification whose failure time is unknown is not dropped by the time filters.
+ *
+ * The stream keeps notifications much longer than the {@link AttachmentStore} keeps unreferenced
+ * blobs. Before a notification with stored attachments is replayed, its blobs are retained again;
+ * if one of them is gone, the notification is counted as failed rather than republished without it.
+ *
+ * Each replay runs on its own thread and is tracked by ID until the application stops.
+ */
+@Service
+public class FailureReplayService implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(FailureReplayService.class);
+    private static final String HEADER_STREAM_OFFSET = "x-stream-offset";
+    private static final String X_DEATH_TIME = "time";
+    private static final String X_DEATH_REASON = "reason";
+    private static final int PREFETCH = 100;
+    private static final int MAX_UNCONFIRMED = 256;
+
+    private final ConnectionFactory connectionFactory;
+    private final MessageConverter messageConverter;
+    private final PublisherConfirmTracker confirmTracker;
+    private final DownstreamConcurrencyLimiter concurrencyLimiter;
+    private final QueueShards queueShards;
+    private final AttachmentStore attachmentStore;
+    private final MessagePropertiesConverter propertiesConverter = new DefaultMessagePropertiesConverter();
+    private final Map<String, Replay> replays = new ConcurrentHashMap<>();
+    private final boolean streamEnabled;
+    private final int defaultRatePerSecond;
+    private final int maxRatePerSecond;
+    private final long idleTimeoutMillis;
+
+    public FailureReplayService(
+            ConnectionFactory connectionFactory,
+            MessageConverter messageConverter,
+            PublisherConfirmTracker confirmTracker,
+            DownstreamConcurrencyLimiter concurrencyLimiter,
+            QueueShards queueShards,
+            AttachmentStore attachmentStore,
+            @Value("${notifyhub.rabbitmq.failures.queue-type:classic}") String failuresQueueType,
+            @Value("${notifyhub.replay.default-rate-per-second:100}") int defaultRatePerSecond,
+            @Value("${notifyhub.replay.max-rate-per-second:1000}") int maxRatePerSecond,
+            @Value("${notifyhub.replay.idle-timeout-ms:5000}") long idleTimeoutMillis
+    ) {
+        this.connectionFactory = connectionFactory;
+        this.messageConverter = messageConverter;
+        this.confirmTracker = confirmTracker;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.queueShards = queueShards;
+        this.attachmentStore = attachmentStore;
+        this.streamEnabled = "stream".equalsIgnoreCase(failuresQueueType);
+        this.defaultRatePerSecond = defaultRatePerSecond;
+        this.maxRatePerSecond = maxRatePerSecond;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public boolean isEnabled() {
+        return streamEnabled;
+    }
+
+    /**
+     * Starts replaying the failed notifications the request selects.
+     *
+     * @param request the filters, start position, rate and limit of the replay
+     * @return the status of the replay that was started
+     * @throws IllegalStateException if the failures queue is not a stream
+     */
+    public ReplayStatus start(ReplayRequest request) {
+        if (!streamEnabled) {
+            throw new IllegalStateException("Replays need the failures queue to be a stream");
+        }
+        Replay replay = new Replay(UUID.randomUUID().toString(), request);
+        replays.put(replay.id, replay);
+        Thread.ofPlatform().name("failure-replay-" + replay.id.substring(0, 8)).daemon(true).start(() -> run(replay));
+        logger.info("Started replay {} of failed notifications: {}", replay.id, request);
+        return replay.status();
+    }
+
+    public Optional<ReplayStatus> status(String replayId) {
+        return Optional.ofNullable(replays.get(replayId)).map(Replay::status);
+    }
+
+    /**
+     * Stops a running replay after the notification it is publishing. Notifications it already
+     * published stay published.
+     */
+    public Optional<ReplayStatus> cancel(String replayId) {
+        Replay replay = replays.get(replayId);
+        if (replay == null) {
+            return Optional.empty();
+        }
+        replay.cancelled = true;
+        return Optional.of(replay.status());
+    }
+
+    private void run(Replay replay) {
+        ReplayRequest request = replay.request;
+        int rate = Math.clamp(request.ratePerSecond() != null ? request.ratePerSecond() : defaultRatePerSecond,
+                              1, maxRatePerSecond);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long startedAt = System.currentTimeMillis();
+        long until = request.to() != null ? Math.min(request.to().toEpochMilli(), startedAt) : startedAt;
+        Deque<CompletableFuture<Void>> unconfirmed = new ArrayDeque<>();
+
+        try (Connection connection = connectionFactory.createConnection();
+             Channel channel = connection.createChannel(false)) {
+            BlockingQueue<Delivery> deliveries = new LinkedBlockingQueue<>();
+            // Stream consumers must use manual acknowledgements; acking only grants more credit.
+            channel.basicQos(PREFETCH);
+            String consumerTag = channel.basicConsume(
+                    FAILURES_QUEUE_NAME, false, Map.of(HEADER_STREAM_OFFSET, startOffset(request)),
+                    (tag, delivery) -> deliveries.add(delivery), tag -> { }
+            );
+            try {
+                replay(replay, request, channel, deliveries, until, intervalNanos, unconfirmed);
+            } finally {
+                cancelQuietly(channel, consumerTag);
+            }
+            unconfirmed.forEach(CompletableFuture::join);
+            replay.state = replay.cancelled ? ReplayStatus.State.CANCELLED : ReplayStatus.State.COMPLETED;
+            logger.info("Replay {} {}: {}", replay.id, replay.state, replay.status());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            replay.fail("Interrupted");
+        } catch (Exception e) {
+            logger.error("Replay {} failed", replay.id, e);
+            replay.fail(e.getMessage());
+        }
+    }
+
+    private void replay(
+            Replay replay,
+            ReplayRequest request,
+            Channel channel,
+            BlockingQueue<Delivery> deliveries,
+            long until,
+            long intervalNanos,
+            Deque<CompletableFuture<Void>> unconfirmed
+    ) throws IOException, InterruptedException {
+        long nextPublishNanos = System.nanoTime();
+        while (!replay.cancelled) {
+            Delivery delivery = deliveries.poll(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (delivery == null) {
+                // Caught up with the end of the stream.
+                break;
+            }
+            channel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
+            Message message = toMessage(delivery);
+            Map<String, Object> headers = message.getMessageProperties().getHeaders();
+            if (headers.get(HEADER_STREAM_OFFSET) instanceof Number offset) {
+                replay.lastOffset = offset.longValue();
+            }
+            replay.scanned.incrementAndGet();
+
+            long failedAt = failedAt(message);
+            if (failedAt > 0 && failedAt > until) {
+                break;
+            }
+            if (!matches(request, message, failedAt)) {
+                continue;
+            }
+            if (request.limit() != null && replay.selected >= request.limit()) {
+                break;
+            }
+            replay.selected++;
+
+            LockSupport.parkNanos(nextPublishNanos - System.nanoTime());
+            nextPublishNanos = Math.max(nextPublishNanos, System.nanoTime()) + intervalNanos;
+            unconfirmed.add(republish(replay, message));
+            while (unconfirmed.size() > MAX_UNCONFIRMED) {
+                unconfirmed.removeFirst().join();
+            }
+        }
+    }
+
+    private void cancelQuietly(Channel channel, String consumerTag) {
+        try {
+            channel.basicCancel(consumerTag);
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Could not cancel replay consumer {}: {}", consumerTag, e.getMessage());
+        }
+    }
+
+    /**
+     * Publishes a failed notification again as if it were new, keeping its ID and acceptance time.
+     */
+    private CompletableFuture<Void> republish(Replay replay, Message message) {
+        NotificationRequest notificationRequest;
+        try {
+            message.getMessageProperties().setInferredArgumentType(NotificationRequest.class);
+            notificationRequest = (NotificationRequest) messageConverter.fromMessage(message);
+        } catch (RuntimeException e) {
+            logger.warn("Replay {} skipped an unreadable failed notification: {}", replay.id, e.getMessage());
+            replay.failed.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }
+        String notificationId = message.getMessageProperties().getMessageId() != null
+                ? message.getMessageProperties().getMessageId()
+                : UUID.randomUUID().toString();
+        Object acceptedAt = message.getMessageProperties().getHeaders().get(HEADER_ACCEPTED_AT);
+
+        // Held until the broker has the copy, like a retry published by the consumer.
+        attachmentStore.retainAll(notificationRequest.attachments());
+        String missing = missingAttachment(notificationRequest);
+        if (missing != null) {
+            attachmentStore.releaseAll(notificationRequest.attachments());
+            logger.warn("Replay {} skipped notification {}: attachment {} is no longer in the store",
+                        replay.id, notificationId, missing);
+            replay.failed.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        try (DownstreamConcurrencyLimiter.Permit ignored = concurrencyLimiter.acquireAmqpPublish()) {
+            return confirmTracker.publish(
+                    notificationId,
+                    DELAYED_EXCHANGE_NAME,
+                    queueShards.routingKeyFor(notificationRequest),
+                    notificationRequest,
+                    msg -> {
+                        msg.getMessageProperties().setMessageId(notificationId);
+                        msg.getMessageProperties().getHeaders().put(HEADER_RETRY_COUNT, 0);
+                        if (acceptedAt != null) {
+                            msg.getMessageProperties().getHeaders().put(HEADER_ACCEPTED_AT, acceptedAt);
+                        }
+                        return msg;
+                    }
+            ).thenAccept(outcome -> {
+                attachmentStore.releaseAll(notificationRequest.attachments());
+                if (outcome.accepted()) {
+                    replay.replayed.incrementAndGet();
+                } else {
+                    logger.warn("Replay {} could not republish notification {}: {}",
+                                replay.id, notificationId, outcome.failureReason());
+                    replay.failed.incrementAndGet();
+                }
+            });
+        } catch (RuntimeException e) {
+            attachmentStore.releaseAll(notificationRequest.attachments());
+            throw e;
+        }
+    }
+
+    /**
+     * The reference of the first stored attachment that is no longer in the store, or {@code null}.
+     */
+    private String missingAttachment(NotificationRequest notificationRequest) {
+        if (notificationRequest.attachments() == null) {
+            return null;
+        }
+        for (AttachmentRequest attachment : notificationRequest.attachments()) {
+            if (attachment.ref() != null && attachmentStore.size(attachment.ref()) < 0) {
+                return attachment.ref();
+            }
+        }
+        return null;
+    }
+
+    private Message toMessage(Delivery delivery) {
+        MessageProperties properties = propertiesConverter.toMessageProperties(
+                delivery.getProperties(), delivery.getEnvelope(), StandardCharsets.UTF_8.name());
+        return new Message(delivery.getBody(), properties);
+    }
+
+    private static Object startOffset(ReplayRequest request) {
+        if (request.fromOffset() != null) {
+            return request.fromOffset();
+        }
+        if (request.from() != null) {
+            // Streams start a timestamp offset at the chunk holding it, so earlier entries are filtered out below.
+            return Date.from(request.from());
+        }
+        return "first";
+    }
+
+    /**
+     * When the notification was parked: from the header set by the consumer, from the first
+     * {@code x-death} entry of a quorum dead-letter, or otherwise from the message timestamp.
+     * Zero when none is known.
+     */
+    private static long failedAt(Message message) {
+        if (message.getMessageProperties().getHeaders().get(HEADER_FAILED_AT) instanceof Number failedAt) {
+            return failedAt.longValue();
+        }
+        if (firstDeath(message).get(X_DEATH_TIME) instanceof Date deathTime) {
+            return deathTime.getTime();
+        }
+        Date timestamp = message.getMessageProperties().getTimestamp();
+        return timestamp != null ? timestamp.getTime() : 0L;
+    }
+
+    /**
+     * Why the notification was parked: the reason set by the consumer, or the reason the broker
+     * dead-lettered it for, such as {@code delivery_limit}.
+     */
+    private static Object failureReason(Message message) {
+        Object reason = message.getMessageProperties().getHeaders().get(HEADER_FAILURE_REASON);
+        return reason != null ? reason : firstDeath(message).get(X_DEATH_REASON);
+    }
+
+    private static Map<String, ?> firstDeath(Message message) {
+        List<Map<String, ?>> deaths = message.getMessageProperties().getXDeathHeader();
+        return deaths == null || deaths.isEmpty() ? Map.of() : deaths.getFirst();
+    }
+
+    private static boolean matches(ReplayRequest request, Message message, long failedAt) {
+        // The stream was opened at the chunk holding 'from', so an unknown time is let through.
+        if (request.from() != null && failedAt > 0 && failedAt < request.from().toEpochMilli()) {
+            return false;
+        }
+        if (request.reason() == null || request.reason().isBlank()) {
+            return true;
+        }
+        Object reason = failureReason(message);
+        return reason != null && reason.toString().toLowerCase(Locale.ROOT)
+                                       .contains(request.reason().toLowerCase(Locale.ROOT));
+    }
+
+    @Override
+    public void destroy() {
+        replays.values().forEach(replay -> replay.cancelled = true);
+    }
+
+    private static final class Replay {
+        private final String id;
+        private final ReplayRequest request;
+        private final AtomicLong scanned = new AtomicLong();
+        private final AtomicLong replayed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private long selected;
+        private volatile Long lastOffset;
+        private volatile boolean cancelled;
+        private volatile ReplayStatus.State state = ReplayStatus.State.RUNNING;
+        private volatile String error;
+
+        private Replay(String id, ReplayRequest request) {
+            this.id = id;
+            this.request = request;
+        }
+
+        private void fail(String error) {
+            this.error = error;
+            this.state = ReplayStatus.State.FAILED;
+        }
+
+        private ReplayStatus status() {
+            return new ReplayStatus(id, state, scanned.get(), replayed.get(), failed.get(), lastOffset, error);
+        }
+    }
+}
@@ -1,36 +1,122 @@
 package io.github.kxng0109.notifyhub.service;
 
+import com.rabbitmq.client.Channel;
+import io.github.kxng0109.notifyhub.attachment.AttachmentStore;
+import io.github.kxng0109.notifyhub.concurrency.DomainRateLimiter;
+import io.github.kxng0109.notifyhub.concurrency.DownstreamConcurrencyLimiter;
+import io.github.kxng0109.notifyhub.dedup.DeduplicationIndex;
+import io.github.kxng0109.notifyhub.dto.NotificationPriority;
 import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+import io.github.kxng0109.notifyhub.mail.SmtpReplyCodes;
+import io.github.kxng0109.notifyhub.metrics.NotificationMetrics;
+import io.github.kxng0109.notifyhub.metrics.NotificationMetrics.Outcome;
+import io.github.kxng0109.notifyhub.metrics.NotificationMetrics.Stage;
+import io.github.kxng0109.notifyhub.resilience.SmtpCircuitBreaker;
+import io.github.kxng0109.notifyhub.resilience.SmtpCircuitOpenException;
+import io.github.kxng0109.notifyhub.scheduling.NotificationScheduler;
+import io.github.kxng0109.notifyhub.template.CompiledTemplate;
+import io.github.kxng0109.notifyhub.template.TemplateRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.AmqpException;
 import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.*;
+import static io.github.kxng0109.notifyhub.service.NotificationProducer.HEADER_ACCEPTED_AT;
+import static io.github.kxng0109.notifyhub.service.NotificationProducer.HEADER_ENQUEUED_AT;
 import static io.github.kxng0109.notifyhub.service.NotificationProducer.HEADER_RETRY_COUNT;
 
 /**
  * NotificationConsumer is a service responsible for processing notification messages
  * received from RabbitMQ queues. It primarily handles parsing and validating incoming
  * messages, delegates email sending tasks, and manages retries in case of failures.
+ *
+ * Messages are consumed with manual acknowledgements: a delivery is only acknowledged once its
+ * email has been sent, or once the broker has confirmed its retry or failure message (or the
+ * {@link NotificationScheduler} has journaled the retry, when it handles retries). Until then it
+ * counts against the listener's prefetch, which makes prefetch the single bound on in-flight work.
+ *
+ * Notifications with more recipients than the configured chunk size are split into chunks that
+ * are sent in parallel. A failed chunk is retried as its own message carrying only its own
+ * recipients, so recipients in chunks that succeeded are not emailed again. For the same reason
+ * each chunk is settled on its own: when the broker does not confirm a chunk's retry or failure
+ * message, that publish is tried again, with a growing pause, until it is confirmed, rather than
+ * returning the whole delivery to the queue.
+ *
+ * Chunks are also split by recipient domain and paced by the {@link DomainRateLimiter}: a chunk
+ * that has to wait for its domain waits on a timer rather than on a worker thread, and a chunk
+ * that would wait too long is deferred through the delayed exchange without using up a retry.
+ * Those deferrals are counted in the {@code x-deferral-count} header; once a chunk has been
+ * deferred {@code notifyhub.mail.rate.max-deferrals} times, the next one uses up a retry instead,
+ * or parks the chunk when it has none left. A personalized template chunk, which sends one message
+ * per recipient, reserves one token per recipient.
+ *
+ * Sends are also guarded by the {@link SmtpCircuitBreaker}. While the SMTP server is down, a
+ * failed send does not use up a retry: the chunk, or the whole notification when it has only one,
+ * is deferred through the delayed exchange until the breaker probes the server again, rather than
+ * being returned to the queue and handed straight back out.
+ *
+ * High-priority notifications arrive on their own queue and are sent on their own executor.
+ * The time from acceptance to delivery is recorded per lane as
+ * {@code notifyhub.notifications.delivery.latency}. The time spent waiting in the broker and on
+ * the email executor, and the time from acceptance to the outcome of every send attempt, are
+ * recorded through {@link NotificationMetrics}.
+ *
+ * Every chunk that is sent is recorded in the {@link DeduplicationIndex} by message ID and
+ * recipients. A chunk that arrives again, after a redelivery or a duplicate publish, is skipped.
+ *
+ * Notifications with a {@code templateId} are rendered from the {@link TemplateRegistry} when
+ * they are sent. Personalized ones are rendered and sent once per recipient, and each recipient
+ * is recorded as sent on its own, so a retry of the chunk skips those already emailed.
  */
 @Service
 public class NotificationConsumer {
-    public static final AtomicInteger counter = new AtomicInteger(0);
+    public static final String HEADER_FAILURE_REASON = "x-failure-reason";
+    public static final String HEADER_FAILED_AT = "x-failed-at";
+    public static final String HEADER_DEFERRAL_COUNT = "x-deferral-count";
     private static final Logger logger = LoggerFactory.getLogger(NotificationConsumer.class);
+    private final AtomicInteger deliveries = new AtomicInteger();
     private final EmailService emailService;
-    private final RabbitTemplate rabbitTemplate;
+    private final PublisherConfirmTracker confirmTracker;
     private final Executor publisherExecutor;
     private final Executor emailSenderExecutor;
+    private final Executor priorityEmailSenderExecutor;
+    private final DeliveryAcknowledger acknowledger;
+    private final DownstreamConcurrencyLimiter concurrencyLimiter;
+    private final AttachmentStore attachmentStore;
+    private final DomainRateLimiter rateLimiter;
+    private final SmtpCircuitBreaker circuitBreaker;
+    private final NotificationScheduler scheduler;
+    private final DeduplicationIndex deduplicationIndex;
+    private final TemplateRegistry templates;
+    private final NotificationMetrics metrics;
+    private final Map<NotificationPriority, Timer> deliveryLatency = new EnumMap<>(NotificationPriority.class);
 
     @Value("${notifyhub.rabbitmq.maxRetries:3}")
     private int maxRetries;
@@ -41,43 +127,113 @@ public class NotificationConsumer {
     @Value("${notifyhub.rabbitmq.backoff.multiplier:5000}")
     private long backoffMultiplier;
 
+    @Value("${notifyhub.mail.rate.max-deferrals:10}")
+    private int maxDeferrals;
+
+    @Value("${notifyhub.mail.recipients.chunk-size:100}")
+    private int recipientChunkSize;
+
+    @Value("${notifyhub.rabbitmq.follow-up.retry-interval-ms:1000}")
+    private long followUpRetryIntervalMillis;
+
+    @Value("${notifyhub.rabbitmq.follow-up.max-retry-interval-ms:60000}")
+    private long followUpMaxRetryIntervalMillis;
+
     public NotificationConsumer(
             EmailService emailService,
-            RabbitTemplate rabbitTemplate,
+            PublisherConfirmTracker confirmTracker,
             @Qualifier("rabbitmqPublisherExecutor") Executor publisherExecutor,
-            @Qualifier("emailSendingExecutor") Executor emailSenderExecutor
+            @Qualifier("emailSendingExecutor") Executor emailSenderExecutor,
+            @Qualifier("priorityEmailSendingExecutor") Executor priorityEmailSenderExecutor,
+            DeliveryAcknowledger acknowledger,
+            DownstreamConcurrencyLimiter concurrencyLimiter,
+            AttachmentStore attachmentStore,
+            DomainRateLimiter rateLimiter,
+            SmtpCircuitBreaker circuitBreaker,
+            NotificationScheduler scheduler,
+            DeduplicationIndex deduplicationIndex,
+            TemplateRegistry templates,
+            NotificationMetrics metrics,
+            MeterRegistry meterRegistry
     ) {
         this.emailService = emailService;
-        this.rabbitTemplate = rabbitTemplate;
+        this.confirmTracker = confirmTracker;
         this.publisherExecutor = publisherExecutor;
         this.emailSenderExecutor = emailSenderExecutor;
+        this.priorityEmailSenderExecutor = priorityEmailSenderExecutor;
+        this.acknowledger = acknowledger;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.attachmentStore = attachmentStore;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.scheduler = scheduler;
+        this.deduplicationIndex = deduplicationIndex;
+        this.templates = templates;
+        this.metrics = metrics;
+
+        for (NotificationPriority lane : NotificationPriority.values()) {
+            deliveryLatency.put(lane, Timer.builder("notifyhub.notifications.delivery.latency")
+                                           .tag("lane", lane.name().toLowerCase(Locale.ROOT))
+                                           .description("Time from accepting a notification to sending its email")
+                                           .publishPercentiles(0.5, 0.95, 0.99)
+                                           .publishPercentileHistogram()
+                                           .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Consumes a notification from the high-priority queue. It is handled exactly like
+     * {@link #handleNotification}, on the priority lane's own consumers and executor.
+     *
+     * @param notificationRequest Contains the details of the notification such as subject, body, and HTML body.
+     * @param message The original RabbitMQ message containing additional metadata such as headers.
+     * @param channel The channel the message was delivered on, used to acknowledge it once it is handled.
+     */
+    @RabbitListener(
+            id = PRIORITY_LISTENER_ID,
+            queues = PRIORITY_QUEUE_NAME,
+            containerFactory = "priorityListenerContainerFactory"
+    )
+    public void handlePriorityNotification(NotificationRequest notificationRequest, Message message, Channel channel) {
+        handleNotification(notificationRequest, message, channel);
     }
 
     /**
      * Consumes a notification message from a RabbitMQ queue, logs the processing information,
      * validates the notification content, and delegates the processing to an email sender executor.
+     * Invalid notifications (no body, HTML body or template) are rejected without requeueing. If the email
+     * executor refuses the work, the delivery is returned to the queue so the broker can hand it
+     * out again later.
      *
      * @param notificationRequest Contains the details of the notification such as subject, body, and HTML body.
      * @param message The original RabbitMQ message containing additional metadata such as headers.
-     * @throws AmqpRejectAndDontRequeueException if the notification content is invalid (no body or HTML body).
+     * @param channel The channel the message was delivered on, used to acknowledge it once it is handled.
      */
-    @RabbitListener(queues = QUEUE_NAME)
-    public void handleNotification(NotificationRequest notificationRequest, Message message) {
-        long startTime = System.currentTimeMillis();
-        int currentCounter = counter.incrementAndGet();
+    @RabbitListener(id = NOTIFICATION_LISTENER_ID, queues = QUEUE_NAME)
+    public void handleNotification(NotificationRequest notificationRequest, Message message, Channel channel) {
+        long deliveryTag = message.getMessageProperties().getDeliveryTag();
+        int currentCounter = deliveries.incrementAndGet();
         String consumerThread = Thread.currentThread().getName();
+        recordBrokerDwell(message);
+        if (message.getMessageProperties().getMessageId() == null) {
+            // Delivery tags restart with every channel, so only a random ID keeps the retries of
+            // different notifications apart. A redelivery of this message gets a new one.
+            message.getMessageProperties().setMessageId(UUID.randomUUID().toString());
+        }
 
-        logger.info("[CONSUMER #{}] [THREAD: {}] Received notification in {}ms -> {}",
+        logger.info("[CONSUMER #{}] [THREAD: {}] Received notification -> {}",
                     currentCounter,
                     consumerThread,
-                    System.currentTimeMillis() - startTime,
                     notificationRequest.subject()
         );
-        if (!StringUtils.hasText(notificationRequest.body()) && !StringUtils.hasText(notificationRequest.htmlBody())) {
-            logger.error("[CONSUMER #{}] Discarding notification with no body(text or HTML): {}", currentCounter,
+        if (!StringUtils.hasText(notificationRequest.body())
+                && !StringUtils.hasText(notificationRequest.htmlBody())
+                && !StringUtils.hasText(notificationRequest.templateId())) {
+            logger.error("[CONSUMER #{}] Discarding notification with no body(text, HTML or template): {}", currentCounter,
                          notificationRequest
             );
-            throw new AmqpRejectAndDontRequeueException("Notification request has no body (text or HTML).");
+            acknowledger.nack(channel, deliveryTag, false);
+            return;
         }
 
         int retryCount = (int) message.getMessageProperties()
@@ -86,16 +242,215 @@ public class NotificationConsumer {
                                               HEADER_RETRY_COUNT, 0
                                       );
 
-        emailSenderExecutor.execute(() -> processEmail(
-                notificationRequest, message, retryCount, currentCounter
-        ));
+        acknowledger.register(channel, deliveryTag);
+        List<NotificationRequest> chunks = splitRecipients(notificationRequest);
+        List<CompletableFuture<Void>> settlements = new ArrayList<>(chunks.size());
+        for (NotificationRequest chunk : chunks) {
+            if (deduplicationIndex.isDuplicateDelivery(message.getMessageProperties().getMessageId(), chunk.to())) {
+                logger.warn("[CONSUMER #{}] Skipping a chunk of {} recipients that was already sent.",
+                            currentCounter, chunk.to().size());
+                settlements.add(CompletableFuture.completedFuture(null));
+                continue;
+            }
+            long waitMillis = rateLimiter.reserve(domainOf(chunk), chunk.personalized() ? chunk.to().size() : 1);
+            if (waitMillis < 0) {
+                logger.info("[CONSUMER #{}] Domain {} is rate limited, deferring a chunk of {} recipients.",
+                            currentCounter, domainOf(chunk), chunk.to().size());
+                settlements.add(deferRateLimited(chunk, message, retryCount));
+            } else if (waitMillis > 0) {
+                // Wait for the token on the limiter's scheduler rather than on a worker thread.
+                settlements.add(rateLimiter.after(waitMillis).thenCompose(ignored -> sendChunkOrDefer(
+                        chunk, message, retryCount, currentCounter
+                )));
+            } else {
+                try {
+                    settlements.add(sendChunk(chunk, message, retryCount, currentCounter));
+                } catch (RejectedExecutionException e) {
+                    if (settlements.isEmpty()) {
+                        logger.warn("[CONSUMER #{}] Email executor is saturated, returning message to the queue.",
+                                    currentCounter);
+                        acknowledger.nack(channel, deliveryTag, true);
+                        return;
+                    }
+                    // Earlier chunks are already being sent, so defer only this one.
+                    logger.warn("[CONSUMER #{}] Email executor is saturated, deferring a chunk of {} recipients.",
+                                currentCounter, chunk.to().size());
+                    settlements.add(defer(chunk, message, retryCount, calculateDelay(0)));
+                }
+            }
+        }
+
+        for (int i = 0; i < chunks.size(); i++) {
+            CompletableFuture<Void> settlement = deferIfCircuitOpen(settlements.get(i), chunks.get(i), message, retryCount);
+            settlements.set(i, untilFollowUpConfirmed(settlement, channel, 0));
+        }
+
+        CompletableFuture.allOf(settlements.toArray(CompletableFuture[]::new))
+                         .whenComplete((ignored, error) -> settle(channel, deliveryTag, currentCounter, error));
+    }
+
+    private CompletableFuture<Void> sendChunk(NotificationRequest chunk, Message message, int retryCount, int counter) {
+        long queuedAt = System.nanoTime();
+        return CompletableFuture.supplyAsync(
+                () -> {
+                    metrics.recordSince(Stage.EMAIL_QUEUE, queuedAt);
+                    return processEmail(chunk, message, retryCount, counter);
+                },
+                laneOf(message) == NotificationPriority.HIGH ? priorityEmailSenderExecutor : emailSenderExecutor
+        ).thenCompose(Function.identity());
+    }
+
+    /**
+     * The lane a delivery belongs to, going by the queue it was consumed from.
+     */
+    private static NotificationPriority laneOf(Message message) {
+        return PRIORITY_QUEUE_NAME.equals(message.getMessageProperties().getConsumerQueue())
+                ? NotificationPriority.HIGH
+                : NotificationPriority.NORMAL;
+    }
+
+    /**
+     * Records how long the delivery waited in the broker, from the {@code x-enqueued-at} stamp
+     * set when it was published. Both ends use wall clocks, so skew between hosts shows up here.
+     */
+    private void recordBrokerDwell(Message message) {
+        if (message.getMessageProperties().getHeaders().get(HEADER_ENQUEUED_AT) instanceof Number enqueuedAt) {
+            long dwell = System.currentTimeMillis() - enqueuedAt.longValue();
+            metrics.record(Stage.BROKER_DWELL, TimeUnit.MILLISECONDS.toNanos(dwell));
+        }
+    }
+
+    private void recordEndToEnd(Message message, Outcome outcome, int retryCount) {
+        if (message.getMessageProperties().getHeaders().get(HEADER_ACCEPTED_AT) instanceof Number acceptedAt) {
+            metrics.recordEndToEnd(outcome, retryCount, acceptedAt.longValue());
+        }
+    }
+
+    private void recordDeliveryLatency(Message message) {
+        if (message.getMessageProperties().getHeaders().get(HEADER_ACCEPTED_AT) instanceof Number acceptedAt) {
+            long latency = Math.max(0L, System.currentTimeMillis() - acceptedAt.longValue());
+            deliveryLatency.get(laneOf(message)).record(latency, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private CompletableFuture<Void> sendChunkOrDefer(
+            NotificationRequest chunk,
+            Message message,
+            int retryCount,
+            int counter
+    ) {
+        try {
+            return sendChunk(chunk, message, retryCount, counter);
+        } catch (RejectedExecutionException e) {
+            logger.warn("[CONSUMER #{}] Email executor is saturated, deferring a chunk of {} recipients.",
+                        counter, chunk.to().size());
+            return defer(chunk, message, retryCount, calculateDelay(0));
+        }
+    }
+
+    /**
+     * Defers a chunk that could not be sent because the SMTP circuit is open. Returning it to the
+     * queue would hand it, and every other prefetched delivery, straight back to this consumer in
+     * a tight loop, and would send the other chunks of the same notification again.
+     */
+    private CompletableFuture<Void> deferIfCircuitOpen(
+            CompletableFuture<Void> settlement,
+            NotificationRequest chunk,
+            Message message,
+            int retryCount
+    ) {
+        return settlement.exceptionallyCompose(error -> {
+            if (unwrap(error) instanceof SmtpCircuitOpenException) {
+                return defer(chunk, message, retryCount, circuitBreaker.getOpenDurationMillis());
+            }
+            return CompletableFuture.failedFuture(error);
+        });
+    }
+
+    /**
+     * Publishes a chunk's retry or failure message again until the broker confirms it, so that the
+     * chunk is settled without returning the delivery, and with it the chunks already sent, to the
+     * queue. Gives up once the channel is closed: the broker then redelivers the delivery anyway.
+     */
+    private CompletableFuture<Void> untilFollowUpConfirmed(CompletableFuture<Void> settlement, Channel channel, int attempt) {
+        return settlement.exceptionallyCompose(error -> {
+            if (!(unwrap(error) instanceof FollowUpPublishException followUp) || !channel.isOpen()) {
+                return CompletableFuture.failedFuture(error);
+            }
+            long pause = Math.min(followUpMaxRetryIntervalMillis, followUpRetryIntervalMillis << Math.min(attempt, 16));
+            logger.warn("Follow-up publish was not confirmed, publishing it again in {}ms (attempt {}): {}",
+                        pause, attempt + 2, followUp.getMessage());
+            Executor delayed = CompletableFuture.delayedExecutor(pause, TimeUnit.MILLISECONDS, publisherExecutor);
+            return untilFollowUpConfirmed(
+                    CompletableFuture.supplyAsync(followUp.retry, delayed).thenCompose(Function.identity()),
+                    channel,
+                    attempt + 1
+            );
+        });
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * Splits a notification into chunks that each target a single recipient domain and hold at
+     * most {@code notifyhub.mail.recipients.chunk-size} recipients. Every chunk is rate limited,
+     * sent, retried and parked on its own.
+     */
+    private List<NotificationRequest> splitRecipients(NotificationRequest notificationRequest) {
+        Map<String, List<String>> recipientsByDomain = new LinkedHashMap<>();
+        for (String recipient : notificationRequest.to()) {
+            recipientsByDomain.computeIfAbsent(domainOf(recipient), domain -> new ArrayList<>()).add(recipient);
+        }
+        if (recipientsByDomain.size() == 1 && notificationRequest.to().size() <= recipientChunkSize) {
+            return List.of(notificationRequest);
+        }
+
+        List<NotificationRequest> chunks = new ArrayList<>();
+        for (List<String> recipients : recipientsByDomain.values()) {
+            for (int start = 0; start < recipients.size(); start += recipientChunkSize) {
+                int end = Math.min(recipients.size(), start + recipientChunkSize);
+                chunks.add(notificationRequest.withRecipients(List.copyOf(recipients.subList(start, end))));
+            }
+        }
+        return chunks;
+    }
+
+    private static String domainOf(NotificationRequest chunk) {
+        return domainOf(chunk.to().getFirst());
+    }
+
+    private static String domainOf(String recipient) {
+        int at = recipient.lastIndexOf('@');
+        return at >= 0 ? recipient.substring(at + 1).toLowerCase(Locale.ROOT) : "";
+    }
+
+    /**
+     * Settles the original delivery once every chunk has reached a final state: sent, or handed
+     * to the broker as its own retry or failure message. The delivery is only returned to the
+     * queue when its channel closed before every chunk settled.
+     */
+    private void settle(
+            Channel channel,
+            long deliveryTag,
+            int counter,
+            Throwable error
+    ) {
+        if (error == null) {
+            acknowledger.ack(channel, deliveryTag);
+        } else {
+            logger.error("[CONSUMER #{}] Could not settle every chunk before the channel closed.", counter, error);
+            acknowledger.nack(channel, deliveryTag, true);
+        }
     }
 
     /**
      * Processes an email request by sending the appropriate email (HTML or plain text)
      * based on the content of the provided notification request. If the email sending
      * fails, retries the operation up to a maximum retry limit or sends the request to a
-     * failure queue.
+     * failure queue. While the SMTP circuit is not closed, the send is not attempted or a failure
+     * does not count as a retry; the future then fails with {@link SmtpCircuitOpenException}.
      *
      * @param notificationRequest The notification request containing details such as recipient(s),
      *                             subject, body, and attachments of the email.
@@ -103,14 +458,26 @@ public class NotificationConsumer {
      *                             acknowledgments or re-queuing purposes.
      * @param retryCount          The current retry attempt count for the email processing operation.
      * @param counter             The worker instance or thread identifier processing the request.
+     * @return a future that completes once the email is sent, or once the broker has confirmed the
+     *         retry or failure message; it completes exceptionally if that publish failed.
      */
-    private void processEmail(NotificationRequest notificationRequest, Message message, int retryCount, int counter) {
+    private CompletableFuture<Void> processEmail(
+            NotificationRequest notificationRequest,
+            Message message,
+            int retryCount,
+            int counter
+    ) {
         long processStart = System.currentTimeMillis();
+        if (!circuitBreaker.allowsSend()) {
+            return CompletableFuture.failedFuture(new SmtpCircuitOpenException());
+        }
 
         try {
             logger.debug("[WORKER #{}] Starting email processing. Attempt {}", counter, retryCount + 1);
 
-            if (StringUtils.hasText(notificationRequest.htmlBody())) {
+            if (StringUtils.hasText(notificationRequest.templateId())) {
+                sendTemplated(notificationRequest, message);
+            } else if (StringUtils.hasText(notificationRequest.htmlBody())) {
                 emailService.sendHtmlMessage(
                         notificationRequest.to(),
                         notificationRequest.subject(),
@@ -127,7 +494,17 @@ public class NotificationConsumer {
 
             long duration = System.currentTimeMillis() - processStart;
             logger.info("[WORKER #{}] Email sent successfully in {}ms.", counter, duration);
+            rateLimiter.recordSuccess(domainOf(notificationRequest));
+            circuitBreaker.recordSuccess();
+            deduplicationIndex.recordDelivered(message.getMessageProperties().getMessageId(), notificationRequest.to());
+            recordDeliveryLatency(message);
+            recordEndToEnd(message, Outcome.SENT, retryCount);
+            return CompletableFuture.completedFuture(null);
         } catch (Exception e) {
+            if (SmtpReplyCodes.isThrottling(e)) {
+                rateLimiter.recordThrottled(domainOf(notificationRequest));
+            }
+            circuitBreaker.recordFailure(e);
             logger.error("[WORKER #{}] Email sending failed (Attempt {}). Error: {}. Message: {}",
                          counter,
                          retryCount + 1,
@@ -135,12 +512,51 @@ public class NotificationConsumer {
                          notificationRequest,
                          e
             );
+            if (!circuitBreaker.isClosed()) {
+                return CompletableFuture.failedFuture(new SmtpCircuitOpenException(e));
+            }
             if (retryCount < maxRetries) {
-                republishWithDelay(notificationRequest, message, retryCount);
+                recordEndToEnd(message, Outcome.RETRIED, retryCount);
+                return republishWithDelay(notificationRequest, message, retryCount);
             } else {
-                sendToFailureQueue(notificationRequest, e);
+                recordEndToEnd(message, Outcome.FAILED, retryCount);
+                return sendToFailureQueue(notificationRequest, message, e);
             }
-            throw new AmqpRejectAndDontRequeueException("Email sending failed", e);
+        }
+    }
+
+    /**
+     * Renders a templated notification and sends it. Without per-recipient variables the template
+     * is rendered once for the whole chunk; otherwise every recipient gets their own rendering.
+     */
+    private void sendTemplated(NotificationRequest notificationRequest, Message message) {
+        CompiledTemplate template = templates.find(notificationRequest.templateId())
+                                             .orElseThrow(() -> new IllegalStateException(
+                                                     "Unknown template '" + notificationRequest.templateId() + "'"));
+        if (!notificationRequest.personalized()) {
+            emailService.sendHtmlMessage(
+                    notificationRequest.to(),
+                    notificationRequest.subject(),
+                    template.render(notificationRequest.variables(), null),
+                    notificationRequest.attachments()
+            );
+            return;
+        }
+
+        String messageId = message.getMessageProperties().getMessageId();
+        for (String recipient : notificationRequest.to()) {
+            List<String> single = List.of(recipient);
+            if (deduplicationIndex.isDuplicateDelivery(messageId, single)) {
+                continue;
+            }
+            Map<String, String> overrides = notificationRequest.recipientVariables().get(recipient);
+            emailService.sendHtmlMessage(
+                    single,
+                    notificationRequest.subject(),
+                    template.render(notificationRequest.variables(), overrides),
+                    notificationRequest.attachments()
+            );
+            deduplicationIndex.recordDelivered(messageId, single);
         }
     }
 
@@ -163,8 +579,9 @@ public class NotificationConsumer {
      * @param notificationRequest the notification request to be sent with the message
      * @param message the original message to be republished
      * @param retryCount the current retry count for the message
+     * @return a future that completes once the broker has confirmed the retry
      */
-    private void republishWithDelay(
+    private CompletableFuture<Void> republishWithDelay(
             NotificationRequest notificationRequest,
             Message message,
             int retryCount
@@ -174,32 +591,103 @@ public class NotificationConsumer {
 
         logger.info("Retrying message in {}s. This is attempt {}.", delay / 1000L, newRetryCount);
 
-        publisherExecutor.execute(() -> {
-            try {
-                rabbitTemplate.convertAndSend(
-                        DELAYED_EXCHANGE_NAME,
-                        message.getMessageProperties().getReceivedRoutingKey(),
-                        notificationRequest,
-                        msg -> {
-                            msg.getMessageProperties().getHeaders().put(HEADER_RETRY_COUNT, newRetryCount);
-                            msg.getMessageProperties().setDelayLong(delay);
-                            return msg;
-                        }
-                );
-            } catch (Exception e) {
-                logger.error("Failed to republish message", e);
-            }
-        });
+        return republish(notificationRequest, message, newRetryCount, 0, delay);
+    }
+
+    /**
+     * Puts a chunk that cannot be sent right now back on the delayed exchange without using up
+     * one of its retries.
+     */
+    private CompletableFuture<Void> defer(
+            NotificationRequest notificationRequest,
+            Message message,
+            int retryCount,
+            long delay
+    ) {
+        return republish(notificationRequest, message, retryCount, deferralCountOf(message), delay);
+    }
+
+    /**
+     * Defers a chunk whose domain is rate limited, counting the deferral. A chunk that has already
+     * been deferred the maximum number of times uses up a retry instead, or is parked when it has
+     * no retries left, so a domain that stays throttled cannot keep it circulating forever.
+     */
+    private CompletableFuture<Void> deferRateLimited(
+            NotificationRequest notificationRequest,
+            Message message,
+            int retryCount
+    ) {
+        int deferrals = deferralCountOf(message);
+        if (deferrals < maxDeferrals) {
+            return republish(notificationRequest, message, retryCount, deferrals + 1,
+                             rateLimiter.getMaxWaitMillis());
+        }
+        if (retryCount < maxRetries) {
+            recordEndToEnd(message, Outcome.RETRIED, retryCount);
+            return republishWithDelay(notificationRequest, message, retryCount);
+        }
+        logger.error("Rate limit deferrals of {} and max retries of {} exceeded for message. Sending to failure queue: {}.",
+                     maxDeferrals, maxRetries, notificationRequest);
+        recordEndToEnd(message, Outcome.FAILED, retryCount);
+        return park(notificationRequest, message, "Rate limited by domain " + domainOf(notificationRequest));
+    }
+
+    private static int deferralCountOf(Message message) {
+        return message.getMessageProperties().getHeaders().get(HEADER_DEFERRAL_COUNT) instanceof Number deferrals
+                ? deferrals.intValue()
+                : 0;
+    }
+
+    /**
+     * Publishes a copy of the notification to the delayed exchange, or hands it to the
+     * {@link NotificationScheduler} when that handles retries. The copy goes back to the lane it
+     * came from. Its stored attachments are held, which also refreshes them for the copy's wait,
+     * until the broker or the scheduler has taken it.
+     */
+    private CompletableFuture<Void> republish(
+            NotificationRequest notificationRequest,
+            Message message,
+            int retryCount,
+            int deferralCount,
+            long delay
+    ) {
+        attachmentStore.retainAll(notificationRequest.attachments());
+        CompletableFuture<Void> published;
+        if (scheduler.handlesRetries()) {
+            published = scheduleFollowUp(notificationRequest, message, retryCount, deferralCount, delay);
+        } else {
+            published = publishFollowUp(
+                    DELAYED_EXCHANGE_NAME,
+                    laneOf(message) == NotificationPriority.HIGH ? PRIORITY_ROUTING_KEY : ROUTING_KEY,
+                    notificationRequest,
+                    message,
+                    msg -> {
+                        msg.getMessageProperties().getHeaders().put(HEADER_RETRY_COUNT, retryCount);
+                        msg.getMessageProperties().getHeaders().put(HEADER_DEFERRAL_COUNT, deferralCount);
+                        msg.getMessageProperties().setDelayLong(delay);
+                        return msg;
+                    }
+            );
+        }
+        return published.whenComplete((ignored, error) -> attachmentStore.releaseAll(notificationRequest.attachments()))
+                        .exceptionallyCompose(error -> CompletableFuture.failedFuture(new FollowUpPublishException(
+                                error, () -> republish(notificationRequest, message, retryCount, deferralCount, delay))));
     }
 
     /**
      * Sends a notification request to the failure queue after the maximum retries have been exceeded.
-     * Includes the failure reason in the message header for debugging purposes.
+     * Includes the failure reason and time in the message headers, for debugging and for replaying it later.
      *
      * @param notificationRequest the notification request object that failed processing
+     * @param message the original message that failed processing
      * @param failureReason the exception that caused the failure
+     * @return a future that completes once the broker has confirmed the failure message
      */
-    private void sendToFailureQueue(NotificationRequest notificationRequest, Exception failureReason) {
+    private CompletableFuture<Void> sendToFailureQueue(
+            NotificationRequest notificationRequest,
+            Message message,
+            Exception failureReason
+    ) {
         logger.error(
                 "Max retires of {} exceeded for message. Sending to failure queue: {}.",
                 maxRetries,
@@ -207,20 +695,115 @@ public class NotificationConsumer {
                 failureReason
         );
 
+        return park(notificationRequest, message, failureReason.getMessage());
+    }
+
+    private CompletableFuture<Void> park(NotificationRequest notificationRequest, Message message, String reason) {
+        return publishFollowUp(
+                FAILURES_EXCHANGE_NAME,
+                "",
+                notificationRequest,
+                message,
+                msg -> {
+                    msg.getMessageProperties().getHeaders().put(HEADER_FAILURE_REASON, reason);
+                    msg.getMessageProperties().getHeaders().put(HEADER_FAILED_AT, System.currentTimeMillis());
+                    return msg;
+                }
+        ).exceptionallyCompose(error -> CompletableFuture.failedFuture(new FollowUpPublishException(
+                error, () -> park(notificationRequest, message, reason))));
+    }
+
+    /**
+     * Publishes a retry or failure message on the publisher executor, keeping the original
+     * message ID and acceptance time, and tracks it until the broker confirms it.
+     */
+    private CompletableFuture<Void> publishFollowUp(
+            String exchange,
+            String routingKey,
+            NotificationRequest notificationRequest,
+            Message message,
+            MessagePostProcessor headers
+    ) {
+        CompletableFuture<Void> published = new CompletableFuture<>();
+        String notificationId = notificationId(message);
+        Object acceptedAt = message.getMessageProperties().getHeaders().get(HEADER_ACCEPTED_AT);
         publisherExecutor.execute(() -> {
-            try {
-                rabbitTemplate.convertAndSend(
-                        FAILURES_EXCHANGE_NAME,
-                        "",
+            try (DownstreamConcurrencyLimiter.Permit ignored = concurrencyLimiter.acquireAmqpPublish()) {
+                confirmTracker.publish(
+                        notificationId,
+                        exchange,
+                        routingKey,
                         notificationRequest,
                         msg -> {
-                            msg.getMessageProperties().getHeaders().put("x-failure-reason", failureReason.getMessage());
-                            return msg;
+                            msg.getMessageProperties().setMessageId(notificationId);
+                            if (acceptedAt != null) {
+                                msg.getMessageProperties().getHeaders().put(HEADER_ACCEPTED_AT, acceptedAt);
+                            }
+                            return headers.postProcessMessage(msg);
                         }
-                );
+                ).thenAccept(outcome -> {
+                    if (outcome.accepted()) {
+                        published.complete(null);
+                    } else {
+                        published.completeExceptionally(new AmqpException(
+                                "Follow-up publish for notification " + notificationId + " was not confirmed: "
+                                        + outcome.failureReason()));
+                    }
+                });
             } catch (Exception e) {
-                logger.error("Failed to send to failure queue", e);
+                logger.error("Failed to publish follow-up for notification {}", notificationId, e);
+                published.completeExceptionally(e);
             }
         });
+        return published;
+    }
+
+    /**
+     * Schedules a retry on the {@link NotificationScheduler}, keeping the original message ID
+     * and acceptance time. Completes once the retry has been written to the scheduler's journal.
+     */
+    private CompletableFuture<Void> scheduleFollowUp(
+            NotificationRequest notificationRequest,
+            Message message,
+            int retryCount,
+            int deferralCount,
+            long delay
+    ) {
+        Map<String, Object> headers = new HashMap<>();
+        headers.put(HEADER_RETRY_COUNT, retryCount);
+        headers.put(HEADER_DEFERRAL_COUNT, deferralCount);
+        Object acceptedAt = message.getMessageProperties().getHeaders().get(HEADER_ACCEPTED_AT);
+        if (acceptedAt != null) {
+            headers.put(HEADER_ACCEPTED_AT, acceptedAt);
+        }
+        try {
+            scheduler.schedule(
+                    System.currentTimeMillis() + delay,
+                    laneOf(message),
+                    notificationId(message),
+                    headers,
+                    notificationRequest
+            );
+            return CompletableFuture.completedFuture(null);
+        } catch (IOException e) {
+            logger.error("Failed to schedule retry for notification {}", notificationId(message), e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private String notificationId(Message message) {
+        return message.getMessageProperties().getMessageId();
+    }
+
+    /**
+     * A retry or failure message that the broker did not confirm, with the means to publish it again.
+     */
+    private static final class FollowUpPublishException extends AmqpException {
+        private final transient Supplier<CompletableFuture<Void>> retry;
+
+        private FollowUpPublishException(Throwable cause, Supplier<CompletableFuture<Void>> retry) {
+            super(unwrap(cause).getMessage(), unwrap(cause));
+            this.retry = retry;
+        }
     }
 }
@@ -1,6 +1,16 @@
 package io.github.kxng0109.notifyhub.service;
 
+import io.github.kxng0109.notifyhub.attachment.AttachmentStore;
+import io.github.kxng0109.notifyhub.concurrency.DownstreamConcurrencyLimiter;
+import io.github.kxng0109.notifyhub.dedup.DeduplicationIndex;
+import io.github.kxng0109.notifyhub.dto.AttachmentRequest;
+import io.github.kxng0109.notifyhub.dto.NotificationPriority;
 import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+import io.github.kxng0109.notifyhub.messaging.QueueShards;
+import io.github.kxng0109.notifyhub.metrics.NotificationMetrics;
+import io.github.kxng0109.notifyhub.outbox.NotificationOutbox;
+import io.github.kxng0109.notifyhub.outbox.OutboxEntry;
+import io.github.kxng0109.notifyhub.scheduling.NotificationScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.MessagePostProcessor;
@@ -8,53 +18,409 @@ import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 
 import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.DELAYED_EXCHANGE_NAME;
-import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.ROUTING_KEY;
 
 /**
  * This service is responsible for producing and publishing notification requests to a message queue.
  * It facilitates asynchronous message delivery using a specified background executor.
+ * Large attachments are moved into the {@link AttachmentStore} before publishing, so messages
+ * and their retries only carry references to them. High-priority notifications are published
+ * with their own routing key and end up in the priority queue, and the others are spread over
+ * the {@link QueueShards} when sharding is enabled. Notifications with a future
+ * {@code sendAt} are held by the {@link NotificationScheduler} until they are due. A request sent
+ * with an idempotency key gets a notification ID derived from that key, and a repeat of an
+ * already accepted request is recognised by the {@link DeduplicationIndex} and not published again.
+ * A repeat that arrives while the first request is still waiting for its confirm is recognised
+ * too, because the key is reserved in memory as soon as the first request is checked.
+ * When the {@link NotificationOutbox} is enabled, notifications are accepted into it instead of
+ * being published on the request's behalf, and its relay publishes them.
  */
 @Service
 public class NotificationProducer {
     public static final String HEADER_RETRY_COUNT = "x-retry-count";
+    public static final String HEADER_ACCEPTED_AT = "x-accepted-at";
+    public static final String HEADER_ENQUEUED_AT = "x-enqueued-at";
     private static final Logger logger = LoggerFactory.getLogger(NotificationProducer.class);
     private final Executor publishExecutor;
 
     private final RabbitTemplate rabbitTemplate;
+    private final DownstreamConcurrencyLimiter concurrencyLimiter;
+    private final PublisherConfirmTracker confirmTracker;
+    private final AttachmentStore attachmentStore;
+    private final NotificationScheduler scheduler;
+    private final DeduplicationIndex deduplicationIndex;
+    private final NotificationOutbox outbox;
+    private final QueueShards queueShards;
+    private final NotificationMetrics metrics;
+    private final ConcurrentMap<String, CompletableFuture<PublishOutcome>> pendingIngestions =
+            new ConcurrentHashMap<>();
 
     public NotificationProducer(
             RabbitTemplate rabbitTemplate,
-            @Qualifier("rabbitmqPublisherExecutor") Executor publishExecutor
+            @Qualifier("rabbitmqPublisherExecutor") Executor publishExecutor,
+            DownstreamConcurrencyLimiter concurrencyLimiter,
+            PublisherConfirmTracker confirmTracker,
+            AttachmentStore attachmentStore,
+            NotificationScheduler scheduler,
+            DeduplicationIndex deduplicationIndex,
+            NotificationOutbox outbox,
+            QueueShards queueShards,
+            NotificationMetrics metrics
     ) {
         this.rabbitTemplate = rabbitTemplate;
         this.publishExecutor = publishExecutor;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.confirmTracker = confirmTracker;
+        this.attachmentStore = attachmentStore;
+        this.scheduler = scheduler;
+        this.deduplicationIndex = deduplicationIndex;
+        this.outbox = outbox;
+        this.queueShards = queueShards;
+        this.metrics = metrics;
     }
 
     /**
      * Publishes a notification request to a message queue for delivery.
      * Processes and sends the notification using a background executor for asynchronous execution.
+     * The publish is tracked until the broker confirms it, and is retried locally if it is nacked
+     * or not confirmed in time, so a failure after the request has been accepted is not silently lost.
+     * With the outbox enabled, the notification is written to the outbox instead, and this returns
+     * once it is on disk. If it cannot be written there, it is published as without the outbox.
      *
      * @param notificationRequest the request containing recipient information, subject, body,
      *                            and optional attachments for the notification to be sent
+     * @return the ID assigned to the notification and a future with its final publish outcome
      */
-    public void sendNotification(NotificationRequest notificationRequest) {
-        logger.info("Received notification request for '{}'", notificationRequest.to());
-        publishExecutor.execute(() -> {
+    public PublishReceipt sendNotification(NotificationRequest notificationRequest) {
+        return sendNotification(notificationRequest, null);
+    }
+
+    /**
+     * Publishes a notification request like {@link #sendNotification(NotificationRequest)}, but at
+     * most once per idempotency key. The notification ID is derived from the key, so a repeated
+     * request gets the same ID back. A repeat of a request that was accepted within the
+     * deduplication window is not published again, and its receipt is marked as a duplicate.
+     * A repeat of a request whose publish is still pending is not published either; its receipt
+     * shares the pending outcome. If that publish fails, the key is released so it can be retried.
+     *
+     * @param notificationRequest the notification to send
+     * @param idempotencyKey a client-chosen key identifying the request, or {@code null} for none
+     * @return the ID assigned to the notification and a future with its final publish outcome
+     */
+    public PublishReceipt sendNotification(NotificationRequest notificationRequest, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            String notificationId = UUID.randomUUID().toString();
+            return new PublishReceipt(notificationId, accept(notificationId, notificationRequest), false);
+        }
+
+        String notificationId = notificationIdFor(idempotencyKey);
+        // Reserve the key before checking the index, so a concurrent repeat cannot slip in between.
+        CompletableFuture<PublishOutcome> reserved = new CompletableFuture<>();
+        CompletableFuture<PublishOutcome> pending = pendingIngestions.putIfAbsent(notificationId, reserved);
+        if (pending != null) {
+            logger.info("Ignoring repeated notification request {} with idempotency key '{}' while it is being published",
+                        notificationId, idempotencyKey);
+            return new PublishReceipt(notificationId, pending, true);
+        }
+        if (deduplicationIndex.isDuplicateIngestion(notificationId)) {
+            pendingIngestions.remove(notificationId, reserved);
+            logger.info("Ignoring repeated notification request {} with idempotency key '{}'",
+                        notificationId, idempotencyKey);
+            return new PublishReceipt(
+                    notificationId, CompletableFuture.completedFuture(PublishOutcome.accepted(notificationId)), true);
+        }
+
+        CompletableFuture<PublishOutcome> outcome;
+        try {
+            outcome = accept(notificationId, notificationRequest);
+        } catch (RuntimeException e) {
+            pendingIngestions.remove(notificationId, reserved);
+            throw e;
+        }
+        outcome.whenComplete((result, error) -> {
+            // Only recorded once accepted, so a client can retry a request that failed.
+            if (result != null && result.accepted()) {
+                deduplicationIndex.recordIngested(notificationId);
+            }
+            pendingIngestions.remove(notificationId, reserved);
+            if (error != null) {
+                reserved.completeExceptionally(error);
+            } else {
+                reserved.complete(result);
+            }
+        });
+        return new PublishReceipt(notificationId, reserved, false);
+    }
+
+    /**
+     * Writes the notification to the outbox, or publishes it on the publish executor.
+     *
+     * @return a future with the final publish outcome
+     */
+    private CompletableFuture<PublishOutcome> accept(String notificationId, NotificationRequest notificationRequest) {
+        logger.info("Received notification request {} for '{}'", notificationId, notificationRequest.to());
+        if (outbox.isEnabled()) {
             try {
-                MessagePostProcessor postProcessor = message -> {
-                    message.getMessageProperties().getHeaders().put(HEADER_RETRY_COUNT, 0);
-                    return message;
-                };
-
-                logger.debug("Publishing notification to queue -> {}", notificationRequest);
-                rabbitTemplate.convertAndSend(DELAYED_EXCHANGE_NAME, ROUTING_KEY, notificationRequest, postProcessor);
-                logger.info("Successfully published notification for '{}'", notificationRequest.to());
+                return outbox.append(notificationId, System.currentTimeMillis(), notificationRequest);
+            } catch (IOException e) {
+                logger.warn("Could not write notification {} to the outbox, publishing it directly",
+                            notificationId, e);
+            }
+        }
+
+        CompletableFuture<PublishOutcome> outcome = new CompletableFuture<>();
+
+        long queuedAt = System.nanoTime();
+        publishExecutor.execute(() -> {
+            metrics.recordSince(NotificationMetrics.Stage.PUBLISH_QUEUE, queuedAt);
+            NotificationRequest outgoing = null;
+            try (DownstreamConcurrencyLimiter.Permit ignored = concurrencyLimiter.acquireAmqpPublish()) {
+                outgoing = externalizeAttachments(notificationRequest);
+                logger.debug("Publishing notification to queue -> {}", outgoing);
+                publishHeld(notificationId, outgoing, System.currentTimeMillis()).thenAccept(result -> {
+                    if (result.accepted()) {
+                        logger.info("Successfully published notification {} for '{}'",
+                                    notificationId, notificationRequest.to());
+                    }
+                    outcome.complete(result);
+                });
             } catch (Exception e) {
+                if (outgoing != null) {
+                    attachmentStore.releaseAll(outgoing.attachments());
+                }
                 logger.error("Failed to publish notification: {}", notificationRequest, e);
+                outcome.complete(PublishOutcome.failed(notificationId, "Publish failed: " + e.getMessage()));
             }
         });
+        return outcome;
+    }
+
+    /**
+     * Publishes a batch of notifications on a single channel and then waits for all of their
+     * publisher confirms. This avoids a channel checkout and a broker round trip per notification.
+     * Runs on the calling thread, because the caller needs the per-notification outcome.
+     *
+     * @param notificationRequests the already validated notifications to publish
+     * @return one outcome per notification, in the same order as the input
+     */
+    public List<PublishOutcome> sendNotifications(List<NotificationRequest> notificationRequests) {
+        logger.info("Received batch of {} notification requests", notificationRequests.size());
+        List<CompletableFuture<PublishOutcome>> published = new ArrayList<>(notificationRequests.size());
+        Exception publishFailure = null;
+
+        try (DownstreamConcurrencyLimiter.Permit ignored = concurrencyLimiter.acquireAmqpPublish()) {
+            // Publishes made by the tracker on this thread reuse the channel bound by invoke().
+            rabbitTemplate.invoke(operations -> {
+                for (NotificationRequest notificationRequest : notificationRequests) {
+                    String notificationId = UUID.randomUUID().toString();
+                    NotificationRequest outgoing;
+                    try {
+                        outgoing = externalizeAttachments(notificationRequest);
+                    } catch (IOException e) {
+                        logger.error("Failed to store attachments of notification {}", notificationId, e);
+                        published.add(CompletableFuture.completedFuture(PublishOutcome.failed(
+                                notificationId, "Failed to store attachments: " + e.getMessage())));
+                        continue;
+                    }
+                    published.add(publishHeld(notificationId, outgoing, System.currentTimeMillis()));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            logger.error("Batch publish stopped after {} of {} notifications",
+                         published.size(), notificationRequests.size(), e);
+            publishFailure = e;
+        }
+
+        List<PublishOutcome> outcomes = new ArrayList<>(notificationRequests.size());
+        for (CompletableFuture<PublishOutcome> outcome : published) {
+            outcomes.add(outcome.join());
+        }
+        for (int i = published.size(); i < notificationRequests.size(); i++) {
+            outcomes.add(PublishOutcome.failed(null, "Publish failed: " + publishFailure.getMessage()));
+        }
+        logger.info("Published batch of {} notifications", published.size());
+        return outcomes;
+    }
+
+    /**
+     * Publishes notifications taken from the {@link NotificationOutbox} on a single channel, in
+     * order, keeping the IDs and acceptance times they were given when they were accepted.
+     * Runs on the calling thread, which is the outbox relay. A retried entry's attachments map
+     * to the blobs stored by its earlier attempts, and each attempt releases its hold on them
+     * once its publish has settled, so retries do not accumulate holds.
+     *
+     * @param entries the outbox entries to publish
+     * @return a future with the publish outcome of each entry, in the same order as the input
+     */
+    public List<CompletableFuture<PublishOutcome>> publishFromOutbox(List<OutboxEntry> entries) {
+        List<CompletableFuture<PublishOutcome>> published = new ArrayList<>(entries.size());
+        try (DownstreamConcurrencyLimiter.Permit ignored = concurrencyLimiter.acquireAmqpPublish()) {
+            rabbitTemplate.invoke(operations -> {
+                for (OutboxEntry entry : entries) {
+                    try {
+                        NotificationRequest outgoing = externalizeAttachments(entry.request());
+                        published.add(publishHeld(entry.notificationId(), outgoing, entry.acceptedAtMillis()));
+                    } catch (IOException e) {
+                        logger.error("Failed to store attachments of notification {}", entry.notificationId(), e);
+                        published.add(CompletableFuture.completedFuture(PublishOutcome.failed(
+                                entry.notificationId(), "Failed to store attachments: " + e.getMessage())));
+                    }
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            logger.error("Outbox publish stopped after {} of {} notifications", published.size(), entries.size(), e);
+        }
+        for (int i = published.size(); i < entries.size(); i++) {
+            published.add(CompletableFuture.completedFuture(
+                    PublishOutcome.failed(entries.get(i).notificationId(), "Publish failed")));
+        }
+        return published;
+    }
+
+    /**
+     * Publishes a notification whose stored attachments were just externalized, and releases this
+     * instance's hold on them once the publish has settled, whatever its outcome. From then on
+     * the broker or the scheduler has the notification, and the consumer that sends it may well
+     * run on another instance.
+     */
+    private CompletableFuture<PublishOutcome> publishHeld(
+            String notificationId,
+            NotificationRequest notificationRequest,
+            long acceptedAt
+    ) {
+        try {
+            return publish(notificationId, notificationRequest, acceptedAt)
+                    .whenComplete((outcome, error) -> attachmentStore.releaseAll(notificationRequest.attachments()));
+        } catch (RuntimeException e) {
+            attachmentStore.releaseAll(notificationRequest.attachments());
+            throw e;
+        }
+    }
+
+    /**
+     * Publishes a notification, or hands it to the {@link NotificationScheduler} if it has a
+     * {@code sendAt} in the future. A scheduled notification counts as accepted once it has
+     * been written to the scheduler's journal. With the scheduler disabled, a future
+     * {@code sendAt} falls back to a delay on the delayed exchange.
+     */
+    private CompletableFuture<PublishOutcome> publish(
+            String notificationId,
+            NotificationRequest notificationRequest,
+            long acceptedAt
+    ) {
+        long delay = notificationRequest.sendAt() != null
+                ? notificationRequest.sendAt().toEpochMilli() - System.currentTimeMillis()
+                : 0L;
+        if (delay <= 0) {
+            return confirmTracker.publish(
+                    notificationId,
+                    DELAYED_EXCHANGE_NAME,
+                    queueShards.routingKeyFor(notificationRequest),
+                    notificationRequest,
+                    initialHeaders(notificationId, acceptedAt)
+            );
+        }
+
+        long sendAt = notificationRequest.sendAt().toEpochMilli();
+        if (!scheduler.isEnabled()) {
+            MessagePostProcessor headers = initialHeaders(notificationId, sendAt);
+            return confirmTracker.publish(
+                    notificationId,
+                    DELAYED_EXCHANGE_NAME,
+                    queueShards.routingKeyFor(notificationRequest),
+                    notificationRequest,
+                    message -> {
+                        message.getMessageProperties().setDelayLong(delay);
+                        return headers.postProcessMessage(message);
+                    }
+            );
+        }
+        try {
+            // Delivery latency is measured from the requested send time, not from acceptance.
+            scheduler.schedule(
+                    sendAt,
+                    notificationRequest.priority() == NotificationPriority.HIGH
+                            ? NotificationPriority.HIGH
+                            : NotificationPriority.NORMAL,
+                    notificationId,
+                    Map.of(HEADER_RETRY_COUNT, 0, HEADER_ACCEPTED_AT, sendAt),
+                    notificationRequest
+            );
+            logger.info("Scheduled notification {} for {}", notificationId, notificationRequest.sendAt());
+            return CompletableFuture.completedFuture(PublishOutcome.accepted(notificationId));
+        } catch (IOException e) {
+            logger.error("Failed to schedule notification {}", notificationId, e);
+            return CompletableFuture.completedFuture(
+                    PublishOutcome.failed(notificationId, "Failed to schedule: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Moves large attachment content into the attachment store, so the message only carries
+     * references. The stored blobs are held until the caller releases them. Notifications
+     * without attachments are returned unchanged.
+     */
+    private NotificationRequest externalizeAttachments(NotificationRequest notificationRequest) throws IOException {
+        List<AttachmentRequest> attachments = notificationRequest.attachments();
+        if (attachments == null || attachments.isEmpty()) {
+            return notificationRequest;
+        }
+        List<AttachmentRequest> externalized = new ArrayList<>(attachments.size());
+        try {
+            for (AttachmentRequest attachment : attachments) {
+                externalized.add(attachmentStore.externalize(attachment));
+            }
+        } catch (IOException e) {
+            attachmentStore.releaseAll(externalized);
+            throw e;
+        }
+        return notificationRequest.withAttachments(externalized);
+    }
+
+    /**
+     * Stamps a freshly accepted notification with its ID, an initial retry count of zero and
+     * the time its delivery latency is measured from.
+     */
+    private MessagePostProcessor initialHeaders(String notificationId, long acceptedAt) {
+        return message -> {
+            message.getMessageProperties().setMessageId(notificationId);
+            message.getMessageProperties().getHeaders().put(HEADER_RETRY_COUNT, 0);
+            message.getMessageProperties().getHeaders().put(HEADER_ACCEPTED_AT, acceptedAt);
+            return message;
+        };
+    }
+
+    /**
+     * Derives the notification ID from an idempotency key, so a repeated request gets the same
+     * ID from every instance and its deliveries share a message ID. The index of accepted IDs is
+     * held in memory by each instance, so only repeats that reach the same instance within the
+     * window are dropped here.
+     */
+    private static String notificationIdFor(String idempotencyKey) {
+        return UUID.nameUUIDFromBytes(("idempotency-key:" + idempotencyKey).getBytes(StandardCharsets.UTF_8))
+                   .toString();
+    }
+
+    /**
+     * The ID assigned to an accepted notification request and its pending publish outcome.
+     *
+     * @param notificationId the ID the notification is published with
+     * @param outcome completes once the broker has confirmed the notification or all publish attempts failed
+     * @param duplicate whether the request repeated one that was already accepted, and was not published again
+     */
+    public record PublishReceipt(String notificationId, CompletableFuture<PublishOutcome> outcome, boolean duplicate) {
     }
 }
@@ -0,0 +1,18 @@
+package io.github.kxng0109.notifyhub.service;
+
+/**
+ * The broker-side outcome of publishing one notification.
+ *
+ * @param notificationId the ID the notification was published with, if it got that far
+ * @param accepted whether the broker has confirmed that it took responsibility for the notification
+ * @param failureReason why the notification was not accepted, {@code null} when accepted
+ */
+public record PublishOutcome(String notificationId, boolean accepted, String failureReason) {
+    public static PublishOutcome accepted(String notificationId) {
+        return new PublishOutcome(notificationId, true, null);
+    }
+
+    public static PublishOutcome failed(String notificationId, String failureReason) {
+        return new PublishOutcome(notificationId, false, failureReason);
+    }
+}
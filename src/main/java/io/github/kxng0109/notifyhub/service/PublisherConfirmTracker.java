@@ -0,0 +1,244 @@
+package io.github.kxng0109.notifyhub.service;
+
+import io.github.kxng0109.notifyhub.concurrency.ConcurrencyLimitExceededException;
+import io.github.kxng0109.notifyhub.concurrency.DownstreamConcurrencyLimiter;
+import io.github.kxng0109.notifyhub.metrics.NotificationMetrics;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static io.github.kxng0109.notifyhub.service.NotificationProducer.HEADER_ENQUEUED_AT;
+
+/**
+ * Publishes messages with asynchronous publisher confirms and tracks every publish until the
+ * broker has confirmed it.
+ *
+ * Outstanding publishes live in a concurrent set and are settled by the confirm callback, or by a
+ * sweeper once their confirm timeout has passed. A publish that is nacked, times out or fails to
+ * send is put in a bounded local retry buffer and published again, up to a maximum number of
+ * attempts. Only then is it reported as failed. Callers receive a future with the final
+ * {@link PublishOutcome}, so they can either fire and forget or wait for the broker's guarantee.
+ *
+ * Every attempt is stamped with the {@code x-enqueued-at} header: the time the message becomes
+ * available to consumers, which for a delayed message is when its delay runs out. Consumers use
+ * it to measure how long messages wait in the broker.
+ */
+@Component
+public class PublisherConfirmTracker implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(PublisherConfirmTracker.class);
+
+    private final RabbitTemplate rabbitTemplate;
+    private final DownstreamConcurrencyLimiter concurrencyLimiter;
+    private final NotificationMetrics metrics;
+    private final Set<PendingPublish> outstanding = ConcurrentHashMap.newKeySet();
+    private final BlockingQueue<PendingPublish> retryBuffer;
+    private final ScheduledExecutorService scheduler;
+    private final boolean confirmsEnabled;
+    private final long confirmTimeoutMillis;
+    private final int maxAttempts;
+
+    public PublisherConfirmTracker(
+            RabbitTemplate rabbitTemplate,
+            DownstreamConcurrencyLimiter concurrencyLimiter,
+            NotificationMetrics metrics,
+            MeterRegistry meterRegistry,
+            @Value("${spring.rabbitmq.publisher-confirm-type:none}") String publisherConfirmType,
+            @Value("${notifyhub.publisher.confirm-timeout-ms:10000}") long confirmTimeoutMillis,
+            @Value("${notifyhub.publisher.max-attempts:3}") int maxAttempts,
+            @Value("${notifyhub.publisher.retry-buffer-capacity:10000}") int retryBufferCapacity,
+            @Value("${notifyhub.publisher.retry-interval-ms:1000}") long retryIntervalMillis
+    ) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.metrics = metrics;
+        this.confirmsEnabled = "correlated".equalsIgnoreCase(publisherConfirmType);
+        this.confirmTimeoutMillis = confirmTimeoutMillis;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBuffer = new ArrayBlockingQueue<>(retryBufferCapacity);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("publisher-confirms").daemon(true).factory());
+        long sweepPeriod = Math.max(100L, Math.min(1000L, confirmTimeoutMillis / 2));
+        scheduler.scheduleWithFixedDelay(this::expireOverdue, sweepPeriod, sweepPeriod, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::drainRetryBuffer, retryIntervalMillis, retryIntervalMillis,
+                                         TimeUnit.MILLISECONDS);
+
+        Gauge.builder("notifyhub.publisher.confirms.outstanding", outstanding, Set::size)
+             .description("Publishes waiting for a broker confirm")
+             .register(meterRegistry);
+        Gauge.builder("notifyhub.publisher.retry.buffer", retryBuffer, BlockingQueue::size)
+             .description("Publishes waiting in the local retry buffer")
+             .register(meterRegistry);
+    }
+
+    /**
+     * Publishes a message and tracks it until the broker confirms it or all attempts are used up.
+     * Must be called with a broker publish permit held; retries take their own permit.
+     *
+     * @param notificationId the notification's ID, reported back in the outcome
+     * @param exchange the exchange to publish to
+     * @param routingKey the routing key to publish with
+     * @param payload the object to convert into the message body
+     * @param postProcessor applies headers and properties to every attempt
+     * @return a future completed with the final outcome; it is never completed exceptionally
+     */
+    public CompletableFuture<PublishOutcome> publish(
+            String notificationId,
+            String exchange,
+            String routingKey,
+            Object payload,
+            MessagePostProcessor postProcessor
+    ) {
+        PendingPublish pending = new PendingPublish(notificationId, exchange, routingKey, payload, postProcessor);
+        outstanding.add(pending);
+        attempt(pending);
+        return pending.result;
+    }
+
+    private void attempt(PendingPublish pending) {
+        int attempt = pending.attempts.incrementAndGet();
+        CorrelationData correlationData = new CorrelationData(pending.notificationId + "#" + attempt);
+        pending.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMillis);
+        pending.inFlight.set(correlationData);
+
+        try {
+            rabbitTemplate.convertAndSend(
+                    pending.exchange,
+                    pending.routingKey,
+                    pending.payload,
+                    message -> {
+                        Message processed = pending.postProcessor.postProcessMessage(message);
+                        Long delay = processed.getMessageProperties().getDelayLong();
+                        processed.getMessageProperties().getHeaders().put(
+                                HEADER_ENQUEUED_AT, System.currentTimeMillis() + (delay != null ? delay : 0L));
+                        return processed;
+                    },
+                    correlationData
+            );
+        } catch (Exception e) {
+            onFailure(pending, correlationData, "Publish failed: " + e.getMessage());
+            return;
+        }
+
+        if (!confirmsEnabled) {
+            onAck(pending, correlationData);
+            return;
+        }
+        correlationData.getFuture().whenComplete((confirm, error) -> {
+            if (error != null) {
+                onFailure(pending, correlationData, "Publish failed: " + error.getMessage());
+            } else if (confirm.isAck()) {
+                onAck(pending, correlationData);
+            } else {
+                onFailure(pending, correlationData, "Broker rejected message: " + confirm.getReason());
+            }
+        });
+    }
+
+    private void onAck(PendingPublish pending, CorrelationData correlationData) {
+        if (!pending.inFlight.compareAndSet(correlationData, null)) {
+            return;
+        }
+        outstanding.remove(pending);
+        metrics.recordSince(NotificationMetrics.Stage.BROKER_PUBLISH, pending.startedNanos);
+        pending.result.complete(PublishOutcome.accepted(pending.notificationId));
+    }
+
+    /**
+     * Settles a failed attempt, at most once per attempt, by either buffering it for another try
+     * or reporting the final failure.
+     */
+    private void onFailure(PendingPublish pending, CorrelationData correlationData, String reason) {
+        if (!pending.inFlight.compareAndSet(correlationData, null)) {
+            return;
+        }
+        if (pending.attempts.get() < maxAttempts && retryBuffer.offer(pending)) {
+            logger.warn("Publish of notification {} failed on attempt {}, retrying: {}",
+                        pending.notificationId, pending.attempts.get(), reason);
+            return;
+        }
+        fail(pending, reason);
+    }
+
+    private void fail(PendingPublish pending, String reason) {
+        outstanding.remove(pending);
+        logger.error("Giving up on publishing notification {} after {} attempts: {}",
+                     pending.notificationId, pending.attempts.get(), reason);
+        pending.result.complete(PublishOutcome.failed(pending.notificationId, reason));
+    }
+
+    private void expireOverdue() {
+        long now = System.nanoTime();
+        for (PendingPublish pending : outstanding) {
+            CorrelationData inFlight = pending.inFlight.get();
+            if (inFlight != null && now - pending.deadlineNanos > 0) {
+                onFailure(pending, inFlight, "No publisher confirm within " + confirmTimeoutMillis + "ms");
+            }
+        }
+    }
+
+    private void drainRetryBuffer() {
+        PendingPublish pending;
+        while ((pending = retryBuffer.poll()) != null) {
+            try (DownstreamConcurrencyLimiter.Permit ignored = concurrencyLimiter.acquireAmqpPublish()) {
+                attempt(pending);
+            } catch (ConcurrencyLimitExceededException e) {
+                fail(pending, e.getMessage());
+            } catch (RuntimeException e) {
+                logger.error("Unexpected error while retrying publish of notification {}", pending.notificationId, e);
+                fail(pending, "Retry failed: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    private static final class PendingPublish {
+        private final String notificationId;
+        private final String exchange;
+        private final String routingKey;
+        private final Object payload;
+        private final MessagePostProcessor postProcessor;
+        private final CompletableFuture<PublishOutcome> result = new CompletableFuture<>();
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final AtomicReference<CorrelationData> inFlight = new AtomicReference<>();
+        private final long startedNanos = System.nanoTime();
+        private volatile long deadlineNanos;
+
+        private PendingPublish(
+                String notificationId,
+                String exchange,
+                String routingKey,
+                Object payload,
+                MessagePostProcessor postProcessor
+        ) {
+            this.notificationId = notificationId;
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.payload = payload;
+            this.postProcessor = postProcessor;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package io.github.kxng0109.notifyhub.template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A template parsed once into a render plan: the literal text between placeholders, and the
+ * variable each placeholder is filled with.
+ *
+ * {@code {{name}}} is replaced with the HTML-escaped value of {@code name}, and
+ * {@code {{{name}}}} with the raw value. A variable without a value renders as nothing. Rendering
+ * only walks the plan, appending into a builder sized for the literal text, so no parsing or
+ * intermediate strings are involved per send.
+ */
+public final class CompiledTemplate {
+    private static final int VARIABLE_SIZE_ESTIMATE = 16;
+
+    private final String[] literals;
+    private final String[] variables;
+    private final boolean[] escaped;
+    private final int literalLength;
+
+    private CompiledTemplate(List<String> literals, List<String> variables, List<Boolean> escaped) {
+        this.literals = literals.toArray(String[]::new);
+        this.variables = variables.toArray(String[]::new);
+        this.escaped = new boolean[escaped.size()];
+        int length = 0;
+        for (String literal : this.literals) {
+            length += literal.length();
+        }
+        for (int i = 0; i < this.escaped.length; i++) {
+            this.escaped[i] = escaped.get(i);
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Parses a template. An unclosed placeholder is kept as literal text.
+     */
+    public static CompiledTemplate compile(String source) {
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        List<Boolean> escaped = new ArrayList<>();
+        int position = 0;
+        int literalStart = 0;
+        while (true) {
+            int open = source.indexOf("{{", position);
+            if (open < 0) {
+                break;
+            }
+            boolean raw = source.startsWith("{{{", open);
+            String closing = raw ? "}}}" : "}}";
+            int nameStart = open + (raw ? 3 : 2);
+            int close = source.indexOf(closing, nameStart);
+            if (close < 0) {
+                break;
+            }
+            literals.add(source.substring(literalStart, open));
+            variables.add(source.substring(nameStart, close).strip());
+            escaped.add(!raw);
+            position = close + closing.length();
+            literalStart = position;
+        }
+        literals.add(source.substring(literalStart));
+        return new CompiledTemplate(literals, variables, escaped);
+    }
+
+    /**
+     * Renders the template. Values are looked up in {@code overrides} first, then in {@code variables}.
+     *
+     * @param variables the values shared by every recipient; may be {@code null}
+     * @param overrides the values for one recipient; may be {@code null}
+     */
+    public String render(Map<String, String> variables, Map<String, String> overrides) {
+        StringBuilder out = new StringBuilder(literalLength + this.variables.length * VARIABLE_SIZE_ESTIMATE);
+        for (int i = 0; i < this.variables.length; i++) {
+            out.append(literals[i]);
+            String value = lookup(this.variables[i], variables, overrides);
+            if (value != null) {
+                if (escaped[i]) {
+                    appendEscaped(out, value);
+                } else {
+                    out.append(value);
+                }
+            }
+        }
+        return out.append(literals[literals.length - 1]).toString();
+    }
+
+    private static String lookup(String name, Map<String, String> variables, Map<String, String> overrides) {
+        if (overrides != null && overrides.containsKey(name)) {
+            return overrides.get(name);
+        }
+        return variables != null ? variables.get(name) : null;
+    }
+
+    private static void appendEscaped(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&' -> out.append("&amp;");
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '"' -> out.append("&quot;");
+                case '\'' -> out.append("&#39;");
+                default -> out.append(c);
+            }
+        }
+    }
+}
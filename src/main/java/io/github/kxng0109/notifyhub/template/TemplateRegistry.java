@@ -0,0 +1,144 @@
+package io.github.kxng0109.notifyhub.template;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Holds the email templates, compiled once, by template ID.
+ *
+ * Templates are read from {@code notifyhub.templates.dir}: every {@code <id>.html} file there
+ * becomes the template {@code <id>}. With hot reload enabled, the directory is watched and a
+ * template is recompiled as soon as its file changes, and dropped when its file is deleted.
+ * Notifications already in flight render with whichever version is current when they are sent.
+ */
+@Component
+public class TemplateRegistry implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(TemplateRegistry.class);
+    private static final String EXTENSION = ".html";
+
+    private final Path directory;
+    private final Map<String, CompiledTemplate> templates = new ConcurrentHashMap<>();
+    private final WatchService watchService;
+
+    public TemplateRegistry(
+            MeterRegistry meterRegistry,
+            @Value("${notifyhub.templates.dir:templates}") String directory,
+            @Value("${notifyhub.templates.hot-reload:true}") boolean hotReload
+    ) throws IOException {
+        this.directory = Path.of(directory);
+
+        Gauge.builder("notifyhub.templates.loaded", templates, Map::size)
+             .description("Email templates compiled and ready to render")
+             .register(meterRegistry);
+
+        if (!Files.isDirectory(this.directory)) {
+            logger.info("Template directory {} does not exist, no templates loaded.", this.directory.toAbsolutePath());
+            this.watchService = null;
+            return;
+        }
+        loadAll();
+        logger.info("Loaded {} templates from {}", templates.size(), this.directory.toAbsolutePath());
+
+        if (hotReload) {
+            this.watchService = this.directory.getFileSystem().newWatchService();
+            this.directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            Thread.ofPlatform().name("template-watcher").daemon(true).start(this::watch);
+        } else {
+            this.watchService = null;
+        }
+    }
+
+    public Optional<CompiledTemplate> find(String templateId) {
+        return Optional.ofNullable(templates.get(templateId));
+    }
+
+    public boolean contains(String templateId) {
+        return templates.containsKey(templateId);
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.context() instanceof Path name && isTemplate(name)) {
+                        Path file = directory.resolve(name);
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                            templates.remove(idOf(file));
+                            logger.info("Removed template {}", idOf(file));
+                        } else {
+                            load(file);
+                        }
+                    } else if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        loadAll();
+                    }
+                }
+                if (!key.reset()) {
+                    logger.warn("Template directory {} is no longer watched.", directory.toAbsolutePath());
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Shutting down.
+        }
+    }
+
+    private void loadAll() {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(TemplateRegistry::isTemplate).forEach(this::load);
+        } catch (IOException e) {
+            logger.warn("Failed to load templates from {}", directory.toAbsolutePath(), e);
+        }
+    }
+
+    private void load(Path file) {
+        try {
+            templates.put(idOf(file), CompiledTemplate.compile(Files.readString(file, StandardCharsets.UTF_8)));
+            logger.debug("Compiled template {}", idOf(file));
+        } catch (NoSuchFileException e) {
+            templates.remove(idOf(file));
+        } catch (IOException e) {
+            // Keep the previous version; the file may still be being written.
+            logger.warn("Failed to load template {}", file, e);
+        }
+    }
+
+    private static boolean isTemplate(Path file) {
+        return file.getFileName().toString().endsWith(EXTENSION);
+    }
+
+    private static String idOf(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(0, name.length() - EXTENSION.length());
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+}
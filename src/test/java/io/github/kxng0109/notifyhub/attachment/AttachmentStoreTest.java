@@ -0,0 +1,162 @@
+package io.github.kxng0109.notifyhub.attachment;
+
+import io.github.kxng0109.notifyhub.dto.AttachmentRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("AttachmentStore Tests")
+public class AttachmentStoreTest {
+    private static final String CONTENT = "The same PDF for every recipient in the campaign.";
+
+    @TempDir
+    Path directory;
+
+    private AttachmentStore store;
+
+    @AfterEach
+    void closeStore() {
+        if (store != null) {
+            store.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("Should store identical content once and return the same reference")
+    public void store_should_deduplicateIdenticalContent() throws IOException {
+        store = newStore(60_000);
+
+        String first = store.store(encoded());
+        String second = store.store(encoded());
+
+        assertEquals(first, second);
+        assertTrue(first.startsWith(AttachmentStore.REF_PREFIX));
+        assertEquals(1, countFiles());
+        assertEquals(CONTENT, read(first));
+    }
+
+    @Test
+    @DisplayName("Should keep inline attachments that are below the minimum size")
+    public void externalize_should_keepDataInline_whenAttachmentIsSmall() throws IOException {
+        store = new AttachmentStore(new SimpleMeterRegistry(), directory.toString(), true, 1024, 60_000, 60_000);
+
+        AttachmentRequest result = store.externalize(new AttachmentRequest("a.txt", "text/plain", encoded(), "sha256:forged"));
+
+        assertEquals(encoded(), result.data());
+        assertNull(result.ref());
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    @DisplayName("Should only delete a blob once every reference has been released")
+    public void sweep_should_deleteBlob_onlyWhenUnreferencedAndExpired() throws IOException {
+        store = newStore(0);
+
+        String ref = store.store(encoded());
+        store.store(encoded());
+
+        store.release(ref);
+        store.sweep();
+        assertEquals(1, countFiles());
+
+        store.release(ref);
+        store.sweep();
+        assertEquals(0, countFiles());
+        assertThrows(IOException.class, () -> store.open(ref));
+    }
+
+    @Test
+    @DisplayName("Should keep a blob that another instance sharing the directory still references")
+    public void sweep_should_keepBlob_whileAnotherInstanceReferencesIt() throws IOException {
+        store = newStore(60_000);
+        AttachmentStore other = newStore(60_000);
+        try {
+            String ref = store.store(encoded());
+            Path blob = directory.resolve(ref.substring(AttachmentStore.REF_PREFIX.length()));
+            FileTime expired = FileTime.fromMillis(System.currentTimeMillis() - 120_000);
+
+            Files.setLastModifiedTime(blob, expired);
+            store.sweep();
+            other.sweep();
+            assertEquals(1, countFiles());
+
+            store.release(ref);
+            Files.setLastModifiedTime(blob, expired);
+            other.sweep();
+            assertEquals(0, countFiles());
+        } finally {
+            other.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("Should sweep a blob stored by one instance and sent by another once it expires")
+    public void sweep_should_deleteBlob_whenAcceptedAndSentOnDifferentInstances() throws IOException {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        store = new AttachmentStore(meterRegistry, directory.toString(), true, 0, 60_000, 60_000);
+        AttachmentStore other = newStore(60_000);
+        try {
+            // Accepted here: stored, then released once the broker has the message.
+            String ref = store.store(encoded());
+            store.release(ref);
+            // Sent by the other instance, which never held it.
+            other.open(ref).close();
+
+            Path blob = directory.resolve(ref.substring(AttachmentStore.REF_PREFIX.length()));
+            store.sweep();
+            other.sweep();
+            assertEquals(1, countFiles());
+
+            Files.setLastModifiedTime(blob, FileTime.fromMillis(System.currentTimeMillis() - 120_000));
+            store.sweep();
+            assertEquals(0, countFiles());
+            assertEquals(0.0, meterRegistry.get("notifyhub.attachments.store.blobs").gauge().value());
+        } finally {
+            other.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("Should reject references that are not SHA-256 digests")
+    public void open_should_rejectInvalidReference() {
+        store = newStore(60_000);
+
+        assertThrows(IllegalArgumentException.class, () -> store.open("sha256:../../etc/passwd"));
+    }
+
+    private AttachmentStore newStore(long ttlMillis) {
+        try {
+            return new AttachmentStore(new SimpleMeterRegistry(), directory.toString(), true, 0, ttlMillis, 60_000);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String encoded() {
+        return Base64.getEncoder().encodeToString(CONTENT.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String read(String ref) throws IOException {
+        try (InputStream in = store.open(ref)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private long countFiles() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
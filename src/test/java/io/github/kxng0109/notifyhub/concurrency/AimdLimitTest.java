@@ -0,0 +1,35 @@
+package io.github.kxng0109.notifyhub.concurrency;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("AimdLimit Tests")
+public class AimdLimitTest {
+
+    @Test
+    @DisplayName("Should grow additively while backlogged and stop at the maximum")
+    public void update_should_increaseByStep_whenBacklogged() {
+        AimdLimit limit = new AimdLimit(4, 30, 10, 10, 0.5, 1_000);
+
+        assertEquals(10, limit.update(false, false, 0));
+        assertEquals(20, limit.update(false, true, 0));
+        assertEquals(30, limit.update(false, true, 0));
+        assertEquals(30, limit.update(false, true, 0));
+    }
+
+    @Test
+    @DisplayName("Should cut multiplicatively when overloaded, at most once per cooldown")
+    public void update_should_decreaseOncePerCooldown_whenOverloaded() {
+        AimdLimit limit = new AimdLimit(4, 100, 80, 10, 0.5, 1_000);
+
+        assertEquals(40, limit.update(true, true, 0));
+        assertEquals(40, limit.update(true, true, 500));
+        assertEquals(20, limit.update(true, true, 1_000));
+        assertEquals(10, limit.update(true, false, 2_000));
+        assertEquals(5, limit.update(true, false, 3_000));
+        assertEquals(4, limit.update(true, false, 4_000));
+        assertEquals(4, limit.update(true, false, 5_000));
+    }
+}
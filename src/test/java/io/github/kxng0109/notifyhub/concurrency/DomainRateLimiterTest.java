@@ -0,0 +1,73 @@
+package io.github.kxng0109.notifyhub.concurrency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("DomainRateLimiter Tests")
+public class DomainRateLimiterTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private DomainRateLimiter limiter;
+
+    @AfterEach
+    void shutdown() {
+        if (limiter != null) {
+            limiter.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("Should let a burst through and then ask later sends to wait")
+    public void reserve_should_returnWait_whenDomainBucketIsEmpty() {
+        limiter = newLimiter(2, 60_000);
+
+        assertEquals(0, limiter.reserve("example.com"));
+        assertEquals(0, limiter.reserve("example.com"));
+        assertTrue(limiter.reserve("example.com") > 0);
+        assertEquals(0, limiter.reserve("other.com"));
+    }
+
+    @Test
+    @DisplayName("Should refuse to reserve when the wait would exceed the maximum")
+    public void reserve_should_returnMinusOne_whenWaitExceedsMaximum() {
+        limiter = newLimiter(1, 100);
+
+        assertEquals(0, limiter.reserve("example.com"));
+        assertEquals(-1, limiter.reserve("example.com"));
+    }
+
+    @Test
+    @DisplayName("Should reserve one token per message when several are sent at once")
+    public void reserve_should_takeOneTokenPerMessage_whenReservingSeveral() {
+        limiter = newLimiter(3, 100);
+
+        assertEquals(-1, limiter.reserve("example.com", 4));
+        assertEquals(0, limiter.reserve("example.com", 3));
+        assertEquals(-1, limiter.reserve("example.com"));
+    }
+
+    @Test
+    @DisplayName("Should halve the rate on throttling and raise it again on success")
+    public void recordThrottled_should_cutRate_and_recordSuccess_should_raiseIt() {
+        limiter = newLimiter(8, 60_000);
+        limiter.reserve("example.com");
+
+        limiter.recordThrottled("example.com");
+        assertEquals(4.0, rate("example.com"));
+        assertEquals(1.0, meterRegistry.get("notifyhub.mail.rate.throttled").tag("domain", "example.com").counter().count());
+
+        limiter.recordSuccess("example.com");
+        assertEquals(5.0, rate("example.com"));
+    }
+
+    private double rate(String domain) {
+        return meterRegistry.get("notifyhub.mail.rate.limit").tag("domain", domain).gauge().value();
+    }
+
+    private DomainRateLimiter newLimiter(double initialRate, long maxWaitMillis) {
+        return new DomainRateLimiter(meterRegistry, true, 1000, initialRate, 1, 100, 1, 0.5, maxWaitMillis, 60_000);
+    }
+}
@@ -0,0 +1,45 @@
+package io.github.kxng0109.notifyhub.concurrency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("DownstreamConcurrencyLimiter Tests")
+public class DownstreamConcurrencyLimiterTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    @DisplayName("Should time out once a downstream's permits are all held, without affecting others")
+    public void acquire_should_throw_whenDownstreamLimitIsExhausted() {
+        DownstreamConcurrencyLimiter limiter = new DownstreamConcurrencyLimiter(meterRegistry, 2, 25, 50);
+
+        DownstreamConcurrencyLimiter.Permit first = limiter.acquireSmtp("mail.example.com");
+        DownstreamConcurrencyLimiter.Permit second = limiter.acquireSmtp("mail.example.com");
+
+        assertThrows(ConcurrencyLimitExceededException.class, () -> limiter.acquireSmtp("mail.example.com"));
+        assertDoesNotThrow(() -> limiter.acquireSmtp("mail.other.com").close());
+        assertEquals(2.0, meterRegistry.get("notifyhub.downstream.in.use")
+                                       .tag("downstream", "smtp:mail.example.com")
+                                       .gauge()
+                                       .value());
+        first.close();
+        second.close();
+    }
+
+    @Test
+    @DisplayName("Should hand a released permit to the next caller")
+    public void acquire_should_succeed_whenPermitIsReleased() {
+        DownstreamConcurrencyLimiter limiter = new DownstreamConcurrencyLimiter(meterRegistry, 16, 1, 50);
+
+        try (DownstreamConcurrencyLimiter.Permit ignored = limiter.acquireAmqpPublish()) {
+            assertThrows(ConcurrencyLimitExceededException.class, limiter::acquireAmqpPublish);
+        }
+        assertDoesNotThrow(() -> limiter.acquireAmqpPublish().close());
+        assertEquals(0.0, meterRegistry.get("notifyhub.downstream.in.use")
+                                       .tag("downstream", DownstreamConcurrencyLimiter.AMQP_PUBLISH)
+                                       .gauge()
+                                       .value());
+    }
+}
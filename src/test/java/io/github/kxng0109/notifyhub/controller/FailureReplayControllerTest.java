@@ -0,0 +1,40 @@
+package io.github.kxng0109.notifyhub.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class FailureReplayControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private RabbitTemplate rabbitTemplate;
+
+    @Test
+    void startReplay_should_return409Conflict_whenFailuresQueueIsNotAStream() throws Exception {
+        mockMvc.perform(post("/api/admin/failures/replay")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"reason\":\"SMTP\",\"ratePerSecond\":10}"))
+               .andExpect(status().isConflict());
+    }
+
+    @Test
+    void getReplay_should_return404NotFound_whenReplayIsUnknown() throws Exception {
+        mockMvc.perform(get("/api/admin/failures/replay/unknown"))
+               .andExpect(status().isNotFound());
+    }
+}
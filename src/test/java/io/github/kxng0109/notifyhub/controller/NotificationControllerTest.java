@@ -6,6 +6,8 @@ import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -22,10 +24,17 @@ import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.ROUTING_KEY;
 import static io.github.kxng0109.notifyhub.service.NotificationProducer.HEADER_RETRY_COUNT;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -56,13 +65,16 @@ public class NotificationControllerTest {
         mockMvc.perform(post("/api/notifications")
                                 .contentType(MediaType.APPLICATION_JSON)
                                 .content(objectMapper.writeValueAsString(notificationRequest)))
-               .andExpect(status().isAccepted());
+               .andExpect(status().isAccepted())
+               .andExpect(jsonPath("$.notificationId").exists())
+               .andExpect(jsonPath("$.confirmed").value(false));
 
-        verify(rabbitTemplate).convertAndSend(
+        verify(rabbitTemplate, timeout(1000)).convertAndSend(
                 eq(DELAYED_EXCHANGE_NAME),
                 eq(ROUTING_KEY),
                 eq(notificationRequest),
-                postProcessorCaptor.capture()
+                postProcessorCaptor.capture(),
+                any(CorrelationData.class)
         );
 
         MessagePostProcessor capturedPostProcessor = postProcessorCaptor.getValue();
@@ -73,6 +85,119 @@ public class NotificationControllerTest {
         assertEquals(0, retryCount);
     }
 
+    @Test
+    void sendNotification_should_returnConfirmedNotificationId_whenWaitingForConfirm() throws Exception {
+        NotificationRequest notificationRequest = new NotificationRequest(
+                List.of("example@email.com"),
+                "A confirmed test",
+                "A body for a confirmed test",
+                null,
+                List.of()
+        );
+        confirmEveryPublish(true);
+
+        mockMvc.perform(post("/api/notifications")
+                                .param("waitForConfirm", "true")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(notificationRequest)))
+               .andExpect(status().isAccepted())
+               .andExpect(jsonPath("$.notificationId").exists())
+               .andExpect(jsonPath("$.confirmed").value(true));
+    }
+
+    @Test
+    void sendNotification_should_return503ServiceUnavailable_whenBrokerKeepsRejecting() throws Exception {
+        NotificationRequest notificationRequest = new NotificationRequest(
+                List.of("example@email.com"),
+                "A rejected test",
+                "A body for a rejected test",
+                null,
+                List.of()
+        );
+        confirmEveryPublish(false);
+
+        mockMvc.perform(post("/api/notifications")
+                                .param("waitForConfirm", "true")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(notificationRequest)))
+               .andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    void sendNotification_should_publishOnce_whenRequestIsRepeatedWithSameIdempotencyKey() throws Exception {
+        NotificationRequest notificationRequest = new NotificationRequest(
+                List.of("example@email.com"),
+                "An idempotent test",
+                "A body for an idempotent test",
+                null,
+                List.of()
+        );
+        confirmEveryPublish(true);
+
+        String first = mockMvc.perform(post("/api/notifications")
+                                               .param("waitForConfirm", "true")
+                                               .header("Idempotency-Key", "order-1234-receipt")
+                                               .contentType(MediaType.APPLICATION_JSON)
+                                               .content(objectMapper.writeValueAsString(notificationRequest)))
+                              .andExpect(status().isAccepted())
+                              .andReturn().getResponse().getContentAsString();
+
+        mockMvc.perform(post("/api/notifications")
+                                .header("Idempotency-Key", "order-1234-receipt")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(notificationRequest)))
+               .andExpect(status().isAccepted())
+               .andExpect(jsonPath("$.notificationId").value(objectMapper.readTree(first).get("notificationId").asText()));
+
+        verify(rabbitTemplate, times(1)).convertAndSend(
+                eq(DELAYED_EXCHANGE_NAME),
+                eq(ROUTING_KEY),
+                eq(notificationRequest),
+                any(MessagePostProcessor.class),
+                any(CorrelationData.class)
+        );
+    }
+
+    @Test
+    void sendNotification_should_publishOnce_whenRequestIsRepeatedBeforeFirstIsConfirmed() throws Exception {
+        NotificationRequest notificationRequest = new NotificationRequest(
+                List.of("example@email.com"),
+                "A pending idempotent test",
+                "A body for a pending idempotent test",
+                null,
+                List.of()
+        );
+
+        String first = mockMvc.perform(post("/api/notifications")
+                                               .header("Idempotency-Key", "order-5678-receipt")
+                                               .contentType(MediaType.APPLICATION_JSON)
+                                               .content(objectMapper.writeValueAsString(notificationRequest)))
+                              .andExpect(status().isAccepted())
+                              .andReturn().getResponse().getContentAsString();
+        verify(rabbitTemplate, timeout(1000)).convertAndSend(
+                eq(DELAYED_EXCHANGE_NAME),
+                eq(ROUTING_KEY),
+                eq(notificationRequest),
+                any(MessagePostProcessor.class),
+                any(CorrelationData.class)
+        );
+
+        mockMvc.perform(post("/api/notifications")
+                                .header("Idempotency-Key", "order-5678-receipt")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(notificationRequest)))
+               .andExpect(status().isAccepted())
+               .andExpect(jsonPath("$.notificationId").value(objectMapper.readTree(first).get("notificationId").asText()));
+
+        verify(rabbitTemplate, after(500).times(1)).convertAndSend(
+                eq(DELAYED_EXCHANGE_NAME),
+                eq(ROUTING_KEY),
+                eq(notificationRequest),
+                any(MessagePostProcessor.class),
+                any(CorrelationData.class)
+        );
+    }
+
     @Test
     void sendNotification_should_throw400BadRequest_whenRequestIsInvalid() throws Exception {
         NotificationRequest notificationRequest = new NotificationRequest(null, null, null, null, null);
@@ -83,4 +208,131 @@ public class NotificationControllerTest {
 
         verify(rabbitTemplate, never()).convertAndSend(any(), any(), any(NotificationRequest.class));
     }
+
+    @Test
+    void sendNotifications_should_publishValidItems_and_rejectInvalidItems_whenBatchIsMixed() throws Exception {
+        NotificationRequest valid = new NotificationRequest(
+                List.of("example@email.com"),
+                "A batch test",
+                "A body for a batch test",
+                null,
+                List.of()
+        );
+        NotificationRequest invalid = new NotificationRequest(List.of("not-an-email"), null, null, null, null);
+
+        when(rabbitTemplate.invoke(any())).thenAnswer(invocation -> {
+            RabbitOperations.OperationsCallback<?> callback = invocation.getArgument(0);
+            return callback.doInRabbit(rabbitTemplate);
+        });
+        confirmEveryPublish(true);
+
+        mockMvc.perform(post("/api/notifications/batch")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(List.of(valid, invalid, valid))))
+               .andExpect(status().isAccepted())
+               .andExpect(jsonPath("$.accepted").value(2))
+               .andExpect(jsonPath("$.rejected").value(1))
+               .andExpect(jsonPath("$.results[0].status").value("ACCEPTED"))
+               .andExpect(jsonPath("$.results[1].status").value("REJECTED"))
+               .andExpect(jsonPath("$.results[1].errors.subject").exists())
+               .andExpect(jsonPath("$.results[2].status").value("ACCEPTED"));
+
+        verify(rabbitTemplate, times(2)).convertAndSend(
+                eq(DELAYED_EXCHANGE_NAME),
+                eq(ROUTING_KEY),
+                eq(valid),
+                any(MessagePostProcessor.class),
+                any(CorrelationData.class)
+        );
+    }
+
+    @Test
+    void sendNotifications_should_throw400BadRequest_whenBatchIsEmpty() throws Exception {
+        mockMvc.perform(post("/api/notifications/batch")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("[]"))
+               .andExpect(status().isBadRequest());
+
+        verify(rabbitTemplate, never()).invoke(any());
+    }
+
+    @Test
+    void streamNotifications_should_publishValidLines_and_reportRejectedLines() throws Exception {
+        NotificationRequest valid = new NotificationRequest(
+                List.of("example@email.com"),
+                "A stream test",
+                "A body for a stream test",
+                null,
+                List.of()
+        );
+        NotificationRequest invalid = new NotificationRequest(List.of("not-an-email"), null, null, null, null);
+
+        when(rabbitTemplate.invoke(any())).thenAnswer(invocation -> {
+            RabbitOperations.OperationsCallback<?> callback = invocation.getArgument(0);
+            return callback.doInRabbit(rabbitTemplate);
+        });
+        confirmEveryPublish(true);
+
+        String body = String.join("\n",
+                                  objectMapper.writeValueAsString(valid),
+                                  objectMapper.writeValueAsString(invalid),
+                                  objectMapper.writeValueAsString(valid));
+
+        mockMvc.perform(post("/api/notifications/stream")
+                                .contentType(MediaType.APPLICATION_NDJSON)
+                                .content(body))
+               .andExpect(status().isAccepted())
+               .andExpect(jsonPath("$.accepted").value(2))
+               .andExpect(jsonPath("$.rejected").value(1))
+               .andExpect(jsonPath("$.rejections[0].index").value(1))
+               .andExpect(jsonPath("$.rejections[0].errors.subject").exists());
+
+        verify(rabbitTemplate, times(2)).convertAndSend(
+                eq(DELAYED_EXCHANGE_NAME),
+                eq(ROUTING_KEY),
+                eq(valid),
+                any(MessagePostProcessor.class),
+                any(CorrelationData.class)
+        );
+    }
+
+    @Test
+    void streamNotifications_should_rejectOnlyTheLine_whenFieldHasWrongType() throws Exception {
+        NotificationRequest valid = new NotificationRequest(
+                List.of("example@email.com"),
+                "A typed stream test",
+                "A body for a typed stream test",
+                null,
+                List.of()
+        );
+
+        when(rabbitTemplate.invoke(any())).thenAnswer(invocation -> {
+            RabbitOperations.OperationsCallback<?> callback = invocation.getArgument(0);
+            return callback.doInRabbit(rabbitTemplate);
+        });
+        confirmEveryPublish(true);
+
+        String body = String.join("\n",
+                                  "{\"to\":{\"not\":\"a list\"},\"subject\":\"A subject\",\"body\":\"A body\"}",
+                                  objectMapper.writeValueAsString(valid));
+
+        mockMvc.perform(post("/api/notifications/stream")
+                                .contentType(MediaType.APPLICATION_NDJSON)
+                                .content(body))
+               .andExpect(status().isAccepted())
+               .andExpect(jsonPath("$.accepted").value(1))
+               .andExpect(jsonPath("$.rejected").value(1))
+               .andExpect(jsonPath("$.rejections[0].index").value(0))
+               .andExpect(jsonPath("$.rejections[0].errors.notification").exists());
+    }
+
+    private void confirmEveryPublish(boolean ack) {
+        doAnswer(invocation -> {
+            CorrelationData correlationData = invocation.getArgument(4);
+            correlationData.getFuture().complete(new CorrelationData.Confirm(ack, ack ? null : "rejected"));
+            return null;
+        }).when(rabbitTemplate).convertAndSend(
+                anyString(), anyString(), any(Object.class), any(MessagePostProcessor.class), any(CorrelationData.class)
+        );
+    }
 }
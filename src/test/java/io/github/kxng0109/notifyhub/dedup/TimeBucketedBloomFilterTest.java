@@ -0,0 +1,70 @@
+package io.github.kxng0109.notifyhub.dedup;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("TimeBucketedBloomFilter Tests")
+public class TimeBucketedBloomFilterTest {
+    private static final Duration WINDOW = Duration.ofHours(24);
+
+    private final AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+
+    @Test
+    @DisplayName("Should remember a fingerprint for the whole window and forget it afterwards")
+    public void mightContain_should_expireFingerprint_afterWindow() {
+        TimeBucketedBloomFilter filter = new TimeBucketedBloomFilter(WINDOW, 24, 1 << 16, 1_000, clock::get);
+        long fingerprint = TimeBucketedBloomFilter.fingerprint("notification-1");
+
+        filter.put(fingerprint);
+        assertTrue(filter.mightContain(fingerprint));
+
+        clock.addAndGet(WINDOW.toMillis());
+        assertTrue(filter.mightContain(fingerprint));
+
+        clock.addAndGet(Duration.ofHours(2).toMillis());
+        assertFalse(filter.mightContain(fingerprint));
+    }
+
+    @Test
+    @DisplayName("Should keep false positives near the reported rate")
+    public void expectedFalsePositiveRate_should_matchObservedRate() {
+        TimeBucketedBloomFilter filter = new TimeBucketedBloomFilter(WINDOW, 4, 1 << 14, 20_000, clock::get);
+        for (int i = 0; i < 20_000; i++) {
+            filter.put(TimeBucketedBloomFilter.fingerprint("added-" + i));
+            if (i % 5_000 == 4_999) {
+                clock.addAndGet(WINDOW.toMillis() / 4);
+            }
+        }
+
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain(TimeBucketedBloomFilter.fingerprint("absent-" + i))) {
+                falsePositives++;
+            }
+        }
+
+        double expected = filter.expectedFalsePositiveRate();
+        double observed = (double) falsePositives / probes;
+        assertTrue(expected > 0.0);
+        assertEquals(expected, observed, expected * 0.5 + 0.001);
+    }
+
+    @Test
+    @DisplayName("Should not grow beyond the memory budget")
+    public void getMemoryBytes_should_stayWithinBudget() {
+        TimeBucketedBloomFilter filter = new TimeBucketedBloomFilter(WINDOW, 24, 1 << 20, 1_000_000, clock::get);
+
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(TimeBucketedBloomFilter.fingerprint("notification-" + i));
+        }
+
+        assertTrue(filter.getMemoryBytes() <= 1 << 20);
+        assertTrue(filter.mightContain(TimeBucketedBloomFilter.fingerprint("notification-42")));
+    }
+}
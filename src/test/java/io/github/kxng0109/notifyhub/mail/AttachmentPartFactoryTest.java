@@ -0,0 +1,98 @@
+package io.github.kxng0109.notifyhub.mail;
+
+import io.github.kxng0109.notifyhub.attachment.AttachmentStore;
+import io.github.kxng0109.notifyhub.dto.AttachmentRequest;
+import io.github.kxng0109.notifyhub.mail.AttachmentPartFactory.AttachmentParts;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.internet.MimeBodyPart;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("AttachmentPartFactory Tests")
+public class AttachmentPartFactoryTest {
+    private static final String CONTENT = "Streaming attachments keep the heap flat.";
+
+    @TempDir
+    Path spillDirectory;
+
+    @TempDir
+    Path storeDirectory;
+
+    @Test
+    @DisplayName("Should decode small attachments on the fly without spilling")
+    public void createParts_should_streamDecodedContent_whenAttachmentIsSmall() throws Exception {
+        AttachmentPartFactory factory = new AttachmentPartFactory(newStore(), 1024, spillDirectory.toString());
+
+        try (AttachmentParts parts = factory.createParts(List.of(attachment()))) {
+            MimeBodyPart part = parts.iterator().next();
+
+            assertEquals(CONTENT, read(part));
+            assertEquals("report.txt", part.getFileName());
+            assertEquals("base64", part.getEncoding());
+            assertEquals(0, countFiles());
+        }
+    }
+
+    @Test
+    @DisplayName("Should spill large attachments to a temporary file and delete it on close")
+    public void createParts_should_spillToFile_whenAttachmentExceedsThreshold() throws Exception {
+        AttachmentPartFactory factory = new AttachmentPartFactory(newStore(), 0, spillDirectory.toString());
+
+        try (AttachmentParts parts = factory.createParts(List.of(attachment()))) {
+            MimeBodyPart part = parts.iterator().next();
+
+            assertEquals(1, countFiles());
+            assertEquals(CONTENT, read(part));
+            assertEquals(CONTENT, read(part));
+        }
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    @DisplayName("Should read stored attachments from the attachment store by reference")
+    public void createParts_should_readFromStore_whenAttachmentHasReference() throws Exception {
+        AttachmentStore store = newStore();
+        AttachmentPartFactory factory = new AttachmentPartFactory(store, 0, spillDirectory.toString());
+        AttachmentRequest stored = store.externalize(attachment());
+
+        try (AttachmentParts parts = factory.createParts(List.of(stored))) {
+            assertEquals(CONTENT, read(parts.iterator().next()));
+            assertEquals(0, countFiles());
+        }
+    }
+
+    private AttachmentStore newStore() throws IOException {
+        return new AttachmentStore(new SimpleMeterRegistry(), storeDirectory.toString(), true, 0, 60_000, 60_000);
+    }
+
+    private AttachmentRequest attachment() {
+        return new AttachmentRequest(
+                "report.txt",
+                "text/plain",
+                Base64.getEncoder().encodeToString(CONTENT.getBytes(StandardCharsets.UTF_8))
+        );
+    }
+
+    private String read(MimeBodyPart part) throws Exception {
+        try (InputStream in = part.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private long countFiles() throws IOException {
+        try (var files = Files.list(spillDirectory)) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package io.github.kxng0109.notifyhub.mail;
+
+import io.github.kxng0109.notifyhub.attachment.AttachmentStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeMultipart;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+@DisplayName("MimeBodyCache Tests")
+public class MimeBodyCacheTest {
+    private static final String HTML = "<p>Campaign content</p>";
+
+    private final Session session = Session.getInstance(new Properties());
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    @DisplayName("Should render identical content once and serve it from the cache afterwards")
+    public void get_should_renderOnce_whenContentRepeats() throws MessagingException {
+        MimeBodyCache cache = newCache(1024);
+        AtomicInteger renders = new AtomicInteger();
+
+        RenderedMimeBody first = cache.get(HTML, List.of(), () -> {
+            renders.incrementAndGet();
+            return render(HTML);
+        });
+        RenderedMimeBody second = cache.get(HTML, List.of(), () -> {
+            renders.incrementAndGet();
+            return render(HTML);
+        });
+
+        assertSame(first, second);
+        assertEquals(1, renders.get());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    @DisplayName("Should not cache bodies larger than the per-entry limit")
+    public void isCacheable_should_returnFalse_whenBodyExceedsEntryLimit() {
+        MimeBodyCache cache = newCache(8);
+
+        assertFalse(cache.isCacheable(HTML, List.of()));
+    }
+
+    @Test
+    @DisplayName("Should write fresh envelope headers around the cached body")
+    public void prerenderedMessage_should_keepBody_and_omitBccOnTheWire() throws Exception {
+        PrerenderedMimeMessage message = new PrerenderedMimeMessage(session, render(HTML));
+        message.setRecipient(Message.RecipientType.BCC, new InternetAddress("hidden@email.com"));
+        message.setSubject("Per-send subject");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        message.writeTo(out, new String[]{"Bcc"});
+        MimeMessage parsed = new MimeMessage(session, new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals("Per-send subject", parsed.getSubject());
+        assertNull(parsed.getHeader("Bcc"));
+        assertNotNull(parsed.getMessageID());
+        MimeMultipart multipart = (MimeMultipart) parsed.getContent();
+        assertTrue(out.toString().contains(HTML));
+        assertTrue(multipart.getCount() > 0);
+    }
+
+    private MimeBodyCache newCache(long maxEntryBytes) {
+        return new MimeBodyCache(mock(AttachmentStore.class), meterRegistry, true, 1 << 20, maxEntryBytes, 60_000);
+    }
+
+    private RenderedMimeBody render(String html) throws MessagingException {
+        MimeMessage template = new MimeMessage(session);
+        MimeMessageHelper helper = new MimeMessageHelper(template, true, "UTF-8");
+        helper.setText(html, true);
+        return RenderedMimeBody.render(template);
+    }
+}
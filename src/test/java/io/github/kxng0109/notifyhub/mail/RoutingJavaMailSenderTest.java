@@ -0,0 +1,94 @@
+package io.github.kxng0109.notifyhub.mail;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@DisplayName("RoutingJavaMailSender Tests")
+public class RoutingJavaMailSenderTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final JavaMailSender primary = mock(JavaMailSender.class);
+    private final JavaMailSender secondary = mock(JavaMailSender.class);
+    private final MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+
+    @Test
+    @DisplayName("Should fail over to the next relay when a relay cannot be reached")
+    public void send_should_failOver_whenRelayIsUnavailable() {
+        RoutingJavaMailSender router = newRouter(3, Duration.ofMinutes(1));
+        doThrow(unavailable()).when(primary).send(any(MimeMessage[].class));
+
+        assertDoesNotThrow(() -> router.send(message));
+
+        verify(primary).send(any(MimeMessage[].class));
+        verify(secondary).send(any(MimeMessage[].class));
+        assertEquals(1.0, meterRegistry.get("notifyhub.mail.relay.errors").tag("relay", "primary").counter().count());
+    }
+
+    @Test
+    @DisplayName("Should not resend a message that the relay rejected")
+    public void send_should_notFailOver_whenMessageIsRejected() {
+        RoutingJavaMailSender router = newRouter(3, Duration.ofMinutes(1));
+        doThrow(new MailSendException(Map.of(message, new MessagingException("550 Mailbox unavailable"))))
+                .when(primary).send(any(MimeMessage[].class));
+
+        MailSendException exception = assertThrows(MailSendException.class, () -> router.send(message));
+
+        assertTrue(exception.getFailedMessages().containsKey(message));
+        verifyNoInteractions(secondary);
+    }
+
+    @Test
+    @DisplayName("Should eject a failing relay and re-admit it once the ejection ends")
+    public void send_should_ejectAndReadmitRelay_whenItKeepsFailing() {
+        RoutingJavaMailSender router = newRouter(2, Duration.ofMillis(100));
+        doThrow(unavailable()).doThrow(unavailable()).doNothing().when(primary).send(any(MimeMessage[].class));
+
+        router.send(message);
+        router.send(message);
+        assertTrue(router.getRelays().getFirst().isEjected());
+
+        router.send(message);
+        verify(primary, times(2)).send(any(MimeMessage[].class));
+        verify(secondary, times(3)).send(any(MimeMessage[].class));
+
+        await().atMost(Duration.ofSeconds(2)).until(() -> !router.getRelays().getFirst().isEjected());
+        router.send(message);
+        verify(primary, times(3)).send(any(MimeMessage[].class));
+        verify(secondary, times(3)).send(any(MimeMessage[].class));
+    }
+
+    private MailSendException unavailable() {
+        return new MailSendException(
+                Map.of(message, new MessagingException("Could not connect", new ConnectException("Connection refused")))
+        );
+    }
+
+    private RoutingJavaMailSender newRouter(int ejectAfterFailures, Duration ejectionDuration) {
+        return new RoutingJavaMailSender(
+                List.of(
+                        new RoutingJavaMailSender.Relay("primary", primary, 1),
+                        new RoutingJavaMailSender.Relay("secondary", secondary, 1)
+                ),
+                meterRegistry,
+                ejectAfterFailures,
+                ejectionDuration,
+                Duration.ofMinutes(1)
+        );
+    }
+}
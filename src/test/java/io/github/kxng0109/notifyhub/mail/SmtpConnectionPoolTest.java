@@ -0,0 +1,97 @@
+package io.github.kxng0109.notifyhub.mail;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("SmtpConnectionPool Tests")
+public class SmtpConnectionPoolTest {
+    private final AtomicInteger connects = new AtomicInteger();
+    private SmtpConnectionPool pool;
+
+    @AfterEach
+    void closePool() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Should reuse a released connection instead of opening a new one")
+    public void borrow_should_reuseReleasedConnection_whenItIsStillHealthy() throws MessagingException {
+        pool = newPool(2, Duration.ofMinutes(1));
+
+        Transport first = pool.borrow();
+        pool.release(first);
+        Transport second = pool.borrow();
+
+        assertSame(first, second);
+        assertEquals(1, connects.get());
+        assertEquals(1, pool.getActiveCount());
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    @DisplayName("Should reconnect when the NOOP check finds the connection dropped")
+    public void borrow_should_openNewConnection_whenValidationFails() throws MessagingException {
+        pool = newPool(2, Duration.ZERO);
+
+        Transport first = pool.borrow();
+        when(first.isConnected()).thenReturn(false);
+        pool.release(first);
+
+        Transport second = pool.borrow();
+
+        assertNotSame(first, second);
+        assertEquals(2, connects.get());
+        verify(first).close();
+    }
+
+    @Test
+    @DisplayName("Should time out when every connection is borrowed")
+    public void borrow_should_fail_whenPoolIsExhausted() throws MessagingException {
+        pool = newPool(1, Duration.ofMinutes(1));
+
+        pool.borrow();
+
+        assertThrows(MessagingException.class, () -> pool.borrow());
+        assertEquals(1, connects.get());
+    }
+
+    @Test
+    @DisplayName("Should free the slot when a connection is invalidated")
+    public void invalidate_should_closeConnectionAndFreeSlot() throws MessagingException {
+        pool = newPool(1, Duration.ofMinutes(1));
+
+        Transport broken = pool.borrow();
+        pool.invalidate(broken);
+        Transport replacement = pool.borrow();
+
+        verify(broken).close();
+        assertNotSame(broken, replacement);
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    private SmtpConnectionPool newPool(int maxSize, Duration validateAfterIdle) {
+        return new SmtpConnectionPool(
+                () -> {
+                    connects.incrementAndGet();
+                    Transport transport = mock(Transport.class);
+                    when(transport.isConnected()).thenReturn(true);
+                    return transport;
+                },
+                maxSize,
+                Duration.ofMillis(50),
+                Duration.ofMinutes(5),
+                validateAfterIdle
+        );
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.kxng0109.notifyhub.messaging;
+
+import io.github.kxng0109.notifyhub.dto.AttachmentRequest;
+import io.github.kxng0109.notifyhub.dto.NotificationPriority;
+import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("NotificationMessageConverter Tests")
+public class NotificationMessageConverterTest {
+    private final NotificationMessageConverter binaryConverter =
+            new NotificationMessageConverter(new Jackson2JsonMessageConverter(), true);
+    private final NotificationMessageConverter jsonConverter =
+            new NotificationMessageConverter(new Jackson2JsonMessageConverter(), false);
+
+    @Test
+    @DisplayName("Should read back every field of a notification written in binary")
+    public void fromMessage_should_returnEqualNotification_whenWrittenInBinary() {
+        NotificationRequest notification = fullNotification();
+
+        Message message = binaryConverter.toMessage(notification, new MessageProperties());
+
+        assertEquals(NotificationMessageConverter.BINARY_CONTENT_TYPE, message.getMessageProperties().getContentType());
+        assertEquals(notification, binaryConverter.fromMessage(message));
+    }
+
+    @Test
+    @DisplayName("Should read JSON and binary messages whichever format it writes")
+    public void fromMessage_should_readBothFormats_duringRollout() {
+        NotificationRequest notification = fullNotification();
+
+        Message json = jsonConverter.toMessage(notification, new MessageProperties());
+        json.getMessageProperties().setInferredArgumentType(NotificationRequest.class);
+        Message binary = binaryConverter.toMessage(notification, new MessageProperties());
+
+        assertEquals(notification, binaryConverter.fromMessage(json));
+        assertEquals(notification, jsonConverter.fromMessage(binary));
+        assertTrue(binary.getBody().length < json.getBody().length);
+    }
+
+    @Test
+    @DisplayName("Should reject a truncated binary message")
+    public void fromMessage_should_throwConversionException_whenBinaryIsTruncated() {
+        Message message = binaryConverter.toMessage(fullNotification(), new MessageProperties());
+        byte[] body = message.getBody();
+        Message truncated = new Message(Arrays.copyOf(body, body.length / 2), message.getMessageProperties());
+
+        assertThrows(MessageConversionException.class, () -> binaryConverter.fromMessage(truncated));
+    }
+
+    private static NotificationRequest fullNotification() {
+        Map<String, Map<String, String>> recipientVariables = new LinkedHashMap<>();
+        recipientVariables.put("ada@example.com", Map.of("name", "Ada"));
+        recipientVariables.put("alan@example.com", Map.of("name", "Alan"));
+        return new NotificationRequest(
+                List.of("ada@example.com", "alan@example.com"),
+                "Your monthly report",
+                "Plain text",
+                null,
+                List.of(
+                        new AttachmentRequest("report.pdf", "application/pdf",
+                                              Base64.getEncoder().encodeToString(new byte[]{1, 2, 3, 4, 5})),
+                        new AttachmentRequest("large.bin", "application/pdf", null, "sha256-abc")
+                ),
+                NotificationPriority.HIGH,
+                Instant.parse("2026-01-01T09:30:00.125Z"),
+                "welcome",
+                Map.of("plan", "Pro"),
+                recipientVariables
+        );
+    }
+}
@@ -0,0 +1,146 @@
+package io.github.kxng0109.notifyhub.messaging;
+
+import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+import io.github.kxng0109.notifyhub.service.EmailService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.containers.RabbitMQContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.DELAYED_EXCHANGE_NAME;
+import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.SHARDED_LISTENER_ID;
+import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.SHARD_MEMBERS_EXCHANGE_NAME;
+import static io.github.kxng0109.notifyhub.service.NotificationProducer.HEADER_RETRY_COUNT;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest
+@Testcontainers
+@DisplayName("ShardCoordinator Integration Tests")
+public class ShardCoordinatorIntegrationTest {
+    private static final int SHARDS = 4;
+    private static final int AWAIT_TIMEOUT_SECONDS = 10;
+    private static final String NODE_ID = "node-a";
+    private static final String OTHER_NODE_ID = "node-b";
+
+    @Container
+    //A docker image that has the plugin pre-installed
+    private static final RabbitMQContainer RABBIT_MQ_CONTAINER = new RabbitMQContainer(
+            DockerImageName.parse("heidiks/rabbitmq-delayed-message-exchange:3.13.0-management")
+                           .asCompatibleSubstituteFor("rabbitmq")
+    );
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+    @Autowired
+    private RabbitListenerEndpointRegistry listenerRegistry;
+    @MockitoBean
+    private EmailService emailService;
+
+    @DynamicPropertySource
+    static void dynamicProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.rabbitmq.host", RABBIT_MQ_CONTAINER::getHost);
+        registry.add("spring.rabbitmq.port", RABBIT_MQ_CONTAINER::getAmqpPort);
+        registry.add("spring.rabbitmq.username", RABBIT_MQ_CONTAINER::getAdminUsername);
+        registry.add("spring.rabbitmq.password", RABBIT_MQ_CONTAINER::getAdminPassword);
+
+        registry.add("spring.mail.host", () -> "localhost");
+        registry.add("spring.mail.port", () -> 1025);
+        registry.add("notifyhub.mail.from", () -> "test@notifyhub.com");
+
+        registry.add("notifyhub.rabbitmq.shards", () -> SHARDS);
+        registry.add("notifyhub.rabbitmq.shards.node-id", () -> NODE_ID);
+        registry.add("notifyhub.rabbitmq.shards.heartbeat-ms", () -> 200);
+        registry.add("notifyhub.rabbitmq.shards.member-timeout-ms", () -> 1500);
+    }
+
+    @Test
+    @DisplayName("Should give shards to a joining node, take them back when it leaves, and consume what waited on them")
+    public void rebalance_should_repointShardContainer_whenMemberJoinsAndLeaves() {
+        Set<Integer> allShards = Set.copyOf(IntStream.range(0, SHARDS).boxed().toList());
+        await().atMost(AWAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+               .until(() -> shardContainer().isRunning() && consumedShards().equals(queueNames(allShards)));
+
+        Set<Integer> kept = ShardCoordinator.ownedShards(List.of(NODE_ID, OTHER_NODE_ID), NODE_ID, SHARDS);
+        int givenUp = IntStream.range(0, SHARDS).filter(shard -> !kept.contains(shard)).findFirst().orElseThrow();
+        NotificationRequest notificationRequest = new NotificationRequest(
+                List.of("shard@email.com"),
+                "A shard test",
+                "A body for a shard test",
+                null,
+                List.of()
+        );
+
+        ScheduledExecutorService otherNode = Executors.newSingleThreadScheduledExecutor();
+        try {
+            otherNode.scheduleWithFixedDelay(() -> announce(OTHER_NODE_ID, null), 0L, 200L, TimeUnit.MILLISECONDS);
+            await().atMost(AWAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                   .until(() -> consumedShards().equals(queueNames(kept)));
+
+            rabbitTemplate.convertAndSend(
+                    DELAYED_EXCHANGE_NAME,
+                    QueueShards.routingKey(givenUp),
+                    notificationRequest,
+                    msg -> {
+                        msg.getMessageProperties().getHeaders().put(HEADER_RETRY_COUNT, 0);
+                        return msg;
+                    }
+            );
+            // The shard now belongs to the other node, so this one leaves the notification alone.
+            verify(emailService, after(1000).never()).sendSimpleMessage(anyList(), anyString(), anyString());
+        } finally {
+            otherNode.shutdownNow();
+        }
+
+        announce(OTHER_NODE_ID, "leave");
+        await().atMost(AWAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+               .until(() -> consumedShards().equals(queueNames(allShards)));
+        verify(emailService, timeout(AWAIT_TIMEOUT_SECONDS * 1000L)).sendSimpleMessage(
+                eq(notificationRequest.to()), eq(notificationRequest.subject()), any()
+        );
+    }
+
+    private AbstractMessageListenerContainer shardContainer() {
+        return (AbstractMessageListenerContainer) listenerRegistry.getListenerContainer(SHARDED_LISTENER_ID);
+    }
+
+    private Set<String> consumedShards() {
+        return Set.of(shardContainer().getQueueNames());
+    }
+
+    private static Set<String> queueNames(Set<Integer> shards) {
+        return Set.copyOf(shards.stream().map(QueueShards::queueName).toList());
+    }
+
+    private void announce(String node, String type) {
+        MessageProperties properties = new MessageProperties();
+        properties.setType(type);
+        rabbitTemplate.send(SHARD_MEMBERS_EXCHANGE_NAME, "", new Message(node.getBytes(StandardCharsets.UTF_8), properties));
+    }
+}
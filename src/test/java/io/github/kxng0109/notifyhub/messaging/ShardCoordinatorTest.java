@@ -0,0 +1,45 @@
+package io.github.kxng0109.notifyhub.messaging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("ShardCoordinator Tests")
+public class ShardCoordinatorTest {
+    private static final int SHARDS = 64;
+
+    @Test
+    @DisplayName("Should give every shard to exactly one member and spread them out")
+    public void ownedShards_should_assignEveryShardOnce_acrossMembers() {
+        List<String> members = List.of("node-a", "node-b", "node-c", "node-d");
+
+        Set<Integer> seen = new HashSet<>();
+        for (String member : members) {
+            Set<Integer> owned = ShardCoordinator.ownedShards(members, member, SHARDS);
+            assertFalse(owned.isEmpty());
+            for (int shard : owned) {
+                assertTrue(seen.add(shard), "shard " + shard + " has two owners");
+            }
+        }
+        assertEquals(SHARDS, seen.size());
+    }
+
+    @Test
+    @DisplayName("Should only move shards to a member that joins")
+    public void ownedShards_should_onlyMoveShardsToNewMember_whenMemberJoins() {
+        List<String> before = List.of("node-a", "node-b", "node-c");
+        List<String> after = List.of("node-a", "node-b", "node-c", "node-d");
+
+        for (String member : before) {
+            Set<Integer> ownedBefore = ShardCoordinator.ownedShards(before, member, SHARDS);
+            Set<Integer> ownedAfter = ShardCoordinator.ownedShards(after, member, SHARDS);
+            assertTrue(ownedBefore.containsAll(ownedAfter));
+        }
+        assertFalse(ShardCoordinator.ownedShards(after, "node-d", SHARDS).isEmpty());
+    }
+}
@@ -0,0 +1,90 @@
+package io.github.kxng0109.notifyhub.metrics;
+
+import io.github.kxng0109.notifyhub.metrics.NotificationMetrics.Outcome;
+import io.github.kxng0109.notifyhub.metrics.NotificationMetrics.Stage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("NotificationMetrics Tests")
+public class NotificationMetricsTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Executor direct = Runnable::run;
+
+    @Test
+    @DisplayName("Should record each stage under its own tag")
+    public void record_should_recordStageTimer_whenStageCompletes() {
+        NotificationMetrics metrics = new NotificationMetrics(meterRegistry, direct, direct, direct);
+
+        metrics.record(Stage.SMTP_SEND, TimeUnit.MILLISECONDS.toNanos(40));
+        metrics.record(Stage.BROKER_DWELL, -5L);
+
+        assertEquals(40.0, meterRegistry.get("notifyhub.notifications.stage").tag("stage", "smtp_send")
+                                        .timer().totalTime(TimeUnit.MILLISECONDS));
+        assertEquals(0.0, meterRegistry.get("notifyhub.notifications.stage").tag("stage", "broker_dwell")
+                                       .timer().totalTime(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    @DisplayName("Should tag end-to-end latency with the outcome and retry count")
+    public void recordEndToEnd_should_tagOutcomeAndRetries() {
+        NotificationMetrics metrics = new NotificationMetrics(meterRegistry, direct, direct, direct);
+        long acceptedAt = System.currentTimeMillis() - 1_000L;
+
+        metrics.recordEndToEnd(Outcome.RETRIED, 0, acceptedAt);
+        metrics.recordEndToEnd(Outcome.SENT, 1, acceptedAt);
+        metrics.recordEndToEnd(Outcome.SENT, 1, acceptedAt);
+
+        assertEquals(1L, meterRegistry.get("notifyhub.notifications.end_to_end")
+                                      .tags("outcome", "retried", "retries", "0").timer().count());
+        assertEquals(2L, meterRegistry.get("notifyhub.notifications.end_to_end")
+                                      .tags("outcome", "sent", "retries", "1").timer().count());
+        assertTrue(meterRegistry.get("notifyhub.notifications.end_to_end")
+                                .tags("outcome", "sent", "retries", "1").timer().max(TimeUnit.MILLISECONDS) >= 1_000.0);
+    }
+
+    @Test
+    @DisplayName("Should report the saturation of thread-pool executors only")
+    public void saturation_should_reflectBusyThreads_forThreadPoolExecutors() {
+        ThreadPoolTaskExecutor pool = new ThreadPoolTaskExecutor();
+        pool.setCorePoolSize(2);
+        pool.setMaxPoolSize(2);
+        pool.setQueueCapacity(4);
+        pool.initialize();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            new NotificationMetrics(meterRegistry, direct, pool, direct);
+            pool.execute(() -> awaitQuietly(release));
+            pool.execute(() -> awaitQuietly(release));
+            pool.execute(() -> awaitQuietly(release));
+
+            await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> assertEquals(
+                    1.0, meterRegistry.get("notifyhub.executor.saturation")
+                                      .tag("executor", "emailSendingExecutor").gauge().value()
+            ));
+            assertEquals(0.25, meterRegistry.get("notifyhub.executor.queue.utilization")
+                                            .tag("executor", "emailSendingExecutor").gauge().value());
+            assertNull(meterRegistry.find("notifyhub.executor.saturation")
+                                    .tag("executor", "rabbitmqPublisherExecutor").gauge());
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
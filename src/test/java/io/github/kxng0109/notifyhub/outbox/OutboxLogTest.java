@@ -0,0 +1,103 @@
+package io.github.kxng0109.notifyhub.outbox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("OutboxLog Tests")
+public class OutboxLogTest {
+    private static final int SEGMENT_BYTES = 256;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    @DisplayName("Should read records back in order across segments and delete confirmed segments")
+    public void read_should_returnRecordsInOrder_and_confirm_should_deleteSegments() throws IOException {
+        try (OutboxLog log = new OutboxLog(directory, SEGMENT_BYTES, 1L << 20, true)) {
+            for (int i = 1; i <= 20; i++) {
+                log.awaitDurable(log.append(payload(i)));
+            }
+            assertTrue(segmentCount() > 1);
+
+            OutboxLog.Batch batch = log.read(log.start(), 100);
+
+            assertEquals(20, batch.records().size());
+            for (int i = 0; i < 20; i++) {
+                assertEquals(i + 1, batch.records().get(i).sequence());
+                assertEquals("record-" + (i + 1), new String(batch.records().get(i).payload(), StandardCharsets.UTF_8));
+            }
+            assertTrue(log.read(batch.next(), 100).records().isEmpty());
+
+            log.confirm(20);
+            assertEquals(0, log.pendingRecords());
+            assertEquals(1, segmentCount());
+        }
+    }
+
+    @Test
+    @DisplayName("Should resume after the last confirmed record when reopened")
+    public void start_should_skipConfirmedRecords_whenReopened() throws IOException {
+        try (OutboxLog log = new OutboxLog(directory, SEGMENT_BYTES, 1L << 20, true)) {
+            for (int i = 1; i <= 5; i++) {
+                log.append(payload(i));
+            }
+            log.confirm(3);
+        }
+
+        try (OutboxLog log = new OutboxLog(directory, SEGMENT_BYTES, 1L << 20, true)) {
+            List<OutboxLog.LogRecord> records = log.read(log.start(), 100).records();
+
+            assertEquals(List.of(4L, 5L), records.stream().map(OutboxLog.LogRecord::sequence).toList());
+            assertEquals(6L, log.append(payload(6)));
+        }
+    }
+
+    @Test
+    @DisplayName("Should drop a torn record at the end of the log on recovery")
+    public void recover_should_dropTornRecord_whenChecksumDoesNotMatch() throws IOException {
+        try (OutboxLog log = new OutboxLog(directory, SEGMENT_BYTES, 1L << 20, true)) {
+            log.append(payload(1));
+            log.append(payload(2));
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(file -> file.toString().endsWith(".segment")).findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            // Corrupt the last byte of the second record's payload.
+            int secondRecordEnd = 2 * (16 + payload(1).length);
+            channel.write(ByteBuffer.wrap(new byte[]{'?'}), secondRecordEnd - 1);
+        }
+
+        try (OutboxLog log = new OutboxLog(directory, SEGMENT_BYTES, 1L << 20, true)) {
+            List<OutboxLog.LogRecord> records = log.read(log.start(), 100).records();
+
+            assertEquals(1, records.size());
+            assertEquals(2L, log.append(payload(2)));
+            assertEquals(2, log.read(log.start(), 100).records().size());
+        }
+    }
+
+    private int segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return (int) files.filter(file -> file.toString().endsWith(".segment")).count();
+        }
+    }
+
+    private static byte[] payload(int i) {
+        return ("record-" + i).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,82 @@
+package io.github.kxng0109.notifyhub.outbox;
+
+import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+import io.github.kxng0109.notifyhub.service.NotificationProducer;
+import io.github.kxng0109.notifyhub.service.PublishOutcome;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@DisplayName("OutboxRelay Tests")
+public class OutboxRelayTest {
+    private final NotificationProducer producer = mock(NotificationProducer.class);
+
+    @TempDir
+    private Path directory;
+
+    private NotificationOutbox outbox;
+    private OutboxRelay relay;
+
+    @AfterEach
+    void shutdown() throws IOException {
+        if (relay != null) {
+            relay.stop();
+        }
+        if (outbox != null) {
+            outbox.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("Should republish only the refused entry and give it up after the maximum attempts")
+    public void relay_should_failPoisonEntry_and_publishEntriesBehindIt() throws Exception {
+        outbox = new NotificationOutbox(new SimpleMeterRegistry(), true, directory.toString(), 1 << 16, 1L << 20, false);
+        relay = new OutboxRelay(outbox, producer, 500, 10, 20, 3);
+        when(producer.publishFromOutbox(anyList())).thenAnswer(invocation -> {
+            List<OutboxEntry> entries = invocation.getArgument(0);
+            return entries.stream()
+                          .map(entry -> CompletableFuture.completedFuture(
+                                  "poison".equals(entry.notificationId())
+                                          ? PublishOutcome.failed(entry.notificationId(), "rejected")
+                                          : PublishOutcome.accepted(entry.notificationId())))
+                          .toList();
+        });
+
+        CompletableFuture<PublishOutcome> first = outbox.append("first", 1L, request());
+        CompletableFuture<PublishOutcome> poison = outbox.append("poison", 2L, request());
+        CompletableFuture<PublishOutcome> last = outbox.append("last", 3L, request());
+        relay.start();
+
+        assertTrue(first.get(5, TimeUnit.SECONDS).accepted());
+        assertTrue(last.get(5, TimeUnit.SECONDS).accepted());
+        assertFalse(poison.get(5, TimeUnit.SECONDS).accepted());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<OutboxEntry>> published = ArgumentCaptor.forClass(List.class);
+        verify(producer, times(3)).publishFromOutbox(published.capture());
+        assertEquals(List.of("first", "poison", "last"), idsOf(published.getAllValues().get(0)));
+        assertEquals(List.of("poison"), idsOf(published.getAllValues().get(1)));
+        assertEquals(List.of("poison"), idsOf(published.getAllValues().get(2)));
+    }
+
+    private static List<String> idsOf(List<OutboxEntry> entries) {
+        return entries.stream().map(OutboxEntry::notificationId).toList();
+    }
+
+    private static NotificationRequest request() {
+        return new NotificationRequest(List.of("example@email.com"), "Subject", "Body", null, List.of());
+    }
+}
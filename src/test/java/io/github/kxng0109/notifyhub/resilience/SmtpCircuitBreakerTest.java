@@ -0,0 +1,108 @@
+package io.github.kxng0109.notifyhub.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.MessagingException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("SmtpCircuitBreaker Tests")
+public class SmtpCircuitBreakerTest {
+    private static final MailSendException CONNECTION_REFUSED =
+            new MailSendException("Mail server connection failed", new ConnectException("Connection refused"));
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RabbitListenerEndpointRegistry listenerRegistry = mock(RabbitListenerEndpointRegistry.class);
+    private final MessageListenerContainer container = mock(MessageListenerContainer.class);
+    private final JavaMailSenderImpl mailSender = mock(JavaMailSenderImpl.class);
+    private SmtpCircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        when(listenerRegistry.getListenerContainer("notifications")).thenReturn(container);
+        when(container.isRunning()).thenReturn(true);
+    }
+
+    @AfterEach
+    void shutdown() {
+        if (breaker != null) {
+            breaker.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("Should ignore failures that do not show the server is unavailable")
+    public void recordFailure_should_notOpen_whenFailuresAreMessageSpecific() {
+        breaker = newBreaker(60_000);
+
+        for (int i = 0; i < 10; i++) {
+            breaker.recordFailure(new MailSendException("Recipient rejected"));
+        }
+
+        assertEquals(SmtpCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowsSend());
+    }
+
+    @Test
+    @DisplayName("Should open and stop the listeners once the failure rate reaches the threshold")
+    public void recordFailure_should_openAndStopListeners_whenFailureRateReachesThreshold() {
+        breaker = newBreaker(60_000);
+
+        breaker.recordSuccess();
+        breaker.recordSuccess();
+        breaker.recordFailure(CONNECTION_REFUSED);
+        assertEquals(SmtpCircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.recordFailure(CONNECTION_REFUSED);
+
+        assertEquals(SmtpCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowsSend());
+        assertEquals(1.0, meterRegistry.get("notifyhub.mail.circuit.state").tag("state", "open").gauge().value());
+        verify(container, timeout(1000)).stop();
+    }
+
+    @Test
+    @DisplayName("Should half-open after a successful probe and close once probe sends succeed")
+    public void probe_should_restartListenersAndClose_whenServerRecovers() throws MessagingException {
+        breaker = newBreaker(50);
+        doThrow(new MessagingException("still down")).doNothing().when(mailSender).testConnection();
+
+        for (int i = 0; i < 4; i++) {
+            breaker.recordFailure(CONNECTION_REFUSED);
+        }
+        verify(container, timeout(1000)).stop();
+        when(container.isRunning()).thenReturn(false);
+
+        await().atMost(Duration.ofSeconds(2))
+               .until(() -> breaker.getState() == SmtpCircuitBreaker.State.HALF_OPEN);
+        verify(mailSender, times(2)).testConnection();
+        verify(container, timeout(1000)).start();
+        assertTrue(breaker.allowsSend());
+        assertFalse(breaker.isClosed());
+
+        breaker.recordSuccess();
+        breaker.recordSuccess();
+
+        assertEquals(SmtpCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    private SmtpCircuitBreaker newBreaker(long openDurationMillis) {
+        return new SmtpCircuitBreaker(
+                listenerRegistry, mailSender, meterRegistry, true, List.of("notifications"),
+                10, 4, 50, openDurationMillis, 2
+        );
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.kxng0109.notifyhub.scheduling;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("HierarchicalTimingWheel Tests")
+public class HierarchicalTimingWheelTest {
+    private static final long START = 1_000_000L;
+
+    @Test
+    @DisplayName("Should refuse entries that are already due")
+    public void add_should_returnFalse_whenEntryIsDue() {
+        HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(10, 8, START, Long::longValue);
+
+        assertFalse(wheel.add(START - 500));
+        assertFalse(wheel.add(START + 5));
+        assertTrue(wheel.add(START + 10));
+    }
+
+    @Test
+    @DisplayName("Should fire entries in the tick they are due, including ones on coarser levels")
+    public void advance_should_fireEntriesWhenDue_acrossLevels() {
+        HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(10, 8, START, Long::longValue);
+        List<Long> deadlines = List.of(START + 30, START + 75, START + 200, START + 5_000);
+        deadlines.forEach(deadline -> assertTrue(wheel.add(deadline)));
+
+        List<Long> fired = new ArrayList<>();
+        for (long now = START; now <= START + 6_000; now += 10) {
+            List<Long> expired = new ArrayList<>();
+            wheel.advance(now, expired);
+            for (Long entry : expired) {
+                if (!wheel.add(entry)) {
+                    assertTrue(entry <= now, "fired early: " + entry + " at " + now);
+                    assertTrue(now - entry < 10, "fired late: " + entry + " at " + now);
+                    fired.add(entry);
+                }
+            }
+        }
+
+        assertEquals(deadlines, fired);
+    }
+
+    @Test
+    @DisplayName("Should release every overdue entry after a long pause")
+    public void advance_should_releaseAllOverdueEntries_whenClockJumps() {
+        HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(10, 8, START, Long::longValue);
+        wheel.add(START + 20);
+        wheel.add(START + 900);
+
+        List<Long> expired = new ArrayList<>();
+        wheel.advance(START + 10_000, expired);
+
+        assertEquals(2, expired.size());
+        expired.forEach(entry -> assertFalse(wheel.add(entry)));
+    }
+}
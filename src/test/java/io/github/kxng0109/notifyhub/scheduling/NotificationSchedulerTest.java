@@ -0,0 +1,123 @@
+package io.github.kxng0109.notifyhub.scheduling;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.github.kxng0109.notifyhub.attachment.AttachmentStore;
+import io.github.kxng0109.notifyhub.concurrency.DownstreamConcurrencyLimiter;
+import io.github.kxng0109.notifyhub.dto.NotificationPriority;
+import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+import io.github.kxng0109.notifyhub.service.PublishOutcome;
+import io.github.kxng0109.notifyhub.service.PublisherConfirmTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.PRIORITY_QUEUE_NAME;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("NotificationScheduler Tests")
+public class NotificationSchedulerTest {
+    private static final NotificationRequest REQUEST = new NotificationRequest(
+            List.of("later@email.com"), "Scheduled subject", "Scheduled body", null, List.of()
+    );
+
+    @TempDir
+    Path directory;
+
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+    private final PublisherConfirmTracker confirmTracker = mock(PublisherConfirmTracker.class);
+    private final AttachmentStore attachmentStore = mock(AttachmentStore.class);
+    private NotificationScheduler scheduler;
+
+    @AfterEach
+    void shutdown() throws IOException {
+        if (scheduler != null) {
+            scheduler.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("Should publish a scheduled notification to its queue once it is due")
+    public void schedule_should_publishToLaneQueue_whenDue() throws IOException {
+        confirmEveryPublish(true);
+        scheduler = newScheduler();
+
+        scheduler.schedule(System.currentTimeMillis() + 200, NotificationPriority.HIGH, "n-1",
+                           Map.of("x-retry-count", 0), REQUEST);
+
+        verify(confirmTracker, after(100).never()).publish(any(), any(), any(), any(), any());
+        verify(confirmTracker, timeout(2000)).publish(eq("n-1"), eq(""), eq(PRIORITY_QUEUE_NAME), eq(REQUEST), any());
+        await().atMost(Duration.ofSeconds(1))
+               .until(() -> meterRegistry.get("notifyhub.scheduler.pending").gauge().value() == 0.0);
+        verify(attachmentStore).releaseAll(REQUEST.attachments());
+    }
+
+    @Test
+    @DisplayName("Should restore notifications that were not yet published after a restart")
+    public void constructor_should_restorePendingNotifications_fromJournal() throws IOException {
+        confirmEveryPublish(true);
+        scheduler = newScheduler();
+        scheduler.schedule(System.currentTimeMillis() + 60_000, NotificationPriority.NORMAL, "n-2",
+                           Map.of("x-retry-count", 1), REQUEST);
+        scheduler.destroy();
+
+        meterRegistry = new SimpleMeterRegistry();
+        scheduler = newScheduler();
+
+        assertEquals(1.0, meterRegistry.get("notifyhub.scheduler.pending").gauge().value());
+        verify(confirmTracker, never()).publish(any(), any(), any(), any(), any());
+        // Once when it was scheduled, and again when it was restored.
+        verify(attachmentStore, times(2)).retainAll(REQUEST.attachments());
+    }
+
+    @Test
+    @DisplayName("Should keep a notification and try again when its publish is not confirmed")
+    public void schedule_should_retryPublish_whenBrokerDoesNotConfirm() throws IOException {
+        confirmEveryPublish(false);
+        scheduler = newScheduler();
+
+        scheduler.schedule(System.currentTimeMillis(), NotificationPriority.NORMAL, "n-3", Map.of(), REQUEST);
+
+        verify(confirmTracker, timeout(2000).atLeast(2)).publish(eq("n-3"), any(), any(), any(), any());
+        assertEquals(1.0, meterRegistry.get("notifyhub.scheduler.pending").gauge().value());
+    }
+
+    private void confirmEveryPublish(boolean accepted) {
+        when(confirmTracker.publish(any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            String id = invocation.getArgument(0);
+            return CompletableFuture.completedFuture(
+                    accepted ? PublishOutcome.accepted(id) : PublishOutcome.failed(id, "nacked"));
+        });
+    }
+
+    private NotificationScheduler newScheduler() throws IOException {
+        return new NotificationScheduler(
+                confirmTracker,
+                Runnable::run,
+                new DownstreamConcurrencyLimiter(meterRegistry, 16, 25, 1000),
+                attachmentStore,
+                objectMapper,
+                meterRegistry,
+                true,
+                false,
+                directory.resolve("journal.log").toString(),
+                false,
+                20,
+                64,
+                100
+        );
+    }
+}
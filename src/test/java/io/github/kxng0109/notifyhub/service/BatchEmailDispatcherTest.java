@@ -0,0 +1,92 @@
+package io.github.kxng0109.notifyhub.service;
+
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@DisplayName("BatchEmailDispatcher Tests")
+public class BatchEmailDispatcherTest {
+    private final JavaMailSender emailSender = mock(JavaMailSender.class);
+    private final Session session = Session.getInstance(new Properties());
+    private BatchEmailDispatcher dispatcher;
+
+    @AfterEach
+    void stopDispatcher() {
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Should send a partial batch once the window closes")
+    public void dispatch_should_flushPartialBatch_whenWindowEnds() throws Exception {
+        dispatcher = newDispatcher(50, 200);
+        MimeMessage message = new MimeMessage(session);
+
+        long start = System.nanoTime();
+        dispatcher.dispatch(message).get(5, TimeUnit.SECONDS);
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+        verify(emailSender).send(new MimeMessage[]{message});
+    }
+
+    @Test
+    @DisplayName("Should send a batch as soon as it is full, without waiting for the window")
+    public void dispatch_should_flushBatch_whenMaxSizeIsReached() throws Exception {
+        dispatcher = newDispatcher(2, 60_000);
+        MimeMessage first = new MimeMessage(session);
+        MimeMessage second = new MimeMessage(session);
+
+        CompletableFuture<Void> firstResult = dispatcher.dispatch(first);
+        CompletableFuture<Void> secondResult = dispatcher.dispatch(second);
+
+        CompletableFuture.allOf(firstResult, secondResult).get(5, TimeUnit.SECONDS);
+        verify(emailSender).send(first, second);
+    }
+
+    @Test
+    @DisplayName("Should fail only the futures of the messages the server rejected")
+    public void dispatch_should_failOnlyRejectedMessages_whenBatchPartiallyFails() throws Exception {
+        dispatcher = newDispatcher(3, 60_000);
+        MimeMessage accepted = new MimeMessage(session);
+        MimeMessage rejected = new MimeMessage(session);
+        MimeMessage alsoAccepted = new MimeMessage(session);
+        SendFailedException rejection = new SendFailedException("550 mailbox unavailable");
+        doThrow(new MailSendException(Map.of(rejected, rejection)))
+                .when(emailSender).send(any(MimeMessage[].class));
+
+        CompletableFuture<Void> acceptedResult = dispatcher.dispatch(accepted);
+        CompletableFuture<Void> rejectedResult = dispatcher.dispatch(rejected);
+        CompletableFuture<Void> alsoAcceptedResult = dispatcher.dispatch(alsoAccepted);
+
+        assertNull(acceptedResult.get(5, TimeUnit.SECONDS));
+        assertNull(alsoAcceptedResult.get(5, TimeUnit.SECONDS));
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                                                  () -> rejectedResult.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(MailSendException.class, failure.getCause());
+        assertSame(rejection, failure.getCause().getCause());
+    }
+
+    private BatchEmailDispatcher newDispatcher(int maxBatchSize, long windowMillis) {
+        BatchEmailDispatcher batchDispatcher = new BatchEmailDispatcher(
+                emailSender, true, maxBatchSize, windowMillis, 1, 100
+        );
+        batchDispatcher.start();
+        return batchDispatcher;
+    }
+}
@@ -0,0 +1,202 @@
+package io.github.kxng0109.notifyhub.service;
+
+import io.github.kxng0109.notifyhub.dto.AttachmentRequest;
+import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+import io.github.kxng0109.notifyhub.dto.ReplayRequest;
+import io.github.kxng0109.notifyhub.dto.ReplayStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.testcontainers.containers.RabbitMQContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.DELAYED_EXCHANGE_NAME;
+import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.FAILURES_EXCHANGE_NAME;
+import static io.github.kxng0109.notifyhub.service.NotificationConsumer.HEADER_FAILED_AT;
+import static io.github.kxng0109.notifyhub.service.NotificationConsumer.HEADER_FAILURE_REASON;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+@Testcontainers
+@DisplayName("FailureReplayService Integration Tests")
+public class FailureReplayServiceTest {
+    private static final int AWAIT_TIMEOUT_SECONDS = 10;
+
+    @Container
+    //A docker image that has the plugin pre-installed
+    private static final RabbitMQContainer RABBIT_MQ_CONTAINER = new RabbitMQContainer(
+            DockerImageName.parse("heidiks/rabbitmq-delayed-message-exchange:3.13.0-management")
+                           .asCompatibleSubstituteFor("rabbitmq")
+    );
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+    @Autowired
+    private FailureReplayService replayService;
+    @MockitoSpyBean
+    private PublisherConfirmTracker confirmTracker;
+    @MockitoBean
+    private EmailService emailService;
+
+    @DynamicPropertySource
+    static void dynamicProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.rabbitmq.host", RABBIT_MQ_CONTAINER::getHost);
+        registry.add("spring.rabbitmq.port", RABBIT_MQ_CONTAINER::getAmqpPort);
+        registry.add("spring.rabbitmq.username", RABBIT_MQ_CONTAINER::getAdminUsername);
+        registry.add("spring.rabbitmq.password", RABBIT_MQ_CONTAINER::getAdminPassword);
+
+        registry.add("spring.mail.host", () -> "localhost");
+        registry.add("spring.mail.port", () -> 1025);
+        registry.add("notifyhub.mail.from", () -> "test@notifyhub.com");
+
+        registry.add("notifyhub.rabbitmq.failures.queue-type", () -> "stream");
+        registry.add("notifyhub.replay.idle-timeout-ms", () -> 500);
+    }
+
+    @BeforeEach
+    void resetSpies() {
+        reset(confirmTracker, emailService);
+    }
+
+    @Test
+    @DisplayName("Should replay only notifications whose reason matches, up to the limit")
+    public void start_should_replayMatchingReasons_upToLimit() {
+        Instant now = Instant.now();
+        park("reason-1", "reason-test: 550 mailbox unavailable", now);
+        park("reason-2", "reason-test: connection refused", now);
+        park("reason-3", "reason-test: 550 mailbox unavailable", now);
+        park("reason-4", "reason-test: 550 mailbox unavailable", now);
+
+        ReplayStatus status = replay(new ReplayRequest("REASON-TEST: 550", null, null, null, null, 2));
+
+        assertEquals(ReplayStatus.State.COMPLETED, status.state());
+        assertEquals(2, status.replayed());
+        assertRepublished("reason-1", "reason-3");
+        assertNotRepublished("reason-2", "reason-4");
+    }
+
+    @Test
+    @DisplayName("Should replay only notifications that failed within the time filter")
+    public void start_should_replayNotificationsFailedAfterFrom() {
+        Instant now = Instant.now();
+        park("time-1", "time-test", now.minus(Duration.ofMinutes(10)));
+        park("time-2", "time-test", now.minus(Duration.ofMinutes(1)));
+
+        ReplayStatus status = replay(new ReplayRequest(
+                "time-test", now.minus(Duration.ofMinutes(5)), null, null, null, null));
+
+        assertEquals(1, status.replayed());
+        assertRepublished("time-2");
+        assertNotRepublished("time-1");
+    }
+
+    @Test
+    @DisplayName("Should start reading the stream at the requested offset")
+    public void start_should_skipNotificationsBeforeFromOffset() {
+        Instant now = Instant.now();
+        park("offset-1", "offset-test", now);
+        park("offset-2", "offset-test", now);
+        // Stops once it reaches the second match, which leaves the offset of that match.
+        ReplayStatus probe = replay(new ReplayRequest("offset-test", null, null, null, null, 1));
+        reset(confirmTracker);
+
+        ReplayStatus status = replay(new ReplayRequest("offset-test", null, null, probe.lastOffset(), null, null));
+
+        assertEquals(1, status.replayed());
+        assertRepublished("offset-2");
+        assertNotRepublished("offset-1");
+    }
+
+    @Test
+    @DisplayName("Should stop at notifications that failed after the replay started")
+    public void start_should_stopAtNotificationsFailedAfterStart() {
+        Instant now = Instant.now();
+        park("start-1", "start-test", now);
+        park("start-2", "start-test", now);
+        park("start-3", "start-test", now);
+
+        // At one per second, the replay is still working through the first three when the fourth fails.
+        String replayId = replayService.start(new ReplayRequest("start-test", null, null, null, 1, null)).replayId();
+        // Stamped a little ahead, so it is after the start time the replay thread takes.
+        park("start-4", "start-test", Instant.now().plusMillis(500));
+        ReplayStatus status = await().atMost(AWAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                                     .until(() -> replayService.status(replayId).orElseThrow(),
+                                            replay -> replay.state() != ReplayStatus.State.RUNNING);
+
+        assertEquals(ReplayStatus.State.COMPLETED, status.state());
+        assertEquals(3, status.replayed());
+        assertRepublished("start-1", "start-2", "start-3");
+        assertNotRepublished("start-4");
+    }
+
+    @Test
+    @DisplayName("Should count a notification whose stored attachment is gone as failed")
+    public void start_should_countNotificationAsFailed_whenAttachmentIsNoLongerStored() {
+        AttachmentRequest attachment = new AttachmentRequest(
+                "report.pdf", "application/pdf", null, "sha256:" + "0".repeat(64));
+        park("blob-1", "blob-test", Instant.now(), List.of(attachment));
+
+        ReplayStatus status = replay(new ReplayRequest("blob-test", null, null, null, null, null));
+
+        assertEquals(0, status.replayed());
+        assertEquals(1, status.failed());
+        assertNotRepublished("blob-1");
+    }
+
+    private void park(String notificationId, String reason, Instant failedAt) {
+        park(notificationId, reason, failedAt, List.of());
+    }
+
+    private void park(String notificationId, String reason, Instant failedAt, List<AttachmentRequest> attachments) {
+        NotificationRequest notificationRequest = new NotificationRequest(
+                List.of("replay@email.com"),
+                "A replay test",
+                "A body for a replay test",
+                null,
+                attachments
+        );
+        rabbitTemplate.convertAndSend(FAILURES_EXCHANGE_NAME, "", notificationRequest, msg -> {
+            msg.getMessageProperties().setMessageId(notificationId);
+            msg.getMessageProperties().getHeaders().put(HEADER_FAILURE_REASON, reason);
+            msg.getMessageProperties().getHeaders().put(HEADER_FAILED_AT, failedAt.toEpochMilli());
+            return msg;
+        });
+    }
+
+    private ReplayStatus replay(ReplayRequest request) {
+        String replayId = replayService.start(request).replayId();
+        return await().atMost(AWAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                      .until(() -> replayService.status(replayId).orElseThrow(),
+                             status -> status.state() != ReplayStatus.State.RUNNING);
+    }
+
+    private void assertRepublished(String... notificationIds) {
+        for (String notificationId : notificationIds) {
+            verify(confirmTracker).publish(eq(notificationId), eq(DELAYED_EXCHANGE_NAME), anyString(), any(), any());
+        }
+    }
+
+    private void assertNotRepublished(String... notificationIds) {
+        for (String notificationId : notificationIds) {
+            verify(confirmTracker, never()).publish(eq(notificationId), eq(DELAYED_EXCHANGE_NAME), anyString(), any(), any());
+        }
+    }
+}
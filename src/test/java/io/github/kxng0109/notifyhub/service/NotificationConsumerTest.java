@@ -1,7 +1,10 @@
 package io.github.kxng0109.notifyhub.service;
 
+import com.rabbitmq.client.Channel;
 import io.github.kxng0109.notifyhub.dto.AttachmentRequest;
+import io.github.kxng0109.notifyhub.dto.NotificationPriority;
 import io.github.kxng0109.notifyhub.dto.NotificationRequest;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -25,16 +28,25 @@ import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Base64;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.DELAYED_EXCHANGE_NAME;
+import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.PRIORITY_ROUTING_KEY;
 import static io.github.kxng0109.notifyhub.config.RabbitMQConfig.ROUTING_KEY;
+import static io.github.kxng0109.notifyhub.service.NotificationProducer.HEADER_ACCEPTED_AT;
 import static io.github.kxng0109.notifyhub.service.NotificationProducer.HEADER_RETRY_COUNT;
 import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -46,6 +58,8 @@ public class NotificationConsumerTest {
     //We can't be waiting for long, so max retries of 2 is perfect.
     private static final int MAX_RETRIES = 2;
     private static final int AWAIT_TIMEOUT_SECONDS = 5;
+    private static final int RECIPIENT_CHUNK_SIZE = 2;
+    private static final Path TEMPLATE_DIRECTORY = createTemplates();
 
     @Container
     //A docker image that has the plugin pre-installed
@@ -59,6 +73,10 @@ public class NotificationConsumerTest {
     private NotificationConsumer notificationConsumer;
     @MockitoBean
     private EmailService emailService;
+    @MockitoSpyBean
+    private PublisherConfirmTracker confirmTracker;
+    @Autowired
+    private MeterRegistry meterRegistry;
 
     @DynamicPropertySource
     static void dynamicProperties(DynamicPropertyRegistry registry) {
@@ -77,13 +95,25 @@ public class NotificationConsumerTest {
         registry.add("notifyhub.rabbitmq.maxRetries", () -> MAX_RETRIES);
         registry.add("notifyhub.rabbitmq.backoff.base", () -> "2");
         registry.add("notifyhub.rabbitmq.backoff.multiplier", () -> "100");
+        registry.add("notifyhub.mail.recipients.chunk-size", () -> RECIPIENT_CHUNK_SIZE);
+        registry.add("notifyhub.rabbitmq.follow-up.retry-interval-ms", () -> 100);
+        registry.add("notifyhub.templates.dir", TEMPLATE_DIRECTORY::toString);
+    }
+
+    private static Path createTemplates() {
+        try {
+            Path directory = Files.createTempDirectory("notifyhub-templates");
+            Files.writeString(directory.resolve("welcome.html"), "<p>Welcome, {{name}}! Your plan: {{plan}}</p>");
+            return directory;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     @BeforeEach
     void resetCounterAndMocks() {
         // Resets invocation counts on spies between tests
-        reset(notificationConsumer, emailService);
-        NotificationConsumer.counter.set(0);
+        reset(notificationConsumer, emailService, confirmTracker);
     }
 
     @Test
@@ -118,7 +148,7 @@ public class NotificationConsumerTest {
                     );
 
                     verify(notificationConsumer)
-                            .handleNotification(any(NotificationRequest.class), any(Message.class));
+                            .handleNotification(any(NotificationRequest.class), any(Message.class), any(Channel.class));
 
                     verify(emailService, never()).sendHtmlMessage(
                             anyList(),
@@ -170,7 +200,7 @@ public class NotificationConsumerTest {
                     );
 
                     verify(notificationConsumer)
-                            .handleNotification(any(NotificationRequest.class), any(Message.class));
+                            .handleNotification(any(NotificationRequest.class), any(Message.class), any(Channel.class));
 
                     verify(emailService, never()).sendSimpleMessage(
                             anyList(),
@@ -223,7 +253,7 @@ public class NotificationConsumerTest {
                             );
 
                     verify(notificationConsumer, times(2))
-                            .handleNotification(any(NotificationRequest.class), any(Message.class));
+                            .handleNotification(any(NotificationRequest.class), any(Message.class), any(Channel.class));
 
                     verify(emailService, never())
                             .sendHtmlMessage(anyList(), anyString(), anyString(), anyList());
@@ -260,7 +290,7 @@ public class NotificationConsumerTest {
                 .atMost(AWAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
                 .untilAsserted(() -> {
                     verify(notificationConsumer, times(MAX_RETRIES + 1))
-                            .handleNotification(any(NotificationRequest.class), any(Message.class));
+                            .handleNotification(any(NotificationRequest.class), any(Message.class), any(Channel.class));
 
                     verify(emailService, times(MAX_RETRIES + 1))
                             .sendSimpleMessage(
@@ -274,6 +304,186 @@ public class NotificationConsumerTest {
                 });
     }
 
+    @Test
+    @DisplayName("Should retry only the failed recipient chunk when a large list is split")
+    @Timeout(AWAIT_TIMEOUT_SECONDS)
+    public void handleNotification_should_retryOnlyFailedChunk_whenRecipientsAreChunked() {
+        List<String> firstChunk = List.of("a@email.com", "b@email.com");
+        List<String> failingChunk = List.of("c@email.com", "d@email.com");
+        List<String> lastChunk = List.of("e@email.com");
+        NotificationRequest notificationRequest = new NotificationRequest(
+                List.of("a@email.com", "b@email.com", "c@email.com", "d@email.com", "e@email.com"),
+                "Chunked subject",
+                "A chunked test body",
+                null,
+                List.of()
+        );
+
+        doThrow(MailSendException.class)
+                .doNothing()
+                .when(emailService)
+                .sendSimpleMessage(eq(failingChunk), anyString(), anyString());
+
+        rabbitTemplate.convertAndSend(
+                DELAYED_EXCHANGE_NAME,
+                ROUTING_KEY,
+                notificationRequest,
+                msg -> {
+                    msg.getMessageProperties().getHeaders().put(HEADER_RETRY_COUNT, 0);
+                    return msg;
+                }
+        );
+
+        await()
+                .atMost(AWAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .untilAsserted(() -> {
+                    verify(emailService, times(2)).sendSimpleMessage(eq(failingChunk), anyString(), anyString());
+                    verify(emailService, times(1)).sendSimpleMessage(eq(firstChunk), anyString(), anyString());
+                    verify(emailService, times(1)).sendSimpleMessage(eq(lastChunk), anyString(), anyString());
+                    verify(notificationConsumer, times(2))
+                            .handleNotification(any(NotificationRequest.class), any(Message.class), any(Channel.class));
+                });
+    }
+
+    @Test
+    @DisplayName("Should publish an unconfirmed chunk retry again instead of returning the delivery to the queue")
+    @Timeout(AWAIT_TIMEOUT_SECONDS)
+    public void handleNotification_should_notResendSentChunk_whenChunkRetryIsNotConfirmed() {
+        List<String> sentChunk = List.of("f@email.com", "g@email.com");
+        List<String> failingChunk = List.of("h@email.com");
+        NotificationRequest notificationRequest = new NotificationRequest(
+                List.of("f@email.com", "g@email.com", "h@email.com"),
+                "Unconfirmed retry subject",
+                "An unconfirmed retry body",
+                null,
+                List.of()
+        );
+
+        doThrow(MailSendException.class)
+                .doNothing()
+                .when(emailService)
+                .sendSimpleMessage(eq(failingChunk), anyString(), anyString());
+        doReturn(CompletableFuture.completedFuture(PublishOutcome.failed("retry", "nacked")))
+                .doCallRealMethod()
+                .when(confirmTracker)
+                .publish(anyString(), eq(DELAYED_EXCHANGE_NAME), eq(ROUTING_KEY),
+                         argThat(payload -> payload instanceof NotificationRequest chunk
+                                 && failingChunk.equals(chunk.to())),
+                         any());
+
+        rabbitTemplate.convertAndSend(
+                DELAYED_EXCHANGE_NAME,
+                ROUTING_KEY,
+                notificationRequest,
+                msg -> {
+                    msg.getMessageProperties().getHeaders().put(HEADER_RETRY_COUNT, 0);
+                    return msg;
+                }
+        );
+
+        await()
+                .atMost(AWAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .untilAsserted(() -> {
+                    verify(emailService, times(2)).sendSimpleMessage(eq(failingChunk), anyString(), anyString());
+                    verify(emailService, times(1)).sendSimpleMessage(eq(sentChunk), anyString(), anyString());
+                    verify(confirmTracker, times(2)).publish(
+                            anyString(), eq(DELAYED_EXCHANGE_NAME), eq(ROUTING_KEY),
+                            argThat(payload -> payload instanceof NotificationRequest chunk
+                                    && failingChunk.equals(chunk.to())),
+                            any());
+                });
+        verify(notificationConsumer, never()).handleNotification(
+                any(NotificationRequest.class),
+                argThat(delivered -> Boolean.TRUE.equals(delivered.getMessageProperties().isRedelivered())),
+                any(Channel.class)
+        );
+    }
+
+    @Test
+    @DisplayName("Should consume high-priority notifications on the priority lane")
+    @Timeout(AWAIT_TIMEOUT_SECONDS)
+    public void handlePriorityNotification_should_sendAndRecordLatency_whenRoutedToPriorityQueue() {
+        NotificationRequest notificationRequest = new NotificationRequest(
+                List.of("reset@email.com"),
+                "Password reset",
+                "Your reset link",
+                null,
+                List.of(),
+                NotificationPriority.HIGH,
+                null,
+                null,
+                null,
+                null
+        );
+
+        rabbitTemplate.convertAndSend(
+                DELAYED_EXCHANGE_NAME,
+                PRIORITY_ROUTING_KEY,
+                notificationRequest,
+                msg -> {
+                    msg.getMessageProperties().getHeaders().put(HEADER_RETRY_COUNT, 0);
+                    msg.getMessageProperties().getHeaders().put(HEADER_ACCEPTED_AT, System.currentTimeMillis());
+                    return msg;
+                }
+        );
+
+        await()
+                .atMost(AWAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .untilAsserted(() -> {
+                    verify(notificationConsumer)
+                            .handlePriorityNotification(any(NotificationRequest.class), any(Message.class), any(Channel.class));
+                    verify(emailService).sendSimpleMessage(
+                            eq(notificationRequest.to()),
+                            eq(notificationRequest.subject()),
+                            eq(notificationRequest.body())
+                    );
+                    assertTrue(meterRegistry.get("notifyhub.notifications.delivery.latency")
+                                            .tag("lane", "high")
+                                            .timer()
+                                            .count() >= 1);
+                });
+    }
+
+    @Test
+    @DisplayName("Should render a template separately for every recipient when recipient variables are given")
+    @Timeout(AWAIT_TIMEOUT_SECONDS)
+    public void handleNotification_should_renderTemplatePerRecipient_whenRecipientVariablesArePresent() {
+        NotificationRequest notificationRequest = new NotificationRequest(
+                List.of("ada@email.com", "alan@email.com"),
+                "Welcome aboard",
+                null,
+                null,
+                List.of(),
+                null,
+                null,
+                "welcome",
+                Map.of("plan", "Pro"),
+                Map.of(
+                        "ada@email.com", Map.of("name", "Ada"),
+                        "alan@email.com", Map.of("name", "Alan <Turing>")
+                )
+        );
+
+        rabbitTemplate.convertAndSend(DELAYED_EXCHANGE_NAME, ROUTING_KEY, notificationRequest);
+
+        await()
+                .atMost(AWAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .untilAsserted(() -> {
+                    verify(emailService).sendHtmlMessage(
+                            eq(List.of("ada@email.com")),
+                            eq("Welcome aboard"),
+                            eq("<p>Welcome, Ada! Your plan: Pro</p>"),
+                            any()
+                    );
+                    verify(emailService).sendHtmlMessage(
+                            eq(List.of("alan@email.com")),
+                            eq("Welcome aboard"),
+                            eq("<p>Welcome, Alan &lt;Turing&gt;! Your plan: Pro</p>"),
+                            any()
+                    );
+                });
+    }
+
     /**
      * Configuration class for defining custom executor beans used in test scenarios.
      * This configuration provides synchronous task executors for email sending and RabbitMQ publishing,
@@ -287,6 +497,11 @@ public class NotificationConsumerTest {
             return new SyncTaskExecutor();
         }
 
+        @Bean
+        public Executor priorityEmailSendingExecutor() {
+            return new SyncTaskExecutor();
+        }
+
         @Bean
         @Primary
         public Executor rabbitmqPublisherExecutor() {
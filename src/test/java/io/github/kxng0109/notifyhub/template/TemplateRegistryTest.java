@@ -0,0 +1,74 @@
+package io.github.kxng0109.notifyhub.template;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("TemplateRegistry Tests")
+public class TemplateRegistryTest {
+    @TempDir
+    private Path directory;
+
+    private TemplateRegistry registry;
+
+    @AfterEach
+    void closeRegistry() throws IOException {
+        if (registry != null) {
+            registry.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("Should escape variables, keep raw placeholders and prefer recipient values")
+    public void render_should_substituteVariables_whenTemplateIsCompiled() {
+        CompiledTemplate template = CompiledTemplate.compile(
+                "<h1>Hi {{ name }}</h1>{{{footer}}}<p>{{missing}}{{unclosed</p>"
+        );
+
+        String rendered = template.render(
+                Map.of("name", "everyone", "footer", "<hr/>"),
+                Map.of("name", "Tom & Jerry")
+        );
+
+        assertEquals("<h1>Hi Tom &amp; Jerry</h1><hr/><p>{{unclosed</p>", rendered);
+    }
+
+    @Test
+    @DisplayName("Should load every HTML file in the template directory")
+    public void find_should_returnCompiledTemplate_whenFileExists() throws IOException {
+        Files.writeString(directory.resolve("receipt.html"), "Order {{orderId}}");
+        Files.writeString(directory.resolve("notes.txt"), "not a template");
+
+        registry = new TemplateRegistry(new SimpleMeterRegistry(), directory.toString(), false);
+
+        assertEquals("Order 42", registry.find("receipt").orElseThrow().render(Map.of("orderId", "42"), null));
+        assertFalse(registry.contains("notes"));
+    }
+
+    @Test
+    @DisplayName("Should pick up changed and deleted templates without a restart")
+    public void find_should_reloadTemplate_whenFileChanges() throws IOException {
+        Path file = directory.resolve("receipt.html");
+        Files.writeString(file, "Order {{orderId}}");
+        registry = new TemplateRegistry(new SimpleMeterRegistry(), directory.toString(), true);
+
+        Files.writeString(file, "Your order {{orderId}} has shipped");
+        await().atMost(Duration.ofSeconds(15)).until(() -> registry.find("receipt").orElseThrow()
+                                                                   .render(Map.of("orderId", "42"), null)
+                                                                   .equals("Your order 42 has shipped"));
+
+        Files.delete(file);
+        await().atMost(Duration.ofSeconds(15)).until(() -> !registry.contains("receipt"));
+    }
+}